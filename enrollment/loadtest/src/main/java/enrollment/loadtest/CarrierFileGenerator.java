@@ -0,0 +1,86 @@
+package enrollment.loadtest;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Carrier File Generator, run with gradlew :loadtest:carrierFile --args='--rows=5000000'. Writes a carrier
+ * enrollment file for the ingestion job: each Enrollee's row followed by a row for each of its Dependents, with a
+ * share of rows made invalid so the rejects file is exercised too
+ * @author Michael Kulaga
+ */
+public class CarrierFileGenerator {
+
+    private static final String FIXED_WIDTH_FORMAT = "%-10s%-10s%-40s%-10s%-1s%-15s";
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> values = LoadTestOptions.parseArguments(args);
+
+        long rows = Long.parseLong(values.getOrDefault("rows", "5000000"));
+        boolean fixedWidth = "fixed-width".equals(values.getOrDefault("format", "csv"));
+        double invalidRate = Double.parseDouble(values.getOrDefault("invalid-rate", "0.001"));
+        long firstEnrolleeId = Long.parseLong(values.getOrDefault("first-enrollee-id", "1"));
+        long randomSeed = Long.parseLong(values.getOrDefault("random-seed", "42"));
+        Path output = Paths.get(values.getOrDefault("output", "build/loadtest-results/carrier." + (fixedWidth ? "txt" : "csv")));
+
+        WeightedChoice<Integer> familySizes = new WeightedChoice<>(LoadTestOptions.parseWeights(
+                values.getOrDefault("family-sizes", "0:35,1:20,2:20,3:15,4:7,8:3")), Integer::valueOf);
+        EnrolleeGenerator generator = new EnrolleeGenerator(familySizes, firstEnrolleeId);
+        Random random = new Random(randomSeed);
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+
+        long written = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+
+            if (!fixedWidth) {
+                out.write("enrolleeId,dependentId,name,dateOfBirth,activationStatus,phoneNumber\n");
+            }
+
+            while (written < rows) {
+                Map<String, Object> enrollee = generator.enrollee(random);
+                String enrolleeId = (String) enrollee.get("id");
+
+                out.write(row(fixedWidth, enrolleeId, "", enrollee, random.nextDouble() < invalidRate));
+                written++;
+
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> dependents = (List<Map<String, Object>>) enrollee.get("dependents");
+                for (int i = 0; i < dependents.size() && written < rows; i++) {
+                    Map<String, Object> dependent = dependents.get(i);
+                    out.write(row(fixedWidth, enrolleeId, (String) dependent.get("id"), dependent, random.nextDouble() < invalidRate));
+                    written++;
+                }
+            }
+        }
+
+        System.out.println("Wrote " + written + " Rows To " + output.toAbsolutePath() + " (" + (Files.size(output) >> 20) + " MB)");
+    }
+
+    /**
+     * Helper method to write a row, with an impossible date of birth if it is to be invalid
+     */
+    private static String row(boolean fixedWidth, String enrolleeId, String dependentId, Map<String, Object> person, boolean invalid) {
+
+        String dateOfBirth = invalid ? "2000-13-40" : (String) person.get("dateOfBirth");
+        String activationStatus = dependentId.isEmpty() ? (Boolean.TRUE.equals(person.get("activationStatus")) ? "Y" : "N") : "";
+        String phoneNumber = person.containsKey("phoneNumber") ? (String) person.get("phoneNumber") : "";
+
+        if (fixedWidth) {
+            return String.format(FIXED_WIDTH_FORMAT, enrolleeId, dependentId, person.get("name"), dateOfBirth, activationStatus, phoneNumber) + "\n";
+        }
+
+        //carriers quote names, which may hold commas
+        return enrolleeId + "," + dependentId + ",\"" + person.get("name") + "\"," + dateOfBirth + "," + activationStatus + "," + phoneNumber + "\n";
+    }
+
+}
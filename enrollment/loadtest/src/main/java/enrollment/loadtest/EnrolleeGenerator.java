@@ -0,0 +1,126 @@
+package enrollment.loadtest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates realistic synthetic Enrollees and Dependents as JSON-ready maps
+ * @author Michael Kulaga
+ */
+class EnrolleeGenerator {
+
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+            "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Carlos", "Maria",
+            "Wei", "Fatima", "Aarav", "Olga", "Kenji", "Amara", "Liam", "Sofia", "Mateo", "Zara"};
+
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Nguyen", "Kim", "Patel", "Kowalski", "Okafor", "Tanaka", "O'Brien", "Schmidt", "Rossi", "Haddad"};
+
+    private static final double PHONE_NUMBER_PROBABILITY = 0.7;
+    private static final double ACTIVE_PROBABILITY = 0.85;
+
+    private final WeightedChoice<Integer> familySizes;
+    private final AtomicLong nextEnrolleeId;
+
+    /**
+     * Constructor for EnrolleeGenerator
+     *
+     * @param familySizes the weighted number of Dependents per Enrollee
+     * @param firstEnrolleeId the first Enrollee Id to hand out
+     */
+    EnrolleeGenerator(WeightedChoice<Integer> familySizes, long firstEnrolleeId) {
+        this.familySizes = familySizes;
+        this.nextEnrolleeId = new AtomicLong(firstEnrolleeId);
+    }
+
+    /**
+     * Generates a new Enrollee with a fresh Id and a family drawn from the family size distribution
+     *
+     * @param random the source of randomness
+     * @return the Enrollee as a JSON-ready map
+     */
+    Map<String, Object> enrollee(Random random) {
+
+        String lastName = pick(LAST_NAMES, random);
+
+        Map<String, Object> enrollee = new LinkedHashMap<>();
+        enrollee.put("id", String.valueOf(this.nextEnrolleeId.getAndIncrement()));
+        enrollee.put("name", pick(FIRST_NAMES, random) + " " + lastName);
+        enrollee.put("activationStatus", random.nextDouble() < ACTIVE_PROBABILITY);
+        enrollee.put("dateOfBirth", dateOfBirth(random, 25, 70));
+
+        if (random.nextDouble() < PHONE_NUMBER_PROBABILITY) {
+            enrollee.put("phoneNumber", String.format("%03d-%03d-%04d", random.nextInt(1000), random.nextInt(1000), random.nextInt(10000)));
+        }
+
+        int familySize = this.familySizes.next(random);
+        List<Map<String, Object>> dependents = new ArrayList<>(familySize);
+
+        for (int i = 1; i <= familySize; i++) {
+            dependents.add(this.dependent(String.valueOf(i), lastName, random));
+        }
+
+        enrollee.put("dependents", dependents);
+
+        return enrollee;
+    }
+
+    /**
+     * Generates the modifiable fields of an existing Enrollee, for a PATCH
+     *
+     * @param enrolleeId the Id of the Enrollee being modified
+     * @param random the source of randomness
+     * @return the modified Enrollee as a JSON-ready map, without Dependents
+     */
+    Map<String, Object> modifiedEnrollee(String enrolleeId, Random random) {
+
+        Map<String, Object> enrollee = new LinkedHashMap<>();
+        enrollee.put("id", enrolleeId);
+        enrollee.put("name", pick(FIRST_NAMES, random) + " " + pick(LAST_NAMES, random));
+        enrollee.put("activationStatus", random.nextDouble() < ACTIVE_PROBABILITY);
+        enrollee.put("dateOfBirth", dateOfBirth(random, 25, 70));
+        enrollee.put("dependents", new ArrayList<>());
+
+        return enrollee;
+    }
+
+    /**
+     * Generates a Dependent
+     *
+     * @param dependentId the Id of the Dependent
+     * @param lastName the family name shared with the Enrollee, or null to pick one
+     * @param random the source of randomness
+     * @return the Dependent as a JSON-ready map
+     */
+    Map<String, Object> dependent(String dependentId, String lastName, Random random) {
+
+        Map<String, Object> dependent = new LinkedHashMap<>();
+        dependent.put("id", dependentId);
+        dependent.put("name", pick(FIRST_NAMES, random) + " " + (lastName != null ? lastName : pick(LAST_NAMES, random)));
+        dependent.put("dateOfBirth", dateOfBirth(random, 0, 26));
+
+        return dependent;
+    }
+
+    /**
+     * Helper method to generate a date of birth for someone between the given ages
+     */
+    private static String dateOfBirth(Random random, int minimumAge, int maximumAge) {
+
+        int days = minimumAge * 365 + random.nextInt((maximumAge - minimumAge) * 365 + 1);
+        return LocalDate.now().minusDays(days).toString();
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+}
@@ -0,0 +1,118 @@
+package enrollment.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tracks the Enrollees and Dependents known to exist on the target, so that operations can pick valid Ids
+ * @author Michael Kulaga
+ */
+class FamilyRegistry {
+
+    private final List<Family> families = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * An Enrollee and the Ids of its Dependents
+     */
+    static class Family {
+
+        final String enrolleeId;
+        final List<String> dependentIds = new ArrayList<>();
+        int nextDependentId;
+
+        Family(String enrolleeId) {
+            this.enrolleeId = enrolleeId;
+        }
+
+        /**
+         * Hands out the next unused Dependent Id for this Enrollee
+         */
+        synchronized String newDependentId() {
+            return String.valueOf(++this.nextDependentId);
+        }
+
+        synchronized void addDependent(String dependentId) {
+            this.dependentIds.add(dependentId);
+        }
+
+        /**
+         * Picks an existing Dependent Id, optionally removing it
+         */
+        synchronized String pickDependent(Random random, boolean remove) {
+
+            if (this.dependentIds.isEmpty()) {
+                return null;
+            }
+
+            int index = random.nextInt(this.dependentIds.size());
+            return remove ? this.dependentIds.remove(index) : this.dependentIds.get(index);
+        }
+    }
+
+    /**
+     * Registers an Enrollee generated by EnrolleeGenerator after it was added to the target
+     *
+     * @param enrollee the generated Enrollee
+     */
+    @SuppressWarnings("unchecked")
+    void register(Map<String, Object> enrollee) {
+
+        Family family = new Family((String) enrollee.get("id"));
+
+        for (Map<String, Object> dependent : (List<Map<String, Object>>) enrollee.get("dependents")) {
+            String dependentId = (String) dependent.get("id");
+            family.dependentIds.add(dependentId);
+            family.nextDependentId = Math.max(family.nextDependentId, Integer.parseInt(dependentId));
+        }
+
+        synchronized (this) {
+            this.positions.put(family.enrolleeId, this.families.size());
+            this.families.add(family);
+        }
+    }
+
+    /**
+     * Picks an existing family at random
+     *
+     * @param random the source of randomness
+     * @return the family, or null if there are none
+     */
+    synchronized Family pick(Random random) {
+        return this.families.isEmpty() ? null : this.families.get(random.nextInt(this.families.size()));
+    }
+
+    /**
+     * Picks an existing family at random and forgets it, for operations that delete the Enrollee
+     *
+     * @param random the source of randomness
+     * @return the family, or null if there are none
+     */
+    synchronized Family remove(Random random) {
+
+        if (this.families.isEmpty()) {
+            return null;
+        }
+
+        Family removed = this.families.get(random.nextInt(this.families.size()));
+        Family last = this.families.remove(this.families.size() - 1);
+
+        if (last != removed) {
+            int position = this.positions.get(removed.enrolleeId);
+            this.families.set(position, last);
+            this.positions.put(last.enrolleeId, position);
+        }
+
+        this.positions.remove(removed.enrolleeId);
+
+        return removed;
+    }
+
+    synchronized int size() {
+        return this.families.size();
+    }
+
+}
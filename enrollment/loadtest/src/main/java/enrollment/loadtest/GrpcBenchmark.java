@@ -0,0 +1,275 @@
+package enrollment.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import enrollment.grpc.api.DependentMessage;
+import enrollment.grpc.api.EnrolleeId;
+import enrollment.grpc.api.EnrolleeIds;
+import enrollment.grpc.api.EnrolleeMessage;
+import enrollment.grpc.api.EnrolleesPage;
+import enrollment.grpc.api.EnrollmentGrpc;
+import enrollment.grpc.api.ListEnrolleesRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * gRPC Benchmark, run with gradlew :loadtest:grpcBenchmark --args='--target=http://localhost:8080 --grpc-target=localhost:9090'
+ * against an application started with enrollment.grpc.enabled=true. Seeds Enrollees, then for each workload runs
+ * the REST endpoint and the gRPC call that do the same work, one after the other, each from the same number of
+ * closed-loop clients for the same time, and compares their throughput and latency
+ * @author Michael Kulaga
+ */
+public class GrpcBenchmark {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * One call of a workload, made by a client with its own source of randomness
+     */
+    private interface Call {
+        void run(Random random) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> values = LoadTestOptions.parseArguments(args);
+
+        String target = values.getOrDefault("target", "http://localhost:8080");
+        String grpcTarget = values.getOrDefault("grpc-target", "localhost:9090");
+        int seedEnrollees = Integer.parseInt(values.getOrDefault("seed-enrollees", "2000"));
+        int concurrency = Integer.parseInt(values.getOrDefault("concurrency", "8"));
+        int warmupSeconds = Integer.parseInt(values.getOrDefault("warmup-seconds", "5"));
+        int durationSeconds = Integer.parseInt(values.getOrDefault("duration-seconds", "20"));
+        int batchSize = Integer.parseInt(values.getOrDefault("batch-size", "50"));
+        long randomSeed = Long.parseLong(values.getOrDefault("random-seed", "42"));
+        Path resultsDirectory = Paths.get(values.getOrDefault("results", "build/loadtest-results"));
+
+        if (seedEnrollees < 1) {
+            throw new IllegalArgumentException("Unable To Run Benchmark, At Least One Enrollee Must Be Seeded To Read");
+        }
+
+        URI baseUri = URI.create(target.endsWith("/") ? target : target + "/");
+        ManagedChannel channel = ManagedChannelBuilder.forTarget(grpcTarget).usePlaintext().build();
+
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+            EnrollmentGrpc.EnrollmentBlockingStub stub = EnrollmentGrpc.newBlockingStub(channel);
+
+            WeightedChoice<Integer> familySizes = new WeightedChoice<>(LoadTestOptions.parseWeights("0:35,1:20,2:20,3:15,4:7,8:3"), Integer::valueOf);
+            EnrolleeGenerator generator = new EnrolleeGenerator(familySizes, System.currentTimeMillis() * 1000L);
+            FamilyRegistry registry = new FamilyRegistry();
+            Operation.Context context = new Operation.Context(baseUri, generator, registry);
+            Random random = new Random(randomSeed);
+
+            System.out.println("Seeding " + seedEnrollees + " Enrollees Into " + baseUri);
+            for (int i = 0; i < seedEnrollees; i++) {
+                Operation.PlannedRequest planned = Operation.add.plan(context, random);
+                send(client, planned.request);
+                planned.onSuccess.run();
+            }
+
+            //listing runs before adding, so both protocols list the same number of Enrollees
+            Map<String, Call[]> workloads = new LinkedHashMap<>();
+            workloads.put("get-by-id", new Call[]{
+                    r -> send(client, context.request("/enrollees/" + registry.pick(r).enrolleeId).GET().build()),
+                    r -> stub.getEnrollee(EnrolleeId.newBuilder().setId(registry.pick(r).enrolleeId).build())});
+            workloads.put("lookup-" + batchSize, new Call[]{
+                    r -> send(client, context.json("/enrollees/lookup", "POST", Collections.singletonMap("ids", pickIds(registry, r, batchSize)))),
+                    r -> stub.getEnrollees(EnrolleeIds.newBuilder().addAllIds(pickIds(registry, r, batchSize)).build())});
+            workloads.put("list-all", new Call[]{
+                    r -> send(client, context.request("/enrollees").GET().build()),
+                    r -> drain(stub.listEnrollees(ListEnrolleesRequest.getDefaultInstance()))});
+            workloads.put("add", new Call[]{
+                    r -> send(client, context.json("/enrollees", "POST", generator.enrollee(r))),
+                    r -> stub.addEnrollee(toMessage(generator.enrollee(r)))});
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("target", target);
+            summary.put("grpcTarget", grpcTarget);
+            summary.put("seedEnrollees", seedEnrollees);
+            summary.put("concurrency", concurrency);
+            summary.put("durationSeconds", durationSeconds);
+
+            System.out.printf("%-12s %-6s %12s %10s %10s %10s%n", "workload", "api", "calls/s", "p50 us", "p99 us", "errors");
+
+            for (Map.Entry<String, Call[]> workload : workloads.entrySet()) {
+
+                Map<String, Object> rest = run(workload.getValue()[0], concurrency, warmupSeconds, durationSeconds, randomSeed);
+                print(workload.getKey(), "rest", rest);
+                Map<String, Object> grpc = run(workload.getValue()[1], concurrency, warmupSeconds, durationSeconds, randomSeed);
+                print(workload.getKey(), "grpc", grpc);
+
+                Map<String, Object> results = new LinkedHashMap<>();
+                results.put("rest", rest);
+                results.put("grpc", grpc);
+                results.put("grpcThroughputSpeedUp", (double) grpc.get("throughputPerSecond") / (double) rest.get("throughputPerSecond"));
+                summary.put(workload.getKey(), results);
+            }
+
+            summary.put("finishedAt", Instant.now().toString());
+
+            Files.createDirectories(resultsDirectory);
+            Path report = resultsDirectory.resolve("grpc-" + System.currentTimeMillis() + ".json");
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), summary);
+            System.out.println("Results Written To " + report.toAbsolutePath());
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Runs a workload from closed-loop clients, each making its next call as soon as its last one answers, and
+     * measures the calls made after the warm-up
+     *
+     * @param call the call to make
+     * @param concurrency the number of clients
+     * @param warmupSeconds how long to call before measuring
+     * @param durationSeconds how long to measure for
+     * @param randomSeed the seed of the clients' sources of randomness
+     * @return the throughput, latencies and errors of the measured calls
+     */
+    private static Map<String, Object> run(Call call, int concurrency, int warmupSeconds, int durationSeconds, long randomSeed) throws Exception {
+
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<Long>> clients = new ArrayList<>();
+        List<Histogram> histograms = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < concurrency; i++) {
+
+                Histogram histogram = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+                Random random = new Random(randomSeed + i);
+                histograms.add(histogram);
+
+                clients.add(executor.submit(() -> {
+
+                    long errors = 0;
+                    long now = System.nanoTime();
+
+                    while (now < measureUntil) {
+
+                        long start = now;
+                        boolean failed = false;
+                        try {
+                            call.run(random);
+                        } catch (Exception e) {
+                            failed = true;
+                        }
+                        now = System.nanoTime();
+
+                        if (start >= measureFrom && now <= measureUntil) {
+                            if (failed) {
+                                errors++;
+                            } else {
+                                histogram.recordValue(Math.min(now - start, HIGHEST_TRACKABLE_NANOS));
+                            }
+                        }
+                    }
+                    return errors;
+                }));
+            }
+
+            long errors = 0;
+            for (Future<Long> client : clients) {
+                errors += client.get();
+            }
+
+            Histogram latencies = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+            for (Histogram histogram : histograms) {
+                latencies.add(histogram);
+            }
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", latencies.getTotalCount());
+            stats.put("errors", errors);
+            stats.put("throughputPerSecond", (double) latencies.getTotalCount() / durationSeconds);
+            stats.put("p50Micros", micros(latencies, 50));
+            stats.put("p99Micros", micros(latencies, 99));
+            stats.put("p999Micros", micros(latencies, 99.9));
+            return stats;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void print(String workload, String api, Map<String, Object> stats) {
+        System.out.printf("%-12s %-6s %12.1f %10d %10d %10d%n", workload, api, stats.get("throughputPerSecond"),
+                stats.get("p50Micros"), stats.get("p99Micros"), stats.get("errors"));
+    }
+
+    private static List<String> pickIds(FamilyRegistry registry, Random random, int batchSize) {
+
+        List<String> ids = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ids.add(registry.pick(random).enrolleeId);
+        }
+        return ids;
+    }
+
+    private static void drain(Iterator<EnrolleesPage> pages) {
+        while (pages.hasNext()) {
+            pages.next();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EnrolleeMessage toMessage(Map<String, Object> enrollee) {
+
+        EnrolleeMessage.Builder message = EnrolleeMessage.newBuilder()
+                .setId((String) enrollee.get("id"))
+                .setName((String) enrollee.get("name"))
+                .setActivationStatus((Boolean) enrollee.get("activationStatus"))
+                .setDateOfBirth((String) enrollee.get("dateOfBirth"))
+                .setPhoneNumber((String) enrollee.getOrDefault("phoneNumber", ""));
+
+        for (Map<String, Object> dependent : (List<Map<String, Object>>) enrollee.get("dependents")) {
+            message.addDependents(DependentMessage.newBuilder()
+                    .setId((String) dependent.get("id"))
+                    .setName((String) dependent.get("name"))
+                    .setDateOfBirth((String) dependent.get("dateOfBirth")));
+        }
+
+        return message.build();
+    }
+
+    private static void send(HttpClient client, HttpRequest request) throws Exception {
+
+        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status >= 400) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " Responded With " + status);
+        }
+    }
+
+    private static long micros(Histogram histogram, double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(percentile));
+    }
+
+}
@@ -0,0 +1,217 @@
+package enrollment.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a weighted mix of operations against the target, either as a closed model with a fixed number of users
+ * each waiting for its previous response, or as an open model with a fixed arrival rate. In the open model latency
+ * is measured from when each request was scheduled to start, so a stalled target is not hidden by the driver
+ * falling behind.
+ * @author Michael Kulaga
+ */
+class LoadDriver {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(2);
+
+    private final LoadTestOptions options;
+    private final HttpClient client;
+    private final Operation.Context context;
+    private final WeightedChoice<Operation> mix;
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    private long measureStartNanos;
+
+    /**
+     * Constructor for LoadDriver
+     *
+     * @param options the options for the run
+     * @param client the HttpClient to send requests with
+     * @param context the shared state of the run
+     * @param mix the weighted mix of operations
+     */
+    LoadDriver(LoadTestOptions options, HttpClient client, Operation.Context context, WeightedChoice<Operation> mix) {
+
+        this.options = options;
+        this.client = client;
+        this.context = context;
+        this.mix = mix;
+
+        for (Operation operation : Operation.values()) {
+            this.recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+            this.errors.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * Inserts the starting population of Enrollees
+     *
+     * @param count the number of Enrollees to insert
+     * @param random the source of randomness
+     */
+    void seed(int count, Random random) throws IOException, InterruptedException {
+
+        for (int i = 0; i < count; i++) {
+
+            Operation.PlannedRequest planned = Operation.add.plan(this.context, random);
+            HttpResponse<Void> response = this.client.send(planned.request, HttpResponse.BodyHandlers.discarding());
+
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException("Unable To Seed Enrollee, Target Responded With " + response.statusCode());
+            }
+
+            planned.onSuccess.run();
+        }
+    }
+
+    /**
+     * Runs the warm-up and then the measured part of the run
+     *
+     * @return the results of the measured part
+     */
+    LoadResults run() throws InterruptedException {
+
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(this.options.warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(this.options.durationSeconds);
+
+        this.measureStartNanos = measureStart;
+
+        if ("open".equals(this.options.model)) {
+            this.runOpen(start, end);
+        } else {
+            this.runClosed(end);
+        }
+
+        long measuredNanos = end - measureStart;
+
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errorCounts = new EnumMap<>(Operation.class);
+
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, this.recorders.get(operation).getIntervalHistogram());
+            errorCounts.put(operation, this.errors.get(operation).sum());
+        }
+
+        return new LoadResults(this.options, histograms, errorCounts, measuredNanos);
+    }
+
+    /**
+     * Helper method for the closed model, where each user sends its next request once the previous one completes
+     */
+    private void runClosed(long end) throws InterruptedException {
+
+        List<Thread> users = new ArrayList<>();
+
+        for (int i = 0; i < this.options.concurrency; i++) {
+
+            Thread user = new Thread(() -> {
+
+                Random random = ThreadLocalRandom.current();
+
+                while (System.nanoTime() < end) {
+
+                    Operation.PlannedRequest planned = this.mix.next(random).plan(this.context, random);
+                    long requestStart = System.nanoTime();
+                    boolean success;
+
+                    try {
+                        HttpResponse<Void> response = this.client.send(planned.request, HttpResponse.BodyHandlers.discarding());
+                        success = response.statusCode() < 400;
+                    } catch (IOException e) {
+                        success = false;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    this.complete(planned, requestStart, success);
+                }
+            }, "loadtest-user-" + i);
+
+            users.add(user);
+            user.start();
+        }
+
+        for (Thread user : users) {
+            user.join();
+        }
+    }
+
+    /**
+     * Helper method for the open model, where requests start on a fixed schedule regardless of outstanding responses
+     */
+    private void runOpen(long start, long end) throws InterruptedException {
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, this.options.rate);
+        AtomicLong outstanding = new AtomicLong();
+        Random random = new Random(this.options.randomSeed);
+
+        for (long i = 0; ; i++) {
+
+            long scheduledStart = start + i * intervalNanos;
+            if (scheduledStart >= end) {
+                break;
+            }
+
+            long wait = scheduledStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation.PlannedRequest planned = this.mix.next(random).plan(this.context, random);
+            outstanding.incrementAndGet();
+
+            CompletableFuture<HttpResponse<Void>> response = this.client.sendAsync(planned.request, HttpResponse.BodyHandlers.discarding());
+            response.whenComplete((result, failure) -> {
+                this.complete(planned, scheduledStart, failure == null && result.statusCode() < 400);
+                outstanding.decrementAndGet();
+            });
+        }
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Helper method to record a completed request, if it started once the warm-up was over
+     */
+    private void complete(Operation.PlannedRequest planned, long requestStart, boolean success) {
+
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - requestStart);
+
+        if (success && planned.onSuccess != null) {
+            planned.onSuccess.run();
+        }
+
+        if (requestStart < this.measureStartNanos) {
+            return;
+        }
+
+        if (success) {
+            this.recorders.get(planned.operation).recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+        } else {
+            this.errors.get(planned.operation).increment();
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package enrollment.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of the measured part of a run, with throughput and latency percentiles for every operation
+ * @author Michael Kulaga
+ */
+class LoadResults {
+
+    private static final DateTimeFormatter RUN_ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    private static final String HISTORY_HEADER = "runId,target,model,concurrency,rate,operation,count,errors,throughput,p50Ms,p99Ms,p999Ms,maxMs";
+
+    private final LoadTestOptions options;
+    private final Map<Operation, Histogram> histograms;
+    private final Map<Operation, Long> errors;
+    private final long measuredNanos;
+    private final Instant finishedAt = Instant.now();
+
+    LoadResults(LoadTestOptions options, Map<Operation, Histogram> histograms, Map<Operation, Long> errors, long measuredNanos) {
+        this.options = options;
+        this.histograms = histograms;
+        this.errors = errors;
+        this.measuredNanos = measuredNanos;
+    }
+
+    /**
+     * Writes the results as a JSON summary, one HdrHistogram percentile distribution per operation, and a row per
+     * operation appended to history.csv so that runs can be compared over time
+     *
+     * @param directory the directory to write the results to
+     * @return the path of the JSON summary
+     */
+    Path write(Path directory) throws IOException {
+
+        Files.createDirectories(directory);
+        String runId = RUN_ID_FORMAT.format(this.finishedAt) + "-" + this.options.model;
+
+        Path summary = directory.resolve(runId + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(summary.toFile(), this.summary(runId));
+
+        for (Map.Entry<Operation, Histogram> entry : this.histograms.entrySet()) {
+            if (entry.getValue().getTotalCount() > 0) {
+                try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(runId + "-" + entry.getKey() + ".hgrm")), false, "UTF-8")) {
+                    entry.getValue().outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+
+        Path history = directory.resolve("history.csv");
+        boolean newHistory = !Files.exists(history);
+
+        try (Writer out = Files.newBufferedWriter(history, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+
+            if (newHistory) {
+                out.write(HISTORY_HEADER + "\n");
+            }
+
+            for (Operation operation : this.histograms.keySet()) {
+                Map<String, Object> stats = this.stats(this.histograms.get(operation), this.errors.get(operation));
+                out.write(String.join(",", runId, this.options.target, this.options.model,
+                        String.valueOf(this.options.concurrency), String.valueOf(this.options.rate), operation.name(),
+                        String.valueOf(stats.get("count")), String.valueOf(stats.get("errors")),
+                        String.valueOf(stats.get("throughput")), String.valueOf(stats.get("p50Ms")),
+                        String.valueOf(stats.get("p99Ms")), String.valueOf(stats.get("p999Ms")),
+                        String.valueOf(stats.get("maxMs"))) + "\n");
+            }
+        }
+
+        return summary;
+    }
+
+    /**
+     * Prints a short human-readable table of the results
+     *
+     * @param out the stream to print to
+     */
+    void print(PrintStream out) {
+
+        out.printf("%-16s %10s %8s %10s %10s %10s %10s%n", "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms");
+
+        Histogram total = this.total();
+        for (Map.Entry<Operation, Histogram> entry : this.histograms.entrySet()) {
+            this.printRow(out, entry.getKey().name(), entry.getValue(), this.errors.get(entry.getKey()));
+        }
+        this.printRow(out, "total", total, this.errors.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * Helper method to build the JSON summary
+     */
+    private Map<String, Object> summary(String runId) {
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("runId", runId);
+        summary.put("finishedAt", this.finishedAt.toString());
+        summary.put("target", this.options.target);
+        summary.put("model", this.options.model);
+        summary.put("concurrency", this.options.concurrency);
+        summary.put("rate", this.options.rate);
+        summary.put("warmupSeconds", this.options.warmupSeconds);
+        summary.put("durationSeconds", this.options.durationSeconds);
+        summary.put("mix", this.options.mix);
+        summary.put("familySizes", this.options.familySizes);
+        summary.put("total", this.stats(this.total(), this.errors.values().stream().mapToLong(Long::longValue).sum()));
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (Map.Entry<Operation, Histogram> entry : this.histograms.entrySet()) {
+            operations.put(entry.getKey().name(), this.stats(entry.getValue(), this.errors.get(entry.getKey())));
+        }
+        summary.put("operations", operations);
+
+        return summary;
+    }
+
+    /**
+     * Helper method to compute the throughput and latency percentiles of a histogram recorded in microseconds
+     */
+    private Map<String, Object> stats(Histogram histogram, long errorCount) {
+
+        double seconds = this.measuredNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", histogram.getTotalCount());
+        stats.put("errors", errorCount);
+        stats.put("throughput", round(histogram.getTotalCount() / seconds));
+        stats.put("meanMs", round(histogram.getMean() / 1000.0));
+        stats.put("p50Ms", round(histogram.getValueAtPercentile(50.0) / 1000.0));
+        stats.put("p99Ms", round(histogram.getValueAtPercentile(99.0) / 1000.0));
+        stats.put("p999Ms", round(histogram.getValueAtPercentile(99.9) / 1000.0));
+        stats.put("maxMs", round(histogram.getMaxValue() / 1000.0));
+
+        return stats;
+    }
+
+    private void printRow(PrintStream out, String name, Histogram histogram, long errorCount) {
+
+        Map<String, Object> stats = this.stats(histogram, errorCount);
+        out.printf("%-16s %10d %8d %10s %10s %10s %10s%n", name, histogram.getTotalCount(), errorCount,
+                stats.get("throughput"), stats.get("p50Ms"), stats.get("p99Ms"), stats.get("p999Ms"));
+    }
+
+    private Histogram total() {
+
+        Histogram total = new Histogram(3);
+        for (Histogram histogram : this.histograms.values()) {
+            total.add(histogram);
+        }
+        return total;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+}
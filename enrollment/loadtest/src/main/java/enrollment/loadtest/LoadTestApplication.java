@@ -0,0 +1,68 @@
+package enrollment.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Load Test Application, run with gradlew :loadtest:run --args='--target=http://localhost:8080 --model=closed'
+ * @author Michael Kulaga
+ */
+public class LoadTestApplication {
+
+    public static void main(String[] args) throws Exception {
+
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        StubEnrollmentServer stub = null;
+        URI baseUri;
+
+        if ("stub".equals(options.target)) {
+            stub = new StubEnrollmentServer(Math.max(4, Runtime.getRuntime().availableProcessors()));
+            baseUri = stub.baseUri();
+        } else {
+            baseUri = URI.create(options.target.endsWith("/") ? options.target : options.target + "/");
+        }
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(Math.max(options.concurrency, 4));
+
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(clientExecutor)
+                    .build();
+
+            WeightedChoice<Integer> familySizes = new WeightedChoice<>(LoadTestOptions.parseWeights(options.familySizes), Integer::valueOf);
+            WeightedChoice<Operation> mix = new WeightedChoice<>(LoadTestOptions.parseWeights(options.mix), Operation::valueOf);
+
+            // Ids are derived from the start time so that repeated runs against the same database do not collide
+            EnrolleeGenerator generator = new EnrolleeGenerator(familySizes, System.currentTimeMillis() * 1000L);
+            Operation.Context context = new Operation.Context(baseUri, generator, new FamilyRegistry());
+            context.lookupBatchSize = options.lookupBatchSize;
+            LoadDriver driver = new LoadDriver(options, client, context, mix);
+
+            System.out.println("Seeding " + options.seedEnrollees + " Enrollees Into " + baseUri);
+            driver.seed(options.seedEnrollees, new Random(options.randomSeed));
+
+            System.out.println("Running " + options.model + " Model For " + options.warmupSeconds + "s Warm-Up And "
+                    + options.durationSeconds + "s Measured");
+            LoadResults results = driver.run();
+
+            results.print(System.out);
+            Path summary = results.write(Paths.get(options.resultsDirectory));
+            System.out.println("Results Written To " + summary.toAbsolutePath());
+        } finally {
+            clientExecutor.shutdownNow();
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+}
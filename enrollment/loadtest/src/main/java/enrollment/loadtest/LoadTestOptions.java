@@ -0,0 +1,117 @@
+package enrollment.loadtest;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Options for a load test run, parsed from --name=value command line arguments
+ * @author Michael Kulaga
+ */
+class LoadTestOptions {
+
+    /** Base URL of the Enrollment Application, or "stub" to run against an in-process stub */
+    String target = "stub";
+
+    /** "closed" for a fixed number of concurrent users, "open" for a fixed arrival rate */
+    String model = "closed";
+
+    /** Concurrent users for the closed model, worker threads for the open model */
+    int concurrency = 16;
+
+    /** Requests per second for the open model */
+    int rate = 500;
+
+    int warmupSeconds = 10;
+    int durationSeconds = 60;
+
+    /** Enrollees inserted before the run starts */
+    int seedEnrollees = 1000;
+
+    /** Weighted family sizes, as size:weight pairs */
+    String familySizes = "0:35,1:20,2:20,3:15,4:7,8:3";
+
+    /** Weighted endpoint mix, as operation:weight pairs */
+    String mix = "getAll:1,getById:60,add:8,modify:8,delete:3,addDependent:10,modifyDependent:7,deleteDependent:3";
+
+    /** Enrollees asked for by each lookup operation, which is not part of the default mix */
+    int lookupBatchSize = 50;
+
+    long randomSeed = 42;
+
+    /** Directory the machine-readable results are written to */
+    String resultsDirectory = "build/loadtest-results";
+
+    /**
+     * Parses the command line arguments
+     *
+     * @param args the --name=value arguments
+     * @return the parsed options
+     */
+    static LoadTestOptions parse(String[] args) {
+
+        Map<String, String> values = parseArguments(args);
+
+        LoadTestOptions options = new LoadTestOptions();
+        options.target = values.getOrDefault("target", options.target);
+        options.model = values.getOrDefault("model", options.model);
+        options.concurrency = Integer.parseInt(values.getOrDefault("concurrency", String.valueOf(options.concurrency)));
+        options.rate = Integer.parseInt(values.getOrDefault("rate", String.valueOf(options.rate)));
+        options.warmupSeconds = Integer.parseInt(values.getOrDefault("warmup", String.valueOf(options.warmupSeconds)));
+        options.durationSeconds = Integer.parseInt(values.getOrDefault("duration", String.valueOf(options.durationSeconds)));
+        options.seedEnrollees = Integer.parseInt(values.getOrDefault("seed-enrollees", String.valueOf(options.seedEnrollees)));
+        options.familySizes = values.getOrDefault("family-sizes", options.familySizes);
+        options.mix = values.getOrDefault("mix", options.mix);
+        options.lookupBatchSize = Integer.parseInt(values.getOrDefault("lookup-batch-size", String.valueOf(options.lookupBatchSize)));
+        options.randomSeed = Long.parseLong(values.getOrDefault("random-seed", String.valueOf(options.randomSeed)));
+        options.resultsDirectory = values.getOrDefault("results", options.resultsDirectory);
+
+        if (!"closed".equals(options.model) && !"open".equals(options.model)) {
+            throw new IllegalArgumentException("Model Must Be Either closed Or open: " + options.model);
+        }
+
+        return options;
+    }
+
+    /**
+     * Helper method to parse --name=value arguments
+     *
+     * @param args the command line arguments
+     * @return the values by name
+     */
+    static Map<String, String> parseArguments(String[] args) {
+
+        Map<String, String> values = new HashMap<>();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Arguments Must Be In The Form --name=value: " + arg);
+            }
+            values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        return values;
+    }
+
+    /**
+     * Helper method to parse name:weight pairs
+     *
+     * @param pairs the comma separated name:weight pairs
+     * @return the weights by name, in the order given
+     */
+    static Map<String, Integer> parseWeights(String pairs) {
+
+        Map<String, Integer> weights = new LinkedHashMap<>();
+
+        for (String pair : pairs.split(",")) {
+            String[] parts = pair.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Weights Must Be In The Form name:weight: " + pair);
+            }
+            weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+
+        return weights;
+    }
+
+}
@@ -0,0 +1,153 @@
+package enrollment.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup Benchmark, run with gradlew :loadtest:lookupBenchmark --args='--target=http://localhost:8080'. Seeds
+ * Enrollees, then for each batch size compares the latency of one POST /enrollees/lookup against the same Enrollees
+ * retrieved by sequential GET /enrollees/{enrolleeId} calls
+ * @author Michael Kulaga
+ */
+public class LookupBenchmark {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> values = LoadTestOptions.parseArguments(args);
+
+        String target = values.getOrDefault("target", "stub");
+        int seedEnrollees = Integer.parseInt(values.getOrDefault("seed-enrollees", "2000"));
+        int iterations = Integer.parseInt(values.getOrDefault("iterations", "200"));
+        int warmupIterations = Integer.parseInt(values.getOrDefault("warmup-iterations", "50"));
+        long randomSeed = Long.parseLong(values.getOrDefault("random-seed", "42"));
+        Path resultsDirectory = Paths.get(values.getOrDefault("results", "build/loadtest-results"));
+        List<Integer> batchSizes = new ArrayList<>();
+        for (String batchSize : values.getOrDefault("batch-sizes", "1,10,50,100,500").split(",")) {
+            batchSizes.add(Integer.parseInt(batchSize.trim()));
+        }
+
+        StubEnrollmentServer stub = null;
+        URI baseUri;
+
+        if ("stub".equals(target)) {
+            stub = new StubEnrollmentServer(4);
+            baseUri = stub.baseUri();
+        } else {
+            baseUri = URI.create(target.endsWith("/") ? target : target + "/");
+        }
+
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+
+            WeightedChoice<Integer> familySizes = new WeightedChoice<>(LoadTestOptions.parseWeights("0:35,1:20,2:20,3:15,4:7,8:3"), Integer::valueOf);
+            EnrolleeGenerator generator = new EnrolleeGenerator(familySizes, System.currentTimeMillis() * 1000L);
+            FamilyRegistry registry = new FamilyRegistry();
+            Operation.Context context = new Operation.Context(baseUri, generator, registry);
+            Random random = new Random(randomSeed);
+
+            System.out.println("Seeding " + seedEnrollees + " Enrollees Into " + baseUri);
+            for (int i = 0; i < seedEnrollees; i++) {
+                Operation.PlannedRequest planned = Operation.add.plan(context, random);
+                send(client, planned.request);
+                planned.onSuccess.run();
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("target", target);
+            summary.put("seedEnrollees", seedEnrollees);
+            summary.put("iterations", iterations);
+
+            System.out.printf("%-8s %14s %14s %14s %14s %10s%n", "batch", "lookup p50 us", "lookup p99 us", "single p50 us", "single p99 us", "speed-up");
+
+            for (int batchSize : batchSizes) {
+
+                Histogram lookup = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+                Histogram singles = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+
+                for (int iteration = 0; iteration < warmupIterations + iterations; iteration++) {
+
+                    List<String> ids = new ArrayList<>(batchSize);
+                    for (int i = 0; i < batchSize; i++) {
+                        ids.add(registry.pick(random).enrolleeId);
+                    }
+
+                    boolean measured = iteration >= warmupIterations;
+
+                    long start = System.nanoTime();
+                    send(client, context.json("/enrollees/lookup", "POST", Collections.singletonMap("ids", ids)));
+                    if (measured) {
+                        lookup.recordValue(System.nanoTime() - start);
+                    }
+
+                    start = System.nanoTime();
+                    for (String id : ids) {
+                        send(client, context.request("/enrollees/" + id).GET().build());
+                    }
+                    if (measured) {
+                        singles.recordValue(System.nanoTime() - start);
+                    }
+                }
+
+                double speedUp = (double) singles.getValueAtPercentile(50) / lookup.getValueAtPercentile(50);
+
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("lookupP50Micros", micros(lookup, 50));
+                stats.put("lookupP99Micros", micros(lookup, 99));
+                stats.put("singleCallsP50Micros", micros(singles, 50));
+                stats.put("singleCallsP99Micros", micros(singles, 99));
+                stats.put("medianSpeedUp", speedUp);
+                summary.put("batch-" + batchSize, stats);
+
+                System.out.printf("%-8d %14d %14d %14d %14d %9.1fx%n", batchSize, micros(lookup, 50), micros(lookup, 99),
+                        micros(singles, 50), micros(singles, 99), speedUp);
+            }
+
+            summary.put("finishedAt", Instant.now().toString());
+
+            Files.createDirectories(resultsDirectory);
+            Path report = resultsDirectory.resolve("lookup-" + System.currentTimeMillis() + ".json");
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), summary);
+            System.out.println("Results Written To " + report.toAbsolutePath());
+        } finally {
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+    private static void send(HttpClient client, HttpRequest request) throws Exception {
+
+        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status >= 400) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " Responded With " + status);
+        }
+    }
+
+    private static long micros(Histogram histogram, double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(percentile));
+    }
+
+}
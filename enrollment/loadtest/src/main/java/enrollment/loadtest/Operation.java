@@ -0,0 +1,205 @@
+package enrollment.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The EnrollmentController endpoints the load driver can call
+ * @author Michael Kulaga
+ */
+enum Operation {
+
+    getAll {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+            return new PlannedRequest(this, context.request("/enrollees").GET().build(), null);
+        }
+    },
+
+    getById {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+
+            FamilyRegistry.Family family = context.registry.pick(random);
+            if (family == null) {
+                return add.plan(context, random);
+            }
+
+            return new PlannedRequest(this, context.request("/enrollees/" + family.enrolleeId).GET().build(), null);
+        }
+    },
+
+    lookup {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+
+            List<String> ids = new ArrayList<>(context.lookupBatchSize);
+            for (int i = 0; i < context.lookupBatchSize; i++) {
+                FamilyRegistry.Family family = context.registry.pick(random);
+                if (family == null) {
+                    return add.plan(context, random);
+                }
+                ids.add(family.enrolleeId);
+            }
+
+            return new PlannedRequest(this, context.json("/enrollees/lookup", "POST", Collections.singletonMap("ids", ids)), null);
+        }
+    },
+
+    add {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+
+            Map<String, Object> enrollee = context.generator.enrollee(random);
+
+            return new PlannedRequest(this, context.json("/enrollees", "POST", enrollee),
+                    () -> context.registry.register(enrollee));
+        }
+    },
+
+    modify {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+
+            FamilyRegistry.Family family = context.registry.pick(random);
+            if (family == null) {
+                return add.plan(context, random);
+            }
+
+            return new PlannedRequest(this, context.json("/enrollees/" + family.enrolleeId, "PATCH",
+                    context.generator.modifiedEnrollee(family.enrolleeId, random)), null);
+        }
+    },
+
+    delete {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+
+            FamilyRegistry.Family family = context.registry.remove(random);
+            if (family == null) {
+                return add.plan(context, random);
+            }
+
+            return new PlannedRequest(this, context.request("/enrollees/" + family.enrolleeId).DELETE().build(), null);
+        }
+    },
+
+    addDependent {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+
+            FamilyRegistry.Family family = context.registry.pick(random);
+            if (family == null) {
+                return add.plan(context, random);
+            }
+
+            String dependentId = family.newDependentId();
+
+            return new PlannedRequest(this, context.json("/enrollees/" + family.enrolleeId + "/dependents", "POST",
+                    context.generator.dependent(dependentId, null, random)), () -> family.addDependent(dependentId));
+        }
+    },
+
+    modifyDependent {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+
+            FamilyRegistry.Family family = context.registry.pick(random);
+            String dependentId = family != null ? family.pickDependent(random, false) : null;
+            if (dependentId == null) {
+                return addDependent.plan(context, random);
+            }
+
+            return new PlannedRequest(this, context.json("/enrollees/" + family.enrolleeId + "/dependents/" + dependentId, "PATCH",
+                    context.generator.dependent(dependentId, null, random)), null);
+        }
+    },
+
+    deleteDependent {
+        @Override
+        PlannedRequest plan(Context context, Random random) {
+
+            FamilyRegistry.Family family = context.registry.pick(random);
+            String dependentId = family != null ? family.pickDependent(random, true) : null;
+            if (dependentId == null) {
+                return addDependent.plan(context, random);
+            }
+
+            return new PlannedRequest(this,
+                    context.request("/enrollees/" + family.enrolleeId + "/dependents/" + dependentId).DELETE().build(), null);
+        }
+    };
+
+    /**
+     * Plans a request for this operation, falling back to another operation when there is nothing to operate on
+     *
+     * @param context the shared state of the run
+     * @param random the source of randomness
+     * @return the planned request
+     */
+    abstract PlannedRequest plan(Context context, Random random);
+
+    /**
+     * A request ready to send, with the bookkeeping to do when it succeeds
+     */
+    static class PlannedRequest {
+
+        final Operation operation;
+        final HttpRequest request;
+        final Runnable onSuccess;
+
+        PlannedRequest(Operation operation, HttpRequest request, Runnable onSuccess) {
+            this.operation = operation;
+            this.request = request;
+            this.onSuccess = onSuccess;
+        }
+    }
+
+    /**
+     * The state shared by every request of a run
+     */
+    static class Context {
+
+        private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+        final URI baseUri;
+        final EnrolleeGenerator generator;
+        final FamilyRegistry registry;
+        final ObjectMapper mapper = new ObjectMapper();
+
+        /** Enrollees asked for by each lookup */
+        int lookupBatchSize = 50;
+
+        Context(URI baseUri, EnrolleeGenerator generator, FamilyRegistry registry) {
+            this.baseUri = baseUri;
+            this.generator = generator;
+            this.registry = registry;
+        }
+
+        HttpRequest.Builder request(String path) {
+            return HttpRequest.newBuilder(this.baseUri.resolve(path)).timeout(REQUEST_TIMEOUT);
+        }
+
+        HttpRequest json(String path, String method, Object body) {
+
+            try {
+                return this.request(path)
+                        .header("Content-Type", "application/json")
+                        .method(method, HttpRequest.BodyPublishers.ofByteArray(this.mapper.writeValueAsBytes(body)))
+                        .build();
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package enrollment.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Startup Benchmark, run with gradlew :loadtest:startupBenchmark. Starts the Enrollment Application repeatedly in
+ * the default mode, the fast-startup mode, and the fast-startup mode with the class-data sharing archive, and
+ * reports how long each took to become ready and to serve its first request
+ * @author Michael Kulaga
+ */
+public class StartupBenchmark {
+
+    private static final Pattern READY = Pattern.compile("Application Ready In (\\d+) ms");
+    private static final Pattern FIRST_REQUEST = Pattern.compile("First Request Served In (\\d+) ms");
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(120);
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> options = LoadTestOptions.parseArguments(args);
+
+        String classpath = require(options, "app-classpath");
+        String archive = require(options, "cds-archive");
+        String profiles = options.getOrDefault("profiles", "memory");
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        Path resultsDirectory = Paths.get(options.getOrDefault("results", "build/loadtest-results"));
+
+        String fastProfiles = profiles.isEmpty() ? "fast-startup" : profiles + ",fast-startup";
+
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        modes.put("default", Arrays.asList("--spring.profiles.active=" + profiles));
+        modes.put("fast-startup", Arrays.asList("--spring.profiles.active=" + fastProfiles));
+        modes.put("fast-startup+cds", Arrays.asList("-XX:SharedArchiveFile=" + archive, "-Xlog:cds=off",
+                "--spring.profiles.active=" + fastProfiles));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("profiles", profiles);
+        summary.put("runs", runs);
+
+        System.out.printf("%-18s %14s %14s %14s%n", "mode", "ready ms", "first req ms", "wall ms");
+
+        for (Map.Entry<String, List<String>> mode : modes.entrySet()) {
+
+            List<long[]> samples = new ArrayList<>();
+            for (int run = 0; run < runs; run++) {
+                samples.add(measure(client, classpath, mode.getValue()));
+            }
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("readyMs", median(samples, 0));
+            stats.put("firstRequestMs", median(samples, 1));
+            stats.put("wallMs", median(samples, 2));
+            stats.put("samples", samples);
+            summary.put(mode.getKey(), stats);
+
+            System.out.printf("%-18s %14d %14d %14d%n", mode.getKey(), stats.get("readyMs"), stats.get("firstRequestMs"), stats.get("wallMs"));
+        }
+
+        summary.put("finishedAt", Instant.now().toString());
+
+        Files.createDirectories(resultsDirectory);
+        Path report = resultsDirectory.resolve("startup-" + System.currentTimeMillis() + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), summary);
+        System.out.println("Results Written To " + report.toAbsolutePath());
+    }
+
+    /**
+     * Starts the application once, waits for its first successful response, and stops it again
+     *
+     * @return the JVM uptime when it was ready, the JVM uptime when it served its first request, and the wall-clock
+     * milliseconds from launching the process to receiving the first response
+     */
+    private static long[] measure(HttpClient client, String classpath, List<String> modeArguments) throws Exception {
+
+        int port = freePort();
+        Path data = Files.createTempDirectory("enrollment-startup");
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        modeArguments.stream().filter(argument -> argument.startsWith("-X")).forEach(command::add);
+        command.add("-cp");
+        command.add(classpath);
+        command.add("enrollment.EnrollmentApplication");
+        modeArguments.stream().filter(argument -> argument.startsWith("--")).forEach(command::add);
+        command.add("--server.port=" + port);
+        command.add("--enrollment.memory.directory=" + data);
+
+        List<String> output = Collections.synchronizedList(new ArrayList<>());
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/enrollees")).build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        Thread reader = new Thread(() -> {
+            try (BufferedReader lines = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                lines.lines().forEach(output::add);
+            } catch (IOException | UncheckedIOException ignored) {
+                //the process was stopped
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            long wall = -1;
+            while (wall < 0) {
+
+                if (!process.isAlive() || System.nanoTime() - start > TIMEOUT_NANOS) {
+                    throw new IllegalStateException("Application Did Not Start:\n" + String.join("\n", output));
+                }
+
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        wall = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (IOException notListening) {
+                    Thread.sleep(10);
+                }
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            long ready = -1;
+            long firstRequest = -1;
+            while ((ready < 0 || firstRequest < 0) && System.nanoTime() < deadline) {
+                ready = find(output, READY);
+                firstRequest = find(output, FIRST_REQUEST);
+                Thread.sleep(10);
+            }
+
+            return new long[] {ready, firstRequest, wall};
+        } finally {
+            process.destroy();
+            process.waitFor(30, TimeUnit.SECONDS);
+            try (Stream<Path> files = Files.walk(data)) {
+                for (Path file : files.sorted(Collections.reverseOrder()).collect(Collectors.toList())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method to find a timing reported in the application output
+     */
+    private static long find(List<String> output, Pattern pattern) {
+
+        synchronized (output) {
+            for (String line : output) {
+                Matcher matcher = pattern.matcher(line);
+                if (matcher.find()) {
+                    return Long.parseLong(matcher.group(1));
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long median(List<long[]> samples, int index) {
+
+        long[] values = samples.stream().mapToLong(sample -> sample[index]).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static int freePort() throws IOException {
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String require(Map<String, String> options, String name) {
+
+        String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing Required Argument --" + name);
+        }
+        return value;
+    }
+
+}
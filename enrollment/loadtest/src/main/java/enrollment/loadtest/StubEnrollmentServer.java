@@ -0,0 +1,237 @@
+package enrollment.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stub of the EnrollmentController endpoints backed by a map, for measuring the harness itself and for
+ * exercising a load mix without a running Enrollment Application. Errors are answered with a 500, as the
+ * Enrollment Application does.
+ * @author Michael Kulaga
+ */
+class StubEnrollmentServer implements AutoCloseable {
+
+    private static final Pattern ENROLLEE_PATH = Pattern.compile("^/enrollees/([^/]+)$");
+    private static final Pattern DEPENDENTS_PATH = Pattern.compile("^/enrollees/([^/]+)/dependents$");
+    private static final Pattern DEPENDENT_PATH = Pattern.compile("^/enrollees/([^/]+)/dependents/([^/]+)$");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ConcurrentHashMap<String, ObjectNode> enrollees = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts the stub on an ephemeral loopback port
+     *
+     * @param threads the number of threads serving requests
+     */
+    StubEnrollmentServer(int threads) throws IOException {
+
+        // without TCP_NODELAY the separately written headers and body of each response wait on delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/enrollees", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * @return the base URI the stub is listening on
+     */
+    URI baseUri() {
+        return URI.create("http://127.0.0.1:" + this.server.getAddress().getPort() + "/");
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Helper method to route a request to the matching endpoint
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Matcher matcher;
+
+        try {
+            if ("/enrollees".equals(path) && "GET".equals(method)) {
+                ArrayNode all = this.mapper.createArrayNode();
+                this.enrollees.values().forEach(all::add);
+                this.respond(exchange, 200, this.mapper.writeValueAsBytes(all));
+            } else if ("/enrollees".equals(path) && "POST".equals(method)) {
+                ObjectNode enrollee = this.readObject(exchange);
+                if (this.enrollees.putIfAbsent(enrollee.path("id").asText(), enrollee) != null) {
+                    throw new IllegalStateException("Enrollee Already Exists");
+                }
+                this.respond(exchange, 200, null);
+            } else if ("/enrollees/lookup".equals(path) && "POST".equals(method)) {
+                this.respond(exchange, 200, this.mapper.writeValueAsBytes(this.lookup(this.readObject(exchange))));
+            } else if ((matcher = ENROLLEE_PATH.matcher(path)).matches()) {
+                this.enrollee(exchange, method, matcher.group(1));
+            } else if ((matcher = DEPENDENTS_PATH.matcher(path)).matches() && "POST".equals(method)) {
+                ObjectNode dependent = this.readObject(exchange);
+                this.modify(matcher.group(1), enrollee -> {
+                    if (find(enrollee, dependent.path("id").asText()) >= 0) {
+                        throw new IllegalStateException("Dependent Already Exists");
+                    }
+                    enrollee.withArray("dependents").add(dependent);
+                });
+                this.respond(exchange, 200, null);
+            } else if ((matcher = DEPENDENT_PATH.matcher(path)).matches()) {
+                this.dependent(exchange, method, matcher.group(1), matcher.group(2));
+            } else {
+                this.respond(exchange, 404, null);
+            }
+        } catch (RuntimeException e) {
+            this.respond(exchange, 500, null);
+        }
+    }
+
+    private ObjectNode lookup(ObjectNode request) {
+
+        ObjectNode response = this.mapper.createObjectNode();
+        ArrayNode found = response.putArray("enrollees");
+        ArrayNode missing = response.putArray("missingIds");
+
+        Set<String> ids = new LinkedHashSet<>();
+        request.path("ids").forEach(id -> ids.add(id.asText()));
+
+        for (String id : ids) {
+            ObjectNode enrollee = this.enrollees.get(id);
+            if (enrollee != null) {
+                found.add(enrollee);
+            } else {
+                missing.add(id);
+            }
+        }
+        return response;
+    }
+
+    private void enrollee(HttpExchange exchange, String method, String enrolleeId) throws IOException {
+
+        switch (method) {
+            case "GET":
+                ObjectNode enrollee = this.enrollees.get(enrolleeId);
+                if (enrollee == null) {
+                    throw new IllegalStateException("Enrollee Does Not Exist");
+                }
+                this.respond(exchange, 200, this.mapper.writeValueAsBytes(enrollee));
+                break;
+            case "PATCH":
+                ObjectNode modified = this.readObject(exchange);
+                this.modify(enrolleeId, existing -> {
+                    Iterator<String> fields = modified.fieldNames();
+                    while (fields.hasNext()) {
+                        String field = fields.next();
+                        if (!"id".equals(field) && !"dependents".equals(field)) {
+                            existing.set(field, modified.get(field));
+                        }
+                    }
+                });
+                this.respond(exchange, 200, null);
+                break;
+            case "DELETE":
+                this.enrollees.remove(enrolleeId);
+                this.respond(exchange, 200, null);
+                break;
+            default:
+                this.respond(exchange, 405, null);
+        }
+    }
+
+    private void dependent(HttpExchange exchange, String method, String enrolleeId, String dependentId) throws IOException {
+
+        if (!"PATCH".equals(method) && !"DELETE".equals(method)) {
+            this.respond(exchange, 405, null);
+            return;
+        }
+
+        ObjectNode modified = "PATCH".equals(method) ? this.readObject(exchange) : null;
+
+        this.modify(enrolleeId, enrollee -> {
+            int index = find(enrollee, dependentId);
+            if (index < 0) {
+                throw new IllegalStateException("Dependent Does Not Exist");
+            }
+            if (modified != null) {
+                modified.put("id", dependentId);
+                enrollee.withArray("dependents").set(index, modified);
+            } else {
+                enrollee.withArray("dependents").remove(index);
+            }
+        });
+
+        this.respond(exchange, 200, null);
+    }
+
+    /**
+     * Helper method to change an Enrollee atomically, throwing if it does not exist
+     */
+    private void modify(String enrolleeId, Consumer<ObjectNode> change) {
+
+        if (this.enrollees.computeIfPresent(enrolleeId, (id, enrollee) -> {
+            ObjectNode copy = enrollee.deepCopy();
+            change.accept(copy);
+            return copy;
+        }) == null) {
+            throw new IllegalStateException("Enrollee Does Not Exist");
+        }
+    }
+
+    private static int find(ObjectNode enrollee, String dependentId) {
+
+        JsonNode dependents = enrollee.path("dependents");
+        for (int i = 0; i < dependents.size(); i++) {
+            if (dependentId.equals(dependents.get(i).path("id").asText())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ObjectNode readObject(HttpExchange exchange) throws IOException {
+        return (ObjectNode) this.mapper.readTree(exchange.getRequestBody());
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+
+        if (body != null) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        }
+
+        exchange.sendResponseHeaders(status, body != null ? body.length : -1);
+
+        if (body != null) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        exchange.close();
+    }
+
+}
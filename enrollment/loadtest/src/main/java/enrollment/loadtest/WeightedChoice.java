@@ -0,0 +1,65 @@
+package enrollment.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Picks values at random according to their relative weights
+ * @author Michael Kulaga
+ */
+class WeightedChoice<T> {
+
+    private final List<T> values = new ArrayList<>();
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+
+    /**
+     * Constructor for WeightedChoice
+     *
+     * @param weights the weights by name, as parsed by LoadTestOptions.parseWeights
+     * @param converter converts each name into the value it stands for
+     */
+    WeightedChoice(Map<String, Integer> weights, Function<String, T> converter) {
+
+        this.cumulativeWeights = new int[weights.size()];
+
+        int total = 0;
+        for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+            if (weight.getValue() < 0) {
+                throw new IllegalArgumentException("Weights Must Not Be Negative: " + weight.getKey());
+            }
+            total += weight.getValue();
+            this.cumulativeWeights[this.values.size()] = total;
+            this.values.add(converter.apply(weight.getKey()));
+        }
+
+        if (total == 0) {
+            throw new IllegalArgumentException("At Least One Weight Must Be Positive");
+        }
+
+        this.totalWeight = total;
+    }
+
+    /**
+     * Picks a value at random
+     *
+     * @param random the source of randomness
+     * @return the picked value
+     */
+    T next(Random random) {
+
+        int roll = random.nextInt(this.totalWeight);
+
+        for (int i = 0; i < this.cumulativeWeights.length; i++) {
+            if (roll < this.cumulativeWeights[i]) {
+                return this.values.get(i);
+            }
+        }
+
+        return this.values.get(this.values.size() - 1);
+    }
+
+}
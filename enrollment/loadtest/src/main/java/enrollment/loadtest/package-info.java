@@ -0,0 +1,5 @@
+/**
+ * Load generation and latency reporting harness for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.loadtest;
\ No newline at end of file
@@ -0,0 +1,108 @@
+package enrollment.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming Enrollee codecs with the default Jackson binding, for a GET /enrollees sized list of
+ * Enrollees, and with writing already serialized JSON. Run with gradlew jmh
+ * @author Michael Kulaga
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EnrolleeJsonBenchmark {
+
+    private static final TypeReference<List<Enrollee>> ENROLLEE_LIST = new TypeReference<List<Enrollee>>() {
+    };
+
+    @Param({"100"})
+    public int enrollees;
+
+    private ObjectMapper defaultMapper;
+    private ObjectMapper streamingMapper;
+    private List<Enrollee> list;
+    private byte[] json;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        this.defaultMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.streamingMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .registerModule(EnrollmentJsonComponent.module());
+
+        Random random = new Random(42);
+        this.list = new ArrayList<>();
+
+        for (int i = 0; i < this.enrollees; i++) {
+
+            Enrollee enrollee = new Enrollee();
+            enrollee.setId(String.valueOf(i));
+            enrollee.setName("Enrollee " + i);
+            enrollee.setActivationStatus(random.nextBoolean());
+            enrollee.setDateOfBirth("1980-10-10");
+            enrollee.setPhoneNumber(random.nextBoolean() ? "1-234-5678" : null);
+
+            for (int d = random.nextInt(5); d > 0; d--) {
+                Dependent dependent = new Dependent();
+                dependent.setId(String.valueOf(d));
+                dependent.setName("Dependent " + d);
+                dependent.setDateOfBirth("2000-01-01");
+                enrollee.getDependents().add(dependent);
+            }
+
+            this.list.add(enrollee);
+        }
+
+        this.json = this.defaultMapper.writeValueAsBytes(this.list);
+        this.out = new ByteArrayOutputStream(this.json.length * 2);
+    }
+
+    @Benchmark
+    public byte[] serializeDefault() throws IOException {
+        return this.defaultMapper.writeValueAsBytes(this.list);
+    }
+
+    @Benchmark
+    public byte[] serializeStreaming() throws IOException {
+        return this.streamingMapper.writeValueAsBytes(this.list);
+    }
+
+    @Benchmark
+    public List<Enrollee> deserializeDefault() throws IOException {
+        return this.defaultMapper.readValue(this.json, ENROLLEE_LIST);
+    }
+
+    @Benchmark
+    public List<Enrollee> deserializeStreaming() throws IOException {
+        return this.streamingMapper.readValue(this.json, ENROLLEE_LIST);
+    }
+
+    @Benchmark
+    public void writePreSerialized(Blackhole blackhole) {
+        this.out.reset();
+        this.out.write(this.json, 0, this.json.length);
+        blackhole.consume(this.out);
+    }
+
+}
@@ -2,6 +2,7 @@ package enrollment;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 /**
  * Enrollment Application
@@ -11,7 +12,13 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class EnrollmentApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(EnrollmentApplication.class, args);
+
+        ConfigurableApplicationContext context = SpringApplication.run(EnrollmentApplication.class, args);
+
+        //a class-data sharing training run only needs the classes loaded up to ready
+        if (context.getEnvironment().getProperty("enrollment.startup.exit-when-ready", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 
 }
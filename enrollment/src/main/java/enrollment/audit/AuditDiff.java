@@ -0,0 +1,101 @@
+package enrollment.audit;
+
+import enrollment.common.AuditRecord.FieldChange;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Helper methods to find the fields changed between two versions of an Enrollee or a Dependent
+ * @author Michael Kulaga
+ */
+final class AuditDiff {
+
+    private AuditDiff() {
+    }
+
+    /**
+     * @param before the Enrollee before the change, or null if it was added
+     * @param after the Enrollee after the change, or null if it was deleted
+     * @return the fields changed, with the fields of its Dependents named after the Dependent, as in "dependents.11.name"
+     */
+    static List<FieldChange> enrollee(Enrollee before, Enrollee after) {
+
+        List<FieldChange> changes = new ArrayList<>();
+
+        field(changes, "name", before != null ? before.getName() : null, after != null ? after.getName() : null);
+        field(changes, "dateOfBirth", before != null ? before.getDateOfBirth() : null, after != null ? after.getDateOfBirth() : null);
+        field(changes, "activationStatus", before != null ? String.valueOf(before.isActivationStatus()) : null,
+                after != null ? String.valueOf(after.isActivationStatus()) : null);
+        field(changes, "phoneNumber", before != null ? before.getPhoneNumber() : null, after != null ? after.getPhoneNumber() : null);
+
+        Map<String, Dependent> beforeDependents = dependents(before);
+        Map<String, Dependent> afterDependents = dependents(after);
+
+        for (Map.Entry<String, Dependent> dependent : beforeDependents.entrySet()) {
+            dependentFields(changes, "dependents." + dependent.getKey() + ".", dependent.getValue(), afterDependents.get(dependent.getKey()));
+        }
+        for (Map.Entry<String, Dependent> dependent : afterDependents.entrySet()) {
+            if (!beforeDependents.containsKey(dependent.getKey())) {
+                dependentFields(changes, "dependents." + dependent.getKey() + ".", null, dependent.getValue());
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * @param before the Dependent before the change, or null if it was added
+     * @param after the Dependent after the change, or null if it was deleted
+     * @return the fields changed
+     */
+    static List<FieldChange> dependent(Dependent before, Dependent after) {
+
+        List<FieldChange> changes = new ArrayList<>();
+        dependentFields(changes, "", before, after);
+        return changes;
+    }
+
+    /**
+     * @param enrollee an Enrollee about to be changed in place
+     * @return a copy of the Enrollee with its own list of Dependents, to compare the changed Enrollee with
+     */
+    static Enrollee copy(Enrollee enrollee) {
+
+        Enrollee copy = new Enrollee();
+        copy.setId(enrollee.getId());
+        copy.setName(enrollee.getName());
+        copy.setDateOfBirth(enrollee.getDateOfBirth());
+        copy.setActivationStatus(enrollee.isActivationStatus());
+        copy.setPhoneNumber(enrollee.getPhoneNumber());
+        copy.setDependents(new ArrayList<>(enrollee.getDependents()));
+        return copy;
+    }
+
+    private static void dependentFields(List<FieldChange> changes, String prefix, Dependent before, Dependent after) {
+        field(changes, prefix + "name", before != null ? before.getName() : null, after != null ? after.getName() : null);
+        field(changes, prefix + "dateOfBirth", before != null ? before.getDateOfBirth() : null, after != null ? after.getDateOfBirth() : null);
+    }
+
+    private static void field(List<FieldChange> changes, String field, String before, String after) {
+        if (!Objects.equals(before, after)) {
+            changes.add(new FieldChange(field, before, after));
+        }
+    }
+
+    private static Map<String, Dependent> dependents(Enrollee enrollee) {
+
+        Map<String, Dependent> dependents = new LinkedHashMap<>();
+        if (enrollee != null) {
+            for (Dependent dependent : enrollee.getDependents()) {
+                dependents.put(dependent.getId(), dependent);
+            }
+        }
+        return dependents;
+    }
+}
@@ -0,0 +1,593 @@
+package enrollment.audit;
+
+import enrollment.common.AuditRecord;
+import enrollment.common.AuditRecord.Action;
+import enrollment.common.AuditRecord.FieldChange;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.tenancy.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of every change to Enrollees and their Dependents, with the fields each change made and
+ * their values before and after. Request threads only work out what changed and hand the record to a bounded,
+ * lock-free queue; a single writer thread appends the records to memory-mapped segment files, forcing them to
+ * disk on an interval rather than for every record, and starts a new segment when one is full. A compaction
+ * thread drops records older than the retention period and merges small segments. The history of an Enrollee is
+ * read through the sparse index of each segment, so only the blocks holding its records are read. The journal is
+ * never initialized lazily, so compaction runs even on a node that has not yet served a write.
+ * @author Michael Kulaga
+ */
+@Component
+@Lazy(false)
+public class AuditJournal {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(AuditJournal.class);
+
+    //the span of a segment each index entry covers
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long RETRY_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final long syncIntervalNanos;
+    private final long fullQueueWarningNanos;
+    private final long retentionMillis;
+    private final int historyLimit;
+    private final AuditQueue queue;
+
+    //sealed segments in sequence order, then the segment being written, replaced together under the lock
+    private final List<JournalSegment> segments = new ArrayList<>();
+    private volatile JournalSegment active;
+
+    private final Thread writer;
+    private final ScheduledExecutorService compactor;
+    private volatile boolean running = true;
+    private volatile boolean writerIdle;
+
+    //only used by the writer thread
+    private long nextSequence;
+
+    private volatile long processed;
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong producerWaits = new AtomicLong();
+    private final AtomicLong recordsDropped = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private volatile String lastSync;
+
+    /**
+     * Constructor for AuditJournal, which recovers the journal left by the previous run, dropping a record torn
+     * by a crash
+     *
+     * @param enabled whether to journal changes
+     * @param directory the directory holding the segment files
+     * @param segmentSize the size of each segment file in bytes
+     * @param queueCapacity the most records waiting to be written
+     * @param syncIntervalMillis the milliseconds between forcing the segment being written to disk
+     * @param fullQueueWarningMillis the milliseconds a request thread waits for room in a full queue before warning that
+     *                               the journal is falling behind
+     * @param retentionDays the days records are kept, or 0 to keep them forever
+     * @param compactionIntervalMinutes the minutes between compactions, or 0 to never compact
+     * @param historyLimit the most records returned for an Enrollee's history
+     */
+    public AuditJournal(@Value("${enrollment.audit.enabled:true}") boolean enabled,
+                        @Value("${enrollment.audit.directory:audit}") String directory,
+                        @Value("${enrollment.audit.segment-size:16777216}") int segmentSize,
+                        @Value("${enrollment.audit.queue-capacity:65536}") int queueCapacity,
+                        @Value("${enrollment.audit.sync-interval-ms:1000}") long syncIntervalMillis,
+                        @Value("${enrollment.audit.full-queue-warning-ms:1000}") long fullQueueWarningMillis,
+                        @Value("${enrollment.audit.retention-days:0}") int retentionDays,
+                        @Value("${enrollment.audit.compaction-interval-minutes:60}") long compactionIntervalMinutes,
+                        @Value("${enrollment.audit.history-limit:1000}") int historyLimit) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = Math.max(4096, segmentSize);
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, syncIntervalMillis));
+        this.fullQueueWarningNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, fullQueueWarningMillis));
+        this.retentionMillis = TimeUnit.DAYS.toMillis(Math.max(0, retentionDays));
+        this.historyLimit = Math.max(1, historyLimit);
+        this.queue = new AuditQueue(queueCapacity);
+
+        if (!enabled) {
+            this.writer = null;
+            this.compactor = null;
+            return;
+        }
+
+        try {
+            this.recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable To Open Audit Journal In " + this.directory.toAbsolutePath(), e);
+        }
+
+        this.writer = new Thread(this::write, "enrollment-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        if (compactionIntervalMinutes > 0) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "enrollment-audit-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.compactor.scheduleWithFixedDelay(this::scheduledCompaction, compactionIntervalMinutes, compactionIntervalMinutes, TimeUnit.MINUTES);
+        } else {
+            this.compactor = null;
+        }
+    }
+
+    /**
+     * Journals a change to an Enrollee of the current tenant
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param action the kind of change
+     * @param before the Enrollee before the change, or null if it was added or not read
+     * @param after the Enrollee after the change, or null if it was deleted
+     */
+    public void enrolleeChanged(String enrolleeId, Action action, Enrollee before, Enrollee after) {
+        if (this.enabled) {
+            this.record(enrolleeId, null, action, AuditDiff.enrollee(before, after));
+        }
+    }
+
+    /**
+     * Journals a change to a Dependent of an Enrollee of the current tenant
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependentId the Id of the Dependent
+     * @param action the kind of change
+     * @param before the Dependent before the change, or null if it was added
+     * @param after the Dependent after the change, or null if it was deleted
+     */
+    public void dependentChanged(String enrolleeId, String dependentId, Action action, Dependent before, Dependent after) {
+        if (this.enabled) {
+            this.record(enrolleeId, dependentId, action, AuditDiff.dependent(before, after));
+        }
+    }
+
+    /**
+     * Journals a change to an Enrollee of the current tenant whose fields are already known. A modification that
+     * changed nothing is not journaled. While the queue is full the request thread waits for room for as long as
+     * the writer runs, so requests are slowed to the pace the journal is written at rather than losing records.
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependentId the Id of the Dependent, or null if the change is to the Enrollee
+     * @param action the kind of change
+     * @param changes the fields changed
+     */
+    public void record(String enrolleeId, String dependentId, Action action, List<FieldChange> changes) {
+
+        if (!this.enabled || (action == Action.MODIFIED && changes.isEmpty())) {
+            return;
+        }
+
+        AuditRecord record = new AuditRecord(System.currentTimeMillis(), TenantContext.current(), enrolleeId, dependentId, action, changes);
+
+        if (this.queue.offer(record)) {
+            this.wakeWriter();
+            return;
+        }
+
+        //the writer is behind: hold the request until there is room, so the change is never lost
+        this.producerWaits.incrementAndGet();
+        long warnAt = System.nanoTime() + this.fullQueueWarningNanos;
+        boolean warned = false;
+
+        do {
+            LockSupport.unpark(this.writer);
+            LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+            if (this.queue.offer(record)) {
+                this.wakeWriter();
+                return;
+            }
+            if (!warned && System.nanoTime() - warnAt >= 0) {
+                warned = true;
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Audit Journal Queue Is Full, Waiting To Journal Change To Enrollee " + enrolleeId);
+                }
+            }
+        } while (this.running);
+
+        //only once the journal is closed
+        this.recordsDropped.incrementAndGet();
+        if (LOGGER.isWarnEnabled()) {
+            LOGGER.warn("Audit Journal Is Closed, Dropped Audit Record For Enrollee " + enrolleeId);
+        }
+    }
+
+    /**
+     * @param enrollee an Enrollee about to be changed in place
+     * @return a copy of the Enrollee to journal as its state before the change
+     */
+    public Enrollee snapshot(Enrollee enrollee) {
+        return this.enabled ? AuditDiff.copy(enrollee) : enrollee;
+    }
+
+    /**
+     * Retrieves the history of an Enrollee of the current tenant, including any records still being written
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param since the earliest change to return, in milliseconds since the epoch
+     * @param limit the most records to return, at most the configured history limit
+     * @return the changes to the Enrollee and its Dependents, oldest first
+     */
+    public List<AuditRecord> history(String enrolleeId, long since, int limit) {
+
+        if (!this.enabled) {
+            return new ArrayList<>();
+        }
+
+        this.awaitWriter(this.queue.getOffered());
+
+        String tenant = TenantContext.current();
+        String key = TenantContext.scopedKey(tenant, enrolleeId);
+
+        List<JournalSegment> readable;
+        synchronized (this.segments) {
+            readable = new ArrayList<>(this.segments);
+            readable.add(this.active);
+        }
+
+        List<AuditRecord> history = new ArrayList<>();
+        for (JournalSegment segment : readable) {
+            history.addAll(segment.find(key, tenant, enrolleeId, since));
+        }
+
+        return history.stream()
+                .sorted(Comparator.comparingLong(AuditRecord::getSequence))
+                .limit(Math.max(1, Math.min(limit, this.historyLimit)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the state of the journal
+     */
+    public AuditStatus getStatus() {
+
+        int count = 0;
+        long bytes = 0;
+
+        if (this.enabled) {
+            synchronized (this.segments) {
+                count = this.segments.size() + 1;
+                bytes = this.active.getSize();
+                for (JournalSegment segment : this.segments) {
+                    bytes += segment.getSize();
+                }
+            }
+        }
+
+        return new AuditStatus(this.enabled, count, bytes, this.recordsWritten.get(), this.queue.size(), this.queue.capacity(),
+                this.producerWaits.get(), this.recordsDropped.get(), this.compactions.get(), this.lastSync);
+    }
+
+    /**
+     * Writes the records still waiting and stops the writer, leaving the segment being written to be continued
+     * by the next run
+     */
+    @PreDestroy
+    public void close() {
+
+        if (!this.enabled || !this.running) {
+            return;
+        }
+
+        if (this.compactor != null) {
+            this.compactor.shutdown();
+        }
+        this.running = false;
+        LockSupport.unpark(this.writer);
+
+        try {
+            this.writer.join(TimeUnit.SECONDS.toMillis(10));
+            if (this.compactor != null) {
+                this.compactor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drops records older than the retention period, and merges runs of sealed segments that together fit in one
+     * segment. A merged segment is written and sealed before it replaces the segments it was made from, so a
+     * crash part way leaves either the old segments or the new one.
+     *
+     * @param now the time to apply the retention period from, in milliseconds since the epoch
+     */
+    synchronized void compact(long now) throws IOException {
+
+        List<JournalSegment> sealed;
+        synchronized (this.segments) {
+            sealed = new ArrayList<>(this.segments);
+        }
+
+        long cutoff = this.retentionMillis > 0 ? now - this.retentionMillis : Long.MIN_VALUE;
+        List<JournalSegment> group = new ArrayList<>();
+        long groupSize = 0;
+
+        for (JournalSegment segment : sealed) {
+
+            long liveSize = segment.getLastTimestamp() < cutoff ? 0 : segment.getSize();
+            if (!group.isEmpty() && groupSize + liveSize > this.segmentSize) {
+                this.compact(group, cutoff);
+                group.clear();
+                groupSize = 0;
+            }
+            group.add(segment);
+            groupSize += liveSize;
+        }
+
+        this.compact(group, cutoff);
+    }
+
+    /**
+     * Helper method to replace a run of sealed segments with one holding their records newer than the cutoff
+     */
+    private void compact(List<JournalSegment> group, long cutoff) throws IOException {
+
+        if (group.isEmpty() || (group.size() == 1 && group.get(0).getFirstTimestamp() >= cutoff)) {
+            return;
+        }
+
+        //the compacted segment is named from its first record, so it never takes the name of a segment it replaces
+        long[] from = {-1};
+        long size = 0;
+        long coveredTo = -1;
+        for (JournalSegment segment : group) {
+            if (from[0] < 0 && segment.getLastTimestamp() >= cutoff) {
+                segment.forEach((record, offset) -> {
+                    if (record.getTimestamp() >= cutoff) {
+                        from[0] = record.getSequence();
+                        return false;
+                    }
+                    return true;
+                });
+            }
+            size += segment.getSize();
+            coveredTo = Math.max(coveredTo, segment.getCoveredTo());
+        }
+
+        JournalSegment compacted = null;
+
+        if (from[0] >= 0) {
+            Path file = this.directory.resolve(JournalSegment.compactedFileName(from[0], coveredTo));
+            if (Files.exists(file)) {
+                return;
+            }
+
+            compacted = JournalSegment.create(file, (int) Math.min(Integer.MAX_VALUE, size), BLOCK_SIZE);
+            for (JournalSegment segment : group) {
+                JournalSegment output = compacted;
+                segment.forEach((record, offset) -> {
+                    if (record.getTimestamp() >= cutoff) {
+                        output.append(record, TenantContext.scopedKey(record.getTenant(), record.getEnrolleeId()));
+                    }
+                    return true;
+                });
+            }
+            compacted.seal();
+        }
+
+        synchronized (this.segments) {
+            int position = this.segments.indexOf(group.get(0));
+            this.segments.removeAll(group);
+            if (compacted != null) {
+                this.segments.add(position, compacted);
+            }
+        }
+
+        for (JournalSegment segment : group) {
+            segment.delete();
+        }
+        this.compactions.incrementAndGet();
+    }
+
+    /**
+     * Helper method for the writer thread: appends records as they arrive, forcing the segment to disk on the
+     * sync interval, and once stopped writes what is left and forces the segment a last time
+     */
+    private void write() {
+
+        long lastSync = System.nanoTime();
+        boolean unsynced = false;
+        AuditRecord retry = null;
+
+        while (true) {
+
+            AuditRecord record = retry != null ? retry : this.queue.poll();
+
+            if (record == null) {
+                if (!this.running) {
+                    break;
+                }
+                this.writerIdle = true;
+                //checks again once marked idle, so a record offered meanwhile is not left waiting for the park
+                record = this.queue.poll();
+                if (record == null) {
+                    LockSupport.parkNanos(this, unsynced ? Math.min(IDLE_PARK_NANOS, this.syncIntervalNanos) : IDLE_PARK_NANOS);
+                }
+                this.writerIdle = false;
+            }
+
+            if (record != null) {
+                try {
+                    this.append(record);
+                    retry = null;
+                    unsynced = true;
+                    this.processed++;
+                } catch (IOException | RuntimeException e) {
+                    retry = this.running ? record : null;
+                    if (retry == null) {
+                        this.recordsDropped.incrementAndGet();
+                        this.processed++;
+                    }
+                    LOGGER.error("Unable To Write Audit Record, Retrying", e);
+                    LockSupport.parkNanos(this, RETRY_PARK_NANOS);
+                }
+            }
+
+            if (unsynced && System.nanoTime() - lastSync >= this.syncIntervalNanos) {
+                this.sync();
+                lastSync = System.nanoTime();
+                unsynced = false;
+            }
+        }
+
+        this.sync();
+    }
+
+    /**
+     * Helper method for the writer thread to append a record, starting a new segment when the current one is full
+     */
+    private void append(AuditRecord record) throws IOException {
+
+        String key = TenantContext.scopedKey(record.getTenant(), record.getEnrolleeId());
+        record.setSequence(this.nextSequence);
+
+        if (!this.active.append(record, key)) {
+
+            if (this.active.getRecords() > 0) {
+                this.rotate();
+            }
+
+            if (!this.active.append(record, key)) {
+                this.recordsDropped.incrementAndGet();
+                LOGGER.warn("Dropped Audit Record For Enrollee " + record.getEnrolleeId() + ", It Is Larger Than A Segment");
+                return;
+            }
+        }
+
+        this.nextSequence++;
+        this.recordsWritten.incrementAndGet();
+    }
+
+    /**
+     * Helper method for the writer thread to seal the full segment and start the next
+     */
+    private void rotate() throws IOException {
+
+        JournalSegment full = this.active;
+        JournalSegment next = JournalSegment.create(this.directory.resolve(JournalSegment.fileName(this.nextSequence)),
+                this.segmentSize, BLOCK_SIZE);
+        full.seal();
+
+        synchronized (this.segments) {
+            this.segments.add(full);
+            this.active = next;
+        }
+    }
+
+    private void sync() {
+        this.active.force();
+        this.lastSync = Instant.now().toString();
+    }
+
+    private void wakeWriter() {
+        if (this.writerIdle) {
+            LockSupport.unpark(this.writer);
+        }
+    }
+
+    /**
+     * Helper method to wait until the writer has handled the given number of records, so a query sees the changes
+     * made before it
+     */
+    private void awaitWriter(long offered) {
+
+        long deadline = System.nanoTime() + Math.max(this.fullQueueWarningNanos, this.syncIntervalNanos);
+
+        while (this.processed < offered && this.running && System.nanoTime() - deadline < 0) {
+            LockSupport.unpark(this.writer);
+            LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+        }
+    }
+
+    private void scheduledCompaction() {
+        try {
+            this.compact(System.currentTimeMillis());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable To Compact Audit Journal", e);
+        }
+    }
+
+    /**
+     * Helper method to open the segments left by the previous run. A compacted segment without its index was
+     * not finished and is deleted, as are segments whose records a compacted segment already holds. The last
+     * segment is written to again if it was not sealed.
+     */
+    private void recover() throws IOException {
+
+        Files.createDirectories(this.directory);
+
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(this.directory)) {
+            files = listed.filter(JournalSegment::isSegment).collect(Collectors.toList());
+        }
+
+        List<JournalSegment> opened = new ArrayList<>();
+        for (Path file : files) {
+            JournalSegment segment = JournalSegment.open(file, BLOCK_SIZE);
+            if (segment.isCompacted() && !segment.isSealed()) {
+                segment.delete();
+            } else {
+                opened.add(segment);
+            }
+        }
+
+        //a compacted segment sorts ahead of the segments it replaced
+        opened.sort(Comparator.comparingLong(JournalSegment::getNamedFirst)
+                .thenComparing(Comparator.comparingLong(JournalSegment::getCoveredTo).reversed())
+                .thenComparing(segment -> !segment.isCompacted()));
+
+        long coveredTo = -1;
+        for (JournalSegment segment : opened) {
+            if (segment.getNamedFirst() <= coveredTo) {
+                segment.delete();
+                continue;
+            }
+            this.segments.add(segment);
+            coveredTo = Math.max(coveredTo, segment.getCoveredTo());
+            this.nextSequence = Math.max(this.nextSequence, Math.max(segment.getNamedFirst(), segment.getCoveredTo() + 1));
+        }
+
+        JournalSegment last = this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1);
+        if (last != null && !last.isSealed() && !last.isCompacted()) {
+            this.segments.remove(last);
+            last.resume(this.segmentSize);
+            this.active = last;
+        } else {
+            this.active = JournalSegment.create(this.directory.resolve(JournalSegment.fileName(this.nextSequence)), this.segmentSize, BLOCK_SIZE);
+        }
+
+        for (JournalSegment segment : this.segments) {
+            segment.seal();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package enrollment.audit;
+
+import enrollment.common.AuditRecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free queue of AuditRecords from any number of request threads to the single journal writer.
+ * Each slot carries a sequence number telling whether it is free for the producer whose turn it is or holds a
+ * record for the consumer, so producers only contend on claiming a position and never on a lock, and a full
+ * queue is reported rather than waited on.
+ * @author Michael Kulaga
+ */
+final class AuditQueue {
+
+    private final AuditRecord[] slots;
+    private final AtomicLongArray turns;
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * Constructor for AuditQueue
+     *
+     * @param capacity the most records held, rounded up to a power of two
+     */
+    AuditQueue(int capacity) {
+
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AuditRecord[size];
+        this.turns = new AtomicLongArray(size);
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            this.turns.set(i, i);
+        }
+    }
+
+    /**
+     * Adds a record, from any thread
+     *
+     * @param record the record
+     * @return true if the record was added, false if the queue is full
+     */
+    boolean offer(AuditRecord record) {
+
+        long position = this.tail.get();
+
+        while (true) {
+
+            int index = (int) position & this.mask;
+            long turn = this.turns.get(index);
+
+            if (turn == position) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    this.slots[index] = record;
+                    //publishes the record to the consumer
+                    this.turns.set(index, position + 1);
+                    return true;
+                }
+                position = this.tail.get();
+            } else if (turn < position) {
+                //the slot still holds the record from a lap ago
+                return false;
+            } else {
+                position = this.tail.get();
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest record, from the consumer thread only
+     *
+     * @return the record, or null if the queue is empty
+     */
+    AuditRecord poll() {
+
+        long position = this.head;
+        int index = (int) position & this.mask;
+
+        if (this.turns.get(index) != position + 1) {
+            return null;
+        }
+
+        AuditRecord record = this.slots[index];
+        this.slots[index] = null;
+        //frees the slot for the producer a lap ahead
+        this.turns.set(index, position + this.slots.length);
+        this.head = position + 1;
+        return record;
+    }
+
+    /**
+     * @return the number of records added so far
+     */
+    long getOffered() {
+        return this.tail.get();
+    }
+
+    /**
+     * @return the number of records taken so far
+     */
+    long getTaken() {
+        return this.head;
+    }
+
+    /**
+     * @return the number of records waiting
+     */
+    int size() {
+        return (int) Math.max(0, this.tail.get() - this.head);
+    }
+
+    int capacity() {
+        return this.slots.length;
+    }
+}
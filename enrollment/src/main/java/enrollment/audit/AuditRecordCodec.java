@@ -0,0 +1,99 @@
+package enrollment.audit;
+
+import enrollment.common.AuditRecord;
+import enrollment.common.AuditRecord.Action;
+import enrollment.common.AuditRecord.FieldChange;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of AuditRecords in the journal: the sequence and timestamp, the tenant, Enrollee and Dependent
+ * Ids, the action, and each changed field with its values before and after. Strings are written as their UTF-8
+ * length and bytes, with a length of -1 for null.
+ * @author Michael Kulaga
+ */
+final class AuditRecordCodec {
+
+    private static final Action[] ACTIONS = Action.values();
+
+    private AuditRecordCodec() {
+    }
+
+    /**
+     * @param record the record, with its sequence assigned
+     * @return the encoded record
+     */
+    static byte[] encode(AuditRecord record) {
+
+        List<byte[]> strings = new ArrayList<>(4 + record.getChanges().size() * 3);
+        strings.add(utf8(record.getTenant()));
+        strings.add(utf8(record.getEnrolleeId()));
+        strings.add(utf8(record.getDependentId()));
+        for (FieldChange change : record.getChanges()) {
+            strings.add(utf8(change.getField()));
+            strings.add(utf8(change.getBefore()));
+            strings.add(utf8(change.getAfter()));
+        }
+
+        int size = 8 + 8 + 1 + 4;
+        for (byte[] string : strings) {
+            size += 4 + (string != null ? string.length : 0);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(record.getSequence());
+        buffer.putLong(record.getTimestamp());
+        buffer.put((byte) record.getAction().ordinal());
+        buffer.putInt(record.getChanges().size());
+        for (byte[] string : strings) {
+            if (string == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(string.length).put(string);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param buffer the heap buffer, positioned at an encoded record, which is left positioned after it
+     * @return the decoded record
+     */
+    static AuditRecord decode(ByteBuffer buffer) {
+
+        AuditRecord record = new AuditRecord();
+        record.setSequence(buffer.getLong());
+        record.setTimestamp(buffer.getLong());
+        record.setAction(ACTIONS[buffer.get()]);
+        int changes = buffer.getInt();
+        record.setTenant(string(buffer));
+        record.setEnrolleeId(string(buffer));
+        record.setDependentId(string(buffer));
+
+        List<FieldChange> fieldChanges = new ArrayList<>(changes);
+        for (int i = 0; i < changes; i++) {
+            fieldChanges.add(new FieldChange(string(buffer), string(buffer), string(buffer)));
+        }
+        record.setChanges(fieldChanges);
+        return record;
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String string(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
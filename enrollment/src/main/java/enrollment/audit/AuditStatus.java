@@ -0,0 +1,90 @@
+package enrollment.audit;
+
+/**
+ * The state of the audit journal: its segments, the records written and waiting, and how often request threads
+ * had to wait for room in the queue
+ * @author Michael Kulaga
+ */
+public class AuditStatus {
+
+    private final boolean enabled;
+    private final int segments;
+    private final long bytes;
+    private final long recordsWritten;
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long producerWaits;
+    private final long recordsDropped;
+    private final long compactions;
+    private final String lastSync;
+
+    /**
+     * Constructor for AuditStatus
+     *
+     * @param enabled whether changes are being journaled
+     * @param segments the number of segment files
+     * @param bytes the size of the segment files
+     * @param recordsWritten the records written since startup
+     * @param queueDepth the records waiting to be written
+     * @param queueCapacity the most records that can wait to be written
+     * @param producerWaits the times a request thread waited for room in the queue
+     * @param recordsDropped the records dropped because the journal was closed or could not hold them
+     * @param compactions the compactions run since startup
+     * @param lastSync when the journal was last forced to disk, or null
+     */
+    public AuditStatus(boolean enabled, int segments, long bytes, long recordsWritten, int queueDepth, int queueCapacity,
+                       long producerWaits, long recordsDropped, long compactions, String lastSync) {
+        this.enabled = enabled;
+        this.segments = segments;
+        this.bytes = bytes;
+        this.recordsWritten = recordsWritten;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.producerWaits = producerWaits;
+        this.recordsDropped = recordsDropped;
+        this.compactions = compactions;
+        this.lastSync = lastSync;
+    }
+
+    //Getters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getProducerWaits() {
+        return producerWaits;
+    }
+
+    public long getRecordsDropped() {
+        return recordsDropped;
+    }
+
+    public long getCompactions() {
+        return compactions;
+    }
+
+    public String getLastSync() {
+        return lastSync;
+    }
+}
@@ -0,0 +1,573 @@
+package enrollment.audit;
+
+import enrollment.common.AuditRecord;
+import enrollment.tenancy.TenantContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * One segment file of the audit journal. The segment being written is memory-mapped at its full size, and each
+ * record is copied into the mapping as its length, a CRC32 and the encoded record, so a record torn by a crash is
+ * found by its checksum and dropped. A sealed segment is cut to the records it holds and read through a read-only
+ * mapping.
+ * Each segment has a sparse index of where each Enrollee's records are: for every block of the segment the
+ * Enrollee has records in, the offset of its first record in that block, so its history is read from a few
+ * blocks rather than the whole segment. The index of a sealed segment is written beside it, sorted by Enrollee,
+ * and searched in place.
+ * @author Michael Kulaga
+ */
+final class JournalSegment {
+
+    private static final Pattern NAME = Pattern.compile("journal-(\\d{20})(?:-(\\d{20}))?\\.log");
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER = 4 + 8 + 8 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int INDEX_ENTRY = 8 + 4;
+
+    //the length and checksum before each record
+    static final int RECORD_HEADER = 8;
+
+    /**
+     * Callback for the records of a segment being read
+     */
+    interface Visitor {
+        /**
+         * @return false to stop reading
+         */
+        boolean visit(AuditRecord record, int offset);
+    }
+
+    private final Path file;
+    private final Path indexFile;
+    private final int blockSize;
+    private final long namedFirst;
+    private final long namedLast;
+
+    //the segment being written
+    private FileChannel channel;
+    private volatile MappedByteBuffer writeMap;
+    private final Map<Long, int[]> postings = new ConcurrentHashMap<>();
+
+    //a sealed segment
+    private volatile boolean sealed;
+    private volatile MappedByteBuffer readMap;
+    private volatile ByteBuffer sealedPostings;
+
+    private volatile int end;
+    private volatile int records;
+    private volatile long firstSequence = -1;
+    private volatile long lastSequence = -1;
+    private volatile long firstTimestamp = Long.MAX_VALUE;
+    private volatile long lastTimestamp = Long.MIN_VALUE;
+
+    private JournalSegment(Path file, int blockSize) {
+        this.file = file;
+        this.indexFile = file.resolveSibling(file.getFileName() + INDEX_SUFFIX);
+        this.blockSize = blockSize;
+
+        Matcher matcher = NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not An Audit Journal Segment: " + file);
+        }
+        this.namedFirst = Long.parseLong(matcher.group(1));
+        this.namedLast = matcher.group(2) != null ? Long.parseLong(matcher.group(2)) : -1;
+    }
+
+    /**
+     * @param firstSequence the sequence of the first record of the segment
+     * @return the file name of a segment written by the journal
+     */
+    static String fileName(long firstSequence) {
+        return String.format("journal-%020d.log", firstSequence);
+    }
+
+    /**
+     * @param firstSequence the sequence of the first record of the segment
+     * @param lastSequence the sequence of the last record of the segment
+     * @return the file name of a segment written by compaction, which replaces the segments it covers
+     */
+    static String compactedFileName(long firstSequence, long lastSequence) {
+        return String.format("journal-%020d-%020d.log", firstSequence, lastSequence);
+    }
+
+    /**
+     * @param file a file of the journal directory
+     * @return true if the file is a segment
+     */
+    static boolean isSegment(Path file) {
+        return NAME.matcher(file.getFileName().toString()).matches();
+    }
+
+    /**
+     * Creates a segment to write
+     *
+     * @param file the segment file, which is emptied if it exists
+     * @param capacity the size of the segment
+     * @param blockSize the size of the blocks the index records offsets for
+     * @return the segment
+     */
+    static JournalSegment create(Path file, int capacity, int blockSize) throws IOException {
+
+        JournalSegment segment = new JournalSegment(file, blockSize);
+        segment.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment.writeMap = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return segment;
+    }
+
+    /**
+     * Opens an existing segment, from its index if it was sealed and otherwise by reading its records up to the
+     * first one missing or torn
+     *
+     * @param file the segment file
+     * @param blockSize the size of the blocks the index records offsets for
+     * @return the segment, which is sealed only if its index was found
+     */
+    static JournalSegment open(Path file, int blockSize) throws IOException {
+
+        JournalSegment segment = new JournalSegment(file, blockSize);
+
+        if (Files.isRegularFile(segment.indexFile) && segment.readIndex()) {
+            return segment;
+        }
+
+        segment.readMap = map(file);
+        segment.end = segment.scan(segment.readMap, 0, segment.readMap.capacity(), (record, offset) -> {
+            segment.indexed(record, offset);
+            return true;
+        });
+        return segment;
+    }
+
+    /**
+     * Continues writing a segment opened without an index, after its last whole record
+     *
+     * @param capacity the size of the segment, if it is larger than the file
+     */
+    void resume(int capacity) throws IOException {
+
+        this.readMap = null;
+        this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.writeMap = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, this.channel.size()));
+
+        //clears what is left of a torn record, so it is not taken for the end of the next one
+        for (int position = this.end; position < Math.min(this.writeMap.capacity(), this.end + RECORD_HEADER); position++) {
+            this.writeMap.put(position, (byte) 0);
+        }
+    }
+
+    /**
+     * Appends a record, from the journal writer only
+     *
+     * @param record the record, with its sequence assigned
+     * @param key the tenant-scoped Id of the record's Enrollee
+     * @return false if the segment has no room for the record
+     */
+    boolean append(AuditRecord record, String key) {
+
+        byte[] payload = AuditRecordCodec.encode(record);
+        int offset = this.end;
+
+        if ((long) offset + RECORD_HEADER + payload.length > this.writeMap.capacity()) {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer view = this.writeMap.duplicate();
+        view.position(offset + RECORD_HEADER);
+        view.put(payload);
+        view.putInt(offset + 4, (int) crc.getValue());
+        //the length goes last, so a reader never finds a length before the rest of the record
+        view.putInt(offset, payload.length);
+
+        this.post(hash(key), offset);
+        this.summarize(record);
+        this.end = offset + RECORD_HEADER + payload.length;
+        return true;
+    }
+
+    /**
+     * Forces the records appended to disk
+     */
+    void force() {
+        if (this.writeMap != null) {
+            this.writeMap.force();
+        }
+    }
+
+    /**
+     * Seals the segment: forces it to disk, cuts the file to the records it holds and writes its index
+     */
+    void seal() throws IOException {
+
+        if (this.sealed) {
+            return;
+        }
+
+        if (this.writeMap != null) {
+            this.writeMap.force();
+            this.channel.truncate(this.end);
+            this.channel.force(true);
+        } else {
+            try (FileChannel truncate = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+                truncate.truncate(this.end);
+                truncate.force(true);
+            }
+        }
+
+        this.writeIndex();
+
+        //queries switch to the read-only mapping before the writable one is dropped
+        this.readMap = this.end > 0 ? map(this.file) : null;
+        this.writeMap = null;
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+        this.sealed = true;
+    }
+
+    /**
+     * Reads the records of an Enrollee
+     *
+     * @param key the tenant-scoped Id of the Enrollee
+     * @param tenant the tenant of the Enrollee
+     * @param enrolleeId the Id of the Enrollee
+     * @param since the earliest timestamp to read
+     * @return the records of the Enrollee, in the order they were written
+     */
+    List<AuditRecord> find(String key, String tenant, String enrolleeId, long since) {
+
+        List<AuditRecord> found = new ArrayList<>();
+        if (this.records == 0 || this.lastTimestamp < since) {
+            return found;
+        }
+
+        ByteBuffer buffer = this.view();
+        int limit = this.end;
+
+        for (int start : this.offsets(hash(key))) {
+            int blockEnd = (start / this.blockSize + 1) * this.blockSize;
+            this.scan(buffer, start, limit, (record, offset) -> {
+                if (offset >= blockEnd) {
+                    return false;
+                }
+                if (record.getTimestamp() >= since && enrolleeId.equals(record.getEnrolleeId()) && tenant.equals(record.getTenant())) {
+                    found.add(record);
+                }
+                return true;
+            });
+        }
+        return found;
+    }
+
+    /**
+     * Reads every record of the segment, in the order they were written
+     *
+     * @param visitor the Visitor to give the records to
+     */
+    void forEach(Visitor visitor) {
+
+        if (this.records > 0) {
+            this.scan(this.view(), 0, this.end, visitor);
+        }
+    }
+
+    /**
+     * Deletes the segment and its index. A sealed segment still being read keeps its mapping until it is no
+     * longer used.
+     */
+    void delete() throws IOException {
+
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+        Files.deleteIfExists(this.indexFile);
+        Files.deleteIfExists(this.file);
+    }
+
+    //Getters
+
+    Path getFile() {
+        return this.file;
+    }
+
+    boolean isSealed() {
+        return this.sealed;
+    }
+
+    /**
+     * @return true if the segment was written by compaction
+     */
+    boolean isCompacted() {
+        return this.namedLast >= 0;
+    }
+
+    /**
+     * @return the sequence the segment's name starts at
+     */
+    long getNamedFirst() {
+        return this.namedFirst;
+    }
+
+    /**
+     * @return the last sequence the segment accounts for, which for a compacted segment includes the records
+     * it dropped
+     */
+    long getCoveredTo() {
+        return Math.max(this.namedLast, this.lastSequence);
+    }
+
+    int getSize() {
+        return this.end;
+    }
+
+    int getRecords() {
+        return this.records;
+    }
+
+    long getFirstSequence() {
+        return this.firstSequence;
+    }
+
+    long getLastSequence() {
+        return this.lastSequence;
+    }
+
+    long getFirstTimestamp() {
+        return this.firstTimestamp;
+    }
+
+    long getLastTimestamp() {
+        return this.lastTimestamp;
+    }
+
+    /**
+     * @return the stable 64 bit FNV-1a hash of a key, which the index is sorted by
+     */
+    static long hash(String key) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Helper method to read records from an offset up to a limit, stopping at the first record that is missing
+     * or torn
+     *
+     * @return the offset after the last record read
+     */
+    private int scan(ByteBuffer buffer, int from, int limit, Visitor visitor) {
+
+        int position = from;
+        limit = Math.min(limit, buffer.capacity());
+
+        while (position + RECORD_HEADER <= limit) {
+
+            int length = buffer.getInt(position);
+            if (length <= 0 || (long) position + RECORD_HEADER + length > limit) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position + RECORD_HEADER);
+            source.get(payload);
+
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+
+            if (!visitor.visit(AuditRecordCodec.decode(ByteBuffer.wrap(payload)), position)) {
+                return position;
+            }
+            position += RECORD_HEADER + length;
+        }
+
+        return position;
+    }
+
+    private ByteBuffer view() {
+        MappedByteBuffer map = this.writeMap != null ? this.writeMap : this.readMap;
+        return map != null ? map.duplicate() : ByteBuffer.allocate(0);
+    }
+
+    private void indexed(AuditRecord record, int offset) {
+        this.post(hash(TenantContext.scopedKey(record.getTenant(), record.getEnrolleeId())), offset);
+        this.summarize(record);
+    }
+
+    /**
+     * Helper method to add a record to the index of the segment being written, if it is the key's first record in
+     * its block. The offsets are copied on write, so queries read them without locking.
+     */
+    private void post(long hash, int offset) {
+
+        int[] blocks = this.postings.get(hash);
+        if (blocks == null || blocks[blocks.length - 1] / this.blockSize != offset / this.blockSize) {
+            int[] grown = blocks == null ? new int[1] : Arrays.copyOf(blocks, blocks.length + 1);
+            grown[grown.length - 1] = offset;
+            this.postings.put(hash, grown);
+        }
+    }
+
+    private void summarize(AuditRecord record) {
+
+        if (this.firstSequence < 0) {
+            this.firstSequence = record.getSequence();
+        }
+        this.lastSequence = record.getSequence();
+        this.firstTimestamp = Math.min(this.firstTimestamp, record.getTimestamp());
+        this.lastTimestamp = Math.max(this.lastTimestamp, record.getTimestamp());
+        this.records++;
+    }
+
+    /**
+     * Helper method to find the offsets of a key's first record in each block it has records in
+     */
+    private int[] offsets(long hash) {
+
+        ByteBuffer entries = this.sealedPostings;
+        if (entries == null) {
+            int[] blocks = this.postings.get(hash);
+            return blocks != null ? blocks : new int[0];
+        }
+
+        int count = entries.capacity() / INDEX_ENTRY;
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries.getLong(middle * INDEX_ENTRY) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int matched = 0;
+        while (low + matched < count && entries.getLong((low + matched) * INDEX_ENTRY) == hash) {
+            matched++;
+        }
+
+        int[] blocks = new int[matched];
+        for (int i = 0; i < matched; i++) {
+            blocks[i] = entries.getInt((low + i) * INDEX_ENTRY + 8);
+        }
+        return blocks;
+    }
+
+    /**
+     * Helper method to write the index of a sealed segment, sorted by key hash and then offset
+     */
+    private void writeIndex() throws IOException {
+
+        List<long[]> entries = new ArrayList<>();
+        this.postings.forEach((hash, blocks) -> {
+            for (int offset : blocks) {
+                entries.add(new long[] {hash, offset});
+            }
+        });
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER + entries.size() * INDEX_ENTRY);
+        index.putInt(INDEX_VERSION)
+                .putLong(this.firstSequence)
+                .putLong(this.lastSequence)
+                .putLong(this.firstTimestamp)
+                .putLong(this.lastTimestamp)
+                .putInt(this.records)
+                .putInt(this.end)
+                .putInt(this.blockSize)
+                .putInt(entries.size());
+        for (long[] entry : entries) {
+            index.putLong(entry[0]).putInt((int) entry[1]);
+        }
+
+        Path partial = this.indexFile.resolveSibling(this.indexFile.getFileName() + ".partial");
+        try (FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            index.flip();
+            while (index.hasRemaining()) {
+                out.write(index);
+            }
+            out.force(true);
+        }
+        Files.move(partial, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.sealedPostings = ByteBuffer.wrap(index.array(), INDEX_HEADER, entries.size() * INDEX_ENTRY).slice();
+        this.postings.clear();
+    }
+
+    /**
+     * Helper method to load the index of a sealed segment
+     *
+     * @return false if the index does not match the segment, which is then read instead
+     */
+    private boolean readIndex() throws IOException {
+
+        MappedByteBuffer index = map(this.indexFile);
+        if (index.capacity() < INDEX_HEADER || index.getInt(0) != INDEX_VERSION) {
+            return false;
+        }
+
+        ByteBuffer header = index.duplicate();
+        header.position(4);
+        long first = header.getLong();
+        long last = header.getLong();
+        long firstTime = header.getLong();
+        long lastTime = header.getLong();
+        int count = header.getInt();
+        int size = header.getInt();
+        int indexedBlockSize = header.getInt();
+        int entries = header.getInt();
+
+        if (indexedBlockSize != this.blockSize || size != Files.size(this.file)
+                || index.capacity() != INDEX_HEADER + (long) entries * INDEX_ENTRY) {
+            return false;
+        }
+
+        this.firstSequence = first;
+        this.lastSequence = last;
+        this.firstTimestamp = firstTime;
+        this.lastTimestamp = lastTime;
+        this.records = count;
+        this.end = size;
+
+        header.position(INDEX_HEADER);
+        this.sealedPostings = header.slice();
+        this.readMap = size > 0 ? map(this.file) : null;
+        this.sealed = true;
+        return true;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Audit journal of the changes to Enrollees and Dependents for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.audit;
@@ -0,0 +1,222 @@
+package enrollment.backup;
+
+import org.bson.RawBsonDocument;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The format of a backup segment file: a gzip stream of records, each a one byte tag telling an Enrollee from a
+ * Dependent followed by the document exactly as MongoDb stored it, in BSON, which carries its own length. The
+ * Dependents of a batch of Enrollees follow that batch. The SHA-256 of the file is taken as it is written, so the
+ * manifest can record it and a restore can check the file before reading it.
+ * @author Michael Kulaga
+ */
+final class BackupSegmentFile {
+
+    static final int ENROLLEE = 'E';
+    static final int DEPENDENT = 'D';
+
+    //the largest document MongoDb stores, with room for the wire format around it
+    private static final int MAXIMUM_DOCUMENT_SIZE = 16 * 1024 * 1024 + 16 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BackupSegmentFile() {
+    }
+
+    /**
+     * @param file a segment file
+     * @return the SHA-256 of the file, in hex
+     * @throws IOException if the file cannot be read
+     */
+    static String sha256(Path file) throws IOException {
+
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            while (in.read(buffer) >= 0) {
+                //the digest is taken as the file is read
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 Is Not Available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Writes the records of a segment file
+     */
+    static final class Writer implements Closeable {
+
+        private final Path file;
+        private final MessageDigest digest = newDigest();
+        private final DataOutputStream out;
+        private String sha256;
+
+        /**
+         * Constructor for Writer
+         *
+         * @param file the segment file to write, replacing any file already there
+         * @throws IOException if the file cannot be created
+         */
+        Writer(Path file) throws IOException {
+            this.file = file;
+            OutputStream digested = new DigestOutputStream(Files.newOutputStream(file), this.digest);
+            this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(digested, BUFFER_SIZE), BUFFER_SIZE));
+        }
+
+        /**
+         * Writes a record
+         *
+         * @param tag ENROLLEE or DEPENDENT
+         * @param document the document as stored
+         * @throws IOException if the record cannot be written
+         */
+        void write(int tag, RawBsonDocument document) throws IOException {
+
+            this.out.write(tag);
+
+            ByteBuffer bytes = document.getByteBuffer().asNIO();
+            if (bytes.hasArray()) {
+                this.out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            } else {
+                byte[] copy = new byte[bytes.remaining()];
+                bytes.get(copy);
+                this.out.write(copy);
+            }
+        }
+
+        /**
+         * @return the size of the finished file
+         * @throws IOException if the file cannot be read
+         */
+        long size() throws IOException {
+            return Files.size(this.file);
+        }
+
+        /**
+         * @return the SHA-256 of the finished file, in hex
+         */
+        String getSha256() {
+            return this.sha256;
+        }
+
+        /**
+         * Finishes the file, flushing it to disk
+         */
+        @Override
+        public void close() throws IOException {
+
+            if (this.sha256 == null) {
+                this.out.close();
+                this.sha256 = hex(this.digest.digest());
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a segment file, in the order they were written
+     */
+    static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private int tag;
+        private RawBsonDocument document;
+
+        /**
+         * Constructor for Reader
+         *
+         * @param file the segment file to read
+         * @throws IOException if the file cannot be opened
+         */
+        Reader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+        }
+
+        /**
+         * Reads the next record
+         *
+         * @return true if a record was read, false at the end of the file
+         * @throws IOException if the file cannot be read or is not a segment file
+         */
+        boolean next() throws IOException {
+
+            int next = this.in.read();
+            if (next < 0) {
+                return false;
+            }
+            if (next != ENROLLEE && next != DEPENDENT) {
+                throw new IOException("Corrupt Segment File, Unknown Record Tag: " + next);
+            }
+
+            int length;
+            try {
+                length = Integer.reverseBytes(this.in.readInt());
+            } catch (EOFException e) {
+                throw new IOException("Corrupt Segment File, Truncated Record");
+            }
+            if (length < 5 || length > MAXIMUM_DOCUMENT_SIZE) {
+                throw new IOException("Corrupt Segment File, Invalid Document Length: " + length);
+            }
+
+            byte[] bytes = new byte[length];
+            ByteBuffer.wrap(bytes).putInt(Integer.reverseBytes(length));
+            this.in.readFully(bytes, 4, length - 4);
+
+            this.tag = next;
+            this.document = new RawBsonDocument(bytes);
+            return true;
+        }
+
+        /**
+         * @return true if the record read is a Dependent, false if it is an Enrollee
+         */
+        boolean isDependent() {
+            return this.tag == DEPENDENT;
+        }
+
+        /**
+         * @return the document of the record read
+         */
+        RawBsonDocument getDocument() {
+            return this.document;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
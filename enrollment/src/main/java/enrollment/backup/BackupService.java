@@ -0,0 +1,883 @@
+package enrollment.backup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.WriteModel;
+import enrollment.audit.AuditJournal;
+import enrollment.common.AuditRecord.Action;
+import enrollment.common.BackupManifest;
+import enrollment.common.BackupManifest.Segment;
+import enrollment.common.BackupRun;
+import enrollment.common.BackupRun.Operation;
+import enrollment.common.BackupRun.State;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+import enrollment.common.RestoreRequest;
+import enrollment.duplicates.DuplicateIndex;
+import enrollment.eligibility.ActivationIndex;
+import enrollment.exceptions.ResourceDoesNotExistException;
+import enrollment.exceptions.ValidationException;
+import enrollment.repository.CompactStorageConverter;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Services for backing up and restoring the stored Enrollees of a tenant, along with their external Dependents.
+ * A backup splits the Enrollees into Id ranges and dumps the ranges in parallel, each to its own compressed segment
+ * file, writing a manifest of the segments and their checksums once every segment is written. A restore checks the
+ * checksums of the segments it needs and then restores them in parallel with unordered bulk writes, either leaving
+ * Enrollees that already exist as they are or replacing them. Restored documents are converted to the form documents
+ * are stored in now, as a backup taken before the form was switched holds them in the old one.
+ * Backups are read while the application keeps writing, so they are not a snapshot of a single moment: an Enrollee
+ * written during the backup may be backed up as it was before or after the write.
+ * @author Michael Kulaga
+ */
+@Service
+@Profile("!memory")
+public class BackupService {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(BackupService.class);
+
+    static final String MANIFEST = "manifest.json";
+
+    //the field the external Dependent store keeps each Dependent's Enrollee Id in
+    private static final String ENROLLEE_ID = "enrolleeId";
+
+    private static final String STRING_ID = "string";
+    private static final String OBJECT_ID = "objectId";
+    private static final String LONG_ID = "long";
+
+    /*
+     * The Id types stored, each with its lowest value. Enrollee Ids are strings, which are stored as ObjectIds when
+     * they are valid ones, or as 64-bit integers when numeric Ids are enabled. MongoDb compares an Id only with Ids
+     * of the same type, so a range starting at the lowest value of a type holds only Ids of that type.
+     */
+    private static final Map<String, BsonValue> ID_TYPES = new LinkedHashMap<>();
+
+    static {
+        ID_TYPES.put(STRING_ID, new BsonString(""));
+        ID_TYPES.put(OBJECT_ID, new BsonObjectId(new ObjectId(new byte[12])));
+        ID_TYPES.put(LONG_ID, new BsonInt64(Long.MIN_VALUE));
+    }
+
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+    private static final DateTimeFormatter BACKUP_ID = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    public final MongoOperations mongoOperations;
+    public final TenantRegistry tenantRegistry;
+    public final DuplicateIndex duplicateIndex;
+    public final ApplicationEventPublisher eventPublisher;
+    public final ObjectMapper objectMapper;
+    public final AuditJournal auditJournal;
+    public final ActivationIndex activationIndex;
+    public final CompactStorageConverter storageConverter;
+
+    private final Path directory;
+    private final int threads;
+    private final int segmentsPerThread;
+    private final int batchSize;
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+
+    private volatile BackupRun run;
+
+    /**
+     * Constructor for BackupService
+     *
+     * @param mongoOperations the MongoOperations to use
+     * @param tenantRegistry the TenantRegistry to find the current tenant's collections with
+     * @param duplicateIndex the DuplicateIndex to rebuild after a restore
+     * @param eventPublisher the ApplicationEventPublisher to announce restored Enrollees with
+     * @param objectMapper the ObjectMapper to write manifests with
+     * @param auditJournal the AuditJournal to record restored Enrollees in
+     * @param activationIndex the ActivationIndex to rebuild after a restore
+     * @param storageConverter the CompactStorageConverter to convert restored documents to the stored form with
+     * @param directory the directory holding the backups
+     * @param threads the number of segments backed up or restored at once, or 0 for one per processor
+     * @param segmentsPerThread the number of segments a backup is split into for each thread, so threads that
+     *                          finish early have more to take
+     * @param batchSize the number of documents read or written at a time
+     */
+    public BackupService(MongoOperations mongoOperations,
+                         TenantRegistry tenantRegistry,
+                         DuplicateIndex duplicateIndex,
+                         ApplicationEventPublisher eventPublisher,
+                         ObjectMapper objectMapper,
+                         AuditJournal auditJournal,
+                         ActivationIndex activationIndex,
+                         CompactStorageConverter storageConverter,
+                         @Value("${enrollment.backup.directory:backups}") String directory,
+                         @Value("${enrollment.backup.threads:0}") int threads,
+                         @Value("${enrollment.backup.segments-per-thread:4}") int segmentsPerThread,
+                         @Value("${enrollment.backup.batch-size:1000}") int batchSize) {
+        this.mongoOperations = mongoOperations;
+        this.tenantRegistry = tenantRegistry;
+        this.duplicateIndex = duplicateIndex;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.auditJournal = auditJournal;
+        this.activationIndex = activationIndex;
+        this.storageConverter = storageConverter;
+        this.directory = Paths.get(directory);
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.segmentsPerThread = Math.max(1, segmentsPerThread);
+        this.batchSize = Math.max(1, batchSize);
+
+        this.coordinator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-backup-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts backing up the Enrollees of the current tenant
+     *
+     * @return the started BackupRun
+     */
+    public synchronized BackupRun startBackup() {
+
+        this.checkNotRunning();
+
+        String tenant = TenantContext.current();
+        Instant now = Instant.now();
+        BackupRun started = new BackupRun(Operation.BACKUP, BACKUP_ID.format(now), tenant, now.toString(), this.threads);
+        String enrollees = this.tenantRegistry.enrolleeCollection();
+        String dependents = this.tenantRegistry.dependentCollection();
+
+        this.run = started;
+        this.coordinator.submit(() -> this.backup(started, enrollees, dependents));
+        return started;
+    }
+
+    /**
+     * Starts restoring the Enrollees of a backup of the current tenant
+     *
+     * @param backupId the Id of the backup
+     * @param request which Enrollees to restore and whether to replace those that exist, or null to restore every
+     *                Enrollee that does not exist
+     * @return the started BackupRun
+     */
+    public synchronized BackupRun startRestore(String backupId, RestoreRequest request) {
+
+        this.checkNotRunning();
+
+        String tenant = TenantContext.current();
+        BackupManifest manifest = this.readManifest(tenant, backupId);
+        RestoreRequest restore = request != null ? request : new RestoreRequest();
+
+        if (restore.getFromId() != null && restore.getToId() != null && compareIds(restore.getFromId(), restore.getToId()) > 0) {
+            throw new ValidationException("Validation Error: The From Id Must Not Be After The To Id");
+        }
+        for (String property : restore.getFilter().keySet()) {
+            if (BeanUtils.getPropertyDescriptor(Enrollee.class, property) == null || "dependents".equals(property) || "class".equals(property)) {
+                throw new ValidationException("Validation Error: Unable To Filter Enrollees By " + property);
+            }
+        }
+
+        List<Segment> segments = manifest.getSegments().stream()
+                .filter(segment -> overlaps(segment, restore.getFromId(), restore.getToId()))
+                .collect(Collectors.toList());
+
+        BackupRun started = new BackupRun(Operation.RESTORE, backupId, tenant, Instant.now().toString(), this.threads);
+        started.setSegments(segments.size());
+        String enrollees = this.tenantRegistry.enrolleeCollection();
+        String dependents = this.tenantRegistry.dependentCollection();
+
+        this.run = started;
+        this.coordinator.submit(() -> this.restore(started, this.directory(tenant).resolve(backupId), segments, restore, enrollees, dependents));
+        return started;
+    }
+
+    /**
+     * @return the completed backups of the current tenant, newest first
+     */
+    public List<BackupManifest> getBackups() {
+
+        Path tenantDirectory = this.directory(TenantContext.current());
+        if (!Files.isDirectory(tenantDirectory)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> entries = Files.list(tenantDirectory)) {
+
+            List<BackupManifest> backups = new ArrayList<>();
+            for (Path backup : entries.filter(entry -> Files.isRegularFile(entry.resolve(MANIFEST))).collect(Collectors.toList())) {
+                backups.add(this.objectMapper.readValue(backup.resolve(MANIFEST).toFile(), BackupManifest.class));
+            }
+            backups.sort(Comparator.comparing(BackupManifest::getId).reversed());
+            return backups;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the latest backup or restore since startup, or null if there has not been one
+     */
+    public BackupRun getRun() {
+        return this.run;
+    }
+
+    /**
+     * Stops any running backup or restore
+     */
+    @PreDestroy
+    public void close() {
+        this.coordinator.shutdownNow();
+        this.workers.shutdownNow();
+    }
+
+    /**
+     * Helper method to dump every segment of a backup, then write its manifest and move it into place
+     */
+    private void backup(BackupRun started, String enrolleeCollection, String dependentCollection) {
+
+        long start = System.nanoTime();
+        Path tenantDirectory = this.directory(started.getTenant());
+        Path partial = tenantDirectory.resolve(started.getBackupId() + ".partial");
+
+        try {
+            Files.createDirectories(partial);
+
+            MongoCollection<RawBsonDocument> enrollees = this.collection(enrolleeCollection);
+            MongoCollection<RawBsonDocument> dependents = this.collection(dependentCollection);
+
+            List<Segment> segments = this.split(enrollees);
+            started.setSegments(segments.size());
+
+            this.runAll(segments.stream()
+                    .map(segment -> (Callable<Segment>) () -> this.dump(started, segment, partial, enrollees, dependents))
+                    .collect(Collectors.toList()));
+
+            BackupManifest manifest = new BackupManifest(started.getBackupId(), started.getTenant(), started.getStartedAt());
+            manifest.setSegments(segments);
+            manifest.setEnrollees(started.getEnrollees());
+            manifest.setDependents(started.getDependents());
+            manifest.setBytes(started.getBytes());
+            manifest.setFinishedAt(Instant.now().toString());
+
+            Files.write(partial.resolve(MANIFEST), this.objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+            Files.move(partial, tenantDirectory.resolve(started.getBackupId()), StandardCopyOption.ATOMIC_MOVE);
+
+            this.finish(started, start, State.COMPLETED, null);
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Backed Up " + started.getEnrollees() + " Enrollees And " + started.getDependents() + " Dependents Of Tenant "
+                        + started.getTenant() + " To Backup " + started.getBackupId() + " In " + segments.size() + " Segments, "
+                        + started.getDocumentsPerSecond() + " Documents/s");
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            LOGGER.error("Unable To Back Up Tenant " + started.getTenant(), e);
+            this.delete(partial);
+            this.finish(started, start, State.FAILED, e.toString());
+        }
+    }
+
+    /**
+     * Helper method to split the Enrollees into Id ranges. Each Id type is split on its own, into a share of the
+     * segments in proportion to its share of the Enrollees. Each boundary is found by skipping through the Id index
+     * from the boundary before it, so the index is walked once rather than from its start for every boundary.
+     */
+    private List<Segment> split(MongoCollection<RawBsonDocument> enrollees) {
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<String, BsonValue> idType : ID_TYPES.entrySet()) {
+            long count = enrollees.countDocuments(Filters.gte("_id", idType.getValue()));
+            counts.put(idType.getKey(), count);
+            total += count;
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        long target = (long) this.threads * this.segmentsPerThread;
+
+        for (Map.Entry<String, Long> idType : counts.entrySet()) {
+
+            long count = idType.getValue();
+            if (count == 0) {
+                continue;
+            }
+
+            //a segment of less than a batch is not worth its own file
+            long parts = Math.max(1, Math.min(Math.round((double) target * count / total), (count + this.batchSize - 1) / this.batchSize));
+            BsonValue from = ID_TYPES.get(idType.getKey());
+            String fromId = null;
+
+            for (long part = 1; part <= parts; part++) {
+
+                String toId = null;
+                if (part < parts) {
+                    long size = count * part / parts - count * (part - 1) / parts;
+                    RawBsonDocument boundary = enrollees.find(Filters.gte("_id", from)).projection(Projections.include("_id"))
+                            .sort(Sorts.ascending("_id")).skip((int) size).first();
+                    if (boundary != null) {
+                        from = boundary.get("_id");
+                        toId = idString(from);
+                    }
+                }
+
+                segments.add(new Segment(String.format("segment-%04d.bson.gz", segments.size() + 1), idType.getKey(), fromId, toId));
+                if (toId == null) {
+                    break;
+                }
+                fromId = toId;
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * Helper method to dump the Enrollees of one segment, each batch followed by the external Dependents of its
+     * Enrollees
+     *
+     * @return the segment, with its counts and checksum
+     */
+    private Segment dump(BackupRun started, Segment segment, Path partial,
+                         MongoCollection<RawBsonDocument> enrollees, MongoCollection<RawBsonDocument> dependents) throws IOException {
+
+        long enrolleeCount = 0;
+        long dependentCount = 0;
+        List<BsonValue> ids = new ArrayList<>(this.batchSize);
+
+        BackupSegmentFile.Writer writer = new BackupSegmentFile.Writer(partial.resolve(segment.getFile()));
+        try {
+            try (MongoCursor<RawBsonDocument> cursor = enrollees.find(range(segment)).sort(Sorts.ascending("_id")).batchSize(this.batchSize).iterator()) {
+
+                while (cursor.hasNext()) {
+
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IllegalStateException("Backup Interrupted");
+                    }
+
+                    RawBsonDocument enrollee = cursor.next();
+                    writer.write(BackupSegmentFile.ENROLLEE, enrollee);
+                    ids.add(enrollee.get("_id"));
+                    enrolleeCount++;
+
+                    if (ids.size() == this.batchSize) {
+                        dependentCount += this.dumpDependents(writer, dependents, ids);
+                        ids.clear();
+                    }
+                }
+            }
+            dependentCount += this.dumpDependents(writer, dependents, ids);
+        } finally {
+            //the size and checksum are only known once the file is finished
+            writer.close();
+        }
+
+        segment.setEnrollees(enrolleeCount);
+        segment.setDependents(dependentCount);
+        segment.setBytes(writer.size());
+        segment.setSha256(writer.getSha256());
+
+        started.segmentCompleted(enrolleeCount, dependentCount, 0, segment.getBytes());
+        return segment;
+    }
+
+    private long dumpDependents(BackupSegmentFile.Writer writer, MongoCollection<RawBsonDocument> dependents, List<BsonValue> enrolleeIds) throws IOException {
+
+        if (enrolleeIds.isEmpty()) {
+            return 0;
+        }
+
+        long count = 0;
+        try (MongoCursor<RawBsonDocument> cursor = dependents.find(Filters.in(ENROLLEE_ID, enrolleeIds)).batchSize(this.batchSize).iterator()) {
+            while (cursor.hasNext()) {
+                writer.write(BackupSegmentFile.DEPENDENT, cursor.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Helper method to check the segments of a restore against their checksums, then restore them
+     */
+    private void restore(BackupRun started, Path backup, List<Segment> segments, RestoreRequest request,
+                         String enrolleeCollection, String dependentCollection) {
+
+        long start = System.nanoTime();
+
+        try {
+            //check every segment first, so a damaged backup is found before anything is written
+            this.runAll(segments.stream().map(segment -> (Callable<Segment>) () -> {
+                if (!BackupSegmentFile.sha256(backup.resolve(segment.getFile())).equals(segment.getSha256())) {
+                    throw new IllegalStateException("Segment " + segment.getFile() + " Is Damaged, Its Checksum Does Not Match The Manifest");
+                }
+                return segment;
+            }).collect(Collectors.toList()));
+
+            MongoCollection<RawBsonDocument> enrollees = this.collection(enrolleeCollection);
+            MongoCollection<RawBsonDocument> dependents = this.collection(dependentCollection);
+
+            this.runAll(segments.stream()
+                    .map(segment -> (Callable<Segment>) () -> {
+                        new SegmentRestore(started, request, enrollees, dependents).restore(backup.resolve(segment.getFile()));
+                        return segment;
+                    })
+                    .collect(Collectors.toList()));
+
+            this.duplicateIndex.rebuild();
+            this.activationIndex.rebuild();
+            this.finish(started, start, State.COMPLETED, null);
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Restored " + started.getEnrollees() + " Enrollees And " + started.getDependents() + " Dependents Of Tenant "
+                        + started.getTenant() + " From Backup " + started.getBackupId() + ", Skipped " + started.getSkipped()
+                        + " That Exist, " + started.getDocumentsPerSecond() + " Documents/s");
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            LOGGER.error("Unable To Restore Backup " + started.getBackupId() + " Of Tenant " + started.getTenant(), e);
+            this.finish(started, start, State.FAILED, e.toString());
+        }
+    }
+
+    /**
+     * The restore of one segment. Enrollees are written in batches, and the Dependents following a batch in the
+     * segment are written once the batch is, for the Enrollees it restored.
+     */
+    private final class SegmentRestore {
+
+        private final BackupRun started;
+        private final RestoreRequest request;
+        private final MongoCollection<RawBsonDocument> enrollees;
+        private final MongoCollection<RawBsonDocument> dependents;
+
+        private final List<RawBsonDocument> pendingEnrollees = new ArrayList<>();
+        private final List<RawBsonDocument> pendingDependents = new ArrayList<>();
+        //the activation status of each Enrollee restored by the last batch, by Id, for announcing its Dependents
+        private final Map<String, Boolean> restoredStatuses = new HashMap<>();
+        private boolean readingDependents;
+
+        private long restored;
+        private long restoredDependents;
+        private long skipped;
+
+        SegmentRestore(BackupRun started, RestoreRequest request,
+                       MongoCollection<RawBsonDocument> enrollees, MongoCollection<RawBsonDocument> dependents) {
+            this.started = started;
+            this.request = request;
+            this.enrollees = enrollees;
+            this.dependents = dependents;
+        }
+
+        void restore(Path file) throws IOException {
+
+            try (BackupSegmentFile.Reader reader = new BackupSegmentFile.Reader(file)) {
+
+                while (reader.next()) {
+
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IllegalStateException("Restore Interrupted");
+                    }
+
+                    RawBsonDocument document = BackupService.this.toStoredForm(reader.getDocument());
+                    if (reader.isDependent()) {
+                        this.dependent(document);
+                    } else {
+                        this.enrollee(document);
+                    }
+                }
+            }
+
+            this.flushEnrollees();
+            this.flushDependents();
+            this.started.segmentCompleted(this.restored, this.restoredDependents, this.skipped, Files.size(file));
+        }
+
+        private void enrollee(RawBsonDocument enrollee) {
+
+            //the Dependents of the previous batch have all been read
+            if (this.readingDependents) {
+                this.flushDependents();
+                this.restoredStatuses.clear();
+                this.readingDependents = false;
+            }
+
+            if (this.matches(enrollee)) {
+                this.pendingEnrollees.add(enrollee);
+                if (this.pendingEnrollees.size() >= BackupService.this.batchSize) {
+                    this.flushEnrollees();
+                }
+            }
+        }
+
+        private void dependent(RawBsonDocument dependent) {
+
+            this.flushEnrollees();
+            this.readingDependents = true;
+
+            BsonValue enrolleeId = dependent.get(ENROLLEE_ID);
+            if (enrolleeId != null && this.restoredStatuses.containsKey(idString(enrolleeId))) {
+                this.pendingDependents.add(dependent);
+                if (this.pendingDependents.size() >= BackupService.this.batchSize) {
+                    this.flushDependents();
+                }
+            }
+        }
+
+        private boolean matches(RawBsonDocument enrollee) {
+
+            String id = idString(enrollee.get("_id"));
+            if ((this.request.getFromId() != null && compareIds(id, this.request.getFromId()) < 0)
+                    || (this.request.getToId() != null && compareIds(id, this.request.getToId()) > 0)) {
+                return false;
+            }
+            if (this.request.getFilter().isEmpty()) {
+                return true;
+            }
+
+            Enrollee read = BackupService.this.mongoOperations.getConverter().read(Enrollee.class, enrollee.decode(DOCUMENT_CODEC));
+            BeanWrapper properties = new BeanWrapperImpl(read);
+
+            for (Map.Entry<String, Object> criterion : this.request.getFilter().entrySet()) {
+                if (!String.valueOf(properties.getPropertyValue(criterion.getKey())).equals(String.valueOf(criterion.getValue()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Helper method to write the pending Enrollees. Replaced Enrollees lose their external Dependents until the
+         * backed up ones are written after them.
+         */
+        private void flushEnrollees() {
+
+            if (this.pendingEnrollees.isEmpty()) {
+                return;
+            }
+
+            List<String> ids = this.pendingEnrollees.stream().map(enrollee -> idString(enrollee.get("_id"))).collect(Collectors.toList());
+
+            BackupService.this.tenantRegistry.runWrite(this.started.getTenant(), () -> {
+
+                List<String> written;
+                ChangeType change;
+
+                if (this.request.isReplaceExisting()) {
+                    List<WriteModel<RawBsonDocument>> writes = this.pendingEnrollees.stream()
+                            .map(enrollee -> new ReplaceOneModel<>(Filters.eq("_id", enrollee.get("_id")), enrollee, UPSERT))
+                            .collect(Collectors.toList());
+                    this.enrollees.bulkWrite(writes, UNORDERED);
+                    this.dependents.deleteMany(Filters.in(ENROLLEE_ID, this.pendingEnrollees.stream()
+                            .map(enrollee -> enrollee.get("_id"))
+                            .collect(Collectors.toList())));
+                    written = ids;
+                    change = ChangeType.MODIFIED;
+                } else {
+                    Set<Integer> existing = insertNew(this.enrollees, this.pendingEnrollees);
+                    written = new ArrayList<>(ids.size() - existing.size());
+                    for (int i = 0; i < ids.size(); i++) {
+                        if (!existing.contains(i)) {
+                            written.add(ids.get(i));
+                        }
+                    }
+                    change = ChangeType.ADDED;
+                }
+
+                Map<String, Boolean> statuses = new HashMap<>();
+                String activationField = BackupService.this.activationStatusField();
+                this.pendingEnrollees.forEach(enrollee -> statuses.put(idString(enrollee.get("_id")), activationStatus(enrollee, activationField)));
+
+                this.restored += written.size();
+                this.skipped += ids.size() - written.size();
+                for (String id : written) {
+                    this.restoredStatuses.put(id, statuses.get(id));
+                    BackupService.this.auditJournal.record(id, null, Action.REPLACED, Collections.emptyList());
+                    BackupService.this.eventPublisher.publishEvent(new EnrolleeChangedEvent(id, change, statuses.get(id)));
+                }
+            });
+
+            this.pendingEnrollees.clear();
+        }
+
+        private void flushDependents() {
+
+            if (this.pendingDependents.isEmpty()) {
+                return;
+            }
+
+            BackupService.this.tenantRegistry.runWrite(this.started.getTenant(), () -> {
+
+                Set<Integer> existing = insertNew(this.dependents, this.pendingDependents);
+                this.restoredDependents += this.pendingDependents.size() - existing.size();
+
+                //announced again, as the Enrollees were announced before their Dependents were written
+                Set<String> enrolleeIds = new LinkedHashSet<>();
+                this.pendingDependents.forEach(dependent -> enrolleeIds.add(idString(dependent.get(ENROLLEE_ID))));
+                enrolleeIds.forEach(id -> BackupService.this.eventPublisher.publishEvent(
+                        new EnrolleeChangedEvent(id, ChangeType.MODIFIED, this.restoredStatuses.get(id))));
+            });
+
+            this.pendingDependents.clear();
+        }
+    }
+
+    /**
+     * Helper method to find the name of the field the activation status is stored in, which depends on the
+     * configured field names
+     */
+    private String activationStatusField() {
+        return this.mongoOperations.getConverter().getMappingContext().getRequiredPersistentEntity(Enrollee.class)
+                .getRequiredPersistentProperty("activationStatus").getFieldName();
+    }
+
+    /**
+     * Helper method to read the activation status of a stored Enrollee document
+     *
+     * @return the status, or null if the document has none
+     */
+    private static Boolean activationStatus(RawBsonDocument enrollee, String activationField) {
+
+        BsonValue status = enrollee.get(activationField);
+        return status != null && status.isBoolean() ? status.asBoolean().getValue() : null;
+    }
+
+    /**
+     * Helper method to convert a backed up document to the form documents are stored in now, keeping the document
+     * read when it is already in that form
+     */
+    private RawBsonDocument toStoredForm(RawBsonDocument document) {
+
+        Document decoded = document.decode(DOCUMENT_CODEC);
+        Document converted = this.storageConverter.toConfiguredForm(decoded);
+        return converted.equals(decoded) ? document : new RawBsonDocument(converted, DOCUMENT_CODEC);
+    }
+
+    /**
+     * Helper method to insert documents, leaving those whose Ids already exist as they are
+     *
+     * @return the positions of the documents that were not inserted, as their Ids exist
+     */
+    private static Set<Integer> insertNew(MongoCollection<RawBsonDocument> collection, List<RawBsonDocument> documents) {
+
+        try {
+            collection.insertMany(documents, new InsertManyOptions().ordered(false));
+            return Collections.emptySet();
+        } catch (MongoBulkWriteException e) {
+            Set<Integer> existing = new HashSet<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                existing.add(error.getIndex());
+            }
+            return existing;
+        }
+    }
+
+    /**
+     * Helper method to run tasks on the workers and wait for them all, cancelling the rest if one fails
+     */
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException, InterruptedException {
+
+        List<Future<T>> futures = tasks.stream().map(this.workers::submit).collect(Collectors.toList());
+        List<T> results = new ArrayList<>(futures.size());
+
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void finish(BackupRun started, long start, State state, String error) {
+        started.finish(state, Instant.now().toString(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), error);
+    }
+
+    private void checkNotRunning() {
+
+        if (this.run != null && this.run.getState() == State.RUNNING) {
+            throw new ValidationException("Validation Error: A " + (this.run.getOperation() == Operation.BACKUP ? "Backup" : "Restore") + " Is Already Running");
+        }
+    }
+
+    private BackupManifest readManifest(String tenant, String backupId) {
+
+        Path manifest = TenantRegistry.isValidName(backupId) ? this.directory(tenant).resolve(backupId).resolve(MANIFEST) : null;
+        if (manifest == null || !Files.isRegularFile(manifest)) {
+            throw new ResourceDoesNotExistException("Unable To Restore Backup, Backup Does Not Exist: " + backupId);
+        }
+
+        try {
+            return this.objectMapper.readValue(manifest.toFile(), BackupManifest.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method to delete a partly written backup
+     */
+    private void delete(Path partial) {
+
+        try (Stream<Path> files = Files.walk(partial)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Unable To Delete Partial Backup " + partial + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private MongoCollection<RawBsonDocument> collection(String name) {
+        return this.mongoOperations.getCollection(name).withDocumentClass(RawBsonDocument.class);
+    }
+
+    /**
+     * Helper method to get the directory of a tenant's backups, which is the configured directory for the default tenant
+     */
+    private Path directory(String tenant) {
+        return TenantContext.DEFAULT_TENANT.equals(tenant) ? this.directory : this.directory.resolve(tenant);
+    }
+
+    /**
+     * @return a filter for the Ids of a segment
+     */
+    static Bson range(Segment segment) {
+
+        BsonValue from = segment.getFromId() != null ? idValue(segment.getIdType(), segment.getFromId()) : ID_TYPES.get(segment.getIdType());
+        Bson range = Filters.gte("_id", from);
+        return segment.getToId() != null ? Filters.and(range, Filters.lt("_id", idValue(segment.getIdType(), segment.getToId()))) : range;
+    }
+
+    /**
+     * @return true if a segment may hold Enrollees with Ids from the first Id to the last, both inclusive, where
+     * either may be null for no bound. Segments of numeric Ids are ranges of numbers. Other segments are ranges of
+     * Ids sorted as strings, which sort numeric Ids as numbers only when they have as many digits, so any of them
+     * may hold a range bounded by Ids of different lengths.
+     */
+    static boolean overlaps(Segment segment, String fromId, String toId) {
+
+        if (LONG_ID.equals(segment.getIdType())) {
+            return (toId == null || segment.getFromId() == null || compareIds(segment.getFromId(), toId) <= 0)
+                    && (fromId == null || segment.getToId() == null || compareIds(fromId, segment.getToId()) < 0);
+        }
+        if (fromId == null || toId == null || fromId.length() != toId.length()) {
+            return true;
+        }
+        return (segment.getToId() == null || fromId.compareTo(segment.getToId()) < 0)
+                && (segment.getFromId() == null || segment.getFromId().compareTo(toId) <= 0);
+    }
+
+    /**
+     * @return how two Ids compare, as numbers if they both are and as strings otherwise
+     */
+    static int compareIds(String id, String other) {
+
+        if (StringUtils.isNumeric(id) && StringUtils.isNumeric(other)) {
+            String number = StringUtils.stripStart(id, "0");
+            String otherNumber = StringUtils.stripStart(other, "0");
+            return number.length() != otherNumber.length() ? Integer.compare(number.length(), otherNumber.length()) : number.compareTo(otherNumber);
+        }
+        return id.compareTo(other);
+    }
+
+    private static BsonValue idValue(String idType, String id) {
+
+        if (LONG_ID.equals(idType)) {
+            return new BsonInt64(Long.parseLong(id));
+        }
+        return OBJECT_ID.equals(idType) ? new BsonObjectId(new ObjectId(id)) : new BsonString(id);
+    }
+
+    private static String idString(BsonValue id) {
+
+        if (id.isString()) {
+            return id.asString().getValue();
+        } else if (id.isNumber()) {
+            return String.valueOf(id.asNumber().longValue());
+        }
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.toString();
+    }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Backup and restore of the stored Enrollees for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.backup;
@@ -0,0 +1,137 @@
+package enrollment.common;
+
+/**
+ * A server-side job changing the activation status of the Enrollees matching an ActivationJobRequest, and its progress.
+ * Enrollees are changed in chunks, in Id order, so a cancelled or failed job can be resumed after the last Enrollee
+ * it reached.
+ * @author Michael Kulaga
+ */
+public class ActivationJob {
+
+    /**
+     * The state of an ActivationJob
+     */
+    public enum State {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    private final String id;
+    private final String tenant;
+    private final ActivationJobRequest request;
+    private final String createdAt;
+
+    private volatile State state = State.PENDING;
+    private volatile long matched;
+    private volatile long modified;
+    private volatile int chunks;
+    private volatile String lastEnrolleeId;
+    private volatile String startedAt;
+    private volatile String finishedAt;
+    private volatile String error;
+
+    /**
+     * Constructor for ActivationJob
+     *
+     * @param id the Id of the job
+     * @param tenant the tenant whose Enrollees the job changes
+     * @param request the criteria and the activation status to change to
+     * @param createdAt when the job was created
+     */
+    public ActivationJob(String id, String tenant, ActivationJobRequest request, String createdAt) {
+        this.id = id;
+        this.tenant = tenant;
+        this.request = request;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Records a completed chunk
+     *
+     * @param chunkMatched the number of Enrollees matched in the chunk
+     * @param chunkModified the number of Enrollees changed in the chunk
+     * @param chunkLastEnrolleeId the Id of the last Enrollee in the chunk
+     */
+    public synchronized void chunkCompleted(int chunkMatched, long chunkModified, String chunkLastEnrolleeId) {
+        this.matched += chunkMatched;
+        this.modified += chunkModified;
+        this.chunks++;
+        this.lastEnrolleeId = chunkLastEnrolleeId;
+    }
+
+    /**
+     * @return whether the job has stopped, and will not change any more Enrollees unless it is resumed
+     */
+    public boolean isFinished() {
+        return this.state == State.COMPLETED || this.state == State.CANCELLED || this.state == State.FAILED;
+    }
+
+    //Getters and Setters
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public ActivationJobRequest getRequest() {
+        return request;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getMatched() {
+        return matched;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public String getLastEnrolleeId() {
+        return lastEnrolleeId;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(String startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(String finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
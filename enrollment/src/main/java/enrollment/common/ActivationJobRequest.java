@@ -0,0 +1,79 @@
+package enrollment.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request to change the activation status of every Enrollee matching the given criteria. Every criterion given
+ * must match, and at least one must be given.
+ * @author Michael Kulaga
+ */
+public class ActivationJobRequest {
+
+    private Boolean activationStatus;
+
+    private Boolean currentStatus;
+
+    private String dateOfBirthFrom;
+
+    private String dateOfBirthTo;
+
+    private List<String> ids = new ArrayList<>();
+
+    //Getters and Setters
+
+    /**
+     * @return the activation status to change the matching Enrollees to
+     */
+    public Boolean getActivationStatus() {
+        return activationStatus;
+    }
+
+    public void setActivationStatus(Boolean activationStatus) {
+        this.activationStatus = activationStatus;
+    }
+
+    /**
+     * @return the activation status the Enrollees must currently have, or null for either
+     */
+    public Boolean getCurrentStatus() {
+        return currentStatus;
+    }
+
+    public void setCurrentStatus(Boolean currentStatus) {
+        this.currentStatus = currentStatus;
+    }
+
+    /**
+     * @return the earliest Date of Birth to match, inclusive, or null for no lower bound
+     */
+    public String getDateOfBirthFrom() {
+        return dateOfBirthFrom;
+    }
+
+    public void setDateOfBirthFrom(String dateOfBirthFrom) {
+        this.dateOfBirthFrom = dateOfBirthFrom;
+    }
+
+    /**
+     * @return the latest Date of Birth to match, inclusive, or null for no upper bound
+     */
+    public String getDateOfBirthTo() {
+        return dateOfBirthTo;
+    }
+
+    public void setDateOfBirthTo(String dateOfBirthTo) {
+        this.dateOfBirthTo = dateOfBirthTo;
+    }
+
+    /**
+     * @return the Ids of the Enrollees to match, or an empty list for any Id
+     */
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<String> ids) {
+        this.ids = ids;
+    }
+}
@@ -0,0 +1,103 @@
+package enrollment.common;
+
+/**
+ * A run of the dependent age-out scan: the range of Dates of Birth it covered, and the Dependents it exported
+ * @author Michael Kulaga
+ */
+public class AgeOutRun {
+
+    private String bornAfter;
+    private String bornOnOrBefore;
+    private String startedAt;
+    private String finishedAt;
+    private long dependentsExported;
+    private int batches;
+    private String exportFile;
+
+    /**
+     * Default Constructor for AgeOutRun
+     */
+    public AgeOutRun() {
+    }
+
+    /**
+     * Constructor for AgeOutRun
+     *
+     * @param bornAfter the high-water mark the run started from, or null if it is the first run
+     * @param bornOnOrBefore the Date of Birth on which Dependents reach the age-out threshold, the new high-water mark
+     * @param startedAt when the run started
+     */
+    public AgeOutRun(String bornAfter, String bornOnOrBefore, String startedAt) {
+        this.bornAfter = bornAfter;
+        this.bornOnOrBefore = bornOnOrBefore;
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * Records an exported batch
+     *
+     * @param size the number of Dependents in the batch
+     */
+    public void batchExported(int size) {
+        this.dependentsExported += size;
+        this.batches++;
+    }
+
+    //Getters and Setters
+
+    public String getBornAfter() {
+        return bornAfter;
+    }
+
+    public void setBornAfter(String bornAfter) {
+        this.bornAfter = bornAfter;
+    }
+
+    public String getBornOnOrBefore() {
+        return bornOnOrBefore;
+    }
+
+    public void setBornOnOrBefore(String bornOnOrBefore) {
+        this.bornOnOrBefore = bornOnOrBefore;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(String startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(String finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getDependentsExported() {
+        return dependentsExported;
+    }
+
+    public void setDependentsExported(long dependentsExported) {
+        this.dependentsExported = dependentsExported;
+    }
+
+    public int getBatches() {
+        return batches;
+    }
+
+    public void setBatches(int batches) {
+        this.batches = batches;
+    }
+
+    public String getExportFile() {
+        return exportFile;
+    }
+
+    public void setExportFile(String exportFile) {
+        this.exportFile = exportFile;
+    }
+}
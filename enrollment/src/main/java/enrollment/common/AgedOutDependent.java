@@ -0,0 +1,69 @@
+package enrollment.common;
+
+/**
+ * A Dependent that has reached the age-out threshold, with the Id of its Enrollee
+ * @author Michael Kulaga
+ */
+public class AgedOutDependent {
+
+    private String enrolleeId;
+
+    private String dependentId;
+
+    private String name;
+
+    private String dateOfBirth;
+
+    /**
+     * Default Constructor for AgedOutDependent
+     */
+    public AgedOutDependent() {
+    }
+
+    /**
+     * Constructor for AgedOutDependent
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependent the Dependent
+     */
+    public AgedOutDependent(String enrolleeId, Dependent dependent) {
+        this.enrolleeId = enrolleeId;
+        this.dependentId = dependent.getId();
+        this.name = dependent.getName();
+        this.dateOfBirth = dependent.getDateOfBirth();
+    }
+
+    //Getters and Setters
+
+    public String getEnrolleeId() {
+        return enrolleeId;
+    }
+
+    public void setEnrolleeId(String enrolleeId) {
+        this.enrolleeId = enrolleeId;
+    }
+
+    public String getDependentId() {
+        return dependentId;
+    }
+
+    public void setDependentId(String dependentId) {
+        this.dependentId = dependentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDateOfBirth() {
+        return dateOfBirth;
+    }
+
+    public void setDateOfBirth(String dateOfBirth) {
+        this.dateOfBirth = dateOfBirth;
+    }
+}
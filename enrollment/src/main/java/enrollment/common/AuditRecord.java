@@ -0,0 +1,173 @@
+package enrollment.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An entry of the audit journal: one change to an Enrollee or to one of its Dependents, with the fields it changed
+ * and their values before and after
+ * @author Michael Kulaga
+ */
+public class AuditRecord {
+
+    /**
+     * The kind of change an AuditRecord records
+     */
+    public enum Action {
+        ADDED,
+        MODIFIED,
+        DELETED,
+        //written whole by a bulk load or a restore, without reading what it replaced
+        REPLACED
+    }
+
+    private long sequence;
+    private long timestamp;
+    private String tenant;
+    private String enrolleeId;
+    private String dependentId;
+    private Action action;
+    private List<FieldChange> changes = new ArrayList<>();
+
+    /**
+     * Default Constructor for AuditRecord
+     */
+    public AuditRecord() {
+    }
+
+    /**
+     * Constructor for AuditRecord
+     *
+     * @param timestamp when the change was made, in milliseconds since the epoch
+     * @param tenant the tenant of the Enrollee
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependentId the Id of the Dependent, or null if the change is to the Enrollee
+     * @param action the kind of change
+     * @param changes the fields changed
+     */
+    public AuditRecord(long timestamp, String tenant, String enrolleeId, String dependentId, Action action, List<FieldChange> changes) {
+        this.timestamp = timestamp;
+        this.tenant = tenant;
+        this.enrolleeId = enrolleeId;
+        this.dependentId = dependentId;
+        this.action = action;
+        this.changes = changes;
+    }
+
+    //Getters and Setters
+
+    /**
+     * @return the position of the record in the journal, assigned as it is written
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getEnrolleeId() {
+        return enrolleeId;
+    }
+
+    public void setEnrolleeId(String enrolleeId) {
+        this.enrolleeId = enrolleeId;
+    }
+
+    public String getDependentId() {
+        return dependentId;
+    }
+
+    public void setDependentId(String dependentId) {
+        this.dependentId = dependentId;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public void setAction(Action action) {
+        this.action = action;
+    }
+
+    public List<FieldChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<FieldChange> changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * A field changed by an AuditRecord. The fields of an Enrollee's Dependents are named after the Dependent, as
+     * in "dependents.11.name".
+     */
+    public static class FieldChange {
+
+        private String field;
+        private String before;
+        private String after;
+
+        /**
+         * Default Constructor for FieldChange
+         */
+        public FieldChange() {
+        }
+
+        /**
+         * Constructor for FieldChange
+         *
+         * @param field the name of the field
+         * @param before the value before the change, or null if it had none
+         * @param after the value after the change, or null if it has none
+         */
+        public FieldChange(String field, String before, String after) {
+            this.field = field;
+            this.before = before;
+            this.after = after;
+        }
+
+        //Getters and Setters
+
+        public String getField() {
+            return field;
+        }
+
+        public void setField(String field) {
+            this.field = field;
+        }
+
+        public String getBefore() {
+            return before;
+        }
+
+        public void setBefore(String before) {
+            this.before = before;
+        }
+
+        public String getAfter() {
+            return after;
+        }
+
+        public void setAfter(String after) {
+            this.after = after;
+        }
+    }
+}
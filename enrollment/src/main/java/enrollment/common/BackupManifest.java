@@ -0,0 +1,211 @@
+package enrollment.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The manifest of a backup of one tenant's Enrollees and their external Dependents. The Enrollees are split into
+ * Id ranges, each dumped to its own compressed segment file along with the external Dependents of its Enrollees,
+ * and the manifest records each segment's range, counts and checksum so a restore can verify the segments and
+ * read only those covering the Ids it restores.
+ * @author Michael Kulaga
+ */
+public class BackupManifest {
+
+    private String id;
+    private String tenant;
+    private String createdAt;
+    private String finishedAt;
+    private long enrollees;
+    private long dependents;
+    private long bytes;
+    private List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Default Constructor for BackupManifest
+     */
+    public BackupManifest() {
+    }
+
+    /**
+     * Constructor for BackupManifest
+     *
+     * @param id the Id of the backup
+     * @param tenant the tenant backed up
+     * @param createdAt when the backup started
+     */
+    public BackupManifest(String id, String tenant, String createdAt) {
+        this.id = id;
+        this.tenant = tenant;
+        this.createdAt = createdAt;
+    }
+
+    //Getters and Setters
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(String createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(String finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getEnrollees() {
+        return enrollees;
+    }
+
+    public void setEnrollees(long enrollees) {
+        this.enrollees = enrollees;
+    }
+
+    public long getDependents() {
+        return dependents;
+    }
+
+    public void setDependents(long dependents) {
+        this.dependents = dependents;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public void setSegments(List<Segment> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * A segment file of a backup, holding the Enrollees whose Ids are of its Id type and from its first Id,
+     * inclusive, up to the Id after it, exclusive
+     */
+    public static class Segment {
+
+        private String file;
+        private String idType;
+        private String fromId;
+        private String toId;
+        private long enrollees;
+        private long dependents;
+        private long bytes;
+        private String sha256;
+
+        /**
+         * Default Constructor for Segment
+         */
+        public Segment() {
+        }
+
+        /**
+         * Constructor for Segment
+         *
+         * @param file the name of the segment file
+         * @param idType the BSON type of the Ids in the segment, "string" or "objectId"
+         * @param fromId the first Id of the segment, or null for the lowest Id of its type
+         * @param toId the Id after the segment, or null for the highest Id of its type
+         */
+        public Segment(String file, String idType, String fromId, String toId) {
+            this.file = file;
+            this.idType = idType;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        //Getters and Setters
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public String getIdType() {
+            return idType;
+        }
+
+        public void setIdType(String idType) {
+            this.idType = idType;
+        }
+
+        public String getFromId() {
+            return fromId;
+        }
+
+        public void setFromId(String fromId) {
+            this.fromId = fromId;
+        }
+
+        public String getToId() {
+            return toId;
+        }
+
+        public void setToId(String toId) {
+            this.toId = toId;
+        }
+
+        public long getEnrollees() {
+            return enrollees;
+        }
+
+        public void setEnrollees(long enrollees) {
+            this.enrollees = enrollees;
+        }
+
+        public long getDependents() {
+            return dependents;
+        }
+
+        public void setDependents(long dependents) {
+            this.dependents = dependents;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public void setSha256(String sha256) {
+            this.sha256 = sha256;
+        }
+    }
+}
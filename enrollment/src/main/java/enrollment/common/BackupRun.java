@@ -0,0 +1,167 @@
+package enrollment.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A run of a backup or a restore of one tenant's Enrollees: the segments it has finished, the documents and
+ * bytes it has moved and how fast, counted as its segments finish
+ * @author Michael Kulaga
+ */
+public class BackupRun {
+
+    /**
+     * Whether a BackupRun is a backup or a restore
+     */
+    public enum Operation {
+        BACKUP,
+        RESTORE
+    }
+
+    /**
+     * The state of a BackupRun
+     */
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final Operation operation;
+    private final String backupId;
+    private final String tenant;
+    private final String startedAt;
+    private final int threads;
+
+    private final AtomicLong enrollees = new AtomicLong();
+    private final AtomicLong dependents = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong segmentsCompleted = new AtomicLong();
+
+    private volatile int segments;
+    private volatile State state = State.RUNNING;
+    private volatile String finishedAt;
+    private volatile long elapsedMillis;
+    private volatile String error;
+
+    /**
+     * Constructor for BackupRun
+     *
+     * @param operation whether the run is a backup or a restore
+     * @param backupId the Id of the backup written or restored
+     * @param tenant the tenant backed up or restored to
+     * @param startedAt when the run started
+     * @param threads the number of segments worked on at once
+     */
+    public BackupRun(Operation operation, String backupId, String tenant, String startedAt, int threads) {
+        this.operation = operation;
+        this.backupId = backupId;
+        this.tenant = tenant;
+        this.startedAt = startedAt;
+        this.threads = threads;
+    }
+
+    /**
+     * Records a finished segment
+     *
+     * @param segmentEnrollees the number of Enrollees backed up or restored from the segment
+     * @param segmentDependents the number of Dependents backed up or restored from the segment
+     * @param segmentSkipped the number of Enrollees in the segment not restored, as they already existed
+     * @param segmentBytes the size of the segment file
+     */
+    public void segmentCompleted(long segmentEnrollees, long segmentDependents, long segmentSkipped, long segmentBytes) {
+        this.enrollees.addAndGet(segmentEnrollees);
+        this.dependents.addAndGet(segmentDependents);
+        this.skipped.addAndGet(segmentSkipped);
+        this.bytes.addAndGet(segmentBytes);
+        this.segmentsCompleted.incrementAndGet();
+    }
+
+    /**
+     * Records the end of the run
+     *
+     * @param finalState the state the run ended in
+     * @param finishedTime when the run ended
+     * @param elapsed how long the run took, in milliseconds
+     * @param failure the reason the run failed, or null
+     */
+    public void finish(State finalState, String finishedTime, long elapsed, String failure) {
+        this.finishedAt = finishedTime;
+        this.elapsedMillis = elapsed;
+        this.error = failure;
+        this.state = finalState;
+    }
+
+    /**
+     * @return the Enrollees and Dependents moved per second, once the run has finished
+     */
+    public long getDocumentsPerSecond() {
+        return this.elapsedMillis > 0 ? (this.enrollees.get() + this.dependents.get()) * 1000 / this.elapsedMillis : 0;
+    }
+
+    //Getters and Setters
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getBackupId() {
+        return backupId;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public void setSegments(int segments) {
+        this.segments = segments;
+    }
+
+    public long getSegmentsCompleted() {
+        return segmentsCompleted.get();
+    }
+
+    public long getEnrollees() {
+        return enrollees.get();
+    }
+
+    public long getDependents() {
+        return dependents.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
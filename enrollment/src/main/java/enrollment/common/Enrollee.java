@@ -8,10 +8,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * An Enrollee Object
+ * An Enrollee Object, stored in the Enrollee collection of the current tenant's partition
  * @author Michael Kulaga
  */
-@Document(collection = "enrollees")
+@Document(collection = "#{@tenantRegistry.enrolleeCollection()}")
 public class Enrollee {
 
     @Id
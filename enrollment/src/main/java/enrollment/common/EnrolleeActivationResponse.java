@@ -0,0 +1,44 @@
+package enrollment.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The activation statuses of the Enrollees asked for by an EnrolleeLookupRequest, as the Ids of those that are active,
+ * of those that are not, and of those that were not found, each in the order they were requested
+ * @author Michael Kulaga
+ */
+public class EnrolleeActivationResponse {
+
+    private List<String> activeIds = new ArrayList<>();
+
+    private List<String> inactiveIds = new ArrayList<>();
+
+    private List<String> missingIds = new ArrayList<>();
+
+    //Getters and Setters
+
+    public List<String> getActiveIds() {
+        return activeIds;
+    }
+
+    public void setActiveIds(List<String> activeIds) {
+        this.activeIds = activeIds;
+    }
+
+    public List<String> getInactiveIds() {
+        return inactiveIds;
+    }
+
+    public void setInactiveIds(List<String> inactiveIds) {
+        this.inactiveIds = inactiveIds;
+    }
+
+    public List<String> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<String> missingIds) {
+        this.missingIds = missingIds;
+    }
+}
@@ -0,0 +1,103 @@
+package enrollment.common;
+
+import enrollment.tenancy.TenantContext;
+
+/**
+ * Published by the services after an Enrollee, or one of its Dependents, has been added, modified or deleted,
+ * for the tenant current when it is created. The activation status the Enrollee was written with is carried
+ * along, so listeners filtering on it do not have to read the Enrollee again.
+ * @author Michael Kulaga
+ */
+public class EnrolleeChangedEvent {
+
+    /**
+     * The kind of change made to the Enrollee
+     */
+    public enum ChangeType {
+        ADDED,
+        MODIFIED,
+        DELETED
+    }
+
+    private final String enrolleeId;
+    private final ChangeType changeType;
+    private final String tenant;
+    private final String dependentId;
+    private final ChangeType dependentChangeType;
+    private final Boolean activationStatus;
+
+    /**
+     * Constructor for EnrolleeChangedEvent of a change whose activation status is not known, such as a deletion
+     *
+     * @param enrolleeId the Id of the changed Enrollee
+     * @param changeType the kind of change
+     */
+    public EnrolleeChangedEvent(String enrolleeId, ChangeType changeType) {
+        this(enrolleeId, changeType, null, null, null);
+    }
+
+    /**
+     * Constructor for EnrolleeChangedEvent
+     *
+     * @param enrolleeId the Id of the changed Enrollee
+     * @param changeType the kind of change
+     * @param activationStatus the activation status of the Enrollee after the change
+     */
+    public EnrolleeChangedEvent(String enrolleeId, ChangeType changeType, Boolean activationStatus) {
+        this(enrolleeId, changeType, null, null, activationStatus);
+    }
+
+    /**
+     * Constructor for EnrolleeChangedEvent of a change to one of an Enrollee's Dependents, which modifies the Enrollee
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependentId the Id of the changed Dependent
+     * @param dependentChangeType the kind of change made to the Dependent
+     * @param activationStatus the activation status of the Enrollee
+     */
+    public EnrolleeChangedEvent(String enrolleeId, String dependentId, ChangeType dependentChangeType, Boolean activationStatus) {
+        this(enrolleeId, ChangeType.MODIFIED, dependentId, dependentChangeType, activationStatus);
+    }
+
+    private EnrolleeChangedEvent(String enrolleeId, ChangeType changeType, String dependentId, ChangeType dependentChangeType,
+                                 Boolean activationStatus) {
+        this.enrolleeId = enrolleeId;
+        this.changeType = changeType;
+        this.tenant = TenantContext.current();
+        this.dependentId = dependentId;
+        this.dependentChangeType = dependentChangeType;
+        this.activationStatus = activationStatus;
+    }
+
+    //Getters
+
+    public String getEnrolleeId() {
+        return enrolleeId;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * @return the Id of the changed Dependent, or null if the change was not made through one Dependent
+     */
+    public String getDependentId() {
+        return dependentId;
+    }
+
+    public ChangeType getDependentChangeType() {
+        return dependentChangeType;
+    }
+
+    /**
+     * @return the activation status of the Enrollee after the change, or null if it is not known
+     */
+    public Boolean getActivationStatus() {
+        return activationStatus;
+    }
+}
@@ -0,0 +1,23 @@
+package enrollment.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request to retrieve many Enrollees by Id at once
+ * @author Michael Kulaga
+ */
+public class EnrolleeLookupRequest {
+
+    private List<String> ids = new ArrayList<>();
+
+    //Getters and Setters
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<String> ids) {
+        this.ids = ids;
+    }
+}
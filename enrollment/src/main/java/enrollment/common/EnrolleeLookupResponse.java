@@ -0,0 +1,33 @@
+package enrollment.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Enrollees found for an EnrolleeLookupRequest, in the order they were requested, and the Ids that were not found
+ * @author Michael Kulaga
+ */
+public class EnrolleeLookupResponse {
+
+    private List<Enrollee> enrollees = new ArrayList<>();
+
+    private List<String> missingIds = new ArrayList<>();
+
+    //Getters and Setters
+
+    public List<Enrollee> getEnrollees() {
+        return enrollees;
+    }
+
+    public void setEnrollees(List<Enrollee> enrollees) {
+        this.enrollees = enrollees;
+    }
+
+    public List<String> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<String> missingIds) {
+        this.missingIds = missingIds;
+    }
+}
@@ -0,0 +1,197 @@
+package enrollment.common;
+
+import enrollment.exceptions.ResourceAlreadyExistsException;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A field-level change to an Enrollee and its Dependents, translated from a JSON Merge Patch (RFC 7396).
+ * Fields are named by their Enrollee and Dependent property names.
+ * @author Michael Kulaga
+ */
+public class EnrolleePatch {
+
+    private final Map<String, Object> setFields = new LinkedHashMap<>();
+    private final Set<String> unsetFields = new LinkedHashSet<>();
+    private final Map<String, Map<String, Object>> dependentFields = new LinkedHashMap<>();
+    private final List<Dependent> addedDependents = new ArrayList<>();
+    private final Set<String> removedDependentIds = new LinkedHashSet<>();
+    private List<Dependent> replacedDependents;
+
+    /**
+     * Sets an Enrollee field
+     *
+     * @param field the property name of the field
+     * @param value the new value
+     */
+    public void set(String field, Object value) {
+        this.unsetFields.remove(field);
+        this.setFields.put(field, value);
+    }
+
+    /**
+     * Removes an optional Enrollee field
+     *
+     * @param field the property name of the field
+     */
+    public void unset(String field) {
+        this.setFields.remove(field);
+        this.unsetFields.add(field);
+    }
+
+    /**
+     * Sets a field of an existing Dependent
+     *
+     * @param dependentId the Id of the Dependent
+     * @param field the property name of the field
+     * @param value the new value
+     */
+    public void setDependentField(String dependentId, String field, Object value) {
+        this.dependentFields.computeIfAbsent(dependentId, id -> new LinkedHashMap<>()).put(field, value);
+    }
+
+    /**
+     * Adds a new Dependent
+     *
+     * @param dependent the Dependent to add
+     */
+    public void addDependent(Dependent dependent) {
+        this.addedDependents.add(dependent);
+    }
+
+    /**
+     * Removes an existing Dependent
+     *
+     * @param dependentId the Id of the Dependent to remove
+     */
+    public void removeDependent(String dependentId) {
+        this.removedDependentIds.add(dependentId);
+    }
+
+    /**
+     * Replaces all of the Dependents, for a patch that supplies the whole Dependent array
+     *
+     * @param dependents the new Dependents
+     */
+    public void replaceDependents(List<Dependent> dependents) {
+        this.replacedDependents = dependents;
+    }
+
+    /**
+     * @return true when applying the patch would not change anything
+     */
+    public boolean isEmpty() {
+        return this.setFields.isEmpty() && this.unsetFields.isEmpty() && this.dependentFields.isEmpty()
+                && this.addedDependents.isEmpty() && this.removedDependentIds.isEmpty() && this.replacedDependents == null;
+    }
+
+    /**
+     * Applies the patch to a copy of an Enrollee, as the storage engines apply it to the stored Enrollee
+     *
+     * @param enrollee the Enrollee to patch, which is left as it is
+     * @return the patched copy of the Enrollee
+     * @throws ResourceAlreadyExistsException if the Enrollee already has one of the added Dependents
+     */
+    public Enrollee applyTo(Enrollee enrollee) {
+
+        Enrollee patched = new Enrollee();
+        patched.setId(enrollee.getId());
+        patched.setName(enrollee.getName());
+        patched.setDateOfBirth(enrollee.getDateOfBirth());
+        patched.setActivationStatus(enrollee.isActivationStatus());
+        patched.setPhoneNumber(enrollee.getPhoneNumber());
+
+        List<Dependent> dependents = new ArrayList<>();
+        for (Dependent dependent : enrollee.getDependents()) {
+            Dependent copy = new Dependent();
+            copy.setId(dependent.getId());
+            copy.setName(dependent.getName());
+            copy.setDateOfBirth(dependent.getDateOfBirth());
+            dependents.add(copy);
+        }
+        patched.setDependents(dependents);
+
+        BeanWrapper enrolleeWrapper = new BeanWrapperImpl(patched);
+        this.setFields.forEach(enrolleeWrapper::setPropertyValue);
+        this.unsetFields.forEach(field -> enrolleeWrapper.setPropertyValue(field, null));
+
+        this.applyToDependents(enrollee.getId(), dependents);
+        return patched;
+    }
+
+    /**
+     * Applies the Dependent changes of the patch, in place, to the Dependents of an Enrollee: replacing them,
+     * changing the fields of those that exist, then adding and removing them
+     *
+     * @param enrolleeId the Id of the Enrollee, for error messages
+     * @param dependents the Dependents to patch
+     * @throws ResourceAlreadyExistsException if one of the added Dependents already exists
+     */
+    public void applyToDependents(String enrolleeId, List<Dependent> dependents) {
+
+        Map<String, Dependent> dependentsById = new HashMap<>();
+        for (Dependent dependent : dependents) {
+            dependentsById.put(dependent.getId(), dependent);
+        }
+
+        for (Dependent added : this.addedDependents) {
+            if (dependentsById.containsKey(added.getId())) {
+                throw new ResourceAlreadyExistsException("Unable To Patch Enrollee, Dependent Already Exists For Id: "
+                        + added.getId() + " Of Enrollee: " + enrolleeId);
+            }
+        }
+
+        if (this.replacedDependents != null) {
+            dependents.clear();
+            dependents.addAll(this.replacedDependents);
+        }
+
+        for (Map.Entry<String, Map<String, Object>> fields : this.dependentFields.entrySet()) {
+            Dependent dependent = dependentsById.get(fields.getKey());
+            if (dependent != null) {
+                fields.getValue().forEach(new BeanWrapperImpl(dependent)::setPropertyValue);
+            }
+        }
+
+        dependents.addAll(this.addedDependents);
+
+        if (!this.removedDependentIds.isEmpty()) {
+            dependents.removeIf(dependent -> this.removedDependentIds.contains(dependent.getId()));
+        }
+    }
+
+    //Getters
+
+    public Map<String, Object> getSetFields() {
+        return Collections.unmodifiableMap(this.setFields);
+    }
+
+    public Set<String> getUnsetFields() {
+        return Collections.unmodifiableSet(this.unsetFields);
+    }
+
+    public Map<String, Map<String, Object>> getDependentFields() {
+        return Collections.unmodifiableMap(this.dependentFields);
+    }
+
+    public List<Dependent> getAddedDependents() {
+        return Collections.unmodifiableList(this.addedDependents);
+    }
+
+    public Set<String> getRemovedDependentIds() {
+        return Collections.unmodifiableSet(this.removedDependentIds);
+    }
+
+    public List<Dependent> getReplacedDependents() {
+        return this.replacedDependents;
+    }
+}
@@ -0,0 +1,68 @@
+package enrollment.common;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+
+/**
+ * A change pushed to the subscribers of the Enrollee event stream: the Enrollee, or the Dependent of it, that was
+ * added, modified or deleted. Subscribers read the Enrollee again to see what it has become.
+ * @author Michael Kulaga
+ */
+public class EnrolleeStreamEvent {
+
+    private final long id;
+    private final String tenant;
+    private final String enrolleeId;
+    private final String dependentId;
+    private final ChangeType changeType;
+    private final long timestamp;
+
+    /**
+     * Constructor for EnrolleeStreamEvent
+     *
+     * @param id the position of the event in the stream, sent as its SSE id
+     * @param changed the EnrolleeChangedEvent the event was made from
+     * @param timestamp when the event was made, in milliseconds since the epoch
+     */
+    public EnrolleeStreamEvent(long id, EnrolleeChangedEvent changed, long timestamp) {
+        this.id = id;
+        this.tenant = changed.getTenant();
+        this.enrolleeId = changed.getEnrolleeId();
+        this.dependentId = changed.getDependentId();
+        this.changeType = changed.getDependentId() != null ? changed.getDependentChangeType() : changed.getChangeType();
+        this.timestamp = timestamp;
+    }
+
+    //Getters
+
+    public long getId() {
+        return id;
+    }
+
+    @JsonIgnore
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getEnrolleeId() {
+        return enrolleeId;
+    }
+
+    /**
+     * @return the Id of the changed Dependent, or null if the change was to the Enrollee
+     */
+    public String getDependentId() {
+        return dependentId;
+    }
+
+    /**
+     * @return the kind of change made to the Dependent if there is one, otherwise to the Enrollee
+     */
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,202 @@
+package enrollment.common;
+
+/**
+ * A run of the carrier file ingestion: the rows it read, the Enrollees and Dependents it wrote and the rows it
+ * rejected, counted from the start of the file, including any earlier runs it resumed from, and how fast this
+ * run read rows and the most heap it used
+ * @author Michael Kulaga
+ */
+public class IngestionRun {
+
+    /**
+     * The state of an IngestionRun
+     */
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String file;
+    private String format;
+    private String tenant;
+    private String startedAt;
+    private String finishedAt;
+    private State state = State.RUNNING;
+    private long resumedFromLine;
+    private long rowsRead;
+    private long enrolleesWritten;
+    private long dependentsWritten;
+    private long rowsRejected;
+    private long elapsedMillis;
+    private long rowsPerSecond;
+    private long peakHeapMegabytes;
+    private String rejectsFile;
+    private String error;
+
+    /**
+     * Default Constructor for IngestionRun
+     */
+    public IngestionRun() {
+    }
+
+    /**
+     * Constructor for IngestionRun
+     *
+     * @param file the file being ingested
+     * @param format the format of the file
+     * @param tenant the tenant the file is ingested into
+     * @param startedAt when the run started
+     */
+    public IngestionRun(String file, String format, String tenant, String startedAt) {
+        this.file = file;
+        this.format = format;
+        this.tenant = tenant;
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * Records a written batch
+     *
+     * @param rows the number of rows read for the batch
+     * @param enrollees the number of Enrollees written
+     * @param dependents the number of Dependents written
+     * @param rejected the number of rows rejected
+     */
+    public synchronized void batchWritten(long rows, long enrollees, long dependents, long rejected) {
+        this.rowsRead += rows;
+        this.enrolleesWritten += enrollees;
+        this.dependentsWritten += dependents;
+        this.rowsRejected += rejected;
+    }
+
+    //Getters and Setters
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(String startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(String finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getResumedFromLine() {
+        return resumedFromLine;
+    }
+
+    public void setResumedFromLine(long resumedFromLine) {
+        this.resumedFromLine = resumedFromLine;
+    }
+
+    public synchronized long getRowsRead() {
+        return rowsRead;
+    }
+
+    public synchronized void setRowsRead(long rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public synchronized long getEnrolleesWritten() {
+        return enrolleesWritten;
+    }
+
+    public synchronized void setEnrolleesWritten(long enrolleesWritten) {
+        this.enrolleesWritten = enrolleesWritten;
+    }
+
+    public synchronized long getDependentsWritten() {
+        return dependentsWritten;
+    }
+
+    public synchronized void setDependentsWritten(long dependentsWritten) {
+        this.dependentsWritten = dependentsWritten;
+    }
+
+    public synchronized long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public synchronized void setRowsRejected(long rowsRejected) {
+        this.rowsRejected = rowsRejected;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(long rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public long getPeakHeapMegabytes() {
+        return peakHeapMegabytes;
+    }
+
+    public void setPeakHeapMegabytes(long peakHeapMegabytes) {
+        this.peakHeapMegabytes = peakHeapMegabytes;
+    }
+
+    public String getRejectsFile() {
+        return rejectsFile;
+    }
+
+    public void setRejectsFile(String rejectsFile) {
+        this.rejectsFile = rejectsFile;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
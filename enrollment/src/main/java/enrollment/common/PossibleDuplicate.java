@@ -0,0 +1,47 @@
+package enrollment.common;
+
+/**
+ * An Enrollee that may be a duplicate of another: born on the same day, with a similar name
+ * @author Michael Kulaga
+ */
+public class PossibleDuplicate {
+
+    private String enrolleeId;
+
+    private double similarity;
+
+    /**
+     * Default Constructor for PossibleDuplicate
+     */
+    public PossibleDuplicate() {
+    }
+
+    /**
+     * Constructor for PossibleDuplicate
+     *
+     * @param enrolleeId the Id of the possibly duplicate Enrollee
+     * @param similarity how similar the names are, from 0 to 1
+     */
+    public PossibleDuplicate(String enrolleeId, double similarity) {
+        this.enrolleeId = enrolleeId;
+        this.similarity = similarity;
+    }
+
+    //Getters and Setters
+
+    public String getEnrolleeId() {
+        return enrolleeId;
+    }
+
+    public void setEnrolleeId(String enrolleeId) {
+        this.enrolleeId = enrolleeId;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public void setSimilarity(double similarity) {
+        this.similarity = similarity;
+    }
+}
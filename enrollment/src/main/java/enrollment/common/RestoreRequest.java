@@ -0,0 +1,67 @@
+package enrollment.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A request to restore the Enrollees of a backup, along with their external Dependents. Without criteria every
+ * Enrollee is restored; with them, only the Enrollees within the Id range and matching every filter field are.
+ * @author Michael Kulaga
+ */
+public class RestoreRequest {
+
+    private String fromId;
+
+    private String toId;
+
+    private Map<String, Object> filter = new HashMap<>();
+
+    private boolean replaceExisting;
+
+    //Getters and Setters
+
+    /**
+     * @return the first Id to restore, inclusive, or null to start from the lowest Id
+     */
+    public String getFromId() {
+        return fromId;
+    }
+
+    public void setFromId(String fromId) {
+        this.fromId = fromId;
+    }
+
+    /**
+     * @return the last Id to restore, inclusive, or null to restore up to the highest Id
+     */
+    public String getToId() {
+        return toId;
+    }
+
+    public void setToId(String toId) {
+        this.toId = toId;
+    }
+
+    /**
+     * @return the Enrollee fields, by property name, and the values they must have to be restored
+     */
+    public Map<String, Object> getFilter() {
+        return filter;
+    }
+
+    public void setFilter(Map<String, Object> filter) {
+        this.filter = filter != null ? filter : new HashMap<>();
+    }
+
+    /**
+     * @return true to replace Enrollees that already exist, and their Dependents, with the backed up ones, false to
+     * leave them as they are
+     */
+    public boolean isReplaceExisting() {
+        return replaceExisting;
+    }
+
+    public void setReplaceExisting(boolean replaceExisting) {
+        this.replaceExisting = replaceExisting;
+    }
+}
@@ -0,0 +1,214 @@
+package enrollment.common;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A background conversion of the stored documents of every tenant to the configured document form, and the bytes
+ * it saved. Each collection is converted in batches, in Id order, and its progress is recorded after every batch,
+ * so a stopped conversion resumes after the last document it reached. The size of each collection's indexes and
+ * the time taken to look up a document by Id are measured before and after, to compare the two forms.
+ * @author Michael Kulaga
+ */
+public class StorageConversion {
+
+    /**
+     * The state of a StorageConversion
+     */
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final boolean compact;
+    private final boolean numericIds;
+    private final String startedAt;
+    private final List<CollectionConversion> collections = new CopyOnWriteArrayList<>();
+
+    private volatile State state = State.RUNNING;
+    private volatile String finishedAt;
+    private volatile String error;
+
+    /**
+     * Constructor for StorageConversion
+     *
+     * @param compact true if documents are converted to the compact form, false to the expanded form
+     * @param numericIds true if Ids are converted to 64-bit integers, false to strings
+     * @param startedAt when the conversion started
+     */
+    public StorageConversion(boolean compact, boolean numericIds, String startedAt) {
+        this.compact = compact;
+        this.numericIds = numericIds;
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * Records the end of the conversion
+     *
+     * @param finalState the state the conversion ended in
+     * @param finishedTime when the conversion ended
+     * @param failure the reason the conversion failed, or null
+     */
+    public void finish(State finalState, String finishedTime, String failure) {
+        this.finishedAt = finishedTime;
+        this.error = failure;
+        this.state = finalState;
+    }
+
+    //Getters
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public boolean isNumericIds() {
+        return numericIds;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public List<CollectionConversion> getCollections() {
+        return collections;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * The progress of converting one collection, including the batches converted before a restart
+     */
+    public static class CollectionConversion {
+
+        private final String collection;
+
+        private volatile long documentsScanned;
+        private volatile long documentsConverted;
+        private volatile long bytesBefore;
+        private volatile long bytesAfter;
+        private volatile String lastId;
+        private volatile boolean completed;
+        private volatile long indexBytesBefore = -1;
+        private volatile long indexBytesAfter = -1;
+        private volatile double lookupMicrosBefore = -1;
+        private volatile double lookupMicrosAfter = -1;
+
+        /**
+         * Constructor for CollectionConversion
+         *
+         * @param collection the name of the collection
+         */
+        public CollectionConversion(String collection) {
+            this.collection = collection;
+        }
+
+        /**
+         * Records a converted batch
+         *
+         * @param scanned the number of documents read
+         * @param converted the number of documents rewritten
+         * @param before the BSON size of the rewritten documents before they were converted
+         * @param after the BSON size of the rewritten documents after they were converted
+         * @param batchLastId the Id of the last document in the batch
+         */
+        public synchronized void batchConverted(long scanned, long converted, long before, long after, String batchLastId) {
+            this.documentsScanned += scanned;
+            this.documentsConverted += converted;
+            this.bytesBefore += before;
+            this.bytesAfter += after;
+            this.lastId = batchLastId;
+        }
+
+        /**
+         * Records the size of the collection's indexes and the average time to look up a document by Id, measured
+         * before the collection was converted
+         *
+         * @param indexBytes the total size of the indexes, or -1 if unknown
+         * @param lookupMicros the average lookup time in microseconds, or -1 if there was nothing to look up
+         */
+        public void measuredBefore(long indexBytes, double lookupMicros) {
+            this.indexBytesBefore = indexBytes;
+            this.lookupMicrosBefore = lookupMicros;
+        }
+
+        /**
+         * Records the size of the collection's indexes and the average time to look up a document by Id, measured
+         * once the collection was converted and its indexes rebuilt
+         *
+         * @param indexBytes the total size of the indexes, or -1 if unknown
+         * @param lookupMicros the average lookup time in microseconds, or -1 if there was nothing to look up
+         */
+        public void measuredAfter(long indexBytes, double lookupMicros) {
+            this.indexBytesAfter = indexBytes;
+            this.lookupMicrosAfter = lookupMicros;
+        }
+
+        /**
+         * @return the average number of bytes saved by each rewritten document, negative when expanding
+         */
+        public long getBytesSavedPerDocument() {
+            return this.documentsConverted > 0 ? (this.bytesBefore - this.bytesAfter) / this.documentsConverted : 0;
+        }
+
+        //Getters and Setters
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public long getDocumentsScanned() {
+            return documentsScanned;
+        }
+
+        public long getDocumentsConverted() {
+            return documentsConverted;
+        }
+
+        public long getBytesBefore() {
+            return bytesBefore;
+        }
+
+        public long getBytesAfter() {
+            return bytesAfter;
+        }
+
+        public String getLastId() {
+            return lastId;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        public long getIndexBytesBefore() {
+            return indexBytesBefore;
+        }
+
+        public long getIndexBytesAfter() {
+            return indexBytesAfter;
+        }
+
+        public double getLookupMicrosBefore() {
+            return lookupMicrosBefore;
+        }
+
+        public double getLookupMicrosAfter() {
+            return lookupMicrosAfter;
+        }
+
+        public void setCompleted(boolean completed) {
+            this.completed = completed;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package enrollment.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Guards the /admin endpoints, with or without a tenant path prefix, behind a bearer token. Until a token is set
+ * the admin endpoints are refused altogether. The readiness probe stays open, as load balancers call it without
+ * credentials.
+ * @author Michael Kulaga
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AdminAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final Pattern ADMIN_PATH = Pattern.compile("^(/tenants/[^/]+)?/admin(/.*)?$");
+    private static final Pattern READINESS_PATH = Pattern.compile("^(/tenants/[^/]+)?/admin/readiness/?$");
+    private static final String BEARER = "Bearer ";
+
+    private final ObjectMapper objectMapper;
+    private final byte[] token;
+
+    /**
+     * Constructor for AdminAuthenticationFilter
+     *
+     * @param objectMapper the ObjectMapper to write errors with
+     * @param token the bearer token admin requests must carry, or empty to refuse every admin request
+     */
+    public AdminAuthenticationFilter(ObjectMapper objectMapper,
+                                     @Value("${enrollment.admin.token:}") String token) {
+        this.objectMapper = objectMapper;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !ADMIN_PATH.matcher(path).matches() || READINESS_PATH.matcher(path).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        if (this.token.length == 0) {
+            this.writeError(response, HttpStatus.FORBIDDEN, "Admin Endpoints Are Disabled Until enrollment.admin.token Is Set");
+            return;
+        }
+
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+
+        //compared in constant time, so the token cannot be guessed from how long a refusal takes
+        if (authorization == null || !authorization.startsWith(BEARER)
+                || !MessageDigest.isEqual(this.token, authorization.substring(BEARER.length()).getBytes(StandardCharsets.UTF_8))) {
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            this.writeError(response, HttpStatus.UNAUTHORIZED, "Admin Endpoints Require A Valid Bearer Token");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Helper method to write an error in the shape of the DefaultExceptionHandler's errors
+     */
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+
+        Map<String, String> error = new LinkedHashMap<>();
+        error.put("exception", status.getReasonPhrase());
+        error.put("message", message);
+
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        this.objectMapper.writeValue(response.getOutputStream(), error);
+    }
+
+}
@@ -1,8 +1,12 @@
 package enrollment.configuration;
 
+import enrollment.exceptions.ResourceAlreadyExistsException;
+import enrollment.exceptions.StorageUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
@@ -33,4 +37,39 @@ public class DefaultExceptionHandler {
 
     }
 
+    /**
+     * Exception handler for ResourceAlreadyExistsExceptions, such as adding an Enrollee or Dependent that exists
+     * @param e the ResourceAlreadyExistsException that was thrown
+     * @return the ErrorInformationResponse object that was thrown
+     */
+    @ExceptionHandler(ResourceAlreadyExistsException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ErrorInformationResponse resourceAlreadyExistsHandler(ResourceAlreadyExistsException e) {
+
+        if (LOGGER.isWarnEnabled()) {
+            LOGGER.warn(e.getLocalizedMessage());
+        }
+
+        return new ErrorInformationResponse(HttpStatus.CONFLICT.getReasonPhrase(), e.getMessage());
+
+    }
+
+    /**
+     * Exception handler for StorageUnavailableExceptions, telling the consumer when to retry
+     * @param e the StorageUnavailableException that was thrown
+     * @return the ErrorInformationResponse object that was thrown, with a Retry-After header
+     */
+    @ExceptionHandler(StorageUnavailableException.class)
+    public ResponseEntity<ErrorInformationResponse> storageUnavailableHandler(StorageUnavailableException e) {
+
+        if (LOGGER.isWarnEnabled()) {
+            LOGGER.warn(e.getLocalizedMessage());
+        }
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ErrorInformationResponse(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase(), e.getMessage()));
+
+    }
+
 }
@@ -0,0 +1,29 @@
+package enrollment.configuration;
+
+/**
+ * The order the ApplicationReadyEvent listeners that prepare the application run in. Spring Boot only reports the
+ * application as accepting traffic once every listener has returned, and listeners without an order run after
+ * these.
+ * @author Michael Kulaga
+ */
+public final class StartupOrder {
+
+    /**
+     * The in-memory indexes are rebuilt first, so nothing is answered from an index that is still empty
+     */
+    public static final int INDEX_REBUILD = 0;
+
+    /**
+     * The warm-up then sends its requests through the rebuilt indexes
+     */
+    public static final int WARM_UP = 100;
+
+    /**
+     * The gRPC server starts serving last, as it is not held back by the readiness of the application
+     */
+    public static final int SERVE = 200;
+
+    private StartupOrder() {
+    }
+
+}
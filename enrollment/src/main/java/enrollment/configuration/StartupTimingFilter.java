@@ -0,0 +1,60 @@
+package enrollment.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reports how long after the JVM started the application became ready and served its first request, so the
+ * default and fast-startup modes can be compared.
+ * @author Michael Kulaga
+ */
+@Component
+public class StartupTimingFilter extends OncePerRequestFilter {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(StartupTimingFilter.class);
+
+    private final AtomicBoolean firstRequest = new AtomicBoolean(true);
+
+    /**
+     * Reports the time to ready
+     *
+     * @param event the ApplicationReadyEvent
+     */
+    @EventListener
+    public void applicationReady(ApplicationReadyEvent event) {
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Application Ready In " + uptimeMillis() + " ms");
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        filterChain.doFilter(request, response);
+
+        if (this.firstRequest.get() && this.firstRequest.compareAndSet(true, false) && LOGGER.isInfoEnabled()) {
+            LOGGER.info("First Request Served In " + uptimeMillis() + " ms");
+        }
+    }
+
+    /**
+     * Helper method to read the milliseconds since the JVM started
+     */
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+}
@@ -0,0 +1,91 @@
+package enrollment.controller;
+
+import enrollment.common.ActivationJob;
+import enrollment.common.ActivationJobRequest;
+import enrollment.service.ActivationJobService;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controller for jobs changing the activation status of many Enrollees at once
+ * @author Michael Kulaga
+ */
+@RestController
+public class ActivationJobController {
+
+    public final ActivationJobService activationJobService;
+
+    /**
+     * Constructor for ActivationJobController
+     *
+     * @param activationJobService the ActivationJobService to use
+     */
+    public ActivationJobController(ActivationJobService activationJobService) {
+        this.activationJobService = activationJobService;
+    }
+
+    /**
+     * Endpoint to start a job changing the activation status of every Enrollee matching the criteria
+     *
+     * @param request the criteria and the activation status to change to
+     * @return the started job, to poll for progress
+     */
+    @PostMapping("/activation-jobs")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @ApiResponse(description = "Start an Activation Job")
+    public ActivationJob startActivationJob(@RequestBody ActivationJobRequest request) {
+        return this.activationJobService.startJob(request);
+    }
+
+    /**
+     * Endpoint to retrieve all Activation Jobs still kept
+     *
+     * @return the jobs, oldest first
+     */
+    @GetMapping("/activation-jobs")
+    @ApiResponse(description = "Retrieve all Activation Jobs")
+    public List<ActivationJob> getActivationJobs() {
+        return this.activationJobService.getJobs();
+    }
+
+    /**
+     * Endpoint to retrieve the progress of an Activation Job
+     *
+     * @param jobId the Id of the job
+     * @return the job
+     */
+    @GetMapping("/activation-jobs/{jobId}")
+    @ApiResponse(description = "Retrieve an Activation Job by Id")
+    public ActivationJob getActivationJob(@PathVariable("jobId") String jobId) {
+        return this.activationJobService.getJob(jobId);
+    }
+
+    /**
+     * Endpoint to cancel an Activation Job
+     *
+     * @param jobId the Id of the job
+     * @return the cancelled job
+     */
+    @DeleteMapping("/activation-jobs/{jobId}")
+    @ApiResponse(description = "Cancel an Activation Job")
+    public ActivationJob cancelActivationJob(@PathVariable("jobId") String jobId) {
+        return this.activationJobService.cancelJob(jobId);
+    }
+
+    /**
+     * Endpoint to resume a cancelled or failed Activation Job after the last Enrollee it reached
+     *
+     * @param jobId the Id of the job
+     * @return the resumed job
+     */
+    @PostMapping("/activation-jobs/{jobId}/resume")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @ApiResponse(description = "Resume an Activation Job")
+    public ActivationJob resumeActivationJob(@PathVariable("jobId") String jobId) {
+        return this.activationJobService.resumeJob(jobId);
+    }
+
+}
@@ -0,0 +1,298 @@
+package enrollment.controller;
+
+import enrollment.audit.AuditJournal;
+import enrollment.audit.AuditStatus;
+import enrollment.backup.BackupService;
+import enrollment.common.AgeOutRun;
+import enrollment.common.BackupManifest;
+import enrollment.common.BackupRun;
+import enrollment.common.RestoreRequest;
+import enrollment.common.StorageConversion;
+import enrollment.profiling.SlowRequest;
+import enrollment.profiling.SlowRequestLog;
+import enrollment.repository.CompactStorageConverter;
+import enrollment.repository.TenantPartitionMover;
+import enrollment.resilience.CircuitBreakerStatus;
+import enrollment.resilience.StorageCircuitBreaker;
+import enrollment.service.AgeOutService;
+import enrollment.tenancy.TenantMove;
+import enrollment.tenancy.TenantRegistry;
+import enrollment.tenancy.TenantStatus;
+import enrollment.warmup.StartupWarmUp;
+import enrollment.warmup.WarmUpStatus;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Controller for the operational endpoints of the Enrollment Application
+ * @author Michael Kulaga
+ */
+@RestController
+public class AdminController {
+
+    public final SlowRequestLog slowRequestLog;
+    public final AgeOutService ageOutService;
+    public final TenantRegistry tenantRegistry;
+    public final ObjectProvider<TenantPartitionMover> partitionMover;
+    public final ObjectProvider<CompactStorageConverter> storageConverter;
+    public final ObjectProvider<StorageCircuitBreaker> circuitBreaker;
+    public final ObjectProvider<BackupService> backupService;
+    public final AuditJournal auditJournal;
+    public final StartupWarmUp startupWarmUp;
+
+    /**
+     * Constructor for AdminController
+     *
+     * @param slowRequestLog the SlowRequestLog of recent slow requests
+     * @param ageOutService the AgeOutService to run the dependent age-out scan with
+     * @param tenantRegistry the TenantRegistry of the tenants
+     * @param partitionMover the TenantPartitionMover to move tenants with, absent with the in-memory storage engine
+     * @param storageConverter the CompactStorageConverter to convert stored documents with, absent with the
+     *                         in-memory storage engine
+     * @param circuitBreaker the StorageCircuitBreaker guarding MongoDb, absent with the in-memory storage engine
+     * @param backupService the BackupService to back up and restore Enrollees with, absent with the in-memory storage engine
+     * @param auditJournal the AuditJournal of changes to Enrollees
+     * @param startupWarmUp the StartupWarmUp that gates the readiness of the application
+     */
+    public AdminController(SlowRequestLog slowRequestLog,
+                           AgeOutService ageOutService,
+                           TenantRegistry tenantRegistry,
+                           ObjectProvider<TenantPartitionMover> partitionMover,
+                           ObjectProvider<CompactStorageConverter> storageConverter,
+                           ObjectProvider<StorageCircuitBreaker> circuitBreaker,
+                           ObjectProvider<BackupService> backupService,
+                           AuditJournal auditJournal,
+                           StartupWarmUp startupWarmUp) {
+        this.slowRequestLog = slowRequestLog;
+        this.ageOutService = ageOutService;
+        this.tenantRegistry = tenantRegistry;
+        this.partitionMover = partitionMover;
+        this.storageConverter = storageConverter;
+        this.circuitBreaker = circuitBreaker;
+        this.backupService = backupService;
+        this.auditJournal = auditJournal;
+        this.startupWarmUp = startupWarmUp;
+    }
+
+    /**
+     * Endpoint to retrieve the most recent slow requests, with where their time went and the Mongo commands they issued
+     *
+     * @return the slow requests, newest first
+     */
+    @GetMapping("/admin/slow-requests")
+    @ApiResponse(description = "Retrieve recent slow requests")
+    public List<SlowRequest> getSlowRequests() {
+        return this.slowRequestLog.recent();
+    }
+
+    /**
+     * Endpoint to forget the slow requests kept so far
+     */
+    @DeleteMapping("/admin/slow-requests")
+    @ApiResponse(description = "Clear recent slow requests")
+    public void clearSlowRequests() {
+
+        this.slowRequestLog.clear();
+
+    }
+
+    /**
+     * Endpoint to retrieve the last dependent age-out scan run since startup
+     *
+     * @return the last run, or nothing if there has not been one
+     */
+    @GetMapping("/admin/age-out")
+    @ApiResponse(description = "Retrieve the last dependent age-out scan")
+    public AgeOutRun getLastAgeOutRun() {
+        return this.ageOutService.getLastRun();
+    }
+
+    /**
+     * Endpoint to run the dependent age-out scan now, rather than waiting for its schedule
+     *
+     * @return the completed run
+     */
+    @PostMapping("/admin/age-out")
+    @ApiResponse(description = "Run the dependent age-out scan")
+    public AgeOutRun runAgeOut() {
+        return this.ageOutService.run();
+    }
+
+    /**
+     * Endpoint to retrieve every tenant, the partition it is stored in, its request metrics and its latest move
+     *
+     * @return the tenants, the default tenant first
+     */
+    @GetMapping("/admin/tenants")
+    @ApiResponse(description = "Retrieve the tenants and their partitions")
+    public List<TenantStatus> getTenants() {
+
+        TenantPartitionMover mover = this.partitionMover.getIfAvailable();
+        List<TenantStatus> tenants = new ArrayList<>();
+
+        for (String tenant : this.tenantRegistry.getTenants()) {
+            tenants.add(new TenantStatus(tenant, this.tenantRegistry.partitionOf(tenant), this.tenantRegistry.metrics(tenant),
+                    mover != null ? mover.getMove(tenant) : null));
+        }
+        return tenants;
+    }
+
+    /**
+     * Endpoint to move a tenant to another partition while it keeps serving requests
+     *
+     * @param tenant the tenant to move
+     * @param partition the partition to move it to
+     * @return the started move, to be followed through the tenants endpoint
+     */
+    @PostMapping("/admin/tenants/{tenant}/move")
+    @ApiResponse(description = "Move a tenant to another partition")
+    public TenantMove moveTenant(@PathVariable("tenant") String tenant, @RequestParam("partition") String partition) {
+
+        TenantPartitionMover mover = this.partitionMover.getIfAvailable();
+        if (mover == null) {
+            throw new UnsupportedOperationException("Moving Tenants Is Not Supported By The In-Memory Storage Engine");
+        }
+        return mover.startMove(tenant, partition);
+    }
+
+    /**
+     * Endpoint to retrieve the latest conversion of stored documents to the configured document form
+     *
+     * @return the latest conversion, or nothing if there has not been one
+     */
+    @GetMapping("/admin/storage-conversion")
+    @ApiResponse(description = "Retrieve the latest stored document conversion")
+    public StorageConversion getStorageConversion() {
+
+        CompactStorageConverter converter = this.storageConverter.getIfAvailable();
+        return converter != null ? converter.getConversion() : null;
+    }
+
+    /**
+     * Endpoint to start converting stored documents to the configured document form, resuming where an earlier
+     * conversion stopped
+     *
+     * @return the started conversion
+     */
+    @PostMapping("/admin/storage-conversion")
+    @ApiResponse(description = "Convert stored documents to the configured form")
+    public StorageConversion convertStorage() {
+
+        CompactStorageConverter converter = this.storageConverter.getIfAvailable();
+        if (converter == null) {
+            throw new UnsupportedOperationException("Converting Stored Documents Is Not Supported By The In-Memory Storage Engine");
+        }
+        return converter.start();
+    }
+
+    /**
+     * Endpoint to retrieve the state of the storage circuit breaker, its call counts and its transitions
+     *
+     * @return the state of the breaker, or nothing with the in-memory storage engine
+     */
+    @GetMapping("/admin/circuit-breaker")
+    @ApiResponse(description = "Retrieve the storage circuit breaker")
+    public CircuitBreakerStatus getCircuitBreaker() {
+
+        StorageCircuitBreaker breaker = this.circuitBreaker.getIfAvailable();
+        return breaker != null ? breaker.getStatus() : null;
+    }
+
+    /**
+     * Endpoint to retrieve the completed backups of the tenant
+     *
+     * @return the manifests of the backups, newest first
+     */
+    @GetMapping("/admin/backups")
+    @ApiResponse(description = "Retrieve the backups of the tenant")
+    public List<BackupManifest> getBackups() {
+
+        BackupService service = this.backupService.getIfAvailable();
+        return service != null ? service.getBackups() : Collections.emptyList();
+    }
+
+    /**
+     * Endpoint to start backing up the Enrollees of the tenant
+     *
+     * @return the started backup, to be followed through the backup run endpoint
+     */
+    @PostMapping("/admin/backups")
+    @ApiResponse(description = "Back up the Enrollees of the tenant")
+    public BackupRun startBackup() {
+        return this.requireBackupService().startBackup();
+    }
+
+    /**
+     * Endpoint to start restoring the Enrollees of a backup of the tenant, all of them or those matching the request
+     *
+     * @param backupId the Id of the backup
+     * @param request which Enrollees to restore and whether to replace those that exist, restoring every Enrollee
+     *                that does not exist if not given
+     * @return the started restore, to be followed through the backup run endpoint
+     */
+    @PostMapping("/admin/backups/{backupId}/restore")
+    @ApiResponse(description = "Restore Enrollees from a backup of the tenant")
+    public BackupRun startRestore(@PathVariable("backupId") String backupId, @RequestBody(required = false) RestoreRequest request) {
+        return this.requireBackupService().startRestore(backupId, request);
+    }
+
+    /**
+     * Endpoint to retrieve the latest backup or restore, with the segments and documents it has finished
+     *
+     * @return the latest backup or restore, or nothing if there has not been one
+     */
+    @GetMapping("/admin/backups/run")
+    @ApiResponse(description = "Retrieve the latest backup or restore")
+    public BackupRun getBackupRun() {
+
+        BackupService service = this.backupService.getIfAvailable();
+        return service != null ? service.getRun() : null;
+    }
+
+    /**
+     * Endpoint to retrieve the state of the audit journal
+     *
+     * @return the segments of the journal, the records written and waiting, and the records dropped
+     */
+    @GetMapping("/admin/audit")
+    @ApiResponse(description = "Retrieve the state of the audit journal")
+    public AuditStatus getAuditStatus() {
+        return this.auditJournal.getStatus();
+    }
+
+    /**
+     * Endpoint for a readiness probe, answering 503 until the application has warmed up and accepts traffic
+     *
+     * @return the state of the warm-up and the latencies it measured
+     */
+    @GetMapping("/admin/readiness")
+    @ApiResponse(description = "Retrieve whether the application is ready, and the state of its warm-up")
+    public ResponseEntity<WarmUpStatus> getReadiness() {
+
+        WarmUpStatus status = this.startupWarmUp.getStatus();
+        return ResponseEntity.status(status.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(status);
+    }
+
+    private BackupService requireBackupService() {
+
+        BackupService service = this.backupService.getIfAvailable();
+        if (service == null) {
+            throw new UnsupportedOperationException("Backups Are Not Supported By The In-Memory Storage Engine");
+        }
+        return service;
+    }
+
+}
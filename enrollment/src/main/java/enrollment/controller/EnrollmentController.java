@@ -1,13 +1,37 @@
 package enrollment.controller;
 
+import enrollment.audit.AuditJournal;
+import enrollment.common.AuditRecord;
 import enrollment.common.Dependent;
 import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeActivationResponse;
+import enrollment.common.EnrolleeLookupRequest;
+import enrollment.common.EnrolleeLookupResponse;
+import enrollment.common.PossibleDuplicate;
+import enrollment.exceptions.ValidationException;
+import enrollment.json.SerializedJson;
 import enrollment.service.DependentService;
+import enrollment.service.EnrolleeJsonCache;
+import enrollment.service.EnrolleeListCache;
 import enrollment.service.EnrolleeService;
+import enrollment.stream.EnrolleeEventStream;
+import enrollment.warmup.HotEnrollees;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller for Enrollment Application
@@ -16,29 +40,84 @@ import java.util.List;
 @RestController
 public class EnrollmentController {
 
+    public static final String MERGE_PATCH_JSON = "application/merge-patch+json";
+
     public final EnrolleeService enrolleeService;
     public final DependentService dependentService;
+    public final EnrolleeJsonCache enrolleeJsonCache;
+    public final EnrolleeListCache enrolleeListCache;
+    public final AuditJournal auditJournal;
+    public final EnrolleeEventStream enrolleeEventStream;
+    public final HotEnrollees hotEnrollees;
 
     /**
      * Controller for EnrollmentController
      * @param enrolleeService the EnrollmentService to use
      * @param dependentService the DependentService to use
+     * @param enrolleeJsonCache the EnrolleeJsonCache to use
+     * @param enrolleeListCache the EnrolleeListCache to use
+     * @param auditJournal the AuditJournal to read Enrollee histories from
+     * @param enrolleeEventStream the EnrolleeEventStream to subscribe to changes with
+     * @param hotEnrollees the HotEnrollees to count reads of Enrollees in
      */
     public EnrollmentController(EnrolleeService enrolleeService,
-                                DependentService dependentService) {
+                                DependentService dependentService,
+                                EnrolleeJsonCache enrolleeJsonCache,
+                                EnrolleeListCache enrolleeListCache,
+                                AuditJournal auditJournal,
+                                EnrolleeEventStream enrolleeEventStream,
+                                HotEnrollees hotEnrollees) {
         this.enrolleeService = enrolleeService;
         this.dependentService = dependentService;
+        this.enrolleeJsonCache = enrolleeJsonCache;
+        this.enrolleeListCache = enrolleeListCache;
+        this.auditJournal = auditJournal;
+        this.enrolleeEventStream = enrolleeEventStream;
+        this.hotEnrollees = hotEnrollees;
     }
 
     /**
-     * Endpoint to retrieve all the Enrollees in the database
+     * Endpoint to retrieve all the Enrollees in the database, gzipped when the client accepts it and gzipped
+     * lists are kept
      *
+     * @param acceptEncoding the encodings the client accepts
      * @return the list of Enrollee objects
      */
     @GetMapping("/enrollees")
-    @ApiResponse(description = "Retrieve all Enrollees")
-    public List<Enrollee> getEnrollee() {
-        return this.enrolleeService.getEnrollees();
+    @ApiResponse(description = "Retrieve all Enrollees", content = @Content(array = @ArraySchema(schema = @Schema(implementation = Enrollee.class))))
+    public ResponseEntity<SerializedJson> getEnrollee(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        SerializedJson gzipped = acceptEncoding != null && acceptEncoding.contains("gzip")
+                ? this.enrolleeListCache.getGzippedEnrollees() : null;
+
+        if (gzipped != null) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .body(gzipped);
+        }
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .body(this.enrolleeListCache.getEnrollees());
+    }
+
+    /**
+     * Endpoint to subscribe to the changes to Enrollees and their Dependents as Server-Sent Events, rather than
+     * polling for them. A "resync" event is sent when changes were missed, after which the Enrollees should be
+     * read again.
+     *
+     * @param ids the Ids of the Enrollees to be sent changes of, all of them if not given
+     * @param activationStatus the activation status of the Enrollees to be sent changes of, any if not given
+     * @param lastEventId the Id of the last event received, sent by the client when it reconnects
+     * @return the stream of "enrollee" events
+     */
+    @GetMapping(value = "/enrollees/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiResponse(description = "Subscribe to changes to Enrollees")
+    public SseEmitter subscribeToEnrolleeEvents(@RequestParam(value = "ids", required = false) List<String> ids,
+                                                @RequestParam(value = "activationStatus", required = false) Boolean activationStatus,
+                                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return this.enrolleeEventStream.subscribe(ids != null ? new HashSet<>(ids) : Collections.emptySet(), activationStatus, lastEventId);
     }
 
     /**
@@ -61,9 +140,89 @@ public class EnrollmentController {
      * @return the Enrollee with the passed in Id
      */
     @GetMapping("/enrollees/{enrolleeId}")
-    @ApiResponse(description = "Retrieve an Enrollee by Id")
-    public Enrollee getEnrolleeById(@PathVariable("enrolleeId") String enrolleeId) {
-        return this.enrolleeService.getEnrolleeById(enrolleeId);
+    @ApiResponse(description = "Retrieve an Enrollee by Id", content = @Content(schema = @Schema(implementation = Enrollee.class)))
+    public SerializedJson getEnrolleeById(@PathVariable("enrolleeId") String enrolleeId) {
+
+        SerializedJson enrollee = this.enrolleeJsonCache.getEnrolleeById(enrolleeId);
+        this.hotEnrollees.record(enrolleeId);
+        return enrollee;
+    }
+
+    /**
+     * Endpoint to retrieve whether an Enrollee is active, without reading the Enrollee from the database when the
+     * ActivationIndex can tell
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @return true if the Enrollee is active
+     */
+    @GetMapping("/enrollees/{enrolleeId}/active")
+    @ApiResponse(description = "Retrieve whether an Enrollee is active", content = @Content(schema = @Schema(implementation = Boolean.class)))
+    public boolean isEnrolleeActive(@PathVariable("enrolleeId") String enrolleeId) {
+        return this.enrolleeService.isEnrolleeActive(enrolleeId);
+    }
+
+    /**
+     * Endpoint to retrieve whether many Enrollees are active in one request
+     *
+     * @param lookupRequest the Ids of the Enrollees
+     * @return the Ids of the Enrollees that are active, that are not and that were not found
+     */
+    @PostMapping("/enrollees/active")
+    @ApiResponse(description = "Retrieve whether many Enrollees are active", content = @Content(schema = @Schema(implementation = EnrolleeActivationResponse.class)))
+    public EnrolleeActivationResponse getActivationStatuses(@RequestBody EnrolleeLookupRequest lookupRequest) {
+        return this.enrolleeService.getActivationStatuses(lookupRequest.getIds());
+    }
+
+    /**
+     * Endpoint to retrieve the Enrollees that may be duplicates of an Enrollee
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @return the Enrollees born on the same day with a similar name, most similar first
+     */
+    @GetMapping("/enrollees/{enrolleeId}/possible-duplicates")
+    @ApiResponse(description = "Retrieve possible duplicates of an Enrollee")
+    public List<PossibleDuplicate> getPossibleDuplicates(@PathVariable("enrolleeId") String enrolleeId) {
+        return this.enrolleeService.getPossibleDuplicates(enrolleeId);
+    }
+
+    /**
+     * Endpoint to retrieve the changes made to an Enrollee and its Dependents, including those made before it was
+     * deleted
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param since the earliest change to return, as an ISO-8601 instant such as 2020-09-01T00:00:00Z
+     * @param limit the most changes to return
+     * @return the changes, oldest first
+     */
+    @GetMapping("/enrollees/{enrolleeId}/history")
+    @ApiResponse(description = "Retrieve the history of an Enrollee", content = @Content(array = @ArraySchema(schema = @Schema(implementation = AuditRecord.class))))
+    public List<AuditRecord> getEnrolleeHistory(@PathVariable("enrolleeId") String enrolleeId,
+                                                @RequestParam(value = "since", required = false) String since,
+                                                @RequestParam(value = "limit", required = false) Integer limit) {
+
+        long sinceMillis;
+        try {
+            sinceMillis = since != null ? Instant.parse(since).toEpochMilli() : Long.MIN_VALUE;
+        } catch (DateTimeParseException e) {
+            throw new ValidationException("Validation Error: Since Must Be An ISO-8601 Instant");
+        }
+
+        return this.auditJournal.history(enrolleeId, sinceMillis, limit != null ? limit : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Endpoint to retrieve many Enrollees by Id in one request
+     *
+     * @param lookupRequest the Ids of the Enrollees to search for
+     * @return the Enrollees that were found, in the order they were asked for, and the Ids that were not found
+     */
+    @PostMapping("/enrollees/lookup")
+    @ApiResponse(description = "Retrieve many Enrollees by Id", content = @Content(schema = @Schema(implementation = EnrolleeLookupResponse.class)))
+    public SerializedJson lookupEnrollees(@RequestBody EnrolleeLookupRequest lookupRequest) {
+
+        SerializedJson enrollees = this.enrolleeJsonCache.lookupEnrollees(lookupRequest.getIds());
+        this.hotEnrollees.recordAll(lookupRequest.getIds());
+        return enrollees;
     }
 
     /**
@@ -80,6 +239,20 @@ public class EnrollmentController {
 
     }
 
+    /**
+     * Endpoint to merge patch an existing Enrollee, changing only the supplied fields
+     *
+     * @param mergePatch the JSON Merge Patch document
+     * @param enrolleeId the Enrollee Id to patch
+     */
+    @PatchMapping(value = "/enrollees/{enrolleeId}", consumes = MERGE_PATCH_JSON)
+    @ApiResponse(description = "Merge Patch an existing Enrollee")
+    public void patchEnrollee(@RequestBody Map<String, Object> mergePatch, @PathVariable("enrolleeId") String enrolleeId) {
+
+        this.enrolleeService.patchEnrollee(mergePatch, enrolleeId);
+
+    }
+
     /**
      * Endpoint to delete an existing Enrollee
      *
@@ -122,6 +295,21 @@ public class EnrollmentController {
 
     }
 
+    /**
+     * Endpoint to merge patch an existing Dependent, changing only the supplied fields
+     *
+     * @param mergePatch the JSON Merge Patch document
+     * @param enrolleeId the Enrollee Id with the Dependent to patch
+     * @param dependentId the Dependent Id to patch
+     */
+    @PatchMapping(value = "/enrollees/{enrolleeId}/dependents/{dependentId}", consumes = MERGE_PATCH_JSON)
+    @ApiResponse(description = "Merge Patch a Dependent")
+    public void patchDependents(@RequestBody Map<String, Object> mergePatch, @PathVariable("enrolleeId") String enrolleeId, @PathVariable("dependentId") String dependentId) {
+
+        this.dependentService.patchDependent(mergePatch, enrolleeId, dependentId);
+
+    }
+
     /**
      * Endpoint to delete an existing Dependent
      *
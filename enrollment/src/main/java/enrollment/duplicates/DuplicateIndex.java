@@ -0,0 +1,342 @@
+package enrollment.duplicates;
+
+import enrollment.common.Enrollee;
+import enrollment.configuration.StartupOrder;
+import enrollment.common.PossibleDuplicate;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index of Enrollee name trigrams, partitioned by Date of Birth, for finding possible duplicate
+ * Enrollees: those born on the same day whose names share enough trigrams. Only the Enrollees in one partition
+ * are ever compared, and only those sharing at least one trigram with the name looked up. The index is kept up
+ * to date by the EnrolleeService as Enrollees are written on this node, and rebuilt in parallel from the
+ * database once the application is running. Enrollees and partitions are keyed by tenant as well, so Enrollees
+ * of different tenants are never compared. A partition is dropped once its last Enrollee is removed, so the index
+ * only holds the days someone was born on. Writes made on other nodes never reach the index until it is rebuilt, so
+ * it is only correct when a single node writes the database, and is off unless enabled.
+ * @author Michael Kulaga
+ */
+@Component
+public class DuplicateIndex {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(DuplicateIndex.class);
+
+    public final EnrollmentDAO enrollmentDAO;
+    private final TenantRegistry tenantRegistry;
+
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final int maximumCandidates;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    //the Ids removed while a rebuild is running, so the rebuild does not put them back
+    private volatile Set<String> removedWhileRebuilding;
+
+    /**
+     * Constructor for DuplicateIndex
+     *
+     * @param enrollmentDAO the EnrollmentDAO to rebuild the index from
+     * @param tenantRegistry the TenantRegistry of the tenants to rebuild the index for
+     * @param enabled whether Enrollees are indexed at all
+     * @param similarityThreshold the similarity of two names, from 0 to 1, at which they are possible duplicates
+     * @param maximumCandidates the most possible duplicates returned by a lookup
+     */
+    public DuplicateIndex(EnrollmentDAO enrollmentDAO,
+                          TenantRegistry tenantRegistry,
+                          @Value("${enrollment.duplicates.enabled:false}") boolean enabled,
+                          @Value("${enrollment.duplicates.similarity-threshold:0.5}") double similarityThreshold,
+                          @Value("${enrollment.duplicates.maximum-candidates:10}") int maximumCandidates) {
+        this.enrollmentDAO = enrollmentDAO;
+        this.tenantRegistry = tenantRegistry;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.maximumCandidates = Math.max(1, maximumCandidates);
+    }
+
+    /**
+     * Indexes an Enrollee, replacing what was indexed for it before
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param name the name of the Enrollee
+     * @param dateOfBirth the Date of Birth of the Enrollee
+     */
+    public void put(String enrolleeId, String name, String dateOfBirth) {
+
+        if (!this.enabled || dateOfBirth == null) {
+            return;
+        }
+
+        String tenant = TenantContext.current();
+        Entry entry = new Entry(TenantContext.scopedKey(tenant, dateOfBirth), NameTrigrams.of(name));
+
+        this.entries.compute(TenantContext.scopedKey(tenant, enrolleeId), (key, previous) -> {
+            if (previous != null) {
+                this.removeFromPartition(previous.partitionKey, enrolleeId, previous.trigrams);
+            }
+            this.addToPartition(entry.partitionKey, enrolleeId, entry.trigrams);
+            return entry;
+        });
+    }
+
+    /**
+     * Removes an Enrollee from the index
+     *
+     * @param enrolleeId the Id of the Enrollee
+     */
+    public void remove(String enrolleeId) {
+
+        if (!this.enabled) {
+            return;
+        }
+
+        this.entries.compute(TenantContext.scopedKey(enrolleeId), (key, previous) -> {
+            Set<String> removed = this.removedWhileRebuilding;
+            if (removed != null) {
+                removed.add(key);
+            }
+            if (previous != null) {
+                this.removeFromPartition(previous.partitionKey, enrolleeId, previous.trigrams);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Finds the indexed Enrollees of the current tenant born on the given day whose names are similar to the
+     * given name
+     *
+     * @param name the name to compare with
+     * @param dateOfBirth the Date of Birth to look in
+     * @param excludeId the Id of an Enrollee to leave out of the results, or null
+     * @return the possible duplicates, most similar first
+     */
+    public List<PossibleDuplicate> findPossibleDuplicates(String name, String dateOfBirth, String excludeId) {
+
+        String tenant = TenantContext.current();
+        Partition partition = dateOfBirth != null ? this.partitions.get(TenantContext.scopedKey(tenant, dateOfBirth)) : null;
+        long[] trigrams = NameTrigrams.of(name);
+
+        if (partition == null || trigrams.length == 0) {
+            return Collections.emptyList();
+        }
+
+        List<PossibleDuplicate> duplicates = new ArrayList<>();
+
+        for (Map.Entry<String, Integer> candidate : partition.sharedTrigrams(trigrams).entrySet()) {
+
+            Entry entry = this.entries.get(TenantContext.scopedKey(tenant, candidate.getKey()));
+            if (entry == null || candidate.getKey().equals(excludeId)) {
+                continue;
+            }
+
+            double similarity = NameTrigrams.similarity(candidate.getValue(), trigrams.length, entry.trigrams.length);
+            if (similarity >= this.similarityThreshold) {
+                duplicates.add(new PossibleDuplicate(candidate.getKey(), similarity));
+            }
+        }
+
+        duplicates.sort(Comparator.comparingDouble(PossibleDuplicate::getSimilarity).reversed()
+                .thenComparing(PossibleDuplicate::getEnrolleeId));
+
+        return duplicates.size() > this.maximumCandidates ? new ArrayList<>(duplicates.subList(0, this.maximumCandidates)) : duplicates;
+    }
+
+    /**
+     * @return the number of Enrollees indexed, of every tenant
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the number of partitions holding Enrollees, of every tenant
+     */
+    int partitionCount() {
+        return this.partitions.size();
+    }
+
+    /**
+     * Rebuilds the index once the application is running, so a missing database does not stop startup, and
+     * before the warm-up sends requests through it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.INDEX_REBUILD)
+    public void rebuildOnStartup() {
+
+        try {
+            this.rebuild();
+        } catch (RuntimeException e) {
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Unable To Rebuild Duplicate Index: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Indexes every stored Enrollee of every tenant in parallel. Enrollees written while the rebuild runs keep what they were
+     * indexed with, rather than what the rebuild read.
+     */
+    public void rebuild() {
+
+        if (!this.enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        AtomicLong indexed = new AtomicLong();
+        Set<String> removed = ConcurrentHashMap.newKeySet();
+        this.removedWhileRebuilding = removed;
+
+        try {
+            for (String tenant : this.tenantRegistry.getTenants()) {
+                TenantContext.run(tenant, () -> this.rebuild(tenant, removed, indexed));
+            }
+        } finally {
+            this.removedWhileRebuilding = null;
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Rebuilt Duplicate Index Of " + indexed.get() + " Enrollees In "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+
+    /**
+     * Helper method to index the stored Enrollees of one tenant. The tenant is passed along, as the parallel
+     * workers do not run in its context.
+     */
+    private void rebuild(String tenant, Set<String> removed, AtomicLong indexed) {
+
+        try (Stream<Enrollee> enrollees = this.enrollmentDAO.streamNamesAndDatesOfBirth()) {
+
+            enrollees.parallel()
+                    .filter(enrollee -> enrollee.getId() != null && enrollee.getDateOfBirth() != null)
+                    .forEach(enrollee -> {
+                        String enrolleeId = enrollee.getId();
+                        Entry entry = new Entry(TenantContext.scopedKey(tenant, enrollee.getDateOfBirth()), NameTrigrams.of(enrollee.getName()));
+                        this.entries.computeIfAbsent(TenantContext.scopedKey(tenant, enrolleeId), key -> {
+                            if (removed.contains(key)) {
+                                return null;
+                            }
+                            this.addToPartition(entry.partitionKey, enrolleeId, entry.trigrams);
+                            indexed.incrementAndGet();
+                            return entry;
+                        });
+                    });
+        }
+    }
+
+    /**
+     * Helper method to add an Enrollee to the partition for a tenant and Date of Birth, creating it if needed
+     */
+    private void addToPartition(String partitionKey, String enrolleeId, long[] trigrams) {
+
+        this.partitions.compute(partitionKey, (key, partition) -> {
+            Partition added = partition != null ? partition : new Partition();
+            added.add(enrolleeId, trigrams);
+            return added.isEmpty() ? null : added;
+        });
+    }
+
+    /**
+     * Helper method to remove an Enrollee from the partition for a tenant and Date of Birth, dropping the partition
+     * once it is empty. Partitions are only changed inside compute, so a partition is never dropped while an
+     * Enrollee is being added to it.
+     */
+    private void removeFromPartition(String partitionKey, String enrolleeId, long[] trigrams) {
+
+        this.partitions.computeIfPresent(partitionKey, (key, partition) -> {
+            partition.remove(enrolleeId, trigrams);
+            return partition.isEmpty() ? null : partition;
+        });
+    }
+
+    /**
+     * The trigrams indexed for an Enrollee, and the key of the partition they are in
+     */
+    private static class Entry {
+
+        private final String partitionKey;
+        private final long[] trigrams;
+
+        private Entry(String partitionKey, long[] trigrams) {
+            this.partitionKey = partitionKey;
+            this.trigrams = trigrams;
+        }
+    }
+
+    /**
+     * The posting lists of the Enrollees of one tenant born on one day, from each trigram to the Ids of the Enrollees whose
+     * names contain it
+     */
+    private static class Partition {
+
+        private final Map<Long, Set<String>> postings = new HashMap<>();
+
+        private synchronized void add(String enrolleeId, long[] trigrams) {
+
+            for (long trigram : trigrams) {
+                this.postings.computeIfAbsent(trigram, key -> new HashSet<>(4)).add(enrolleeId);
+            }
+        }
+
+        private synchronized void remove(String enrolleeId, long[] trigrams) {
+
+            for (long trigram : trigrams) {
+                Set<String> ids = this.postings.get(trigram);
+                if (ids != null) {
+                    ids.remove(enrolleeId);
+                    if (ids.isEmpty()) {
+                        this.postings.remove(trigram);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the number of trigrams each Enrollee shares with the given trigrams, by Enrollee Id
+         */
+        private synchronized Map<String, Integer> sharedTrigrams(long[] trigrams) {
+
+            Map<String, Integer> shared = new HashMap<>();
+            for (long trigram : trigrams) {
+                Set<String> ids = this.postings.get(trigram);
+                if (ids != null) {
+                    for (String id : ids) {
+                        shared.merge(id, 1, Integer::sum);
+                    }
+                }
+            }
+            return shared;
+        }
+
+        private synchronized boolean isEmpty() {
+            return this.postings.isEmpty();
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package enrollment.duplicates;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits names into trigrams, the runs of three characters used to compare them. Names are compared without case,
+ * accents or punctuation, and each word is padded with a space on either side so that the start and end of words
+ * count. Each trigram is packed into a long, and a name contributes at most MAXIMUM_TRIGRAMS of them so that the
+ * memory held for any one Enrollee is bounded.
+ * @author Michael Kulaga
+ */
+final class NameTrigrams {
+
+    static final int MAXIMUM_TRIGRAMS = 32;
+
+    private NameTrigrams() {
+    }
+
+    /**
+     * Splits a name into trigrams
+     *
+     * @param name the name to split
+     * @return the distinct trigrams of the name, sorted
+     */
+    static long[] of(String name) {
+
+        if (name == null) {
+            return new long[0];
+        }
+
+        String normalized = Normalizer.normalize(name, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+
+        if (normalized.isEmpty()) {
+            return new long[0];
+        }
+
+        String padded = " " + normalized + " ";
+        Set<Long> trigrams = new LinkedHashSet<>();
+
+        for (int i = 0; i + 3 <= padded.length() && trigrams.size() < MAXIMUM_TRIGRAMS; i++) {
+            trigrams.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+        }
+
+        long[] sorted = new long[trigrams.size()];
+        int i = 0;
+        for (Long trigram : trigrams) {
+            sorted[i++] = trigram;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Calculates the Jaccard similarity of two names from their trigrams
+     *
+     * @param shared the number of trigrams the names share
+     * @param first the number of trigrams of the first name
+     * @param second the number of trigrams of the second name
+     * @return the shared trigrams as a fraction of all of their distinct trigrams, from 0 to 1
+     */
+    static double similarity(int shared, int first, int second) {
+
+        int union = first + second - shared;
+        return union == 0 ? 0 : (double) shared / union;
+    }
+
+}
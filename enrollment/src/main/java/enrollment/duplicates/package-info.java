@@ -0,0 +1,5 @@
+/**
+ * Duplicate Enrollee detection for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.duplicates;
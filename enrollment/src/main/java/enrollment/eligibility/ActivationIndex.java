@@ -0,0 +1,367 @@
+package enrollment.eligibility;
+
+import enrollment.common.Enrollee;
+import enrollment.configuration.StartupOrder;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of which Enrollees exist and which of them are active, so asking whether an Enrollee is active
+ * does not read it from the database. Ids are numeric, so each tenant keeps two compressed bitmaps of them, of the
+ * Enrollees that exist and of those that are active, taking at most a few bytes an Enrollee. Lookups read the
+ * bitmaps without locking, retrying under a read lock only if a write changed them meanwhile. The index is kept up
+ * to date by the services as Enrollees are written on this node, and rebuilt from a scan of only the Ids and
+ * activation statuses once the application is running. Until a tenant's index is built, and for Ids too long or
+ * with leading zeros, lookups are answered UNKNOWN for the caller to read the database instead. Writes made on other
+ * nodes never reach the index, so it is only correct when a single node writes the database, and is off unless
+ * enabled.
+ * @author Michael Kulaga
+ */
+@Component
+public class ActivationIndex {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ActivationIndex.class);
+
+    /**
+     * What the index knows of an Enrollee
+     */
+    public enum Eligibility { ACTIVE, INACTIVE, MISSING, UNKNOWN }
+
+    //the changes made while a tenant is rebuilt, applied again to what the rebuild read
+    private static final byte ADD_ACTIVE = 1;
+    private static final byte ADD_INACTIVE = 2;
+    private static final byte REMOVE = 3;
+    private static final byte SET_ACTIVE = 4;
+    private static final byte SET_INACTIVE = 5;
+
+    public final EnrollmentDAO enrollmentDAO;
+    private final TenantRegistry tenantRegistry;
+
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<String, TenantBitmaps> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for ActivationIndex
+     *
+     * @param enrollmentDAO the EnrollmentDAO to rebuild the index from
+     * @param tenantRegistry the TenantRegistry of the tenants to rebuild the index for
+     * @param enabled whether lookups are answered from the index at all, which is only correct with a single node
+     */
+    public ActivationIndex(EnrollmentDAO enrollmentDAO,
+                           TenantRegistry tenantRegistry,
+                           @Value("${enrollment.eligibility.enabled:false}") boolean enabled) {
+        this.enrollmentDAO = enrollmentDAO;
+        this.tenantRegistry = tenantRegistry;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Looks up whether an Enrollee of the current tenant is active
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @return ACTIVE, INACTIVE or MISSING, or UNKNOWN if the index cannot tell and the database must be read
+     */
+    public Eligibility eligibility(String enrolleeId) {
+
+        int id = toIndexedId(enrolleeId);
+        TenantBitmaps bitmaps = id >= 0 ? this.tenants.get(TenantContext.current()) : null;
+
+        if (bitmaps == null || !bitmaps.ready) {
+            return Eligibility.UNKNOWN;
+        }
+        return bitmaps.eligibility(id);
+    }
+
+    /**
+     * Indexes an Enrollee written whole, replacing what was indexed for it before
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param activationStatus the activation status of the Enrollee
+     */
+    public void put(String enrolleeId, boolean activationStatus) {
+        this.write(enrolleeId, activationStatus ? ADD_ACTIVE : ADD_INACTIVE);
+    }
+
+    /**
+     * Changes the activation status of an Enrollee, if it is indexed as existing
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param activationStatus the new activation status of the Enrollee
+     */
+    public void activationChanged(String enrolleeId, boolean activationStatus) {
+        this.write(enrolleeId, activationStatus ? SET_ACTIVE : SET_INACTIVE);
+    }
+
+    /**
+     * Removes an Enrollee from the index
+     *
+     * @param enrolleeId the Id of the Enrollee
+     */
+    public void remove(String enrolleeId) {
+        this.write(enrolleeId, REMOVE);
+    }
+
+    /**
+     * @return the number of Enrollees indexed as existing, of every tenant
+     */
+    public long size() {
+        return this.tenants.values().stream().mapToLong(TenantBitmaps::size).sum();
+    }
+
+    /**
+     * Rebuilds the index once the application is running, so a missing database does not stop startup, and
+     * before the warm-up sends requests through it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.INDEX_REBUILD)
+    public void rebuildOnStartup() {
+
+        try {
+            this.rebuild();
+        } catch (RuntimeException e) {
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Unable To Rebuild Activation Index: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Indexes every stored Enrollee of every tenant. A tenant's lookups keep being answered from what it had indexed
+     * until its rebuild is done, and Enrollees written while it runs keep what they were indexed with, rather than
+     * what the rebuild read. Rebuilds run one at a time.
+     */
+    public synchronized void rebuild() {
+
+        if (!this.enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long indexed = 0;
+        long bytes = 0;
+
+        for (String tenant : this.tenantRegistry.getTenants()) {
+            TenantBitmaps bitmaps = this.tenants.computeIfAbsent(tenant, key -> new TenantBitmaps());
+            TenantContext.run(tenant, () -> bitmaps.rebuild(this.enrollmentDAO));
+            indexed += bitmaps.size();
+            bytes += bitmaps.sizeInBytes();
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Rebuilt Activation Index Of " + indexed + " Enrollees In " + bytes + " Bytes In "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+
+    /**
+     * Helper method to apply a change to the bitmaps of the current tenant
+     */
+    private void write(String enrolleeId, byte change) {
+
+        int id = toIndexedId(enrolleeId);
+        if (!this.enabled || id < 0) {
+            return;
+        }
+
+        this.tenants.computeIfAbsent(TenantContext.current(), key -> new TenantBitmaps()).write(id, change);
+    }
+
+    /**
+     * Helper method to turn an Id into the int it is indexed by
+     *
+     * @return the int, or -1 if the Id is not a number of at most 10 digits without leading zeros that fits an int,
+     * as two such Ids could name the same number
+     */
+    static int toIndexedId(String enrolleeId) {
+
+        int length = enrolleeId != null ? enrolleeId.length() : 0;
+        if (length == 0 || length > 10 || (length > 1 && enrolleeId.charAt(0) == '0')) {
+            return -1;
+        }
+
+        long id = 0;
+        for (int i = 0; i < length; i++) {
+            char digit = enrolleeId.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            id = id * 10 + (digit - '0');
+        }
+        return id <= Integer.MAX_VALUE ? (int) id : -1;
+    }
+
+    /**
+     * The bitmaps of the Enrollees of one tenant that exist and that are active, the active ones being a subset of
+     * those that exist
+     */
+    private static final class TenantBitmaps {
+
+        private final StampedLock lock = new StampedLock();
+        private IdBitmap existing = new IdBitmap();
+        private IdBitmap active = new IdBitmap();
+
+        //the changes made during a rebuild, the last for each Id, or null when none is running
+        private Map<Integer, Byte> changedWhileRebuilding;
+        private volatile boolean ready;
+
+        private Eligibility eligibility(int id) {
+
+            long stamp = this.lock.tryOptimisticRead();
+            Eligibility eligibility;
+            try {
+                eligibility = this.read(id);
+            } catch (RuntimeException e) {
+                //a write part way through changing the bitmaps, caught by the validation below
+                eligibility = null;
+            }
+
+            if (!this.lock.validate(stamp) || eligibility == null) {
+                stamp = this.lock.readLock();
+                try {
+                    eligibility = this.read(id);
+                } finally {
+                    this.lock.unlockRead(stamp);
+                }
+            }
+            return eligibility;
+        }
+
+        private Eligibility read(int id) {
+
+            if (!this.existing.contains(id)) {
+                return Eligibility.MISSING;
+            }
+            return this.active.contains(id) ? Eligibility.ACTIVE : Eligibility.INACTIVE;
+        }
+
+        private void write(int id, byte change) {
+
+            long stamp = this.lock.writeLock();
+            try {
+                apply(this.existing, this.active, id, change);
+                if (this.changedWhileRebuilding != null) {
+                    this.changedWhileRebuilding.merge(id, change, TenantBitmaps::combine);
+                }
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        private void rebuild(EnrollmentDAO enrollmentDAO) {
+
+            long stamp = this.lock.writeLock();
+            try {
+                this.changedWhileRebuilding = new HashMap<>();
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+
+            IdBitmap rebuiltExisting = new IdBitmap();
+            IdBitmap rebuiltActive = new IdBitmap();
+            boolean scanned = false;
+
+            try (Stream<Enrollee> enrollees = enrollmentDAO.streamActivationStatuses()) {
+                enrollees.forEach(enrollee -> {
+                    int id = toIndexedId(enrollee.getId());
+                    if (id >= 0) {
+                        apply(rebuiltExisting, rebuiltActive, id, enrollee.isActivationStatus() ? ADD_ACTIVE : ADD_INACTIVE);
+                    }
+                });
+                scanned = true;
+            } finally {
+                stamp = this.lock.writeLock();
+                try {
+                    //a failed scan leaves the bitmaps as they were, kept up to date by the writes meanwhile
+                    if (scanned) {
+                        this.changedWhileRebuilding.forEach((id, change) -> apply(rebuiltExisting, rebuiltActive, id, change));
+                        this.existing = rebuiltExisting;
+                        this.active = rebuiltActive;
+                        this.ready = true;
+                    }
+                    this.changedWhileRebuilding = null;
+                } finally {
+                    this.lock.unlockWrite(stamp);
+                }
+            }
+        }
+
+        private long size() {
+
+            long stamp = this.lock.readLock();
+            try {
+                return this.existing.cardinality();
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+
+        private long sizeInBytes() {
+
+            long stamp = this.lock.readLock();
+            try {
+                return this.existing.sizeInBytes() + this.active.sizeInBytes();
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+
+        private static void apply(IdBitmap existing, IdBitmap active, int id, byte change) {
+
+            switch (change) {
+                case ADD_ACTIVE:
+                    existing.add(id);
+                    active.add(id);
+                    break;
+                case ADD_INACTIVE:
+                    existing.add(id);
+                    active.remove(id);
+                    break;
+                case REMOVE:
+                    existing.remove(id);
+                    active.remove(id);
+                    break;
+                case SET_ACTIVE:
+                    if (existing.contains(id)) {
+                        active.add(id);
+                    }
+                    break;
+                default:
+                    active.remove(id);
+                    break;
+            }
+        }
+
+        /**
+         * Helper method to combine two changes to one Id into the one change with the same effect, so a status change
+         * after an add is not lost on an Enrollee the rebuild did not read
+         */
+        private static Byte combine(Byte previous, Byte next) {
+
+            if (next == SET_ACTIVE || next == SET_INACTIVE) {
+                if (previous == ADD_ACTIVE || previous == ADD_INACTIVE) {
+                    return next == SET_ACTIVE ? ADD_ACTIVE : ADD_INACTIVE;
+                }
+                if (previous == REMOVE) {
+                    return REMOVE;
+                }
+            }
+            return next;
+        }
+    }
+}
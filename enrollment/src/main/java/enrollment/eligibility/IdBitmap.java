@@ -0,0 +1,215 @@
+package enrollment.eligibility;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative int Ids, split as a roaring bitmap is into chunks of 65536 Ids by their high 16 bits.
+ * A chunk holding few Ids keeps them as a sorted array of their low 16 bits, 2 bytes an Id, and one holding many
+ * keeps a bitmap of 8 KB, a bit an Id, so an Id takes at most 2 bytes besides the few bytes of its chunk. Not
+ * thread safe: callers guard it with a lock.
+ * @author Michael Kulaga
+ */
+final class IdBitmap {
+
+    //the most Ids a chunk keeps as an array, beyond which a bitmap is smaller
+    static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 65536 / Long.SIZE;
+
+    private char[] keys = new char[4];
+    private Chunk[] chunks = new Chunk[4];
+    private int chunkCount;
+    private int cardinality;
+
+    /**
+     * @param id a non-negative Id
+     * @return true if the Id is in the set
+     */
+    boolean contains(int id) {
+
+        int index = this.indexOf((char) (id >>> 16));
+        return index >= 0 && this.chunks[index].contains((char) id);
+    }
+
+    /**
+     * Adds an Id to the set
+     *
+     * @param id a non-negative Id
+     * @return true if the Id was not already in the set
+     */
+    boolean add(int id) {
+
+        char key = (char) (id >>> 16);
+        int index = this.indexOf(key);
+
+        if (index < 0) {
+            index = -index - 1;
+            if (this.chunkCount == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, this.chunkCount * 2);
+                this.chunks = Arrays.copyOf(this.chunks, this.chunkCount * 2);
+            }
+            System.arraycopy(this.keys, index, this.keys, index + 1, this.chunkCount - index);
+            System.arraycopy(this.chunks, index, this.chunks, index + 1, this.chunkCount - index);
+            this.keys[index] = key;
+            this.chunks[index] = new Chunk();
+            this.chunkCount++;
+        }
+
+        if (this.chunks[index].add((char) id)) {
+            this.cardinality++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes an Id from the set
+     *
+     * @param id a non-negative Id
+     * @return true if the Id was in the set
+     */
+    boolean remove(int id) {
+
+        int index = this.indexOf((char) (id >>> 16));
+        if (index < 0 || !this.chunks[index].remove((char) id)) {
+            return false;
+        }
+
+        this.cardinality--;
+        if (this.chunks[index].count == 0) {
+            System.arraycopy(this.keys, index + 1, this.keys, index, this.chunkCount - index - 1);
+            System.arraycopy(this.chunks, index + 1, this.chunks, index, this.chunkCount - index - 1);
+            this.chunkCount--;
+            this.chunks[this.chunkCount] = null;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of Ids in the set
+     */
+    int cardinality() {
+        return this.cardinality;
+    }
+
+    /**
+     * @return roughly the bytes the set takes, not counting object headers
+     */
+    long sizeInBytes() {
+
+        long bytes = this.keys.length * (long) Character.BYTES + this.chunks.length * 4L;
+        for (int i = 0; i < this.chunkCount; i++) {
+            Chunk chunk = this.chunks[i];
+            bytes += chunk.bits != null ? chunk.bits.length * (long) Long.BYTES : chunk.values.length * (long) Character.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Helper method to binary search the chunk keys
+     */
+    private int indexOf(char key) {
+        return Arrays.binarySearch(this.keys, 0, this.chunkCount, key);
+    }
+
+    /**
+     * The Ids sharing their high 16 bits, as a sorted array of their low 16 bits while there are few of them, and as a
+     * bitmap of every low 16 bits once there are many
+     */
+    private static final class Chunk {
+
+        private char[] values = new char[4];
+        private long[] bits;
+        private int count;
+
+        private boolean contains(char low) {
+
+            if (this.bits != null) {
+                return (this.bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(this.values, 0, this.count, low) >= 0;
+        }
+
+        private boolean add(char low) {
+
+            if (this.bits != null) {
+                long bit = 1L << low;
+                if ((this.bits[low >>> 6] & bit) != 0) {
+                    return false;
+                }
+                this.bits[low >>> 6] |= bit;
+                this.count++;
+                return true;
+            }
+
+            int index = Arrays.binarySearch(this.values, 0, this.count, low);
+            if (index >= 0) {
+                return false;
+            }
+
+            if (this.count == ARRAY_LIMIT) {
+                this.toBitmap();
+                return this.add(low);
+            }
+
+            index = -index - 1;
+            if (this.count == this.values.length) {
+                this.values = Arrays.copyOf(this.values, Math.min(this.count * 2, ARRAY_LIMIT));
+            }
+            System.arraycopy(this.values, index, this.values, index + 1, this.count - index);
+            this.values[index] = low;
+            this.count++;
+            return true;
+        }
+
+        private boolean remove(char low) {
+
+            if (this.bits != null) {
+                long bit = 1L << low;
+                if ((this.bits[low >>> 6] & bit) == 0) {
+                    return false;
+                }
+                this.bits[low >>> 6] &= ~bit;
+                this.count--;
+                //back to an array only well below the limit, so Ids added and removed around it do not convert it each time
+                if (this.count <= ARRAY_LIMIT / 2) {
+                    this.toArray();
+                }
+                return true;
+            }
+
+            int index = Arrays.binarySearch(this.values, 0, this.count, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(this.values, index + 1, this.values, index, this.count - index - 1);
+            this.count--;
+            return true;
+        }
+
+        private void toBitmap() {
+
+            long[] bitmap = new long[BITMAP_WORDS];
+            for (int i = 0; i < this.count; i++) {
+                char low = this.values[i];
+                bitmap[low >>> 6] |= 1L << low;
+            }
+            this.bits = bitmap;
+            this.values = null;
+        }
+
+        private void toArray() {
+
+            char[] array = new char[Math.max(4, this.count)];
+            int size = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long remaining = this.bits[word];
+                while (remaining != 0) {
+                    array[size++] = (char) (word * Long.SIZE + Long.numberOfTrailingZeros(remaining));
+                    remaining &= remaining - 1;
+                }
+            }
+            this.values = array;
+            this.bits = null;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * In-memory activation status lookups of Enrollees for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.eligibility;
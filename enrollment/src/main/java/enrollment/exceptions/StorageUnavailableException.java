@@ -0,0 +1,25 @@
+package enrollment.exceptions;
+
+/**
+ * Exception for when storage is unavailable for now, and the request should be retried later
+ * @author Michael Kulaga
+ */
+public class StorageUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public StorageUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    };
+
+    public StorageUnavailableException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    };
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
@@ -0,0 +1,100 @@
+package enrollment.grpc;
+
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.grpc.api.DependentMessage;
+import enrollment.grpc.api.EnrolleeMessage;
+
+/**
+ * Converts Enrollees and Dependents to and from their protobuf messages. Protobuf strings cannot be null, so a
+ * missing field is sent as an empty string and an empty string is read back as missing.
+ * @author Michael Kulaga
+ */
+final class EnrolleeMessages {
+
+    private EnrolleeMessages() {
+    }
+
+    /**
+     * Converts an Enrollee and its Dependents to a message
+     *
+     * @param enrollee the Enrollee
+     * @return the EnrolleeMessage
+     */
+    static EnrolleeMessage toMessage(Enrollee enrollee) {
+
+        EnrolleeMessage.Builder message = EnrolleeMessage.newBuilder()
+                .setId(text(enrollee.getId()))
+                .setName(text(enrollee.getName()))
+                .setActivationStatus(enrollee.isActivationStatus())
+                .setDateOfBirth(text(enrollee.getDateOfBirth()))
+                .setPhoneNumber(text(enrollee.getPhoneNumber()));
+
+        for (Dependent dependent : enrollee.getDependents()) {
+            message.addDependents(toMessage(dependent));
+        }
+
+        return message.build();
+    }
+
+    /**
+     * Converts a Dependent to a message
+     *
+     * @param dependent the Dependent
+     * @return the DependentMessage
+     */
+    static DependentMessage toMessage(Dependent dependent) {
+
+        return DependentMessage.newBuilder()
+                .setId(text(dependent.getId()))
+                .setName(text(dependent.getName()))
+                .setDateOfBirth(text(dependent.getDateOfBirth()))
+                .build();
+    }
+
+    /**
+     * Converts a message to an Enrollee and its Dependents
+     *
+     * @param message the EnrolleeMessage
+     * @return the Enrollee
+     */
+    static Enrollee fromMessage(EnrolleeMessage message) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(orNull(message.getId()));
+        enrollee.setName(orNull(message.getName()));
+        enrollee.setActivationStatus(message.getActivationStatus());
+        enrollee.setDateOfBirth(orNull(message.getDateOfBirth()));
+        enrollee.setPhoneNumber(orNull(message.getPhoneNumber()));
+
+        for (DependentMessage dependent : message.getDependentsList()) {
+            enrollee.getDependents().add(fromMessage(dependent));
+        }
+
+        return enrollee;
+    }
+
+    /**
+     * Converts a message to a Dependent
+     *
+     * @param message the DependentMessage
+     * @return the Dependent
+     */
+    static Dependent fromMessage(DependentMessage message) {
+
+        Dependent dependent = new Dependent();
+        dependent.setId(orNull(message.getId()));
+        dependent.setName(orNull(message.getName()));
+        dependent.setDateOfBirth(orNull(message.getDateOfBirth()));
+        return dependent;
+    }
+
+    private static String text(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String orNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+}
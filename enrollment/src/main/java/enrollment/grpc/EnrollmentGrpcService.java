@@ -0,0 +1,382 @@
+package enrollment.grpc;
+
+import com.google.protobuf.Empty;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeActivationResponse;
+import enrollment.common.EnrolleeLookupResponse;
+import enrollment.common.PossibleDuplicate;
+import enrollment.exceptions.ResourceAlreadyExistsException;
+import enrollment.exceptions.ResourceDoesNotExistException;
+import enrollment.exceptions.StorageUnavailableException;
+import enrollment.exceptions.ValidationException;
+import enrollment.grpc.api.ActivationStatus;
+import enrollment.grpc.api.ActivationStatusesResponse;
+import enrollment.grpc.api.AddEnrolleeFailure;
+import enrollment.grpc.api.AddEnrolleesResponse;
+import enrollment.grpc.api.DependentId;
+import enrollment.grpc.api.DependentRequest;
+import enrollment.grpc.api.EnrolleeId;
+import enrollment.grpc.api.EnrolleeIds;
+import enrollment.grpc.api.EnrolleeMessage;
+import enrollment.grpc.api.EnrolleesPage;
+import enrollment.grpc.api.EnrolleesResponse;
+import enrollment.grpc.api.EnrollmentGrpc;
+import enrollment.grpc.api.ListEnrolleesRequest;
+import enrollment.grpc.api.PossibleDuplicateMessage;
+import enrollment.grpc.api.PossibleDuplicatesResponse;
+import enrollment.service.DependentService;
+import enrollment.service.EnrolleeService;
+import enrollment.warmup.HotEnrollees;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * gRPC service for Adding, Modifying, and Deleting Enrollees and their Dependents, calling the same services as
+ * the REST endpoints. Besides the calls mirroring those endpoints, Enrollees may be retrieved in batches, streamed
+ * from a database cursor and added as a stream. Exceptions are answered with the gRPC status matching their kind.
+ * @author Michael Kulaga
+ */
+@Component
+public class EnrollmentGrpcService extends EnrollmentGrpc.EnrollmentImplBase {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(EnrollmentGrpcService.class);
+
+    static final Metadata.Key<String> RETRY_AFTER = Metadata.Key.of("retry-after", Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final Empty EMPTY = Empty.getDefaultInstance();
+
+    public final EnrolleeService enrolleeService;
+    public final DependentService dependentService;
+    public final HotEnrollees hotEnrollees;
+    public final int listPageSize;
+    public final int maximumPageSize;
+    public final int maximumFailures;
+
+    /**
+     * Constructor for EnrollmentGrpcService
+     *
+     * @param enrolleeService the EnrolleeService to use
+     * @param dependentService the DependentService to use
+     * @param hotEnrollees the HotEnrollees to count reads of Enrollees in
+     * @param listPageSize the Enrollees sent in each message of a listing, unless the client asks for fewer
+     * @param maximumPageSize the most Enrollees a client may ask for in each message of a listing
+     * @param maximumFailures the most failed Enrollees a stream of new Enrollees answers with
+     */
+    public EnrollmentGrpcService(EnrolleeService enrolleeService,
+                                 DependentService dependentService,
+                                 HotEnrollees hotEnrollees,
+                                 @Value("${enrollment.grpc.list-page-size:100}") int listPageSize,
+                                 @Value("${enrollment.lookup.maximum-ids:1000}") int maximumPageSize,
+                                 @Value("${enrollment.grpc.add-enrollees.maximum-failures:100}") int maximumFailures) {
+        this.enrolleeService = enrolleeService;
+        this.dependentService = dependentService;
+        this.hotEnrollees = hotEnrollees;
+        this.listPageSize = Math.max(1, listPageSize);
+        this.maximumPageSize = Math.max(1, maximumPageSize);
+        this.maximumFailures = maximumFailures;
+    }
+
+    @Override
+    public void getEnrollee(EnrolleeId request, StreamObserver<EnrolleeMessage> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            EnrolleeMessage enrollee = EnrolleeMessages.toMessage(this.enrolleeService.getEnrolleeById(request.getId()));
+            this.hotEnrollees.record(request.getId());
+            return enrollee;
+        });
+    }
+
+    @Override
+    public void getEnrollees(EnrolleeIds request, StreamObserver<EnrolleesResponse> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+
+            EnrolleeLookupResponse lookup = this.enrolleeService.lookupEnrollees(request.getIdsList());
+            this.hotEnrollees.recordAll(request.getIdsList());
+
+            EnrolleesResponse.Builder response = EnrolleesResponse.newBuilder().addAllMissingIds(lookup.getMissingIds());
+            for (Enrollee enrollee : lookup.getEnrollees()) {
+                response.addEnrollees(EnrolleeMessages.toMessage(enrollee));
+            }
+            return response.build();
+        });
+    }
+
+    /**
+     * Sends Enrollees only while the client keeps up, reading the next from the database cursor each time the
+     * call is ready for more, so a slow client holds back the cursor rather than filling the server's memory.
+     * Each message is flushed to the client on its own, so Enrollees are sent in pages rather than one by one.
+     */
+    @Override
+    public void listEnrollees(ListEnrolleesRequest request, StreamObserver<EnrolleesPage> responseObserver) {
+
+        final ServerCallStreamObserver<EnrolleesPage> serverObserver = (ServerCallStreamObserver<EnrolleesPage>) responseObserver;
+        final int pageSize = request.getPageSize() > 0 ? Math.min(request.getPageSize(), this.maximumPageSize) : this.listPageSize;
+        final Stream<Enrollee> enrollees;
+
+        try {
+            enrollees = this.enrolleeService.streamEnrollees();
+        } catch (RuntimeException e) {
+            responseObserver.onError(this.toStatus(e));
+            return;
+        }
+
+        final Iterator<Enrollee> iterator = enrollees.iterator();
+        final AtomicBoolean finished = new AtomicBoolean();
+
+        serverObserver.setOnCancelHandler(() -> {
+            if (finished.compareAndSet(false, true)) {
+                enrollees.close();
+            }
+        });
+
+        serverObserver.setOnReadyHandler(() -> {
+
+            if (finished.get()) {
+                return;
+            }
+
+            try {
+                while (serverObserver.isReady() && iterator.hasNext()) {
+                    EnrolleesPage.Builder page = EnrolleesPage.newBuilder();
+                    while (page.getEnrolleesCount() < pageSize && iterator.hasNext()) {
+                        page.addEnrollees(EnrolleeMessages.toMessage(iterator.next()));
+                    }
+                    serverObserver.onNext(page.build());
+                }
+                if (!iterator.hasNext() && finished.compareAndSet(false, true)) {
+                    enrollees.close();
+                    serverObserver.onCompleted();
+                }
+            } catch (RuntimeException e) {
+                if (finished.compareAndSet(false, true)) {
+                    enrollees.close();
+                    serverObserver.onError(this.toStatus(e));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void addEnrollee(EnrolleeMessage request, StreamObserver<Empty> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            this.enrolleeService.addEnrollee(EnrolleeMessages.fromMessage(request));
+            return EMPTY;
+        });
+    }
+
+    /**
+     * Adds each Enrollee as it arrives, as the REST endpoint would, so one that cannot be added does not stop the
+     * rest. The call fails as a whole only if the database becomes unavailable.
+     */
+    @Override
+    public StreamObserver<EnrolleeMessage> addEnrollees(StreamObserver<AddEnrolleesResponse> responseObserver) {
+
+        final AddEnrolleesResponse.Builder response = AddEnrolleesResponse.newBuilder();
+
+        return new StreamObserver<EnrolleeMessage>() {
+
+            private boolean aborted;
+
+            @Override
+            public void onNext(EnrolleeMessage enrollee) {
+
+                if (this.aborted) {
+                    return;
+                }
+
+                try {
+                    enrolleeService.addEnrollee(EnrolleeMessages.fromMessage(enrollee));
+                    response.setAdded(response.getAdded() + 1);
+                } catch (StorageUnavailableException e) {
+                    this.aborted = true;
+                    responseObserver.onError(toStatus(e));
+                } catch (RuntimeException e) {
+                    response.setFailed(response.getFailed() + 1);
+                    if (response.getFailuresCount() < maximumFailures) {
+                        response.addFailures(AddEnrolleeFailure.newBuilder()
+                                .setId(enrollee.getId())
+                                .setMessage(String.valueOf(e.getMessage())));
+                    }
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Stream Of New Enrollees Failed After " + response.getAdded() + " Were Added: " + t.getLocalizedMessage());
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+
+                if (this.aborted) {
+                    return;
+                }
+
+                if (response.getFailed() > 0 && LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Unable To Add " + response.getFailed() + " Of " + (response.getAdded() + response.getFailed()) + " Streamed Enrollees");
+                }
+
+                responseObserver.onNext(response.build());
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    @Override
+    public void modifyEnrollee(EnrolleeMessage request, StreamObserver<Empty> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            this.enrolleeService.modifyEnrollee(EnrolleeMessages.fromMessage(request), request.getId());
+            return EMPTY;
+        });
+    }
+
+    @Override
+    public void deleteEnrollee(EnrolleeId request, StreamObserver<Empty> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            this.enrolleeService.deleteEnrollee(request.getId());
+            return EMPTY;
+        });
+    }
+
+    @Override
+    public void isEnrolleeActive(EnrolleeId request, StreamObserver<ActivationStatus> responseObserver) {
+
+        this.respond(responseObserver, () -> ActivationStatus.newBuilder()
+                .setActive(this.enrolleeService.isEnrolleeActive(request.getId()))
+                .build());
+    }
+
+    @Override
+    public void getActivationStatuses(EnrolleeIds request, StreamObserver<ActivationStatusesResponse> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            EnrolleeActivationResponse statuses = this.enrolleeService.getActivationStatuses(request.getIdsList());
+            return ActivationStatusesResponse.newBuilder()
+                    .addAllActiveIds(statuses.getActiveIds())
+                    .addAllInactiveIds(statuses.getInactiveIds())
+                    .addAllMissingIds(statuses.getMissingIds())
+                    .build();
+        });
+    }
+
+    @Override
+    public void getPossibleDuplicates(EnrolleeId request, StreamObserver<PossibleDuplicatesResponse> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            PossibleDuplicatesResponse.Builder response = PossibleDuplicatesResponse.newBuilder();
+            for (PossibleDuplicate duplicate : this.enrolleeService.getPossibleDuplicates(request.getId())) {
+                response.addPossibleDuplicates(PossibleDuplicateMessage.newBuilder()
+                        .setEnrolleeId(duplicate.getEnrolleeId())
+                        .setSimilarity(duplicate.getSimilarity()));
+            }
+            return response.build();
+        });
+    }
+
+    @Override
+    public void addDependent(DependentRequest request, StreamObserver<Empty> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            this.dependentService.addDependent(EnrolleeMessages.fromMessage(request.getDependent()), request.getEnrolleeId());
+            return EMPTY;
+        });
+    }
+
+    @Override
+    public void modifyDependent(DependentRequest request, StreamObserver<Empty> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            this.dependentService.modifyDependent(EnrolleeMessages.fromMessage(request.getDependent()), request.getEnrolleeId(),
+                    request.getDependent().getId());
+            return EMPTY;
+        });
+    }
+
+    @Override
+    public void deleteDependent(DependentId request, StreamObserver<Empty> responseObserver) {
+
+        this.respond(responseObserver, () -> {
+            this.dependentService.deleteDependent(request.getEnrolleeId(), request.getDependentId());
+            return EMPTY;
+        });
+    }
+
+    /**
+     * Helper method to answer a unary call with what the call returns, or with the status of what it throws
+     *
+     * @param responseObserver the StreamObserver to answer
+     * @param call the call to make
+     */
+    private <T> void respond(StreamObserver<T> responseObserver, Supplier<T> call) {
+
+        final T response;
+
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            responseObserver.onError(this.toStatus(e));
+            return;
+        }
+
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Helper method to turn an exception into the gRPC status of its kind, logging it as the DefaultExceptionHandler
+     * does. An unavailable database is answered with when to retry, as the REST endpoints answer it.
+     *
+     * @param e the RuntimeException that was thrown
+     * @return the StatusRuntimeException to answer with
+     */
+    StatusRuntimeException toStatus(RuntimeException e) {
+
+        if (e instanceof StorageUnavailableException) {
+
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn(e.getLocalizedMessage());
+            }
+
+            Metadata trailers = new Metadata();
+            trailers.put(RETRY_AFTER, String.valueOf(((StorageUnavailableException) e).getRetryAfterSeconds()));
+            return Status.UNAVAILABLE.withDescription(e.getMessage()).asRuntimeException(trailers);
+        }
+
+        if (LOGGER.isErrorEnabled()) {
+            LOGGER.error(e.getLocalizedMessage());
+        }
+
+        final Status status;
+        if (e instanceof ValidationException) {
+            status = Status.INVALID_ARGUMENT;
+        } else if (e instanceof ResourceDoesNotExistException) {
+            status = Status.NOT_FOUND;
+        } else if (e instanceof ResourceAlreadyExistsException) {
+            status = Status.ALREADY_EXISTS;
+        } else {
+            status = Status.INTERNAL;
+        }
+
+        return status.withDescription(e.getMessage()).withCause(e).asRuntimeException();
+    }
+
+}
@@ -0,0 +1,136 @@
+package enrollment.grpc;
+
+import enrollment.configuration.StartupOrder;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the gRPC API on its own port, in the same process as the REST endpoints. The server starts once the
+ * application is ready, after any startup warm-up, so gRPC calls are not served before REST requests are.
+ * @author Michael Kulaga
+ */
+@Component
+public class GrpcServer {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(GrpcServer.class);
+
+    private final EnrollmentGrpcService enrollmentGrpcService;
+    private final TenantServerInterceptor tenantServerInterceptor;
+    private final boolean enabled;
+    private final int port;
+    private final int threads;
+    private final long shutdownTimeoutMillis;
+
+    private Server server;
+    private ExecutorService executor;
+
+    /**
+     * Constructor for GrpcServer
+     *
+     * @param enrollmentGrpcService the EnrollmentGrpcService to serve
+     * @param tenantServerInterceptor the TenantServerInterceptor to resolve the tenant of each call with
+     * @param enabled whether the gRPC API is served
+     * @param port the port to serve on, or 0 for any free port
+     * @param threads the threads to run calls on, or 0 for as many as calls need
+     * @param shutdownTimeoutMillis how long calls in progress are given to finish on shutdown
+     */
+    public GrpcServer(EnrollmentGrpcService enrollmentGrpcService,
+                      TenantServerInterceptor tenantServerInterceptor,
+                      @Value("${enrollment.grpc.enabled:false}") boolean enabled,
+                      @Value("${enrollment.grpc.port:9090}") int port,
+                      @Value("${enrollment.grpc.threads:0}") int threads,
+                      @Value("${enrollment.grpc.shutdown-timeout-ms:10000}") long shutdownTimeoutMillis) {
+        this.enrollmentGrpcService = enrollmentGrpcService;
+        this.tenantServerInterceptor = tenantServerInterceptor;
+        this.enabled = enabled;
+        this.port = port;
+        this.threads = threads;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    /**
+     * Starts the server once the application is ready, after the in-memory indexes are rebuilt and the warm-up is done
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.SERVE)
+    public synchronized void start() {
+
+        if (!this.enabled || this.server != null) {
+            return;
+        }
+
+        NettyServerBuilder builder = NettyServerBuilder.forPort(this.port)
+                .addService(ServerInterceptors.intercept(this.enrollmentGrpcService, this.tenantServerInterceptor));
+
+        if (this.threads > 0) {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+                Thread thread = new Thread(runnable, "grpc-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            builder.executor(this.executor);
+        }
+
+        try {
+            this.server = builder.build().start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable To Start gRPC Server On Port " + this.port, e);
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("gRPC Server Started On Port " + this.server.getPort());
+        }
+    }
+
+    /**
+     * Stops taking new calls and gives those in progress time to finish before they are cancelled
+     */
+    @PreDestroy
+    public synchronized void stop() {
+
+        if (this.server == null) {
+            return;
+        }
+
+        this.server.shutdown();
+
+        try {
+            if (!this.server.awaitTermination(this.shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                this.server.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.server.shutdownNow();
+        } finally {
+            if (this.executor != null) {
+                this.executor.shutdownNow();
+            }
+            this.server = null;
+        }
+    }
+
+    /**
+     * @return the port the server is listening on, or -1 if it is not running
+     */
+    public synchronized int getPort() {
+        return this.server == null ? -1 : this.server.getPort();
+    }
+
+}
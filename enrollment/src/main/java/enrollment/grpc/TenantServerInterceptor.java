@@ -0,0 +1,196 @@
+package enrollment.grpc;
+
+import enrollment.grpc.api.EnrollmentGrpc;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Resolves the tenant of each gRPC call from the tenant header, as the TenantFilter does for REST requests, and
+ * handles the call as that tenant, recording its metrics. Calls without the header are handled as the default
+ * tenant. A call's work runs in callbacks on whichever thread gRPC picks, so the tenant is set around each callback,
+ * and each callback of a call that writes holds the tenant's write lock, so writes pause while the tenant moves
+ * between partitions.
+ * @author Michael Kulaga
+ */
+@Component
+public class TenantServerInterceptor implements ServerInterceptor {
+
+    private static final Set<String> READS = new HashSet<>(Arrays.asList(
+            EnrollmentGrpc.getGetEnrolleeMethod().getFullMethodName(),
+            EnrollmentGrpc.getGetEnrolleesMethod().getFullMethodName(),
+            EnrollmentGrpc.getListEnrolleesMethod().getFullMethodName(),
+            EnrollmentGrpc.getIsEnrolleeActiveMethod().getFullMethodName(),
+            EnrollmentGrpc.getGetActivationStatusesMethod().getFullMethodName(),
+            EnrollmentGrpc.getGetPossibleDuplicatesMethod().getFullMethodName()));
+
+    //the statuses counted as errors in a tenant's metrics, as server errors are for REST requests
+    private static final Set<Status.Code> FAILURES = EnumSet.of(Status.Code.UNKNOWN, Status.Code.INTERNAL,
+            Status.Code.UNAVAILABLE, Status.Code.DATA_LOSS, Status.Code.DEADLINE_EXCEEDED, Status.Code.UNIMPLEMENTED);
+
+    private final TenantRegistry tenantRegistry;
+    private final Metadata.Key<String> header;
+    private final long writePauseTimeoutMillis;
+
+    /**
+     * Constructor for TenantServerInterceptor
+     *
+     * @param tenantRegistry the TenantRegistry of known tenants
+     * @param header the name of the metadata header naming the tenant
+     * @param writePauseTimeoutMillis how long a write waits for a tenant to finish moving before it is refused
+     */
+    public TenantServerInterceptor(TenantRegistry tenantRegistry,
+                                   @Value("${enrollment.tenancy.header:X-Tenant-Id}") String header,
+                                   @Value("${enrollment.tenancy.write-pause-timeout-ms:10000}") long writePauseTimeoutMillis) {
+        this.tenantRegistry = tenantRegistry;
+        this.header = Metadata.Key.of(header, Metadata.ASCII_STRING_MARSHALLER);
+        this.writePauseTimeoutMillis = writePauseTimeoutMillis;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+
+        String tenant = headers.get(this.header);
+
+        if (tenant == null || tenant.isEmpty()) {
+            tenant = TenantContext.DEFAULT_TENANT;
+        } else if (!this.tenantRegistry.isKnown(tenant)) {
+            call.close(Status.NOT_FOUND.withDescription("Tenant Does Not Exist: " + tenant), new Metadata());
+            return new ServerCall.Listener<ReqT>() {
+            };
+        }
+
+        final boolean write = !READS.contains(call.getMethodDescriptor().getFullMethodName());
+        final TenantCall<ReqT, RespT> tenantCall = new TenantCall<>(call, tenant);
+        final ServerCall.Listener<ReqT> listener = TenantContext.call(tenant, () -> next.startCall(tenantCall, headers));
+
+        return new TenantListener<>(listener, tenantCall, write);
+    }
+
+    /**
+     * ServerCall recording the tenant's metrics once it is closed, or once the client cancels it
+     */
+    private class TenantCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+
+        private final String tenant;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private TenantCall(ServerCall<ReqT, RespT> call, String tenant) {
+            super(call);
+            this.tenant = tenant;
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+
+            this.closed = true;
+            super.close(status, trailers);
+            this.record(FAILURES.contains(status.getCode()));
+        }
+
+        private void record(boolean failed) {
+
+            if (this.recorded.compareAndSet(false, true)) {
+                tenantRegistry.metrics(this.tenant).record(System.nanoTime() - this.start, failed);
+            }
+        }
+    }
+
+    /**
+     * Listener handling each callback as the call's tenant, holding the tenant's write lock around the callbacks
+     * that hand a write its requests. Once the call has been refused the rest of its requests are dropped.
+     */
+    private class TenantListener<ReqT, RespT> extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
+
+        private final TenantCall<ReqT, RespT> call;
+        private final boolean write;
+
+        private TenantListener(ServerCall.Listener<ReqT> listener, TenantCall<ReqT, RespT> call, boolean write) {
+            super(listener);
+            this.call = call;
+            this.write = write;
+        }
+
+        @Override
+        public void onMessage(ReqT message) {
+            this.handle(() -> super.onMessage(message), this.write);
+        }
+
+        @Override
+        public void onHalfClose() {
+            this.handle(super::onHalfClose, this.write);
+        }
+
+        @Override
+        public void onReady() {
+            this.handle(super::onReady, false);
+        }
+
+        @Override
+        public void onCancel() {
+            this.call.record(false);
+            TenantContext.run(this.call.tenant, super::onCancel);
+        }
+
+        @Override
+        public void onComplete() {
+            TenantContext.run(this.call.tenant, super::onComplete);
+        }
+
+        /**
+         * Helper method to run a callback as the call's tenant, first taking the tenant's write lock if asked to
+         *
+         * @param callback the callback to run
+         * @param locked whether to hold the tenant's write lock while it runs
+         */
+        private void handle(Runnable callback, boolean locked) {
+
+            if (this.call.closed) {
+                return;
+            }
+
+            if (!locked) {
+                TenantContext.run(this.call.tenant, callback);
+                return;
+            }
+
+            //a read lock is released by the thread that took it, so it is held for one callback rather than the call
+            Lock writeLock = tenantRegistry.writeLock(this.call.tenant).readLock();
+            try {
+                if (!writeLock.tryLock(writePauseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    this.call.close(Status.UNAVAILABLE.withDescription("Tenant Is Moving Between Partitions: " + this.call.tenant), new Metadata());
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.call.close(Status.UNAVAILABLE.withDescription("Interrupted Waiting For Tenant: " + this.call.tenant), new Metadata());
+                return;
+            }
+
+            try {
+                TenantContext.run(this.call.tenant, callback);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+}
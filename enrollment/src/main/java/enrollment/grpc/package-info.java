@@ -0,0 +1,5 @@
+/**
+ * gRPC API for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.grpc;
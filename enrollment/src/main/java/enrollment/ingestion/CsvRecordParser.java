@@ -0,0 +1,104 @@
+package enrollment.ingestion;
+
+import enrollment.ingestion.IngestionRow.Column;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses comma separated carrier files. The header line names the columns, in any order and any case, and fields
+ * may be quoted with double quotes, doubling a quote inside a quoted field. A record may not span lines.
+ * @author Michael Kulaga
+ */
+final class CsvRecordParser implements RecordParser {
+
+    private Column[] columns;
+
+    @Override
+    public boolean readHeader(String line) {
+
+        List<String> headers = split(line);
+        Column[] columns = new Column[headers.size()];
+
+        for (int i = 0; i < headers.size(); i++) {
+            columns[i] = Column.fromHeader(headers.get(i));
+        }
+
+        for (Column column : Column.values()) {
+            if (column.isRequired() && !contains(columns, column)) {
+                throw new IllegalArgumentException("Missing Column In Header: " + column.getHeader());
+            }
+        }
+
+        this.columns = columns;
+        return true;
+    }
+
+    @Override
+    public void parse(IngestionRow row) {
+
+        List<String> fields = split(row.getLine());
+
+        if (fields == null) {
+            row.reject("Unterminated Quoted Field");
+        } else if (fields.size() != this.columns.length) {
+            row.reject("Expected " + this.columns.length + " Fields But Found " + fields.size());
+        } else {
+            for (int i = 0; i < this.columns.length; i++) {
+                if (this.columns[i] != null) {
+                    row.set(this.columns[i], fields.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method to split a line into its fields
+     *
+     * @return the fields, or null if a quoted field is not terminated
+     */
+    static List<String> split(String line) {
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static boolean contains(Column[] columns, Column column) {
+
+        for (Column each : columns) {
+            if (each == column) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+package enrollment.ingestion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a UTF-8 file one line at a time through a FileChannel and a fixed buffer, so a file of any size is read
+ * with the same memory. Lines end with a line feed, and a carriage return before it is dropped. The byte offset
+ * of every line is known, so reading can start again from any line.
+ * @author Michael Kulaga
+ */
+final class FileLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private byte[] line = new byte[256];
+    private long offset;
+    private boolean endOfFile;
+
+    /**
+     * Constructor for FileLineReader
+     *
+     * @param file the file to read
+     */
+    FileLineReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer.flip();
+    }
+
+    /**
+     * Moves to a line
+     *
+     * @param lineOffset the byte offset of the line, as returned by getOffset
+     */
+    void seek(long lineOffset) throws IOException {
+
+        this.channel.position(lineOffset);
+        this.buffer.clear().flip();
+        this.offset = lineOffset;
+        this.endOfFile = false;
+    }
+
+    /**
+     * @return the byte offset of the next line to be read
+     */
+    long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Reads the next line
+     *
+     * @return the line, without its line ending, or null at the end of the file
+     */
+    String readLine() throws IOException {
+
+        int length = 0;
+
+        while (true) {
+
+            if (!this.buffer.hasRemaining()) {
+                if (this.endOfFile || !this.fill()) {
+                    return length > 0 ? this.finish(length) : null;
+                }
+            }
+
+            byte[] bytes = this.buffer.array();
+            int start = this.buffer.position();
+            int limit = this.buffer.limit();
+            int end = start;
+            while (end < limit && bytes[end] != '\n') {
+                end++;
+            }
+
+            int count = end - start;
+            if (length + count > this.line.length) {
+                this.line = Arrays.copyOf(this.line, Math.max(this.line.length * 2, length + count));
+            }
+            System.arraycopy(bytes, start, this.line, length, count);
+            length += count;
+            this.offset += count;
+
+            if (end < limit) {
+                this.buffer.position(end + 1);
+                this.offset++;
+                return this.finish(length);
+            }
+            this.buffer.position(limit);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private boolean fill() throws IOException {
+
+        this.buffer.clear();
+        int read = this.channel.read(this.buffer);
+        this.buffer.flip();
+
+        if (read < 0) {
+            this.endOfFile = true;
+            return false;
+        }
+        return read > 0 || this.fill();
+    }
+
+    private String finish(int length) {
+
+        if (length > 0 && this.line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(this.line, 0, length, StandardCharsets.UTF_8);
+    }
+}
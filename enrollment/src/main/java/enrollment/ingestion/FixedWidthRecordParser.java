@@ -0,0 +1,60 @@
+package enrollment.ingestion;
+
+import enrollment.ingestion.IngestionRow.Column;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses fixed-width carrier files, which have no header. The layout lists the columns in the order they appear
+ * with their widths, such as "enrolleeId:10,dependentId:10,name:40", and fields are trimmed. A line shorter than
+ * the layout leaves its last fields blank.
+ * @author Michael Kulaga
+ */
+final class FixedWidthRecordParser implements RecordParser {
+
+    private final List<Column> columns = new ArrayList<>();
+    private final List<Integer> widths = new ArrayList<>();
+
+    /**
+     * Constructor for FixedWidthRecordParser
+     *
+     * @param layout the columns and their widths, separated by commas
+     */
+    FixedWidthRecordParser(String layout) {
+
+        for (String field : layout.split(",")) {
+            String[] parts = field.trim().split(":");
+            Column column = parts.length == 2 ? Column.fromHeader(parts[0]) : null;
+            if (column == null) {
+                throw new IllegalArgumentException("Invalid Fixed-Width Layout Field: " + field);
+            }
+            this.columns.add(column);
+            this.widths.add(Integer.parseInt(parts[1].trim()));
+        }
+
+        for (Column column : Column.values()) {
+            if (column.isRequired() && !this.columns.contains(column)) {
+                throw new IllegalArgumentException("Missing Column In Fixed-Width Layout: " + column.getHeader());
+            }
+        }
+    }
+
+    @Override
+    public boolean readHeader(String line) {
+        return false;
+    }
+
+    @Override
+    public void parse(IngestionRow row) {
+
+        String line = row.getLine();
+        int start = 0;
+
+        for (int i = 0; i < this.columns.size(); i++) {
+            int end = Math.min(start + this.widths.get(i), line.length());
+            row.set(this.columns.get(i), start < end ? line.substring(start, end) : null);
+            start = end;
+        }
+    }
+}
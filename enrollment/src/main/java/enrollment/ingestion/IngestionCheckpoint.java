@@ -0,0 +1,93 @@
+package enrollment.ingestion;
+
+/**
+ * How far through a carrier file ingestion has written, kept next to the file so an interrupted ingestion resumes
+ * from the last written batch rather than the start of the file
+ * @author Michael Kulaga
+ */
+public class IngestionCheckpoint {
+
+    private long fileSize;
+    private long offset;
+    private long lineNumber;
+    private long rowsRead;
+    private long enrolleesWritten;
+    private long dependentsWritten;
+    private long rowsRejected;
+    private long rejectsLength;
+    private boolean completed;
+
+    //Getters and Setters
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public void setLineNumber(long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public void setRowsRead(long rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public long getEnrolleesWritten() {
+        return enrolleesWritten;
+    }
+
+    public void setEnrolleesWritten(long enrolleesWritten) {
+        this.enrolleesWritten = enrolleesWritten;
+    }
+
+    public long getDependentsWritten() {
+        return dependentsWritten;
+    }
+
+    public void setDependentsWritten(long dependentsWritten) {
+        this.dependentsWritten = dependentsWritten;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public void setRowsRejected(long rowsRejected) {
+        this.rowsRejected = rowsRejected;
+    }
+
+    public long getRejectsLength() {
+        return rejectsLength;
+    }
+
+    public void setRejectsLength(long rejectsLength) {
+        this.rejectsLength = rejectsLength;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+}
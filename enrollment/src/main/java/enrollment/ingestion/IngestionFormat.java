@@ -0,0 +1,41 @@
+package enrollment.ingestion;
+
+/**
+ * The formats of carrier enrollment files
+ * @author Michael Kulaga
+ */
+public enum IngestionFormat {
+
+    /**
+     * Comma separated values, with a header line naming the columns
+     */
+    CSV,
+
+    /**
+     * Fixed-width fields, laid out by the configured layout
+     */
+    FIXED_WIDTH;
+
+    /**
+     * Reads a format by name, such as "csv" or "fixed-width"
+     *
+     * @param name the name of the format
+     * @return the format
+     */
+    public static IngestionFormat fromName(String name) {
+
+        for (IngestionFormat format : values()) {
+            if (format.name().replace('_', '-').equalsIgnoreCase(name.trim())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown Ingestion Format: " + name);
+    }
+
+    /**
+     * @return the name of the format, such as "fixed-width"
+     */
+    public String getName() {
+        return this.name().replace('_', '-').toLowerCase();
+    }
+}
@@ -0,0 +1,567 @@
+package enrollment.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.common.IngestionRun;
+import enrollment.exceptions.ValidationException;
+import enrollment.validation.EnrollmentValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * One ingestion of a carrier file, run as a pipeline of stages joined by bounded queues, so the file is streamed
+ * with memory bounded by the queues rather than the size of the file:
+ * <ol>
+ *     <li>a reader splits the file into chunks of lines</li>
+ *     <li>validators parse and validate chunks in parallel</li>
+ *     <li>a grouper puts the chunks back in order and groups each Enrollee's rows into one Enrollee with its
+ *     Dependents, rejecting rows that cannot be grouped</li>
+ *     <li>a writer upserts each batch of Enrollees, appends the batch's rejected rows to the rejects file and
+ *     records a checkpoint</li>
+ * </ol>
+ * Batches only end between Enrollees, so the checkpoint always marks the start of an Enrollee and an interrupted
+ * ingestion resumes from it without repeating or losing rows.
+ * @author Michael Kulaga
+ */
+final class IngestionPipeline {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final Chunk POISON = new Chunk(-1, Collections.emptyList(), 0, 0, true);
+
+    private final Path file;
+    private final Path checkpointFile;
+    private final Path rejectsFile;
+    private final RecordParser parser;
+    private final EnrollmentValidator validator;
+    private final Consumer<List<Enrollee>> writer;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int validationThreads;
+    private final int queueCapacity;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private ExecutorService executor;
+
+    /**
+     * Constructor for IngestionPipeline
+     *
+     * @param file the carrier file
+     * @param parser the RecordParser for the format of the file
+     * @param validator the EnrollmentValidator to validate rows with
+     * @param writer upserts a batch of Enrollees
+     * @param objectMapper the ObjectMapper to write the checkpoint with
+     * @param batchSize the most Enrollees, or rejected rows, written at a time
+     * @param validationThreads the number of threads parsing and validating rows
+     * @param queueCapacity the number of chunks or batches each queue between stages holds
+     */
+    IngestionPipeline(Path file,
+                      RecordParser parser,
+                      EnrollmentValidator validator,
+                      Consumer<List<Enrollee>> writer,
+                      ObjectMapper objectMapper,
+                      int batchSize,
+                      int validationThreads,
+                      int queueCapacity) {
+        this.file = file;
+        this.checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        this.rejectsFile = file.resolveSibling(file.getFileName() + ".rejects");
+        this.parser = parser;
+        this.validator = validator;
+        this.writer = writer;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.validationThreads = validationThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Ingests the file, resuming from its checkpoint unless asked to restart
+     *
+     * @param run the run to record the ingestion in
+     * @param restart whether to ignore the checkpoint and start from the beginning of the file
+     * @return the run, completed
+     */
+    IngestionRun run(IngestionRun run, boolean restart) throws IOException {
+
+        long fileSize = Files.size(this.file);
+        IngestionCheckpoint checkpoint = restart ? null : this.readCheckpoint();
+
+        if (checkpoint != null && checkpoint.getFileSize() != fileSize) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Carrier File " + this.file + " Has Changed Since Its Checkpoint, Starting From The Beginning");
+            }
+            checkpoint = null;
+        }
+        if (checkpoint == null) {
+            checkpoint = new IngestionCheckpoint();
+            checkpoint.setFileSize(fileSize);
+        }
+
+        run.setRejectsFile(this.rejectsFile.toAbsolutePath().toString());
+        run.setResumedFromLine(checkpoint.getLineNumber());
+        run.batchWritten(checkpoint.getRowsRead(), checkpoint.getEnrolleesWritten(), checkpoint.getDependentsWritten(), checkpoint.getRowsRejected());
+
+        if (checkpoint.isCompleted()) {
+            run.setState(IngestionRun.State.COMPLETED);
+            return run;
+        }
+
+        long rowsBefore = checkpoint.getRowsRead();
+        resetPeakHeap();
+        long started = System.nanoTime();
+
+        try (FileChannel rejects = FileChannel.open(this.rejectsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            rejects.truncate(checkpoint.getRejectsLength());
+            rejects.position(checkpoint.getRejectsLength());
+            if (rejects.size() == 0) {
+                write(rejects, "line,reason,record\n");
+            }
+
+            this.runStages(checkpoint, run, rejects);
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        run.setElapsedMillis(elapsedMillis);
+        run.setRowsPerSecond((run.getRowsRead() - rowsBefore) * 1000 / Math.max(1, elapsedMillis));
+        run.setPeakHeapMegabytes(peakHeapBytes() >> 20);
+        run.setState(IngestionRun.State.COMPLETED);
+        return run;
+    }
+
+    /**
+     * Helper method to run every stage until the writer has written the last batch, or any stage fails
+     */
+    private void runStages(IngestionCheckpoint checkpoint, IngestionRun run, FileChannel rejects) {
+
+        long offset = checkpoint.getOffset();
+        long lineNumber = checkpoint.getLineNumber();
+
+        BlockingQueue<Chunk> lines = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<Chunk> validated = new ArrayBlockingQueue<>(this.queueCapacity);
+        BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(this.queueCapacity);
+
+        //bounds the chunks the grouper holds back while waiting for an earlier one
+        Semaphore inFlight = new Semaphore(this.queueCapacity * 2 + this.validationThreads);
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.validationThreads + 3, runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-ingestion-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.executor.execute(this.stage(() -> this.read(offset, lineNumber, lines, inFlight)));
+        for (int i = 0; i < this.validationThreads; i++) {
+            this.executor.execute(this.stage(() -> this.validate(lines, validated)));
+        }
+        this.executor.execute(this.stage(() -> new Grouper().group(validated, batches, inFlight)));
+        this.executor.execute(this.stage(() -> this.write(batches, checkpoint, run, rejects)));
+        this.executor.shutdown();
+
+        try {
+            this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion Of " + this.file + " Was Interrupted");
+        }
+
+        Throwable cause = this.failure.get();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof IOException) {
+            throw new UncheckedIOException((IOException) cause);
+        } else if (cause != null) {
+            throw new IllegalStateException("Ingestion Of " + this.file + " Failed", cause);
+        }
+    }
+
+    /**
+     * The reader stage, which splits the file into chunks of lines from the checkpoint on, skipping blank lines
+     */
+    private void read(long resumeOffset, long resumeLineNumber, BlockingQueue<Chunk> lines, Semaphore inFlight) throws IOException, InterruptedException {
+
+        try (FileLineReader reader = new FileLineReader(this.file)) {
+
+            long lineNumber = resumeLineNumber;
+            String first = reader.readLine();
+
+            if (resumeOffset > 0) {
+                this.parser.readHeader(first);
+                reader.seek(resumeOffset);
+            } else if (first != null && this.parser.readHeader(first)) {
+                lineNumber = 1;
+            } else {
+                reader.seek(0);
+            }
+
+            long sequence = 0;
+            long offset = reader.getOffset();
+            List<IngestionRow> rows = new ArrayList<>(this.batchSize);
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.trim().isEmpty()) {
+                    rows.add(new IngestionRow(lineNumber, offset, line));
+                }
+                offset = reader.getOffset();
+
+                if (rows.size() == this.batchSize) {
+                    inFlight.acquire();
+                    lines.put(new Chunk(sequence++, rows, offset, lineNumber, false));
+                    rows = new ArrayList<>(this.batchSize);
+                }
+            }
+
+            if (!rows.isEmpty()) {
+                inFlight.acquire();
+                lines.put(new Chunk(sequence++, rows, offset, lineNumber, false));
+            }
+
+            inFlight.acquire();
+            lines.put(new Chunk(sequence, Collections.emptyList(), offset, lineNumber, true));
+            for (int i = 0; i < this.validationThreads; i++) {
+                lines.put(POISON);
+            }
+        }
+    }
+
+    /**
+     * A validator stage, which parses and validates the rows of each chunk, passing the end of the file on to the grouper
+     */
+    private void validate(BlockingQueue<Chunk> lines, BlockingQueue<Chunk> validated) throws InterruptedException {
+
+        Chunk chunk;
+        while ((chunk = lines.take()) != POISON) {
+
+            for (IngestionRow row : chunk.rows) {
+                this.parser.parse(row);
+                if (row.isRejected()) {
+                    continue;
+                }
+                try {
+                    if (row.isDependent() && row.getEnrolleeId() == null) {
+                        throw new ValidationException("Validation Error: Enrollee Id Must Not Be Blank");
+                    }
+                    this.validator.entityValidator(row.getId(), row.getName(), row.getDateOfBirth());
+                } catch (ValidationException e) {
+                    row.reject(e.getMessage());
+                }
+            }
+            validated.put(chunk);
+        }
+    }
+
+    /**
+     * The writer stage, which writes each batch and then records the checkpoint after it
+     */
+    private void write(BlockingQueue<Batch> batches, IngestionCheckpoint checkpoint, IngestionRun run, FileChannel rejects) throws IOException, InterruptedException {
+
+        long lastProgress = System.nanoTime();
+
+        while (true) {
+            Batch batch = batches.take();
+
+            if (!batch.enrollees.isEmpty()) {
+                this.writer.accept(batch.enrollees);
+            }
+            if (!batch.rejects.isEmpty()) {
+                StringBuilder lines = new StringBuilder();
+                for (IngestionRow row : batch.rejects) {
+                    lines.append(row.getLineNumber()).append(',').append(quote(row.getRejectReason())).append(',').append(quote(row.getLine())).append('\n');
+                }
+                write(rejects, lines.toString());
+                rejects.force(false);
+            }
+
+            run.batchWritten(batch.rows, batch.enrollees.size(), batch.dependents, batch.rejects.size());
+
+            checkpoint.setOffset(batch.offset);
+            checkpoint.setLineNumber(batch.lineNumber);
+            checkpoint.setRowsRead(run.getRowsRead());
+            checkpoint.setEnrolleesWritten(run.getEnrolleesWritten());
+            checkpoint.setDependentsWritten(run.getDependentsWritten());
+            checkpoint.setRowsRejected(run.getRowsRejected());
+            checkpoint.setRejectsLength(rejects.position());
+            checkpoint.setCompleted(batch.end);
+            this.writeCheckpoint(checkpoint);
+
+            if (batch.end) {
+                return;
+            }
+
+            if (System.nanoTime() - lastProgress > PROGRESS_INTERVAL_NANOS) {
+                lastProgress = System.nanoTime();
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("Ingested " + run.getRowsRead() + " Rows Of " + this.file + " To Line " + batch.lineNumber
+                            + ", " + run.getRowsRejected() + " Rejected");
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method to run a stage, failing the ingestion and stopping every other stage if it fails
+     */
+    private Runnable stage(Stage stage) {
+
+        return () -> {
+            try {
+                stage.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                if (this.failure.compareAndSet(null, e)) {
+                    this.executor.shutdownNow();
+                }
+            }
+        };
+    }
+
+    private IngestionCheckpoint readCheckpoint() throws IOException {
+        return Files.exists(this.checkpointFile) ? this.objectMapper.readValue(this.checkpointFile.toFile(), IngestionCheckpoint.class) : null;
+    }
+
+    private void writeCheckpoint(IngestionCheckpoint checkpoint) throws IOException {
+
+        Path partial = this.checkpointFile.resolveSibling(this.checkpointFile.getFileName() + ".partial");
+        Files.write(partial, this.objectMapper.writeValueAsBytes(checkpoint));
+        Files.move(partial, this.checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(FileChannel channel, String text) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Helper method to start measuring the most heap used from now on
+     */
+    private static void resetPeakHeap() {
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Helper method to read the most heap used since it was reset, summed over the heap's pools, so it can overstate
+     * a peak the pools did not reach at the same time
+     */
+    private static long peakHeapBytes() {
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * A stage of the pipeline
+     */
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * Consecutive rows of the file. The last chunk is empty and marks the end of the file.
+     */
+    private static final class Chunk {
+
+        private final long sequence;
+        private final List<IngestionRow> rows;
+        private final long offset;
+        private final long lineNumber;
+        private final boolean end;
+
+        private Chunk(long sequence, List<IngestionRow> rows, long offset, long lineNumber, boolean end) {
+            this.sequence = sequence;
+            this.rows = rows;
+            this.offset = offset;
+            this.lineNumber = lineNumber;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Enrollees and rejected rows to write, and where the file is to be read from once they are written
+     */
+    private static final class Batch {
+
+        private final List<Enrollee> enrollees = new ArrayList<>();
+        private final List<IngestionRow> rejects = new ArrayList<>();
+        private long rows;
+        private long dependents;
+        private long offset;
+        private long lineNumber;
+        private boolean end;
+    }
+
+    /**
+     * The grouper stage. An Enrollee's rows must be consecutive, starting with the Enrollee's own row and followed
+     * by its Dependents. Further rows for the Enrollee, Dependents repeating an Id and Dependents whose Enrollee has
+     * no valid row are rejected.
+     */
+    private final class Grouper {
+
+        private Batch batch = new Batch();
+        private String enrolleeId;
+        private Enrollee enrollee;
+        private final Set<String> dependentIds = new HashSet<>();
+
+        private void group(BlockingQueue<Chunk> validated, BlockingQueue<Batch> batches, Semaphore inFlight) throws InterruptedException {
+
+            Map<Long, Chunk> waiting = new HashMap<>();
+            long next = 0;
+
+            while (true) {
+                Chunk chunk = waiting.remove(next);
+                if (chunk == null) {
+                    chunk = validated.take();
+                    if (chunk.sequence != next) {
+                        waiting.put(chunk.sequence, chunk);
+                        continue;
+                    }
+                }
+                next++;
+                inFlight.release();
+
+                if (chunk.end) {
+                    this.closeEnrollee();
+                    this.batch.offset = chunk.offset;
+                    this.batch.lineNumber = chunk.lineNumber;
+                    this.batch.end = true;
+                    batches.put(this.batch);
+                    return;
+                }
+
+                for (IngestionRow row : chunk.rows) {
+                    this.group(row, batches);
+                }
+            }
+        }
+
+        private void group(IngestionRow row, BlockingQueue<Batch> batches) throws InterruptedException {
+
+            boolean nextEnrollee = !row.isRejected() && !row.getEnrolleeId().equals(this.enrolleeId);
+
+            //only end a batch where resuming from the row would group the rows after it the same way
+            if ((nextEnrollee || this.enrollee == null) && this.isBatchFull()) {
+                this.closeEnrollee();
+                this.batch.offset = row.getOffset();
+                this.batch.lineNumber = row.getLineNumber() - 1;
+                batches.put(this.batch);
+                this.batch = new Batch();
+            }
+
+            this.batch.rows++;
+
+            if (!row.isRejected()) {
+                if (nextEnrollee) {
+                    this.closeEnrollee();
+                    this.enrolleeId = row.getEnrolleeId();
+                }
+
+                if (!row.isDependent()) {
+                    if (this.enrollee != null) {
+                        row.reject("Duplicate Enrollee Row For Enrollee Id: " + row.getEnrolleeId());
+                    } else {
+                        this.enrollee = toEnrollee(row);
+                    }
+                } else if (this.enrollee == null) {
+                    row.reject("No Valid Enrollee Row Before Dependent For Enrollee Id: " + row.getEnrolleeId());
+                } else if (!this.dependentIds.add(row.getDependentId())) {
+                    row.reject("Duplicate Dependent Id: " + row.getDependentId());
+                } else {
+                    this.enrollee.getDependents().add(toDependent(row));
+                }
+            }
+
+            if (row.isRejected()) {
+                this.batch.rejects.add(row);
+            }
+        }
+
+        private boolean isBatchFull() {
+            int enrollees = this.batch.enrollees.size() + (this.enrollee != null ? 1 : 0);
+            return enrollees >= batchSize || this.batch.rejects.size() >= batchSize;
+        }
+
+        private void closeEnrollee() {
+
+            if (this.enrollee != null) {
+                this.batch.enrollees.add(this.enrollee);
+                this.batch.dependents += this.enrollee.getDependents().size();
+            }
+            this.enrolleeId = null;
+            this.enrollee = null;
+            this.dependentIds.clear();
+        }
+    }
+
+    private static Enrollee toEnrollee(IngestionRow row) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(row.getEnrolleeId());
+        enrollee.setName(row.getName());
+        enrollee.setDateOfBirth(row.getDateOfBirth());
+        enrollee.setActivationStatus(row.isActivationStatus());
+        enrollee.setPhoneNumber(row.getPhoneNumber());
+        return enrollee;
+    }
+
+    private static Dependent toDependent(IngestionRow row) {
+
+        Dependent dependent = new Dependent();
+        dependent.setId(row.getDependentId());
+        dependent.setName(row.getName());
+        dependent.setDateOfBirth(row.getDateOfBirth());
+        return dependent;
+    }
+}
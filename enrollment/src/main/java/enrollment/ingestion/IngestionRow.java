@@ -0,0 +1,202 @@
+package enrollment.ingestion;
+
+/**
+ * A row of a carrier enrollment file. A row with a Dependent Id is a Dependent of the Enrollee with the row's
+ * Enrollee Id, and a row without one is the Enrollee.
+ * @author Michael Kulaga
+ */
+final class IngestionRow {
+
+    /**
+     * The columns of a row
+     */
+    enum Column {
+        ENROLLEE_ID("enrolleeId", true),
+        DEPENDENT_ID("dependentId", false),
+        NAME("name", true),
+        DATE_OF_BIRTH("dateOfBirth", true),
+        ACTIVATION_STATUS("activationStatus", false),
+        PHONE_NUMBER("phoneNumber", false);
+
+        private final String header;
+        private final boolean required;
+
+        Column(String header, boolean required) {
+            this.header = header;
+            this.required = required;
+        }
+
+        String getHeader() {
+            return this.header;
+        }
+
+        boolean isRequired() {
+            return this.required;
+        }
+
+        /**
+         * @param header a column name, in any case
+         * @return the column, or null if there is none by that name
+         */
+        static Column fromHeader(String header) {
+
+            for (Column column : values()) {
+                if (column.header.equalsIgnoreCase(header.trim())) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final long lineNumber;
+    private final long offset;
+    private final String line;
+
+    private String enrolleeId;
+    private String dependentId;
+    private String name;
+    private String dateOfBirth;
+    private boolean activationStatus;
+    private String phoneNumber;
+    private String rejectReason;
+
+    /**
+     * Constructor for IngestionRow
+     *
+     * @param lineNumber the line number of the row, from 1
+     * @param offset the byte offset of the line
+     * @param line the line of the row
+     */
+    IngestionRow(long lineNumber, long offset, String line) {
+        this.lineNumber = lineNumber;
+        this.offset = offset;
+        this.line = line;
+    }
+
+    /**
+     * Sets a column of the row, treating blank values as missing
+     *
+     * @param column the column
+     * @param value the value of the column
+     */
+    void set(Column column, String value) {
+
+        String trimmed = value == null || value.trim().isEmpty() ? null : value.trim();
+
+        switch (column) {
+            case ENROLLEE_ID:
+                this.enrolleeId = trimmed;
+                break;
+            case DEPENDENT_ID:
+                this.dependentId = trimmed;
+                break;
+            case NAME:
+                this.name = trimmed;
+                break;
+            case DATE_OF_BIRTH:
+                this.dateOfBirth = trimmed;
+                break;
+            case ACTIVATION_STATUS:
+                this.activationStatus = this.parseActivationStatus(trimmed);
+                break;
+            case PHONE_NUMBER:
+                this.phoneNumber = trimmed;
+                break;
+        }
+    }
+
+    /**
+     * Rejects the row, keeping the first reason it was rejected for
+     *
+     * @param reason why the row was rejected
+     */
+    void reject(String reason) {
+
+        if (this.rejectReason == null) {
+            this.rejectReason = reason;
+        }
+    }
+
+    boolean isRejected() {
+        return this.rejectReason != null;
+    }
+
+    boolean isDependent() {
+        return this.dependentId != null;
+    }
+
+    /**
+     * @return the Id the row is validated by, which is the Dependent Id for Dependents
+     */
+    String getId() {
+        return this.isDependent() ? this.dependentId : this.enrolleeId;
+    }
+
+    /**
+     * Helper method to read an activation status, rejecting the row if it is not one
+     */
+    private boolean parseActivationStatus(String value) {
+
+        if (value == null) {
+            return false;
+        }
+        switch (value.toLowerCase()) {
+            case "true":
+            case "y":
+            case "yes":
+            case "1":
+                return true;
+            case "false":
+            case "n":
+            case "no":
+            case "0":
+                return false;
+            default:
+                this.reject("Invalid Activation Status: " + value);
+                return false;
+        }
+    }
+
+    //Getters
+
+    long getLineNumber() {
+        return lineNumber;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    String getLine() {
+        return line;
+    }
+
+    String getEnrolleeId() {
+        return enrolleeId;
+    }
+
+    String getDependentId() {
+        return dependentId;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getDateOfBirth() {
+        return dateOfBirth;
+    }
+
+    boolean isActivationStatus() {
+        return activationStatus;
+    }
+
+    String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    String getRejectReason() {
+        return rejectReason;
+    }
+}
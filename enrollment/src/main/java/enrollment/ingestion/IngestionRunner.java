@@ -0,0 +1,67 @@
+package enrollment.ingestion;
+
+import enrollment.common.IngestionRun;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+
+/**
+ * Runs the application as a carrier file ingestion job when given a file to ingest, such as with
+ * "--enrollment.ingestion.file=carrier.csv". The file is ingested once the application is ready, and the
+ * application then exits, with a non-zero status if the ingestion failed.
+ * @author Michael Kulaga
+ */
+@Component
+public class IngestionRunner {
+
+    public final IngestionService ingestionService;
+
+    private final String file;
+    private final IngestionFormat format;
+    private final String tenant;
+    private final boolean restart;
+
+    /**
+     * Constructor for IngestionRunner
+     *
+     * @param ingestionService the IngestionService to ingest the file with
+     * @param file the carrier file to ingest, or blank to run the application as usual
+     * @param format the format of the file, "csv" or "fixed-width"
+     * @param tenant the tenant to ingest the file into
+     * @param restart whether to start from the beginning of the file even if an earlier ingestion stopped part way
+     */
+    public IngestionRunner(IngestionService ingestionService,
+                           @Value("${enrollment.ingestion.file:}") String file,
+                           @Value("${enrollment.ingestion.format:csv}") String format,
+                           @Value("${enrollment.ingestion.tenant:default}") String tenant,
+                           @Value("${enrollment.ingestion.restart:false}") boolean restart) {
+        this.ingestionService = ingestionService;
+        this.file = file.trim();
+        this.format = IngestionFormat.fromName(format);
+        this.tenant = tenant;
+        this.restart = restart;
+    }
+
+    /**
+     * Ingests the file, if there is one, and exits
+     *
+     * @param event the ApplicationReadyEvent
+     */
+    @EventListener
+    public void applicationReady(ApplicationReadyEvent event) {
+
+        if (this.file.isEmpty()) {
+            return;
+        }
+
+        IngestionRun run = this.ingestionService.ingest(Paths.get(this.file), this.format, this.tenant, this.restart);
+        int status = run.getState() == IngestionRun.State.COMPLETED ? 0 : 1;
+
+        System.exit(SpringApplication.exit(event.getApplicationContext(), () -> status));
+    }
+
+}
@@ -0,0 +1,175 @@
+package enrollment.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enrollment.audit.AuditJournal;
+import enrollment.common.AuditRecord.Action;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+import enrollment.common.IngestionRun;
+import enrollment.duplicates.DuplicateIndex;
+import enrollment.eligibility.ActivationIndex;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.service.AgeOutService;
+import enrollment.tenancy.TenantRegistry;
+import enrollment.validation.EnrollmentValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Services for ingesting carrier enrollment files. Each Enrollee in the file is upserted with the Dependents listed
+ * under it, replacing the Enrollee and its Dependents if it already exists, and rows that cannot be ingested are
+ * written to a rejects file next to the carrier file rather than stopping the ingestion.
+ * @author Michael Kulaga
+ */
+@Service
+public class IngestionService {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(IngestionService.class);
+
+    public final EnrollmentDAO enrollmentDAO;
+    public final EnrollmentValidator validator;
+    public final DuplicateIndex duplicateIndex;
+    public final ApplicationEventPublisher eventPublisher;
+    public final TenantRegistry tenantRegistry;
+    public final ObjectMapper objectMapper;
+    public final AuditJournal auditJournal;
+    public final ActivationIndex activationIndex;
+    public final AgeOutService ageOutService;
+
+    private final int batchSize;
+    private final int validationThreads;
+    private final int queueCapacity;
+    private final String fixedWidthLayout;
+
+    /**
+     * Constructor for IngestionService
+     *
+     * @param enrollmentDAO the EnrollmentDAO to upsert Enrollees with
+     * @param validator the EnrollmentValidator to validate rows with
+     * @param duplicateIndex the DuplicateIndex to keep up to date
+     * @param eventPublisher the ApplicationEventPublisher to announce changed Enrollees with
+     * @param tenantRegistry the TenantRegistry of the tenants files may be ingested into
+     * @param objectMapper the ObjectMapper to write checkpoints with
+     * @param auditJournal the AuditJournal to record changes in
+     * @param activationIndex the ActivationIndex to keep up to date
+     * @param ageOutService the AgeOutService to report Dependents written with past Dates of Birth to
+     * @param batchSize the most Enrollees upserted at a time
+     * @param validationThreads the number of threads parsing and validating rows, or 0 for one per processor
+     * @param queueCapacity the number of chunks of rows or batches held between each stage
+     * @param fixedWidthLayout the columns of fixed-width files and their widths
+     */
+    public IngestionService(EnrollmentDAO enrollmentDAO,
+                            EnrollmentValidator validator,
+                            DuplicateIndex duplicateIndex,
+                            ApplicationEventPublisher eventPublisher,
+                            TenantRegistry tenantRegistry,
+                            ObjectMapper objectMapper,
+                            AuditJournal auditJournal,
+                            ActivationIndex activationIndex,
+                            AgeOutService ageOutService,
+                            @Value("${enrollment.ingestion.batch-size:1000}") int batchSize,
+                            @Value("${enrollment.ingestion.validation-threads:0}") int validationThreads,
+                            @Value("${enrollment.ingestion.queue-capacity:8}") int queueCapacity,
+                            @Value("${enrollment.ingestion.fixed-width-layout:enrolleeId:10,dependentId:10,name:40,dateOfBirth:10,activationStatus:1,phoneNumber:15}") String fixedWidthLayout) {
+        this.enrollmentDAO = enrollmentDAO;
+        this.validator = validator;
+        this.duplicateIndex = duplicateIndex;
+        this.eventPublisher = eventPublisher;
+        this.tenantRegistry = tenantRegistry;
+        this.objectMapper = objectMapper;
+        this.auditJournal = auditJournal;
+        this.activationIndex = activationIndex;
+        this.ageOutService = ageOutService;
+        this.batchSize = Math.max(1, batchSize);
+        this.validationThreads = validationThreads > 0 ? validationThreads : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.fixedWidthLayout = fixedWidthLayout;
+    }
+
+    /**
+     * Ingests a carrier file, resuming from where an earlier ingestion of the same file stopped
+     *
+     * @param file the carrier file
+     * @param format the format of the file
+     * @param tenant the tenant to ingest the file into
+     * @param restart whether to start from the beginning of the file even if an earlier ingestion stopped part way
+     * @return the run, which has failed if the ingestion stopped before the end of the file
+     */
+    public IngestionRun ingest(Path file, IngestionFormat format, String tenant, boolean restart) {
+
+        if (!this.tenantRegistry.isKnown(tenant)) {
+            throw new IllegalArgumentException("Unknown Tenant: " + tenant);
+        }
+
+        IngestionRun run = new IngestionRun(file.toAbsolutePath().toString(), format.getName(), tenant, Instant.now().toString());
+        RecordParser parser = format == IngestionFormat.CSV ? new CsvRecordParser() : new FixedWidthRecordParser(this.fixedWidthLayout);
+
+        IngestionPipeline pipeline = new IngestionPipeline(file, parser, this.validator, enrollees -> this.upsert(tenant, enrollees),
+                this.objectMapper, this.batchSize, this.validationThreads, this.queueCapacity);
+
+        try {
+            pipeline.run(run, restart);
+        } catch (IOException | RuntimeException e) {
+            run.setState(IngestionRun.State.FAILED);
+            run.setError(e instanceof UncheckedIOException ? e.getCause().toString() : e.toString());
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Unable To Ingest Carrier File " + file + ", Ingest It Again To Resume From Its Checkpoint: " + run.getError());
+            }
+        }
+
+        run.setFinishedAt(Instant.now().toString());
+
+        if (run.getState() == IngestionRun.State.COMPLETED && LOGGER.isInfoEnabled()) {
+            LOGGER.info("Ingested Carrier File " + file + " Into Tenant " + tenant + ": " + run.getRowsRead() + " Rows, "
+                    + run.getEnrolleesWritten() + " Enrollees, " + run.getDependentsWritten() + " Dependents, "
+                    + run.getRowsRejected() + " Rejected, " + run.getRowsPerSecond() + " Rows/s, Peak Heap "
+                    + run.getPeakHeapMegabytes() + " MB");
+        }
+
+        return run;
+    }
+
+    /**
+     * Helper method to upsert a batch of Enrollees, keeping the DuplicateIndex and ActivationIndex up to date, journaling and announcing each change
+     */
+    private void upsert(String tenant, List<Enrollee> enrollees) {
+
+        this.tenantRegistry.runWrite(tenant, () -> {
+
+            //the Dependents replaced are only read when some of those written may be late for the age-out scan
+            List<String> pastIds = enrollees.stream()
+                    .filter(enrollee -> this.ageOutService.hasPastDependents(enrollee.getDependents()))
+                    .map(Enrollee::getId)
+                    .collect(Collectors.toList());
+            Map<String, List<Dependent>> replaced = new HashMap<>();
+            if (!pastIds.isEmpty()) {
+                this.enrollmentDAO.findAllById(pastIds).forEach(existing -> replaced.put(existing.getId(), existing.getDependents()));
+            }
+
+            this.enrollmentDAO.upsertAll(enrollees);
+            for (Enrollee enrollee : enrollees) {
+                this.duplicateIndex.put(enrollee.getId(), enrollee.getName(), enrollee.getDateOfBirth());
+                this.activationIndex.put(enrollee.getId(), enrollee.isActivationStatus());
+                this.auditJournal.enrolleeChanged(enrollee.getId(), Action.REPLACED, null, enrollee);
+                this.ageOutService.dependentsChanged(enrollee.getId(), replaced.getOrDefault(enrollee.getId(), Collections.emptyList()),
+                        enrollee.getDependents());
+                this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrollee.getId(), ChangeType.MODIFIED, enrollee.isActivationStatus()));
+            }
+        });
+    }
+}
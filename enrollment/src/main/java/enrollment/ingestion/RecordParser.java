@@ -0,0 +1,23 @@
+package enrollment.ingestion;
+
+/**
+ * Parses the lines of a carrier enrollment file into rows
+ * @author Michael Kulaga
+ */
+interface RecordParser {
+
+    /**
+     * Reads the header of the file, if the format has one
+     *
+     * @param line the first line of the file
+     * @return true if the line was a header, so is not a row
+     */
+    boolean readHeader(String line);
+
+    /**
+     * Parses a line into a row, marking the row as rejected if the line cannot be parsed
+     *
+     * @param row the row holding the line
+     */
+    void parse(IngestionRow row);
+}
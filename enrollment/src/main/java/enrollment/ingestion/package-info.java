@@ -0,0 +1,5 @@
+/**
+ * Carrier enrollment file ingestion for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.ingestion;
@@ -0,0 +1,282 @@
+package enrollment.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.JsonTokenId;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming JSON serializers and deserializers for Enrollees and Dependents. Field names are pre-encoded, and
+ * values are written and read straight from the token stream rather than through reflective bean properties or
+ * intermediate trees. The JSON is the same as the default Jackson binding produces and accepts: every property is
+ * written in declaration order, nulls included, and unknown properties are handled as the ObjectMapper is configured.
+ * @author Michael Kulaga
+ */
+@JsonComponent
+public class EnrollmentJsonComponent {
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString ACTIVATION_STATUS = new SerializedString("activationStatus");
+    private static final SerializedString DATE_OF_BIRTH = new SerializedString("dateOfBirth");
+    private static final SerializedString PHONE_NUMBER = new SerializedString("phoneNumber");
+    private static final SerializedString DEPENDENTS = new SerializedString("dependents");
+
+    /**
+     * @return a module with the streaming serializers and deserializers, for ObjectMappers not built by Spring
+     */
+    public static SimpleModule module() {
+
+        SimpleModule module = new SimpleModule("EnrollmentJson");
+        module.addSerializer(Enrollee.class, new EnrolleeSerializer());
+        module.addDeserializer(Enrollee.class, new EnrolleeDeserializer());
+        module.addSerializer(Dependent.class, new DependentSerializer());
+        module.addDeserializer(Dependent.class, new DependentDeserializer());
+        return module;
+    }
+
+    /**
+     * Streaming serializer for Enrollees
+     */
+    public static class EnrolleeSerializer extends StdSerializer<Enrollee> {
+
+        public EnrolleeSerializer() {
+            super(Enrollee.class);
+        }
+
+        @Override
+        public void serialize(Enrollee enrollee, JsonGenerator generator, SerializerProvider provider) throws IOException {
+
+            generator.writeStartObject(enrollee);
+            generator.writeFieldName(ID);
+            generator.writeString(enrollee.getId());
+            generator.writeFieldName(NAME);
+            generator.writeString(enrollee.getName());
+            generator.writeFieldName(ACTIVATION_STATUS);
+            generator.writeBoolean(enrollee.isActivationStatus());
+            generator.writeFieldName(DATE_OF_BIRTH);
+            generator.writeString(enrollee.getDateOfBirth());
+            generator.writeFieldName(PHONE_NUMBER);
+            generator.writeString(enrollee.getPhoneNumber());
+            generator.writeFieldName(DEPENDENTS);
+
+            List<Dependent> dependents = enrollee.getDependents();
+
+            if (dependents == null) {
+                generator.writeNull();
+            } else {
+                generator.writeStartArray(dependents, dependents.size());
+                for (Dependent dependent : dependents) {
+                    writeDependent(dependent, generator);
+                }
+                generator.writeEndArray();
+            }
+
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Streaming serializer for Dependents
+     */
+    public static class DependentSerializer extends StdSerializer<Dependent> {
+
+        public DependentSerializer() {
+            super(Dependent.class);
+        }
+
+        @Override
+        public void serialize(Dependent dependent, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeDependent(dependent, generator);
+        }
+    }
+
+    /**
+     * Streaming deserializer for Enrollees
+     */
+    public static class EnrolleeDeserializer extends StdDeserializer<Enrollee> {
+
+        private final DependentDeserializer dependentDeserializer = new DependentDeserializer();
+
+        public EnrolleeDeserializer() {
+            super(Enrollee.class);
+        }
+
+        @Override
+        public Enrollee deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+
+            JsonToken token = startObject(parser, context, this);
+            Enrollee enrollee = new Enrollee();
+
+            for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "id":
+                        enrollee.setId(this.text(parser, context));
+                        break;
+                    case "name":
+                        enrollee.setName(this.text(parser, context));
+                        break;
+                    case "activationStatus":
+                        enrollee.setActivationStatus(this.bool(parser, context));
+                        break;
+                    case "dateOfBirth":
+                        enrollee.setDateOfBirth(this.text(parser, context));
+                        break;
+                    case "phoneNumber":
+                        enrollee.setPhoneNumber(this.text(parser, context));
+                        break;
+                    case "dependents":
+                        enrollee.setDependents(this.dependents(parser, context));
+                        break;
+                    default:
+                        this.handleUnknownProperty(parser, context, enrollee, field);
+                }
+            }
+
+            return enrollee;
+        }
+
+        /**
+         * Helper method to read the Dependents array
+         */
+        private List<Dependent> dependents(JsonParser parser, DeserializationContext context) throws IOException {
+
+            if (parser.hasToken(JsonToken.VALUE_NULL)) {
+                return null;
+            }
+
+            if (!parser.isExpectedStartArrayToken()) {
+                @SuppressWarnings("unchecked")
+                List<Dependent> unexpected = (List<Dependent>) context.handleUnexpectedToken(List.class, parser);
+                return unexpected;
+            }
+
+            List<Dependent> dependents = new ArrayList<>();
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                dependents.add(token == JsonToken.VALUE_NULL ? null : this.dependentDeserializer.deserialize(parser, context));
+            }
+            return dependents;
+        }
+
+        private String text(JsonParser parser, DeserializationContext context) throws IOException {
+            return parser.hasToken(JsonToken.VALUE_NULL) ? null : this._parseString(parser, context);
+        }
+
+        /**
+         * Helper method to read the current token as a boolean, leaving anything but true and false to be coerced by
+         * the default deserializer for booleans
+         */
+        private boolean bool(JsonParser parser, DeserializationContext context) throws IOException {
+
+            switch (parser.currentTokenId()) {
+                case JsonTokenId.ID_TRUE:
+                    return true;
+                case JsonTokenId.ID_FALSE:
+                    return false;
+                default:
+                    return context.readValue(parser, Boolean.TYPE);
+            }
+        }
+    }
+
+    /**
+     * Streaming deserializer for Dependents
+     */
+    public static class DependentDeserializer extends StdDeserializer<Dependent> {
+
+        public DependentDeserializer() {
+            super(Dependent.class);
+        }
+
+        @Override
+        public Dependent deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+
+            JsonToken token = startObject(parser, context, this);
+            Dependent dependent = new Dependent();
+
+            for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "id":
+                        dependent.setId(this.text(parser, context));
+                        break;
+                    case "name":
+                        dependent.setName(this.text(parser, context));
+                        break;
+                    case "dateOfBirth":
+                        dependent.setDateOfBirth(this.text(parser, context));
+                        break;
+                    default:
+                        this.handleUnknownProperty(parser, context, dependent, field);
+                }
+            }
+
+            return dependent;
+        }
+
+        private String text(JsonParser parser, DeserializationContext context) throws IOException {
+            return parser.hasToken(JsonToken.VALUE_NULL) ? null : this._parseString(parser, context);
+        }
+    }
+
+    /**
+     * Helper method to write a Dependent
+     */
+    private static void writeDependent(Dependent dependent, JsonGenerator generator) throws IOException {
+
+        if (dependent == null) {
+            generator.writeNull();
+            return;
+        }
+
+        generator.writeStartObject(dependent);
+        generator.writeFieldName(ID);
+        generator.writeString(dependent.getId());
+        generator.writeFieldName(NAME);
+        generator.writeString(dependent.getName());
+        generator.writeFieldName(DATE_OF_BIRTH);
+        generator.writeString(dependent.getDateOfBirth());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Helper method to move past the start of an object, as the parser may be positioned on the start of the object
+     * or, when it is nested, already on its first field
+     *
+     * @return the token of the first field, or the end of the object
+     */
+    private static JsonToken startObject(JsonParser parser, DeserializationContext context, StdDeserializer<?> deserializer) throws IOException {
+
+        JsonToken token = parser.currentToken();
+
+        if (token == JsonToken.START_OBJECT) {
+            return parser.nextToken();
+        } else if (token == JsonToken.FIELD_NAME || token == JsonToken.END_OBJECT) {
+            return token;
+        }
+
+        context.handleUnexpectedToken(deserializer.handledType(), parser);
+        return JsonToken.END_OBJECT;
+    }
+
+}
@@ -0,0 +1,26 @@
+package enrollment.json;
+
+/**
+ * A JSON document that has already been serialized, written to responses as-is by the SerializedJsonHttpMessageConverter
+ * @author Michael Kulaga
+ */
+public final class SerializedJson {
+
+    private final byte[] bytes;
+
+    /**
+     * Constructor for SerializedJson
+     *
+     * @param bytes the UTF-8 encoded JSON, which must not be changed afterwards
+     */
+    public SerializedJson(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return the UTF-8 encoded JSON, which must not be changed
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,51 @@
+package enrollment.json;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Writes SerializedJson responses by copying their bytes, without serializing anything
+ * @author Michael Kulaga
+ */
+@Component
+public class SerializedJsonHttpMessageConverter extends AbstractHttpMessageConverter<SerializedJson> {
+
+    /**
+     * Default Constructor for SerializedJsonHttpMessageConverter
+     */
+    public SerializedJsonHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SerializedJson.class == clazz;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected SerializedJson readInternal(Class<? extends SerializedJson> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Serialized JSON Can Only Be Written", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(SerializedJson json, MediaType contentType) {
+        return (long) json.getBytes().length;
+    }
+
+    @Override
+    protected void writeInternal(SerializedJson json, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(json.getBytes());
+    }
+
+}
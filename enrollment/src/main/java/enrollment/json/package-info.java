@@ -0,0 +1,5 @@
+/**
+ * JSON serialization for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.json;
@@ -0,0 +1,99 @@
+package enrollment.profiling;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the Mongo commands issued while handling a request in its RequestTrace. The commands are issued on the
+ * request thread, so they are matched to the request through the thread-local RequestTrace; commands issued by
+ * other threads, such as the driver's own monitoring, are ignored. Only sampled requests keep the text of their
+ * commands, and then only its shape: every value but the collection and database names is replaced with "?", so
+ * the names, dates of birth and phone numbers of enrollees never reach the slow request log.
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+public class MongoCommandProfiler implements CommandListener, MongoClientSettingsBuilderCustomizer {
+
+    private static final JsonWriterSettings COMMAND_TEXT = JsonWriterSettings.builder().maxLength(1000).build();
+    private static final BsonString REDACTED = new BsonString("?");
+    private static final String DATABASE = "$db";
+
+    @Override
+    public void customize(MongoClientSettings.Builder clientSettingsBuilder) {
+        clientSettingsBuilder.addCommandListener(this);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+
+        if (RequestTrace.isSampled()) {
+            RequestTrace.commandStarted(event.getRequestId(), redact(event.getCommand()).toJson(COMMAND_TEXT));
+        }
+    }
+
+    /**
+     * Copies a command with its values replaced by "?", keeping the command's first value, which names the
+     * collection, and the database name
+     *
+     * @param command the command
+     * @return the redacted copy
+     */
+    static BsonDocument redact(BsonDocument command) {
+
+        BsonDocument redacted = new BsonDocument();
+        boolean first = true;
+
+        for (String key : command.keySet()) {
+            BsonValue value = command.get(key);
+            redacted.put(key, first || DATABASE.equals(key) ? value : redact(value));
+            first = false;
+        }
+
+        return redacted;
+    }
+
+    /**
+     * Helper method to redact a value, keeping the keys of documents and the length of arrays
+     */
+    private static BsonValue redact(BsonValue value) {
+
+        if (value.isDocument()) {
+            BsonDocument redacted = new BsonDocument();
+            value.asDocument().forEach((key, nested) -> redacted.put(key, redact(nested)));
+            return redacted;
+        }
+
+        if (value.isArray()) {
+            BsonArray redacted = new BsonArray();
+            value.asArray().forEach(nested -> redacted.add(redact(nested)));
+            return redacted;
+        }
+
+        return REDACTED;
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        RequestTrace.commandCompleted(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), false);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        RequestTrace.commandCompleted(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), true);
+    }
+
+}
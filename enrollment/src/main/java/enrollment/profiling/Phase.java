@@ -0,0 +1,32 @@
+package enrollment.profiling;
+
+/**
+ * The phases of handling a request that are timed by the RequestTrace
+ * @author Michael Kulaga
+ */
+public enum Phase {
+
+    VALIDATE("validate", "Validation"),
+    SERVICE("service", "Service Logic"),
+    FIND("find", "Database Reads"),
+    WRITE("write", "Database Writes"),
+    SERIALIZE("serialize", "Serialization");
+
+    private final String metricName;
+    private final String description;
+
+    Phase(String metricName, String description) {
+        this.metricName = metricName;
+        this.description = description;
+    }
+
+    //Getters
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,99 @@
+package enrollment.profiling;
+
+import enrollment.repository.EnrollmentDAO;
+import enrollment.service.DependentService;
+import enrollment.service.EnrolleeService;
+import enrollment.validation.EnrollmentValidator;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+
+/**
+ * Times the validator, the services and the EnrollmentDAO as phases of the RequestTrace, by advising them with an
+ * interceptor that enters and exits the phase around every call. EnrollmentDAO calls are timed as reads or writes
+ * by method name.
+ * @author Michael Kulaga
+ */
+@Component
+public class PhaseTimingPostProcessor implements BeanPostProcessor {
+
+    private final boolean enabled;
+
+    /**
+     * Constructor for PhaseTimingPostProcessor
+     *
+     * @param enabled whether requests are traced at all
+     */
+    public PhaseTimingPostProcessor(@Value("${enrollment.profiling.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+
+        if (!this.enabled) {
+            return bean;
+        }
+
+        if (bean instanceof EnrollmentDAO) {
+            return advise(bean, invocation -> timed(daoPhase(invocation.getMethod()), invocation));
+        } else if (bean instanceof EnrollmentValidator) {
+            return advise(bean, invocation -> timed(Phase.VALIDATE, invocation));
+        } else if (bean instanceof EnrolleeService || bean instanceof DependentService) {
+            return advise(bean, invocation -> timed(Phase.SERVICE, invocation));
+        }
+
+        return bean;
+    }
+
+    /**
+     * Helper method to advise a bean, adding to its existing proxy when it is one
+     */
+    private static Object advise(Object bean, MethodInterceptor interceptor) {
+
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvice(0, interceptor);
+            return bean;
+        }
+
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(!(bean instanceof EnrollmentDAO));
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    private static Object timed(Phase phase, MethodInvocation invocation) throws Throwable {
+
+        if (phase == null) {
+            return invocation.proceed();
+        }
+
+        RequestTrace.enter(phase);
+        try {
+            return invocation.proceed();
+        } finally {
+            RequestTrace.exit();
+        }
+    }
+
+    /**
+     * Helper method to decide whether an EnrollmentDAO method reads or writes
+     */
+    private static Phase daoPhase(Method method) {
+
+        if (method.getDeclaringClass() == Object.class) {
+            return null;
+        }
+
+        String name = method.getName();
+        return name.startsWith("find") || name.startsWith("exists") || name.startsWith("count") || name.startsWith("stream")
+                ? Phase.FIND : Phase.WRITE;
+    }
+
+}
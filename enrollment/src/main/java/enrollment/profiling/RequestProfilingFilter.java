@@ -0,0 +1,127 @@
+package enrollment.profiling;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces every request, reporting the time spent in each phase in a Server-Timing response header and keeping
+ * requests slower than the threshold in the SlowRequestLog. The header is added just before the response body is
+ * first written, so it covers everything but writing the body itself.
+ * @author Michael Kulaga
+ */
+@Component
+public class RequestProfilingFilter extends OncePerRequestFilter {
+
+    static final String SERVER_TIMING = "Server-Timing";
+
+    private final SlowRequestLog slowRequestLog;
+    private final boolean enabled;
+    private final long thresholdNanos;
+    private final double sampleRate;
+
+    /**
+     * Constructor for RequestProfilingFilter
+     *
+     * @param slowRequestLog the SlowRequestLog to keep slow requests in
+     * @param enabled whether requests are traced at all
+     * @param thresholdMillis how long a request must take to be kept as a slow request
+     * @param sampleRate the fraction of requests whose Mongo commands are kept as text, from 0 to 1
+     */
+    public RequestProfilingFilter(SlowRequestLog slowRequestLog,
+                                  @Value("${enrollment.profiling.enabled:false}") boolean enabled,
+                                  @Value("${enrollment.profiling.slow-request-threshold-ms:500}") long thresholdMillis,
+                                  @Value("${enrollment.profiling.sample-rate:0.1}") double sampleRate) {
+        this.slowRequestLog = slowRequestLog;
+        this.enabled = enabled;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        if (!this.enabled) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        boolean sampled = this.sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < this.sampleRate;
+        RequestTrace trace = RequestTrace.begin(sampled);
+        ServerTimingResponse timedResponse = new ServerTimingResponse(response, trace);
+
+        try {
+            filterChain.doFilter(request, timedResponse);
+        } finally {
+            timedResponse.addServerTiming();
+            long totalNanos = trace.end();
+            if (totalNanos >= this.thresholdNanos) {
+                this.slowRequestLog.add(trace.snapshot(request.getMethod(), request.getRequestURI(), response.getStatus(), totalNanos));
+            }
+        }
+    }
+
+    /**
+     * Response that adds the Server-Timing header before anything commits it
+     */
+    private static class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final RequestTrace trace;
+        private boolean added;
+
+        ServerTimingResponse(HttpServletResponse response, RequestTrace trace) {
+            super(response);
+            this.trace = trace;
+        }
+
+        void addServerTiming() {
+
+            if (!this.added && !this.isCommitted()) {
+                this.setHeader(SERVER_TIMING, this.trace.serverTiming());
+            }
+            this.added = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            this.addServerTiming();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            this.addServerTiming();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            this.addServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            this.addServerTiming();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            this.addServerTiming();
+            super.sendError(sc, msg);
+        }
+    }
+
+}
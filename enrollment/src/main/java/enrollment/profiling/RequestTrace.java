@@ -0,0 +1,264 @@
+package enrollment.profiling;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-thread timings of the request being handled. Each thread reuses one RequestTrace, so timing a phase only
+ * reads the clock and updates arrays. Phases nest, and a phase is only charged for the time not spent in the
+ * phases nested inside it, so the phase timings add up to no more than the whole request. Mongo commands are
+ * recorded separately, as they are issued from within the find and write phases.
+ * @author Michael Kulaga
+ */
+public final class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = ThreadLocal.withInitial(RequestTrace::new);
+
+    private static final int MAXIMUM_DEPTH = 16;
+    static final int MAXIMUM_COMMANDS = 32;
+
+    private boolean active;
+    private boolean sampled;
+    private long startNanos;
+    private long startMillis;
+
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final Phase[] stack = new Phase[MAXIMUM_DEPTH];
+    private int depth;
+    private long segmentStartNanos;
+
+    private final String[] commandNames = new String[MAXIMUM_COMMANDS];
+    private final String[] commandTexts = new String[MAXIMUM_COMMANDS];
+    private final long[] commandNanos = new long[MAXIMUM_COMMANDS];
+    private final boolean[] commandFailed = new boolean[MAXIMUM_COMMANDS];
+    private int commandCount;
+    private long allCommandNanos;
+    private int pendingRequestId;
+    private String pendingText;
+
+    private RequestTrace() {
+    }
+
+    /**
+     * Starts tracing the request handled by this thread
+     *
+     * @param sampled whether the text of each Mongo command should be kept as well
+     * @return the RequestTrace of this thread
+     */
+    static RequestTrace begin(boolean sampled) {
+
+        RequestTrace trace = CURRENT.get();
+        trace.active = true;
+        trace.sampled = sampled;
+        trace.startNanos = System.nanoTime();
+        trace.startMillis = System.currentTimeMillis();
+        trace.depth = 0;
+        trace.commandCount = 0;
+        trace.allCommandNanos = 0;
+        trace.pendingText = null;
+        Arrays.fill(trace.phaseNanos, 0);
+        Arrays.fill(trace.commandTexts, null);
+        return trace;
+    }
+
+    /**
+     * Starts timing a phase, pausing the phase it is nested in
+     *
+     * @param phase the phase being entered
+     */
+    public static void enter(Phase phase) {
+
+        RequestTrace trace = CURRENT.get();
+        if (!trace.active) {
+            return;
+        }
+
+        if (trace.depth >= MAXIMUM_DEPTH) {
+            trace.depth++;
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (trace.depth > 0) {
+            trace.phaseNanos[trace.stack[trace.depth - 1].ordinal()] += now - trace.segmentStartNanos;
+        }
+        trace.stack[trace.depth++] = phase;
+        trace.segmentStartNanos = now;
+    }
+
+    /**
+     * Stops timing the phase most recently entered, resuming the phase it is nested in
+     */
+    public static void exit() {
+
+        RequestTrace trace = CURRENT.get();
+        if (!trace.active || trace.depth == 0) {
+            return;
+        }
+
+        if (trace.depth > MAXIMUM_DEPTH) {
+            trace.depth--;
+            return;
+        }
+
+        long now = System.nanoTime();
+        trace.phaseNanos[trace.stack[--trace.depth].ordinal()] += now - trace.segmentStartNanos;
+        trace.segmentStartNanos = now;
+    }
+
+    /**
+     * @return whether the request handled by this thread is traced and sampled, so Mongo commands should be kept as text
+     */
+    static boolean isSampled() {
+
+        RequestTrace trace = CURRENT.get();
+        return trace.active && trace.sampled;
+    }
+
+    /**
+     * Holds the text of a Mongo command that has been started, until it completes
+     *
+     * @param requestId the Id the driver gave the command
+     * @param text the text of the command
+     */
+    static void commandStarted(int requestId, String text) {
+
+        RequestTrace trace = CURRENT.get();
+        if (trace.active) {
+            trace.pendingRequestId = requestId;
+            trace.pendingText = text;
+        }
+    }
+
+    /**
+     * Records a completed Mongo command issued while handling the request
+     *
+     * @param requestId the Id the driver gave the command
+     * @param name the name of the command
+     * @param nanos how long the command took
+     * @param failed whether the command failed
+     */
+    static void commandCompleted(int requestId, String name, long nanos, boolean failed) {
+
+        RequestTrace trace = CURRENT.get();
+        if (!trace.active) {
+            return;
+        }
+
+        trace.allCommandNanos += nanos;
+
+        if (trace.commandCount < MAXIMUM_COMMANDS) {
+            int i = trace.commandCount;
+            trace.commandNames[i] = name;
+            trace.commandTexts[i] = trace.pendingText != null && trace.pendingRequestId == requestId ? trace.pendingText : null;
+            trace.commandNanos[i] = nanos;
+            trace.commandFailed[i] = failed;
+        }
+
+        trace.commandCount++;
+        trace.pendingText = null;
+    }
+
+    /**
+     * Stops tracing the request handled by this thread
+     *
+     * @return how long the request took, in nanoseconds
+     */
+    long end() {
+
+        this.active = false;
+        return System.nanoTime() - this.startNanos;
+    }
+
+    /**
+     * Formats the timings so far as the value of a Server-Timing header, in milliseconds
+     *
+     * @return the Server-Timing header value
+     */
+    String serverTiming() {
+
+        StringBuilder header = new StringBuilder(160);
+
+        for (Phase phase : Phase.values()) {
+            long nanos = this.phaseNanos[phase.ordinal()];
+            if (phase == this.currentPhase()) {
+                nanos += System.nanoTime() - this.segmentStartNanos;
+            }
+            if (nanos > 0) {
+                appendMetric(header, phase.getMetricName(), phase.getDescription(), nanos);
+            }
+        }
+
+        if (this.commandCount > 0) {
+            appendMetric(header, "mongo", this.commandCount + (this.commandCount == 1 ? " Command" : " Commands"), this.allCommandNanos);
+        }
+
+        appendMetric(header, "total", null, System.nanoTime() - this.startNanos);
+
+        return header.toString();
+    }
+
+    /**
+     * Copies the timings of a finished request, to be kept after this RequestTrace is reused
+     *
+     * @param method the HTTP method of the request
+     * @param path the path of the request
+     * @param status the HTTP status of the response
+     * @param totalNanos how long the request took
+     * @return the SlowRequest
+     */
+    SlowRequest snapshot(String method, String path, int status, long totalNanos) {
+
+        Map<String, Double> phases = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            if (this.phaseNanos[phase.ordinal()] > 0) {
+                phases.put(phase.getMetricName(), millis(this.phaseNanos[phase.ordinal()]));
+            }
+        }
+
+        List<SlowRequest.MongoCommand> commands = new ArrayList<>();
+        for (int i = 0; i < Math.min(this.commandCount, MAXIMUM_COMMANDS); i++) {
+            commands.add(new SlowRequest.MongoCommand(this.commandNames[i], millis(this.commandNanos[i]),
+                    this.commandFailed[i], this.commandTexts[i]));
+        }
+
+        return new SlowRequest(method, path, status, Instant.ofEpochMilli(this.startMillis).toString(), millis(totalNanos),
+                phases, this.commandCount, commands, this.sampled);
+    }
+
+    private Phase currentPhase() {
+        return this.depth > 0 && this.depth <= MAXIMUM_DEPTH ? this.stack[this.depth - 1] : null;
+    }
+
+    private static void appendMetric(StringBuilder header, String name, String description, long nanos) {
+
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+
+        header.append(name);
+        if (description != null) {
+            header.append(";desc=\"").append(description).append('"');
+        }
+
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        header.append(";dur=").append(micros / 1000).append('.');
+        if (fraction < 100) {
+            header.append('0');
+        }
+        if (fraction < 10) {
+            header.append('0');
+        }
+        header.append(fraction);
+    }
+
+    private static double millis(long nanos) {
+        return (nanos / 1000) / 1000.0;
+    }
+
+}
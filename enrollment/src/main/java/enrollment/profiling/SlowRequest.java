@@ -0,0 +1,121 @@
+package enrollment.profiling;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A request that took longer than the slow request threshold, with where its time went
+ * @author Michael Kulaga
+ */
+public class SlowRequest {
+
+    private final String method;
+    private final String path;
+    private final int status;
+    private final String startedAt;
+    private final double totalMillis;
+    private final Map<String, Double> phaseMillis;
+    private final int mongoCommandCount;
+    private final List<MongoCommand> mongoCommands;
+    private final boolean sampled;
+
+    /**
+     * Constructor for SlowRequest
+     *
+     * @param method the HTTP method of the request
+     * @param path the path of the request
+     * @param status the HTTP status of the response
+     * @param startedAt when the request started
+     * @param totalMillis how long the request took
+     * @param phaseMillis how long each phase took, not counting the phases nested inside it
+     * @param mongoCommandCount how many Mongo commands the request issued
+     * @param mongoCommands the first Mongo commands the request issued
+     * @param sampled whether the text of the Mongo commands was kept
+     */
+    SlowRequest(String method, String path, int status, String startedAt, double totalMillis, Map<String, Double> phaseMillis,
+                int mongoCommandCount, List<MongoCommand> mongoCommands, boolean sampled) {
+        this.method = method;
+        this.path = path;
+        this.status = status;
+        this.startedAt = startedAt;
+        this.totalMillis = totalMillis;
+        this.phaseMillis = phaseMillis;
+        this.mongoCommandCount = mongoCommandCount;
+        this.mongoCommands = mongoCommands;
+        this.sampled = sampled;
+    }
+
+    //Getters
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public Map<String, Double> getPhaseMillis() {
+        return phaseMillis;
+    }
+
+    public int getMongoCommandCount() {
+        return mongoCommandCount;
+    }
+
+    public List<MongoCommand> getMongoCommands() {
+        return mongoCommands;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * A Mongo command issued while handling the request
+     */
+    public static class MongoCommand {
+
+        private final String name;
+        private final double durationMillis;
+        private final boolean failed;
+        private final String command;
+
+        MongoCommand(String name, double durationMillis, boolean failed, String command) {
+            this.name = name;
+            this.durationMillis = durationMillis;
+            this.failed = failed;
+            this.command = command;
+        }
+
+        //Getters
+
+        public String getName() {
+            return name;
+        }
+
+        public double getDurationMillis() {
+            return durationMillis;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package enrollment.profiling;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring buffer of the most recent slow requests, overwriting the oldest once full
+ * @author Michael Kulaga
+ */
+@Component
+public class SlowRequestLog {
+
+    private final AtomicReferenceArray<SlowRequest> entries;
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * Constructor for SlowRequestLog
+     *
+     * @param capacity the number of slow requests to keep
+     */
+    public SlowRequestLog(@Value("${enrollment.profiling.slow-request-buffer-size:100}") int capacity) {
+        this.entries = new AtomicReferenceArray<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Keeps a slow request, overwriting the oldest if the buffer is full
+     *
+     * @param slowRequest the SlowRequest to keep
+     */
+    public void add(SlowRequest slowRequest) {
+        this.entries.set((int) (this.written.getAndIncrement() % this.entries.length()), slowRequest);
+    }
+
+    /**
+     * @return the slow requests kept, newest first
+     */
+    public List<SlowRequest> recent() {
+
+        long next = this.written.get();
+        int count = (int) Math.min(next, this.entries.length());
+        List<SlowRequest> recent = new ArrayList<>(count);
+
+        for (long i = next - 1; i >= next - count; i--) {
+            SlowRequest slowRequest = this.entries.get((int) (i % this.entries.length()));
+            if (slowRequest != null) {
+                recent.add(slowRequest);
+            }
+        }
+        return recent;
+    }
+
+    /**
+     * Forgets every slow request kept
+     */
+    public void clear() {
+
+        for (int i = 0; i < this.entries.length(); i++) {
+            this.entries.set(i, null);
+        }
+    }
+
+}
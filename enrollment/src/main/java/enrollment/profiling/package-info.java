@@ -0,0 +1,5 @@
+/**
+ * Request profiling for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.profiling;
\ No newline at end of file
@@ -0,0 +1,180 @@
+package enrollment.repository;
+
+import org.bson.Document;
+import org.springframework.data.mapping.PersistentProperty;
+import org.springframework.data.mapping.model.FieldNamingStrategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The compact document field names of Enrollees and Dependents: one letter per property instead of the property
+ * name, which every document would otherwise repeat, once for the Enrollee and once more for every Dependent.
+ * Properties without a compact name, such as the Ids, keep their usual field names.
+ * @author Michael Kulaga
+ */
+final class CompactFieldNames implements FieldNamingStrategy {
+
+    static final String TYPE_KEY = "_class";
+
+    private static final Map<String, String> COMPACT;
+    private static final Map<String, String> EXPANDED = new HashMap<>();
+
+    static {
+        Map<String, String> compact = new HashMap<>();
+        compact.put("name", "n");
+        compact.put("activationStatus", "a");
+        compact.put("dateOfBirth", "b");
+        compact.put("phoneNumber", "p");
+        compact.put("dependents", "d");
+        COMPACT = Collections.unmodifiableMap(compact);
+        compact.forEach((property, key) -> EXPANDED.put(key, property));
+    }
+
+    @Override
+    public String getFieldName(PersistentProperty<?> property) {
+        return COMPACT.getOrDefault(property.getName(), property.getName());
+    }
+
+    /**
+     * @return every field name that has a compact form, in both forms
+     */
+    static List<String> allFieldNames() {
+
+        List<String> names = new ArrayList<>(COMPACT.keySet());
+        names.addAll(COMPACT.values());
+        return names;
+    }
+
+    /**
+     * @param fieldName a document field name
+     * @return the field name in the other form, or null if it has no other form
+     */
+    static String otherForm(String fieldName) {
+
+        String other = COMPACT.get(fieldName);
+        return other != null ? other : EXPANDED.get(fieldName);
+    }
+
+    /**
+     * @param fieldName a document field name
+     * @return true if the field name is the compact form of a property name
+     */
+    static boolean isCompact(String fieldName) {
+        return EXPANDED.containsKey(fieldName);
+    }
+
+    /**
+     * Renames, in place, the fields of a stored document and of the documents embedded in its arrays that are
+     * in the other form. A document written to before its conversion finished may hold a field in both forms: the
+     * arrays are merged, keeping the elements in the given form where both hold the same Id, and otherwise the
+     * value in the given form is kept, as it is the one written since the form was switched.
+     *
+     * @param document the stored document
+     * @param compact true to rename fields to their compact form, false to rename them to their property names
+     * @return true if any field was renamed
+     */
+    static boolean normalize(Document document, boolean compact) {
+
+        Map<String, String> renames = compact ? COMPACT : EXPANDED;
+        boolean renamed = false;
+
+        for (String key : new ArrayList<>(document.keySet())) {
+
+            Object value = document.get(key);
+
+            if (value instanceof List) {
+                for (Object element : (List<?>) value) {
+                    if (element instanceof Document) {
+                        renamed |= normalize((Document) element, compact);
+                    }
+                }
+            }
+
+            String renamedKey = renames.get(key);
+            if (renamedKey == null) {
+                continue;
+            }
+
+            Object renamedValue = document.remove(key);
+            if (!document.containsKey(renamedKey)) {
+                document.put(renamedKey, renamedValue);
+            } else if (document.get(renamedKey) instanceof List && renamedValue instanceof List) {
+                document.put(renamedKey, merge((List<?>) document.get(renamedKey), (List<?>) renamedValue));
+            }
+            renamed = true;
+        }
+
+        return renamed;
+    }
+
+    /**
+     * Converts a stored document to the given form. Compact documents also leave out null fields, empty arrays
+     * and the type key, none of which are needed to read them back.
+     *
+     * @param document the stored document, which is left unchanged
+     * @param compact true to convert to the compact form, false to the expanded form
+     * @return the converted document
+     */
+    static Document convert(Document document, boolean compact) {
+
+        Document converted = (Document) copy(document);
+        normalize(converted, compact);
+
+        if (compact) {
+            converted.remove(TYPE_KEY);
+            converted.values().removeIf(value -> value == null || (value instanceof List && ((List<?>) value).isEmpty()));
+        }
+
+        return converted;
+    }
+
+    /**
+     * Helper method to merge the elements of an array stored in both forms, leaving out the elements of the other
+     * form whose Ids are already in the array of the given form
+     */
+    private static List<Object> merge(List<?> elements, List<?> otherElements) {
+
+        List<Object> merged = new ArrayList<>(elements);
+        Set<Object> ids = new HashSet<>();
+        for (Object element : elements) {
+            if (element instanceof Document) {
+                ids.add(((Document) element).get("_id"));
+            }
+        }
+
+        for (Object element : otherElements) {
+            Object id = element instanceof Document ? ((Document) element).get("_id") : null;
+            if (id == null || !ids.contains(id)) {
+                merged.add(element);
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Helper method to deep copy the documents and arrays of a stored document
+     */
+    private static Object copy(Object value) {
+
+        if (value instanceof Document) {
+            Document copied = new Document();
+            ((Document) value).forEach((key, field) -> copied.put(key, copy(field)));
+            return copied;
+        } else if (value instanceof List) {
+            List<Object> copied = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                copied.add(copy(element));
+            }
+            return copied;
+        }
+        return value;
+    }
+
+}
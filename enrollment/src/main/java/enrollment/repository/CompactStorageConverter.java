@@ -0,0 +1,442 @@
+package enrollment.repository;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import enrollment.common.StorageConversion;
+import enrollment.common.StorageConversion.CollectionConversion;
+import enrollment.common.StorageConversion.State;
+import enrollment.exceptions.ValidationException;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Converts the stored Enrollee and external Dependent documents of every tenant to the configured document form,
+ * compact or expanded, with numeric or string Ids, on a background thread. Documents are read in Id order and in
+ * batches, and each document is replaced only if it has not changed since it was read, so conversion is safe while
+ * the application keeps writing. A document whose own Id changes form cannot be replaced, so it is inserted under
+ * its new Id before the old one is deleted. Progress is recorded in the "storage_conversions" collection after every
+ * batch, so a stopped conversion resumes after the last document it reached, and a collection already converted to
+ * the configured form is skipped. Once a collection is converted its indexes are rebuilt, and their size and the
+ * time to look up a document by Id are compared with what they were before.
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+public class CompactStorageConverter {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(CompactStorageConverter.class);
+
+    static final String PROGRESS_COLLECTION = "storage_conversions";
+
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+    private static final int MAXIMUM_ATTEMPTS = 5;
+    private static final int LOOKUP_SAMPLE = 100;
+
+    private final MongoOperations mongoOperations;
+    private final TenantRegistry tenantRegistry;
+    private final ExternalDependentStore dependentStore;
+    private final boolean compact;
+    private final boolean numericIds;
+    private final boolean rebuildIndexes;
+    private final int batchSize;
+    private final ExecutorService executor;
+
+    private volatile StorageConversion conversion;
+
+    /**
+     * Constructor for CompactStorageConverter
+     *
+     * @param mongoOperations the MongoOperations to use
+     * @param tenantRegistry the TenantRegistry of the tenants to convert
+     * @param dependentStore the ExternalDependentStore to find the Dependent collections with
+     * @param compact whether documents are stored in the compact form
+     * @param numericIds whether Enrollee and Dependent Ids are stored as 64-bit integers
+     * @param rebuildIndexes whether to rebuild the indexes of a collection once documents in it were converted
+     * @param batchSize the number of documents read at a time
+     */
+    CompactStorageConverter(MongoOperations mongoOperations,
+                            TenantRegistry tenantRegistry,
+                            ExternalDependentStore dependentStore,
+                            @Value("${enrollment.storage.compact-keys:false}") boolean compact,
+                            @Value("${enrollment.storage.numeric-ids:false}") boolean numericIds,
+                            @Value("${enrollment.storage.rebuild-indexes-after-conversion:true}") boolean rebuildIndexes,
+                            @Value("${enrollment.storage.conversion-batch-size:500}") int batchSize) {
+        this.mongoOperations = mongoOperations;
+        this.tenantRegistry = tenantRegistry;
+        this.dependentStore = dependentStore;
+        this.compact = compact;
+        this.numericIds = numericIds;
+        this.rebuildIndexes = rebuildIndexes;
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-storage-conversion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts converting the stored documents of every tenant to the configured form
+     *
+     * @return the started StorageConversion
+     */
+    public synchronized StorageConversion start() {
+
+        if (this.conversion != null && this.conversion.getState() == State.RUNNING) {
+            throw new ValidationException("Validation Error: A Storage Conversion Is Already Running");
+        }
+
+        StorageConversion started = new StorageConversion(this.compact, this.numericIds, Instant.now().toString());
+        this.conversion = started;
+        this.executor.submit(() -> this.run(started));
+        return started;
+    }
+
+    /**
+     * @return the latest conversion since startup, or null if there has not been one
+     */
+    public StorageConversion getConversion() {
+        return this.conversion;
+    }
+
+    /**
+     * Stops any running conversion, so it can be resumed after a restart
+     */
+    @PreDestroy
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Helper method to convert the collections of every tenant
+     */
+    private void run(StorageConversion started) {
+
+        try {
+            for (String tenant : this.tenantRegistry.getTenants()) {
+                TenantContext.run(tenant, () -> {
+                    this.convert(started, this.dependentStore.enrolleeCollection(), "_id");
+                    this.convert(started, this.dependentStore.collection(), ExternalDependentStore.ENROLLEE_ID);
+                });
+            }
+            started.finish(State.COMPLETED, Instant.now().toString(), null);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable To Convert Stored Documents", e);
+            started.finish(State.FAILED, Instant.now().toString(), e.getMessage());
+        }
+    }
+
+    /**
+     * Helper method to convert one collection, resuming from its recorded progress
+     *
+     * @param lookupField the field the collection's documents are looked up by, to time lookups with
+     */
+    private void convert(StorageConversion started, String collectionName, String lookupField) {
+
+        MongoCollection<Document> collection = this.mongoOperations.getCollection(collectionName);
+        MongoCollection<Document> progress = this.mongoOperations.getCollection(PROGRESS_COLLECTION);
+        CollectionConversion converted = new CollectionConversion(collectionName);
+        started.getCollections().add(converted);
+
+        Object lastId = null;
+        Document recorded = progress.find(Filters.eq("_id", collectionName)).first();
+
+        if (recorded != null && recorded.getBoolean("compact", false) == this.compact
+                && recorded.getBoolean("numericIds", false) == this.numericIds) {
+            lastId = recorded.get("lastId");
+            converted.batchConverted(recorded.getLong("documentsScanned"), recorded.getLong("documentsConverted"),
+                    recorded.getLong("bytesBefore"), recorded.getLong("bytesAfter"), lastId != null ? lastId.toString() : null);
+            converted.measuredBefore(recorded.get("indexBytesBefore", -1L), recorded.get("lookupMicrosBefore", -1d));
+            if (recorded.getBoolean("completed", false)) {
+                converted.measuredAfter(recorded.get("indexBytesAfter", -1L), recorded.get("lookupMicrosAfter", -1d));
+                converted.setCompleted(true);
+                return;
+            }
+        } else {
+            converted.measuredBefore(this.indexBytes(collectionName), this.lookupMicros(collection, lookupField));
+        }
+
+        Object from = lastId != null ? lastId : NumericIds.nextIdType(null);
+
+        while (from != null) {
+
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("Storage Conversion Interrupted");
+            }
+
+            List<Document> batch = collection.find(Filters.gt("_id", from)).sort(Sorts.ascending("_id")).limit(this.batchSize).into(new ArrayList<>());
+
+            if (batch.isEmpty()) {
+                from = NumericIds.nextIdType(from);
+                continue;
+            }
+
+            long documents = 0;
+            long before = 0;
+            long afterBytes = 0;
+
+            for (Document document : batch) {
+                long[] sizes = this.convert(collection, document);
+                if (sizes != null) {
+                    documents++;
+                    before += sizes[0];
+                    afterBytes += sizes[1];
+                }
+            }
+
+            lastId = batch.get(batch.size() - 1).get("_id");
+            from = lastId;
+            converted.batchConverted(batch.size(), documents, before, afterBytes, lastId.toString());
+            this.recordProgress(progress, converted, lastId);
+        }
+
+        if (converted.getDocumentsConverted() > 0) {
+            this.rebuildIndexes(collectionName);
+        }
+        converted.measuredAfter(this.indexBytes(collectionName), this.lookupMicros(collection, lookupField));
+
+        converted.setCompleted(true);
+        this.recordProgress(progress, converted, lastId);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Converted " + converted.getDocumentsConverted() + " Documents In " + collectionName + ", Saving "
+                    + converted.getBytesSavedPerDocument() + " Bytes Per Document, With Indexes Of "
+                    + converted.getIndexBytesBefore() + " Bytes Before And " + converted.getIndexBytesAfter() + " Bytes After");
+        }
+    }
+
+    /**
+     * Converts an Enrollee or external Dependent document, in whichever form it was stored, such as one read from
+     * a backup, to the configured form
+     *
+     * @param document the document, which is left unchanged
+     * @return the document in the configured form
+     */
+    public Document toConfiguredForm(Document document) {
+
+        Document converted = CompactFieldNames.convert(document, this.compact);
+        NumericIds.convert(converted, this.numericIds);
+        return converted;
+    }
+
+    /**
+     * Helper method to convert one document, replacing it only if it has not changed since it was read, and
+     * reading it again if it has
+     *
+     * @return the BSON size of the document before and after, or null if it did not need converting or is gone
+     */
+    private long[] convert(MongoCollection<Document> collection, Document document) {
+
+        Document current = document;
+
+        for (int attempt = 0; attempt < MAXIMUM_ATTEMPTS && current != null; attempt++) {
+
+            Document converted = this.toConfiguredForm(current);
+            if (converted.equals(current)) {
+                return null;
+            }
+
+            boolean written = Objects.equals(converted.get("_id"), current.get("_id"))
+                    ? replace(collection, current, converted)
+                    : move(collection, current, converted);
+
+            if (written) {
+                return new long[] {bsonSize(current), bsonSize(converted)};
+            }
+
+            current = collection.find(Filters.eq("_id", document.get("_id"))).first();
+        }
+
+        if (current != null && LOGGER.isWarnEnabled()) {
+            LOGGER.warn("Unable To Convert Document " + document.get("_id") + ", It Kept Changing");
+        }
+        return null;
+    }
+
+    /**
+     * Helper method to rebuild the indexes of a collection by compacting it, as the Id index in particular is left
+     * half empty by documents moved to new Ids out of the order of the new Ids. Compacting blocks the database
+     * before MongoDb 4.4, and is not allowed on some hosted deployments, which keep the indexes as they are.
+     */
+    private void rebuildIndexes(String collectionName) {
+
+        if (!this.rebuildIndexes) {
+            return;
+        }
+
+        try {
+            this.mongoOperations.executeCommand(new Document("compact", collectionName));
+        } catch (RuntimeException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Unable To Rebuild The Indexes Of " + collectionName + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Helper method to read the total size of the indexes of a collection
+     *
+     * @return the size in bytes, or -1 if the database does not report it
+     */
+    private long indexBytes(String collectionName) {
+
+        try {
+            Object size = this.mongoOperations.executeCommand(new Document("collStats", collectionName)).get("totalIndexSize");
+            return size instanceof Number ? ((Number) size).longValue() : -1;
+        } catch (RuntimeException e) {
+            //a collection that does not exist yet has no statistics on some MongoDb versions
+            return -1;
+        }
+    }
+
+    /**
+     * Helper method to time looking up a random sample of a collection's documents, one at a time, by the field
+     * they are looked up by
+     *
+     * @return the average time of a lookup in microseconds, or -1 if the collection is empty or cannot be sampled
+     */
+    private double lookupMicros(MongoCollection<Document> collection, String lookupField) {
+
+        List<Object> ids = new ArrayList<>();
+        try {
+            for (Document sampled : collection.aggregate(Arrays.asList(Aggregates.sample(LOOKUP_SAMPLE),
+                    Aggregates.project(Projections.include(lookupField))))) {
+                if (sampled.get(lookupField) != null) {
+                    ids.add(sampled.get(lookupField));
+                }
+            }
+        } catch (MongoException e) {
+            //the measurements are only for comparison, so a database that cannot sample does not stop the conversion
+            return -1;
+        }
+
+        if (ids.isEmpty()) {
+            return -1;
+        }
+
+        long start = System.nanoTime();
+        for (Object id : ids) {
+            collection.find(Filters.eq(lookupField, id)).first();
+        }
+        return (System.nanoTime() - start) / 1000.0 / ids.size();
+    }
+
+    private void recordProgress(MongoCollection<Document> progress, CollectionConversion converted, Object lastId) {
+
+        Document recorded = new Document("_id", converted.getCollection())
+                .append("compact", this.compact)
+                .append("numericIds", this.numericIds)
+                .append("lastId", lastId)
+                .append("documentsScanned", converted.getDocumentsScanned())
+                .append("documentsConverted", converted.getDocumentsConverted())
+                .append("bytesBefore", converted.getBytesBefore())
+                .append("bytesAfter", converted.getBytesAfter())
+                .append("indexBytesBefore", converted.getIndexBytesBefore())
+                .append("lookupMicrosBefore", converted.getLookupMicrosBefore())
+                .append("indexBytesAfter", converted.getIndexBytesAfter())
+                .append("lookupMicrosAfter", converted.getLookupMicrosAfter())
+                .append("completed", converted.isCompleted());
+
+        progress.replaceOne(Filters.eq("_id", converted.getCollection()), recorded, new ReplaceOptions().upsert(true));
+    }
+
+    /**
+     * Helper method to replace a document whose Id keeps its form
+     *
+     * @return true if the document was replaced, false if it changed since it was read
+     */
+    private static boolean replace(MongoCollection<Document> collection, Document current, Document converted) {
+
+        try {
+            return collection.replaceOne(unchanged(current), converted, new ReplaceOptions()).getMatchedCount() > 0;
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            //the same external Dependent was written again with converted Ids, and is newer than this one
+            return collection.deleteOne(unchanged(current)).getDeletedCount() > 0;
+        }
+    }
+
+    /**
+     * Helper method to move a document whose Id changes form to its new Id, as an Id cannot be changed in place.
+     * The new document is inserted before the old one is deleted, so a conversion stopped between the two finds the
+     * old one again and only deletes it. A document already stored under the new Id is either that one, or the
+     * same Enrollee written again since the Ids were switched, which is newer than this one.
+     *
+     * @return true if the old document was deleted, false if it changed since it was read
+     */
+    private static boolean move(MongoCollection<Document> collection, Document current, Document converted) {
+
+        boolean inserted = true;
+        try {
+            collection.insertOne(converted);
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            inserted = false;
+        }
+
+        if (collection.deleteOne(unchanged(current)).getDeletedCount() > 0) {
+            return true;
+        }
+        if (inserted) {
+            collection.deleteOne(unchanged(converted));
+        }
+        return false;
+    }
+
+    /**
+     * Helper method to build a filter matching a document only while every field it has, and every field it does
+     * not have, is as it was read
+     */
+    private static Bson unchanged(Document document) {
+
+        List<Bson> filters = new ArrayList<>();
+        document.forEach((key, value) -> filters.add(Filters.eq(key, value)));
+
+        List<String> absent = new ArrayList<>(CompactFieldNames.allFieldNames());
+        absent.add(CompactFieldNames.TYPE_KEY);
+        absent.add(ExternalDependentStore.EXTERNAL_FLAG);
+        for (String key : absent) {
+            if (!document.containsKey(key)) {
+                filters.add(Filters.exists(key, false));
+            }
+        }
+
+        return Filters.and(filters);
+    }
+
+    private static long bsonSize(Document document) {
+        return new RawBsonDocument(document, DOCUMENT_CODEC).getByteBuffer().remaining();
+    }
+
+}
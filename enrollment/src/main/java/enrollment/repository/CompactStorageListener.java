@@ -0,0 +1,61 @@
+package enrollment.repository;
+
+import enrollment.common.Enrollee;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Reads Enrollee documents stored in either form, by renaming the fields of documents not yet converted by the
+ * CompactStorageConverter before they are mapped, and leaves an empty Dependents array out of compact documents
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+class CompactStorageListener extends AbstractMongoEventListener<Enrollee> {
+
+    private final ExternalDependentStore dependentStore;
+    private final boolean compact;
+
+    /**
+     * Constructor for CompactStorageListener
+     *
+     * @param dependentStore the ExternalDependentStore to find the Dependents field with
+     * @param compact whether documents are stored in the compact form
+     */
+    CompactStorageListener(ExternalDependentStore dependentStore,
+                           @Value("${enrollment.storage.compact-keys:false}") boolean compact) {
+        this.dependentStore = dependentStore;
+        this.compact = compact;
+    }
+
+    @Override
+    public void onAfterLoad(AfterLoadEvent<Enrollee> event) {
+
+        Document document = event.getDocument();
+
+        if (document != null) {
+            CompactFieldNames.normalize(document, this.compact);
+        }
+    }
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Enrollee> event) {
+
+        Document document = event.getDocument();
+
+        if (this.compact && document != null) {
+            Object dependents = document.get(this.dependentStore.dependentsField());
+            if (dependents instanceof List && ((List<?>) dependents).isEmpty()) {
+                document.remove(this.dependentStore.dependentsField());
+            }
+        }
+    }
+
+}
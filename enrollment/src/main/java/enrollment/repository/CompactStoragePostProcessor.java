@@ -0,0 +1,47 @@
+package enrollment.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Switches the MongoDb mapping to compact documents when enabled, before the mapping is first used: Enrollee and
+ * Dependent properties are stored under their CompactFieldNames, and documents are written without a type key,
+ * as Enrollees are only ever read back as Enrollees
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+class CompactStoragePostProcessor implements BeanPostProcessor {
+
+    private final boolean compact;
+
+    /**
+     * Constructor for CompactStoragePostProcessor
+     *
+     * @param compact whether documents are stored in the compact form
+     */
+    CompactStoragePostProcessor(@Value("${enrollment.storage.compact-keys:false}") boolean compact) {
+        this.compact = compact;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+
+        if (this.compact) {
+            if (bean instanceof MongoMappingContext) {
+                ((MongoMappingContext) bean).setFieldNamingStrategy(new CompactFieldNames());
+            } else if (bean instanceof MappingMongoConverter) {
+                MappingMongoConverter converter = (MappingMongoConverter) bean;
+                converter.setTypeMapper(new DefaultMongoTypeMapper(null, converter.getMappingContext()));
+            }
+        }
+
+        return bean;
+    }
+
+}
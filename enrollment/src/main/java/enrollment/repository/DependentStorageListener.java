@@ -0,0 +1,117 @@
+package enrollment.repository;
+
+import enrollment.common.Enrollee;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the Dependents of large families in and out of the Enrollee document as Enrollees are saved, loaded and
+ * deleted, so that the rest of the application always sees Enrollees with all of their Dependents
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+class DependentStorageListener extends AbstractMongoEventListener<Enrollee> {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(DependentStorageListener.class);
+
+    private final ExternalDependentStore dependentStore;
+    private final TenantRegistry tenantRegistry;
+
+    /**
+     * Constructor for DependentStorageListener
+     *
+     * @param dependentStore the ExternalDependentStore to use
+     * @param tenantRegistry the TenantRegistry of the tenants to create indexes for
+     */
+    DependentStorageListener(ExternalDependentStore dependentStore, TenantRegistry tenantRegistry) {
+        this.dependentStore = dependentStore;
+        this.tenantRegistry = tenantRegistry;
+    }
+
+    /**
+     * Creates the Dependent indexes of every tenant once the application is running, so a missing database does
+     * not stop startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+
+        for (String tenant : this.tenantRegistry.getTenants()) {
+            try {
+                TenantContext.run(tenant, this.dependentStore::ensureIndexes);
+            } catch (RuntimeException e) {
+                if (LOGGER.isErrorEnabled()) {
+                    LOGGER.error("Unable To Create Dependent Indexes For Tenant " + tenant + ": " + e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Leaves the Dependents out of the document of an Enrollee whose family is past the threshold
+     */
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Enrollee> event) {
+
+        Document document = event.getDocument();
+
+        if (document != null && this.dependentStore.belongsExternally(event.getSource())) {
+            document.remove(this.dependentStore.dependentsField());
+            document.put(ExternalDependentStore.EXTERNAL_FLAG, true);
+        }
+    }
+
+    /**
+     * Writes the changed Dependents of an externally stored Enrollee inserted, or saved straight through
+     * MongoOperations. Saves through the repository sync Dependents themselves, and clear the external Dependents
+     * of a family that shrinks back under the threshold only when its replaced document held them.
+     */
+    @Override
+    public void onAfterSave(AfterSaveEvent<Enrollee> event) {
+
+        Enrollee enrollee = event.getSource();
+
+        if (this.dependentStore.belongsExternally(enrollee)) {
+            this.dependentStore.sync(enrollee.getId(), enrollee.getDependents());
+        }
+    }
+
+    /**
+     * Loads the Dependents of an externally stored Enrollee
+     */
+    @Override
+    public void onAfterConvert(AfterConvertEvent<Enrollee> event) {
+
+        if (Boolean.TRUE.equals(event.getDocument().get(ExternalDependentStore.EXTERNAL_FLAG))) {
+            event.getSource().setDependents(this.dependentStore.load(event.getSource().getId()));
+        }
+    }
+
+    /**
+     * Deletes the external Dependents of deleted Enrollees, reusing the delete query's Id expression
+     */
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Enrollee> event) {
+
+        Document query = event.getDocument();
+
+        if (query == null || query.isEmpty()) {
+            this.dependentStore.removeAll();
+        } else if (query.containsKey("_id")) {
+            this.dependentStore.removeAll(query.get("_id"));
+        }
+    }
+
+}
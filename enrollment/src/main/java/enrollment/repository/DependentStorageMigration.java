@@ -0,0 +1,112 @@
+package enrollment.repository;
+
+import enrollment.common.Enrollee;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Migration that moves existing Dependents to where the external threshold says they belong: out of the
+ * documents of Enrollees whose families are past the threshold, and back into the documents of Enrollees whose
+ * families have shrunk or when external storage is turned off. Enrollees are streamed and re-saved one at a
+ * time, so the DependentStorageListener does the moving. Runs for every tenant on startup when enabled.
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+class DependentStorageMigration implements ApplicationRunner {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(DependentStorageMigration.class);
+
+    private final MongoOperations mongoOperations;
+    private final ExternalDependentStore dependentStore;
+    private final TenantRegistry tenantRegistry;
+    private final boolean migrateOnStartup;
+
+    /**
+     * Constructor for DependentStorageMigration
+     *
+     * @param mongoOperations the MongoOperations to use
+     * @param dependentStore the ExternalDependentStore to use
+     * @param tenantRegistry the TenantRegistry of the tenants to migrate
+     * @param migrateOnStartup whether to run the migration when the application starts
+     */
+    DependentStorageMigration(MongoOperations mongoOperations,
+                              ExternalDependentStore dependentStore,
+                              TenantRegistry tenantRegistry,
+                              @Value("${enrollment.dependents.migrate-on-startup:false}") boolean migrateOnStartup) {
+        this.mongoOperations = mongoOperations;
+        this.dependentStore = dependentStore;
+        this.tenantRegistry = tenantRegistry;
+        this.migrateOnStartup = migrateOnStartup;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+
+        if (this.migrateOnStartup) {
+            for (String tenant : this.tenantRegistry.getTenants()) {
+                TenantContext.call(tenant, this::migrate);
+            }
+        }
+    }
+
+    /**
+     * Moves the Dependents of every Enrollee of the current tenant stored in the wrong place
+     *
+     * @return the number of Enrollees moved
+     */
+    int migrate() {
+
+        int moved = 0;
+
+        if (this.dependentStore.isEnabled()) {
+            //an element at index threshold only exists in arrays longer than the threshold
+            moved += this.resave(Query.query(Criteria.where(this.dependentStore.dependentsField() + "." + this.dependentStore.getThreshold()).exists(true)), false);
+        }
+
+        moved += this.resave(Query.query(Criteria.where(ExternalDependentStore.EXTERNAL_FLAG).is(true)), true);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Moved The Dependents Of " + moved + " Enrollees Of Tenant " + TenantContext.current());
+        }
+
+        return moved;
+    }
+
+    /**
+     * Helper method to re-save the Enrollees matching a query whose Dependents are stored in the wrong place
+     *
+     * @param query the query for Enrollees stored one way
+     * @param storedExternally whether the Enrollees matching the query have their Dependents stored externally
+     */
+    private int resave(Query query, boolean storedExternally) {
+
+        int moved = 0;
+
+        try (CloseableIterator<Enrollee> enrollees = this.mongoOperations.stream(query, Enrollee.class)) {
+            while (enrollees.hasNext()) {
+
+                Enrollee enrollee = enrollees.next();
+
+                if (this.dependentStore.belongsExternally(enrollee) != storedExternally) {
+                    this.mongoOperations.save(enrollee);
+                    moved++;
+                }
+            }
+        }
+
+        return moved;
+    }
+
+}
@@ -9,8 +9,11 @@ import org.springframework.stereotype.Repository;
  * @author Michael Kulaga
  */
 @Repository
-public interface EnrollmentDAO extends MongoRepository<Enrollee, String> {
+public interface EnrollmentDAO extends MongoRepository<Enrollee, String>, EnrollmentOperations {
 
-    //custom database calls go here
+    //custom database calls go in EnrollmentOperations
+
+    @Override
+    <S extends Enrollee> S save(S enrollee);
 
 }
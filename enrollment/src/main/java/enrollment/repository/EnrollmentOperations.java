@@ -0,0 +1,109 @@
+package enrollment.repository;
+
+import enrollment.common.ActivationJobRequest;
+import enrollment.common.AgedOutDependent;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleePatch;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Custom database calls for Enrollment database, beyond those provided by MongoRepository
+ * @author Michael Kulaga
+ */
+public interface EnrollmentOperations {
+
+    /**
+     * Saves an Enrollee, replacing its document or inserting it, and brings the Dependents of a large family held
+     * outside its document in line with it
+     *
+     * @param enrollee the Enrollee to save
+     * @return the saved Enrollee
+     */
+    <S extends Enrollee> S save(S enrollee);
+
+    /**
+     * Deletes an Enrollee, along with the Dependents held outside its document, as deleteById does, and returns it
+     * as it was deleted in the same call
+     *
+     * @param enrolleeId the Id of the Enrollee to delete
+     * @return the deleted Enrollee with its Dependents, or null if the Enrollee did not exist
+     */
+    Enrollee findAndRemoveById(String enrolleeId);
+
+    /**
+     * Applies a field-level patch to an Enrollee in place, without rewriting the whole document. The patch is
+     * applied whole or not at all. Added Dependents are only added if no Dependent with the same Id exists, and
+     * changes to Dependents that no longer exist are ignored.
+     *
+     * @param enrolleeId the Id of the Enrollee to patch
+     * @param patch the changes to apply
+     * @return the Enrollee as it was before the patch, or null if the Enrollee does not exist
+     * @throws enrollment.exceptions.ResourceAlreadyExistsException if the Enrollee already has one of the added Dependents
+     */
+    Enrollee applyPatch(String enrolleeId, EnrolleePatch patch);
+
+    /**
+     * Finds the next Enrollees an activation job would change: those matching its criteria whose activation status
+     * differs from the one it changes to, in Id order
+     *
+     * @param request the criteria and the activation status to change to
+     * @param afterId only Enrollees with Ids after this one are found, or null to start from the first
+     * @param limit the most Ids to find
+     * @return the Ids of the Enrollees found, in Id order
+     */
+    List<String> findActivationCandidates(ActivationJobRequest request, String afterId, int limit);
+
+    /**
+     * Changes the activation status of many Enrollees at once, without reading or rewriting them
+     *
+     * @param enrolleeIds the Ids of the Enrollees to change
+     * @param activationStatus the activation status to change to
+     * @return the Ids of the Enrollees whose activation status was changed
+     */
+    List<String> updateActivationStatus(List<String> enrolleeIds, boolean activationStatus);
+
+    /**
+     * Streams the Dependents born within a range of dates, reading them through an index on Dependent Dates of
+     * Birth so only the matching Dependents are read. The Stream holds a database cursor, so it must be closed.
+     *
+     * @param bornAfter only Dependents born after this date are streamed, or null for no lower bound
+     * @param bornOnOrBefore only Dependents born on or before this date are streamed
+     * @return the matching Dependents, with the Ids of their Enrollees
+     */
+    Stream<AgedOutDependent> streamAgedOutDependents(String bornAfter, String bornOnOrBefore);
+
+    /**
+     * Streams every Enrollee with only its Id, name and Date of Birth, without reading its Dependents. The Stream
+     * holds a database cursor, so it must be closed.
+     *
+     * @return the Enrollees, with only their Id, name and Date of Birth
+     */
+    Stream<Enrollee> streamNamesAndDatesOfBirth();
+
+    /**
+     * Streams every Enrollee with only its Id and activation status, without reading its Dependents. The Stream
+     * holds a database cursor, so it must be closed.
+     *
+     * @return the Enrollees, with only their Id and activation status
+     */
+    Stream<Enrollee> streamActivationStatuses();
+
+    /**
+     * Streams every Enrollee with its Dependents, converting each one only as it is read from the database cursor,
+     * so the whole collection is never held at once. The Stream holds a database cursor, so it must be closed.
+     *
+     * @return the Enrollees
+     */
+    Stream<Enrollee> streamAll();
+
+    /**
+     * Inserts many Enrollees at once, replacing any that already exist along with all of their Dependents, in as
+     * few database calls as possible
+     *
+     * @param enrollees the Enrollees to write, with distinct Ids
+     */
+    void upsertAll(List<Enrollee> enrollees);
+
+}
@@ -0,0 +1,630 @@
+package enrollment.repository;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.WriteModel;
+import enrollment.common.ActivationJobRequest;
+import enrollment.common.AgedOutDependent;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleePatch;
+import enrollment.exceptions.ResourceAlreadyExistsException;
+import enrollment.exceptions.StorageUnavailableException;
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.StreamUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * MongoDb implementation of the custom database calls for Enrollment database
+ * @author Michael Kulaga
+ */
+class EnrollmentOperationsImpl implements EnrollmentOperations {
+
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+    private static final FindOneAndReplaceOptions REPLACE_RETURNING_FLAG = new FindOneAndReplaceOptions()
+            .upsert(true)
+            .projection(new Document(ExternalDependentStore.EXTERNAL_FLAG, 1))
+            .returnDocument(ReturnDocument.BEFORE);
+    private static final int PATCH_ATTEMPTS = 10;
+
+    private final MongoOperations mongoOperations;
+    private final ExternalDependentStore dependentStore;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Constructor for EnrollmentOperationsImpl
+     *
+     * @param mongoOperations the MongoOperations to use
+     * @param dependentStore the ExternalDependentStore holding the Dependents of large families
+     * @param eventPublisher the ApplicationEventPublisher to announce Enrollees about to be saved with
+     */
+    EnrollmentOperationsImpl(MongoOperations mongoOperations, ExternalDependentStore dependentStore,
+                             ApplicationEventPublisher eventPublisher) {
+        this.mongoOperations = mongoOperations;
+        this.dependentStore = dependentStore;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Translates the Enrollee fields of the patch into $set and $unset operators, applied with a single
+     * findAndModify that returns the Enrollee as it was. A patch that makes one kind of change to the Dependents of
+     * an Enrollee holding them in its document adds it to the same update, as $set on the changed Dependents found
+     * by array filters, $push of the added Dependents as long as none of them exist, $pull of the removed ones, or
+     * $set of the replaced array; it only matches documents holding the array in the form the mapping uses.
+     * Any other patch that changes Dependents, or one that matched nothing, reads only the stored Dependent array,
+     * applies the changes to it, and writes the fields and the new array in a single update that only matches
+     * while the array is still the one that was read, so the patch is applied whole or not at all. When another
+     * write changes the array first, the patch is read and applied again. Dependents of large families are patched
+     * in the external Dependent store. Documents not yet converted to the form the mapping uses may hold a field in
+     * both forms, so both are read and merged, and every field written is removed in its other form.
+     */
+    @Override
+    public Enrollee applyPatch(String enrolleeId, EnrolleePatch patch) {
+
+        Object storedId = this.dependentStore.storedId(enrolleeId);
+
+        if (!changesDependents(patch)) {
+
+            Update update = this.fieldUpdate(patch);
+            if (update.getUpdateObject().isEmpty()) {
+                return this.mongoOperations.findById(enrolleeId, Enrollee.class);
+            }
+
+            return this.findAndModify(Criteria.where("_id").is(storedId), update);
+        }
+
+        String dependents = this.fieldName(Enrollee.class, "dependents");
+        String otherDependents = CompactFieldNames.otherForm(dependents);
+
+        if (changesDependentsOneWay(patch)) {
+
+            Criteria embedded = Criteria.where("_id").is(storedId)
+                    .and(ExternalDependentStore.EXTERNAL_FLAG).ne(true)
+                    .and(otherDependents).exists(false);
+
+            Enrollee before = this.findAndModify(this.dependentCriteria(embedded, dependents, patch),
+                    this.dependentUpdate(this.fieldUpdate(patch), dependents, otherDependents, patch));
+            if (before != null) {
+                return before;
+            }
+        }
+
+        Boolean external = this.dependentStore.isStoredExternally(enrolleeId);
+
+        if (external == null) {
+            return null;
+        } else if (external) {
+            return this.applyExternalPatch(enrolleeId, patch);
+        }
+
+        String collectionName = this.mongoOperations.getCollectionName(Enrollee.class);
+
+        for (int attempt = 0; attempt < PATCH_ATTEMPTS; attempt++) {
+
+            Query read = Query.query(Criteria.where("_id").is(storedId));
+            read.fields().include(dependents).include(otherDependents);
+
+            Document stored = this.mongoOperations.findOne(read, Document.class, collectionName);
+            if (stored == null) {
+                return null;
+            }
+
+            List<Dependent> patchedDependents = CompactFieldNames.convert(stored, CompactFieldNames.isCompact(dependents))
+                    .getList(dependents, Document.class, new ArrayList<>()).stream()
+                    .map(dependent -> this.mongoOperations.getConverter().read(Dependent.class, dependent))
+                    .collect(Collectors.toList());
+            patch.applyToDependents(enrolleeId, patchedDependents);
+
+            Criteria guarded = Criteria.where("_id").is(storedId)
+                    .and(dependents).is(stored.get(dependents))
+                    .and(otherDependents).is(stored.get(otherDependents));
+            Update update = this.fieldUpdate(patch)
+                    .set(dependents, this.mongoOperations.getConverter().convertToMongoType(patchedDependents))
+                    .unset(otherDependents);
+
+            Enrollee before = this.findAndModify(guarded, update);
+            if (before != null) {
+                return before;
+            }
+        }
+
+        throw new StorageUnavailableException("Unable To Patch Enrollee, Dependents Are Being Changed Concurrently For Id: " + enrolleeId, 1);
+    }
+
+    /**
+     * Deletes through MongoOperations with a single findAndRemove, whose conversion has the DependentStorageListener
+     * load the external Dependents of the deleted Enrollee. findAndRemove publishes no delete events, so the external
+     * Dependents are then removed here rather than by the listener.
+     */
+    @Override
+    public Enrollee findAndRemoveById(String enrolleeId) {
+
+        Enrollee removed = this.mongoOperations.findAndRemove(Query.query(Criteria.where("id").is(enrolleeId)), Enrollee.class);
+        if (removed != null) {
+            this.dependentStore.removeAll(this.dependentStore.storedId(enrolleeId));
+        }
+        return removed;
+    }
+
+    /**
+     * Reads only the Ids, as documents rather than Enrollees, so the Dependents of large families are not loaded.
+     * Ids are compared as they are stored, so with numeric Ids the pages follow numeric order. MongoDb compares an
+     * Id only with Ids of the same type, so a page that runs out of Ids of one type goes on with the next type, as
+     * Ids still stored as strings or with leading zeros sort after every numeric Id. Fields are matched in both
+     * forms, as documents not yet converted to the form the mapping uses hold them under their other names.
+     */
+    @Override
+    public List<String> findActivationCandidates(ActivationJobRequest request, String afterId, int limit) {
+
+        String dateOfBirth = this.fieldName(Enrollee.class, "dateOfBirth");
+        String collectionName = this.mongoOperations.getCollectionName(Enrollee.class);
+
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(this.activationStatusDiffers(request.getActivationStatus()));
+
+        if (request.getIds() != null && !request.getIds().isEmpty()) {
+            criteria.add(Criteria.where("_id").in(this.dependentStore.storedIds(request.getIds())));
+        }
+
+        if (request.getDateOfBirthFrom() != null || request.getDateOfBirthTo() != null) {
+            criteria.add(new Criteria().orOperator(inBothForms(dateOfBirth, field -> {
+                if (request.getDateOfBirthFrom() != null) {
+                    field.gte(request.getDateOfBirthFrom());
+                }
+                if (request.getDateOfBirthTo() != null) {
+                    field.lte(request.getDateOfBirthTo());
+                }
+                return field;
+            })));
+        }
+
+        List<String> candidates = new ArrayList<>();
+        Object after = afterId != null ? this.dependentStore.storedId(afterId) : NumericIds.nextIdType(null);
+
+        while (after != null && candidates.size() < limit) {
+
+            int wanted = limit - candidates.size();
+
+            List<Criteria> pageCriteria = new ArrayList<>(criteria);
+            pageCriteria.add(Criteria.where("_id").gt(after));
+
+            Query query = Query.query(new Criteria().andOperator(pageCriteria.toArray(new Criteria[0])))
+                    .with(Sort.by("_id")).limit(wanted);
+            query.fields().include("_id");
+
+            List<Document> page = this.mongoOperations.find(query, Document.class, collectionName);
+            page.forEach(document -> candidates.add(document.get("_id").toString()));
+
+            //a short page means no Ids of this type are left
+            if (page.size() < wanted) {
+                after = NumericIds.nextIdType(after);
+            } else {
+                after = page.get(page.size() - 1).get("_id");
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Reads the Ids of the Enrollees not yet at the activation status, then changes them in one update. The status
+     * is set in the form the mapping uses and removed in the other form, so documents not yet converted do not
+     * keep the status they had. An Enrollee another write changes to the same status between the read and the
+     * update is still reported, as it did change to the status.
+     */
+    @Override
+    public List<String> updateActivationStatus(List<String> enrolleeIds, boolean activationStatus) {
+
+        String activationStatusField = this.fieldName(Enrollee.class, "activationStatus");
+        String collectionName = this.mongoOperations.getCollectionName(Enrollee.class);
+
+        Query read = Query.query(new Criteria().andOperator(
+                Criteria.where("_id").in(this.dependentStore.storedIds(enrolleeIds)),
+                this.activationStatusDiffers(activationStatus)));
+        read.fields().include("_id");
+
+        List<Object> changed = this.mongoOperations.find(read, Document.class, collectionName).stream()
+                .map(document -> document.get("_id"))
+                .collect(Collectors.toList());
+        if (changed.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Query query = Query.query(new Criteria().andOperator(
+                Criteria.where("_id").in(changed),
+                this.activationStatusDiffers(activationStatus)));
+        Update update = new Update().set(activationStatusField, activationStatus)
+                .unset(CompactFieldNames.otherForm(activationStatusField));
+
+        this.mongoOperations.updateMulti(query, update, collectionName);
+        return changed.stream().map(Object::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * Matches Enrollee documents through the indexes on embedded Dependent Dates of Birth, in both forms, reading
+     * only their Ids and Dependents, and then Dependents held in the external Dependent store through its own index
+     */
+    @Override
+    public Stream<AgedOutDependent> streamAgedOutDependents(String bornAfter, String bornOnOrBefore) {
+
+        String dependents = this.fieldName(Enrollee.class, "dependents");
+        String dateOfBirth = this.fieldName(Dependent.class, "dateOfBirth");
+
+        Criteria range = new Criteria().orOperator(inBothForms(dateOfBirth, field -> bornAfter != null
+                ? field.lte(bornOnOrBefore).gt(bornAfter) : field.lte(bornOnOrBefore)));
+
+        Query query = Query.query(new Criteria().orOperator(inBothForms(dependents, field -> field.elemMatch(range))));
+        query.fields().include("_id").include(dependents).include(CompactFieldNames.otherForm(dependents));
+
+        Stream<AgedOutDependent> embedded = StreamUtils.createStreamFromIterator(this.mongoOperations.stream(query,
+                Document.class, this.mongoOperations.getCollectionName(Enrollee.class)))
+                .flatMap(document -> {
+                    String enrolleeId = document.get("_id").toString();
+                    return normalized(document, dependents).getList(dependents, Document.class, new ArrayList<>()).stream()
+                            .map(dependent -> this.mongoOperations.getConverter().read(Dependent.class, dependent))
+                            .filter(dependent -> bornBetween(dependent, bornAfter, bornOnOrBefore))
+                            .map(dependent -> new AgedOutDependent(enrolleeId, dependent));
+                });
+
+        if (!this.dependentStore.isEnabled()) {
+            return embedded;
+        }
+
+        return Stream.concat(embedded, this.dependentStore.streamBornBetween(bornAfter, bornOnOrBefore));
+    }
+
+    /**
+     * Reads documents rather than Enrollees, so the Dependents of large families are not loaded, with the fields in
+     * both forms
+     */
+    @Override
+    public Stream<Enrollee> streamNamesAndDatesOfBirth() {
+
+        String name = this.fieldName(Enrollee.class, "name");
+        String dateOfBirth = this.fieldName(Enrollee.class, "dateOfBirth");
+
+        Query query = new Query();
+        query.fields().include("_id").include(name).include(dateOfBirth)
+                .include(CompactFieldNames.otherForm(name)).include(CompactFieldNames.otherForm(dateOfBirth));
+
+        return StreamUtils.createStreamFromIterator(this.mongoOperations.stream(query, Document.class,
+                this.mongoOperations.getCollectionName(Enrollee.class)))
+                .map(document -> normalized(document, name))
+                .map(document -> {
+                    Enrollee enrollee = new Enrollee();
+                    enrollee.setId(document.get("_id").toString());
+                    enrollee.setName(document.getString(name));
+                    enrollee.setDateOfBirth(document.getString(dateOfBirth));
+                    return enrollee;
+                });
+    }
+
+    /**
+     * Reads only the Id and activation status of each document, in both forms
+     */
+    @Override
+    public Stream<Enrollee> streamActivationStatuses() {
+
+        String activationStatus = this.fieldName(Enrollee.class, "activationStatus");
+
+        Query query = new Query();
+        query.fields().include("_id").include(activationStatus).include(CompactFieldNames.otherForm(activationStatus));
+
+        return StreamUtils.createStreamFromIterator(this.mongoOperations.stream(query, Document.class,
+                this.mongoOperations.getCollectionName(Enrollee.class)))
+                .map(document -> normalized(document, activationStatus))
+                .map(document -> {
+                    Enrollee enrollee = new Enrollee();
+                    enrollee.setId(document.get("_id").toString());
+                    enrollee.setActivationStatus(document.getBoolean(activationStatus, false));
+                    return enrollee;
+                });
+    }
+
+    /**
+     * Reads Enrollees rather than documents, so the storage listeners restore each one as they do for every read
+     */
+    @Override
+    public Stream<Enrollee> streamAll() {
+        return StreamUtils.createStreamFromIterator(this.mongoOperations.stream(new Query(), Enrollee.class));
+    }
+
+    /**
+     * Converts the Enrollee and announces it with a BeforeSaveEvent, as MongoOperations would, then replaces its
+     * document in a single findOneAndReplace that also returns whether the replaced document held its Dependents
+     * externally. The Dependents of a large family are synced before the document that points at them is written,
+     * and external Dependents are only removed when a family that was stored externally no longer is, so saving
+     * an ordinary Enrollee costs one round trip.
+     */
+    @Override
+    public <S extends Enrollee> S save(S enrollee) {
+
+        String collectionName = this.mongoOperations.getCollectionName(Enrollee.class);
+
+        Document document = new Document();
+        this.mongoOperations.getConverter().write(enrollee, document);
+        this.eventPublisher.publishEvent(new BeforeSaveEvent<>(enrollee, document, collectionName));
+
+        boolean external = this.dependentStore.belongsExternally(enrollee);
+        if (external) {
+            this.dependentStore.sync(enrollee.getId(), enrollee.getDependents());
+        }
+
+        Document replaced = this.mongoOperations.execute(collectionName, collection ->
+                collection.findOneAndReplace(Filters.eq("_id", document.get("_id")), document, REPLACE_RETURNING_FLAG));
+
+        if (!external && replaced != null && Boolean.TRUE.equals(replaced.get(ExternalDependentStore.EXTERNAL_FLAG))) {
+            this.dependentStore.removeAll(document.get("_id"));
+        }
+
+        return enrollee;
+    }
+
+    /**
+     * Converts each Enrollee as a save would, and announces it with a BeforeSaveEvent so the storage listeners shape
+     * its document as they do for every save, then replaces or inserts them all in one unordered bulk write. What
+     * the DependentStorageListener does after each save is done once for the whole batch: the Dependents of large
+     * families are synced, and the external Dependents left behind by the other Enrollees are removed in one call.
+     */
+    @Override
+    public void upsertAll(List<Enrollee> enrollees) {
+
+        if (enrollees.isEmpty()) {
+            return;
+        }
+
+        String collectionName = this.mongoOperations.getCollectionName(Enrollee.class);
+        List<WriteModel<Document>> writes = new ArrayList<>(enrollees.size());
+        List<Object> embedded = new ArrayList<>();
+        List<Enrollee> external = new ArrayList<>();
+
+        for (Enrollee enrollee : enrollees) {
+
+            Document document = new Document();
+            this.mongoOperations.getConverter().write(enrollee, document);
+            this.eventPublisher.publishEvent(new BeforeSaveEvent<>(enrollee, document, collectionName));
+            writes.add(new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, UPSERT));
+
+            if (this.dependentStore.belongsExternally(enrollee)) {
+                external.add(enrollee);
+            } else {
+                embedded.add(document.get("_id"));
+            }
+        }
+
+        this.mongoOperations.execute(collectionName, collection -> collection.bulkWrite(writes, new BulkWriteOptions().ordered(false)));
+
+        if (this.dependentStore.isEnabled() && !embedded.isEmpty()) {
+            this.dependentStore.removeAll(new Document("$in", embedded));
+        }
+
+        for (Enrollee enrollee : external) {
+            this.dependentStore.sync(enrollee.getId(), enrollee.getDependents());
+        }
+    }
+
+    /**
+     * Helper method to check whether a Dependent was born within a range of dates
+     */
+    private static boolean bornBetween(Dependent dependent, String bornAfter, String bornOnOrBefore) {
+
+        String dateOfBirth = dependent.getDateOfBirth();
+        return dateOfBirth != null && dateOfBirth.compareTo(bornOnOrBefore) <= 0
+                && (bornAfter == null || dateOfBirth.compareTo(bornAfter) > 0);
+    }
+
+    /**
+     * Helper method to translate the Enrollee fields of a patch into $set and $unset operators, unsetting every
+     * field in its other form as well
+     */
+    private Update fieldUpdate(EnrolleePatch patch) {
+
+        Update update = new Update();
+        patch.getSetFields().forEach((field, value) -> update.set(this.fieldName(Enrollee.class, field), value));
+        patch.getUnsetFields().forEach(field -> update.unset(this.fieldName(Enrollee.class, field)));
+
+        for (String field : patch.getSetFields().keySet()) {
+            unsetOtherForm(update, this.fieldName(Enrollee.class, field));
+        }
+        for (String field : patch.getUnsetFields()) {
+            unsetOtherForm(update, this.fieldName(Enrollee.class, field));
+        }
+        return update;
+    }
+
+    /**
+     * Helper method to unset a field in its other form, if it has one
+     */
+    private static void unsetOtherForm(Update update, String fieldName) {
+
+        String otherForm = CompactFieldNames.otherForm(fieldName);
+        if (otherForm != null) {
+            update.unset(otherForm);
+        }
+    }
+
+    /**
+     * Helper method to narrow the criteria of a patch making one kind of change to the Dependents, so that a patch
+     * adding Dependents only matches while none of them exist
+     */
+    private Criteria dependentCriteria(Criteria criteria, String dependents, EnrolleePatch patch) {
+
+        if (patch.getAddedDependents().isEmpty()) {
+            return criteria;
+        }
+
+        List<String> addedIds = patch.getAddedDependents().stream().map(Dependent::getId).collect(Collectors.toList());
+        return criteria.and(dependents + "." + this.fieldName(Dependent.class, "id")).nin(this.dependentStore.storedIds(addedIds));
+    }
+
+    /**
+     * Helper method to add the single operator of a patch making one kind of change to the Dependents to the update
+     * of its Enrollee fields
+     */
+    private Update dependentUpdate(Update update, String dependents, String otherDependents, EnrolleePatch patch) {
+
+        String dependentId = this.fieldName(Dependent.class, "id");
+
+        if (patch.getReplacedDependents() != null) {
+            return update.set(dependents, this.mongoOperations.getConverter().convertToMongoType(patch.getReplacedDependents()));
+        } else if (!patch.getAddedDependents().isEmpty()) {
+            return update.push(dependents).each(patch.getAddedDependents().stream()
+                    .map(this.mongoOperations.getConverter()::convertToMongoType).toArray());
+        } else if (!patch.getRemovedDependentIds().isEmpty()) {
+            return update.pull(dependents, new Document(dependentId,
+                    new Document("$in", this.dependentStore.storedIds(patch.getRemovedDependentIds()))));
+        }
+
+        int filter = 0;
+        for (Map.Entry<String, Map<String, Object>> fields : patch.getDependentFields().entrySet()) {
+
+            String identifier = "d" + filter++;
+            for (Map.Entry<String, Object> field : fields.getValue().entrySet()) {
+                String fieldName = this.fieldName(Dependent.class, field.getKey());
+                update.set(dependents + ".$[" + identifier + "]." + fieldName, field.getValue());
+                String otherForm = CompactFieldNames.otherForm(fieldName);
+                if (otherForm != null) {
+                    update.unset(dependents + ".$[" + identifier + "]." + otherForm);
+                }
+            }
+            update.filterArray(identifier + "." + dependentId, this.dependentStore.storedId(fields.getKey()));
+        }
+        return update;
+    }
+
+    /**
+     * Helper method to apply an update to the Enrollee document matching the criteria and read the Enrollee as it
+     * was before the update. The update is not mapped, as the mapping would rename the fields unset in their other
+     * form to the very fields being set, so the document is read back as MongoOperations would, announcing it with
+     * an AfterLoadEvent and AfterConvertEvent for the storage listeners.
+     */
+    private Enrollee findAndModify(Criteria criteria, Update update) {
+
+        String collectionName = this.mongoOperations.getCollectionName(Enrollee.class);
+
+        Document previous = this.mongoOperations.findAndModify(Query.query(criteria), update,
+                FindAndModifyOptions.options().returnNew(false), Document.class, collectionName);
+        if (previous == null) {
+            return null;
+        }
+
+        this.eventPublisher.publishEvent(new AfterLoadEvent<>(previous, Enrollee.class, collectionName));
+        Enrollee enrollee = this.mongoOperations.getConverter().read(Enrollee.class, previous);
+        this.eventPublisher.publishEvent(new AfterConvertEvent<>(previous, enrollee, collectionName));
+        return enrollee;
+    }
+
+    /**
+     * Helper method to match Enrollee documents whose activation status, in either form, is not the given one
+     */
+    private Criteria activationStatusDiffers(boolean activationStatus) {
+
+        String activationStatusField = this.fieldName(Enrollee.class, "activationStatus");
+        return new Criteria().norOperator(inBothForms(activationStatusField, field -> field.is(activationStatus)));
+    }
+
+    /**
+     * Helper method to build the same condition on a field in both of its forms
+     */
+    private static Criteria[] inBothForms(String fieldName, Function<Criteria, Criteria> condition) {
+
+        String otherForm = CompactFieldNames.otherForm(fieldName);
+        if (otherForm == null) {
+            return new Criteria[] {condition.apply(Criteria.where(fieldName))};
+        }
+        return new Criteria[] {condition.apply(Criteria.where(fieldName)), condition.apply(Criteria.where(otherForm))};
+    }
+
+    /**
+     * Helper method to rename, in place, the fields of a document read without mapping to the form of the given
+     * field name, merging the fields held in both forms
+     */
+    private static Document normalized(Document document, String fieldName) {
+
+        CompactFieldNames.normalize(document, CompactFieldNames.isCompact(fieldName));
+        return document;
+    }
+
+    /**
+     * Helper method to apply a patch to an Enrollee whose Dependents are held in the external Dependent store,
+     * reading the Enrollee as it was, then changing the Dependent documents and then the Enrollee fields
+     */
+    private Enrollee applyExternalPatch(String enrolleeId, EnrolleePatch patch) {
+
+        Enrollee before = this.mongoOperations.findById(enrolleeId, Enrollee.class);
+        if (before == null) {
+            return null;
+        }
+
+        if (!patch.getAddedDependents().isEmpty() && !this.dependentStore.add(enrolleeId, patch.getAddedDependents())) {
+            throw new ResourceAlreadyExistsException("Unable To Patch Enrollee, One Of The Added Dependents Already Exists For Enrollee: " + enrolleeId);
+        }
+
+        if (patch.getReplacedDependents() != null) {
+            this.dependentStore.sync(enrolleeId, patch.getReplacedDependents());
+        }
+
+        patch.getDependentFields().forEach((dependentId, fields) -> this.dependentStore.update(enrolleeId, dependentId, fields));
+
+        if (!patch.getRemovedDependentIds().isEmpty()) {
+            this.dependentStore.remove(enrolleeId, patch.getRemovedDependentIds());
+        }
+
+        if (!patch.getSetFields().isEmpty() || !patch.getUnsetFields().isEmpty()) {
+            this.findAndModify(Criteria.where("_id").is(this.dependentStore.storedId(enrolleeId)), this.fieldUpdate(patch));
+        }
+
+        return before;
+    }
+
+    /**
+     * Helper method to check whether a patch changes any Dependents
+     */
+    private static boolean changesDependents(EnrolleePatch patch) {
+        return !patch.getDependentFields().isEmpty() || !patch.getAddedDependents().isEmpty()
+                || !patch.getRemovedDependentIds().isEmpty() || patch.getReplacedDependents() != null;
+    }
+
+    /**
+     * Helper method to check whether a patch makes a single kind of change to the Dependents: changing their
+     * fields, adding, removing or replacing them
+     */
+    private static boolean changesDependentsOneWay(EnrolleePatch patch) {
+
+        int kinds = (patch.getDependentFields().isEmpty() ? 0 : 1) + (patch.getAddedDependents().isEmpty() ? 0 : 1)
+                + (patch.getRemovedDependentIds().isEmpty() ? 0 : 1) + (patch.getReplacedDependents() == null ? 0 : 1);
+        return kinds == 1;
+    }
+
+    /**
+     * Helper method to look up the document field name of a property
+     */
+    private String fieldName(Class<?> type, String property) {
+
+        return this.mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(type)
+                .getRequiredPersistentProperty(property)
+                .getFieldName();
+    }
+
+}
@@ -0,0 +1,412 @@
+package enrollment.repository;
+
+import enrollment.common.AgedOutDependent;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.tenancy.TenantRegistry;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.StreamUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage for the Dependents of Enrollees whose families have grown past the external threshold. Each Dependent
+ * is kept as its own document in the "dependents" collection of the tenant's partition, indexed by Enrollee Id and
+ * Dependent Id, so a change to one Dependent writes one small document instead of rewriting a very large Enrollee
+ * document.
+ * Enrollee documents whose Dependents are stored here carry the "externalDependents" flag in place of the array.
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+class ExternalDependentStore {
+
+    static final String EXTERNAL_FLAG = "externalDependents";
+
+    static final String ENROLLEE_ID = "enrolleeId";
+    static final String DEPENDENT_ID = "dependentId";
+
+    private final MongoOperations mongoOperations;
+    private final TenantRegistry tenantRegistry;
+    private final int threshold;
+    private final boolean compact;
+    private final boolean numericIds;
+
+    /**
+     * Constructor for ExternalDependentStore
+     *
+     * @param mongoOperations the MongoOperations to use
+     * @param tenantRegistry the TenantRegistry to find the current tenant's collection with
+     * @param threshold the number of Dependents an Enrollee may have before they are stored externally, or 0 to never store them externally
+     * @param compact whether documents are stored in the compact form
+     * @param numericIds whether Enrollee and Dependent Ids are stored as 64-bit integers
+     */
+    ExternalDependentStore(MongoOperations mongoOperations,
+                           TenantRegistry tenantRegistry,
+                           @Value("${enrollment.dependents.external-threshold:100}") int threshold,
+                           @Value("${enrollment.storage.compact-keys:false}") boolean compact,
+                           @Value("${enrollment.storage.numeric-ids:false}") boolean numericIds) {
+        this.mongoOperations = mongoOperations;
+        this.tenantRegistry = tenantRegistry;
+        this.threshold = threshold;
+        this.compact = compact;
+        this.numericIds = numericIds;
+    }
+
+    /**
+     * @return true when Dependents may be stored externally
+     */
+    boolean isEnabled() {
+        return this.threshold > 0;
+    }
+
+    /**
+     * @return the number of Dependents an Enrollee may have before they are stored externally
+     */
+    int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * Converts an Enrollee or Dependent Id to the form it is stored in, for queries that name its field directly
+     *
+     * @param id the Id
+     * @return the Id as it is stored
+     */
+    Object storedId(String id) {
+        return NumericIds.toStored(id, this.numericIds);
+    }
+
+    /**
+     * Converts Enrollee or Dependent Ids to the form they are stored in, for queries that name their field directly
+     *
+     * @param ids the Ids
+     * @return the Ids as they are stored
+     */
+    List<Object> storedIds(Collection<String> ids) {
+        return ids.stream().map(this::storedId).collect(Collectors.toList());
+    }
+
+    /**
+     * Checks whether an Enrollee's Dependents belong in external storage when it is saved
+     *
+     * @param enrollee the Enrollee being saved
+     * @return true when the family has grown past the threshold
+     */
+    boolean belongsExternally(Enrollee enrollee) {
+        return this.isEnabled() && enrollee.getDependents() != null && enrollee.getDependents().size() > this.threshold;
+    }
+
+    /**
+     * Checks whether a stored Enrollee's Dependents are currently held in external storage
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @return true if they are, false if they are embedded, or null if the Enrollee does not exist
+     */
+    Boolean isStoredExternally(String enrolleeId) {
+
+        Query query = Query.query(Criteria.where("_id").is(this.storedId(enrolleeId)));
+        query.fields().include(EXTERNAL_FLAG);
+
+        Document stored = this.mongoOperations.findOne(query, Document.class, this.enrolleeCollection());
+        return stored != null ? Boolean.TRUE.equals(stored.get(EXTERNAL_FLAG)) : null;
+    }
+
+    /**
+     * Loads the Dependents of an Enrollee, in the order they were added
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @return the Dependents
+     */
+    List<Dependent> load(String enrolleeId) {
+
+        Query query = Query.query(Criteria.where(ENROLLEE_ID).is(this.storedId(enrolleeId))).with(Sort.by("_id"));
+
+        List<Dependent> dependents = new ArrayList<>();
+        for (Document stored : this.mongoOperations.find(query, Document.class, this.collection())) {
+            dependents.add(this.toDependent(stored));
+        }
+        return dependents;
+    }
+
+    /**
+     * Brings the stored Dependents of an Enrollee in line with the given Dependents, writing only the Dependents
+     * that were added or changed and removing those that are no longer present
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependents the complete Dependents of the Enrollee
+     */
+    void sync(String enrolleeId, List<Dependent> dependents) {
+
+        Query existingQuery = Query.query(Criteria.where(ENROLLEE_ID).is(this.storedId(enrolleeId)));
+
+        Map<String, Document> existing = new HashMap<>();
+        for (Document stored : this.mongoOperations.find(existingQuery, Document.class, this.collection())) {
+            existing.put(String.valueOf(stored.get(DEPENDENT_ID)), stored);
+        }
+
+        BulkOperations bulk = this.mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, this.collection());
+        boolean changed = false;
+
+        for (Dependent dependent : dependents) {
+
+            Document replacement = this.toDocument(enrolleeId, dependent);
+            Document stored = existing.remove(dependent.getId());
+
+            if (stored == null) {
+                bulk.insert(replacement);
+                changed = true;
+            } else if (!sameFields(stored, replacement)) {
+                bulk.updateOne(Query.query(Criteria.where("_id").is(stored.get("_id"))), this.setAll(replacement));
+                changed = true;
+            }
+        }
+
+        if (!existing.isEmpty()) {
+            bulk.remove(this.dependentsQuery(enrolleeId, existing.keySet()));
+            changed = true;
+        }
+
+        if (changed) {
+            bulk.execute();
+        }
+    }
+
+    /**
+     * Adds new Dependents to an Enrollee, as long as none of them already exist
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependents the Dependents to add
+     * @return false if any of the Dependents already exist, in which case none are added
+     */
+    boolean add(String enrolleeId, List<Dependent> dependents) {
+
+        List<String> ids = new ArrayList<>();
+        List<Document> documents = new ArrayList<>();
+        for (Dependent dependent : dependents) {
+            ids.add(dependent.getId());
+            documents.add(this.toDocument(enrolleeId, dependent));
+        }
+
+        if (this.mongoOperations.exists(this.dependentsQuery(enrolleeId, ids), this.collection())) {
+            return false;
+        }
+
+        this.mongoOperations.getCollection(this.collection()).insertMany(documents);
+        return true;
+    }
+
+    /**
+     * Sets fields of an existing Dependent
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependentId the Id of the Dependent
+     * @param fields the property names and new values of the fields
+     */
+    void update(String enrolleeId, String dependentId, Map<String, Object> fields) {
+
+        Update update = new Update();
+        fields.forEach((field, value) -> update.set(this.fieldName(Dependent.class, field), value));
+
+        this.mongoOperations.updateFirst(this.dependentsQuery(enrolleeId, Collections.singleton(dependentId)), update, this.collection());
+    }
+
+    /**
+     * Removes Dependents of an Enrollee
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param dependentIds the Ids of the Dependents to remove
+     */
+    void remove(String enrolleeId, Collection<String> dependentIds) {
+        this.mongoOperations.remove(this.dependentsQuery(enrolleeId, dependentIds), this.collection());
+    }
+
+    /**
+     * Removes the Dependents of every Enrollee matching an Enrollee Id expression
+     *
+     * @param enrolleeIds the stored Enrollee Id, or query expression on it, as used against the Enrollee's _id
+     */
+    void removeAll(Object enrolleeIds) {
+        this.mongoOperations.getCollection(this.collection()).deleteMany(new Document(ENROLLEE_ID, enrolleeIds));
+    }
+
+    /**
+     * Removes the Dependents of every Enrollee
+     */
+    void removeAll() {
+        this.mongoOperations.getCollection(this.collection()).deleteMany(new Document());
+    }
+
+    /**
+     * Streams the externally stored Dependents born within a range of dates
+     *
+     * @param bornAfter only Dependents born after this date are streamed, or null for no lower bound
+     * @param bornOnOrBefore only Dependents born on or before this date are streamed
+     * @return the matching Dependents, which must be closed
+     */
+    Stream<AgedOutDependent> streamBornBetween(String bornAfter, String bornOnOrBefore) {
+
+        Criteria dateOfBirth = Criteria.where(this.fieldName(Dependent.class, "dateOfBirth")).lte(bornOnOrBefore);
+        if (bornAfter != null) {
+            dateOfBirth.gt(bornAfter);
+        }
+
+        return StreamUtils.createStreamFromIterator(this.mongoOperations.stream(Query.query(dateOfBirth), Document.class, this.collection()))
+                .map(stored -> new AgedOutDependent(String.valueOf(stored.get(ENROLLEE_ID)), this.toDependent(stored)));
+    }
+
+    /**
+     * Creates the indexes that lookups of Dependents rely on in the current tenant's partition, if they do not
+     * already exist
+     */
+    void ensureIndexes() {
+        this.ensureIndexes(this.enrolleeCollection(), this.collection());
+    }
+
+    /**
+     * Creates the indexes that lookups of Dependents rely on, if they do not already exist: Enrollee Id and
+     * Dependent Id in the Dependent collection, and Date of Birth both in the Dependent collection and in the
+     * Dependents embedded in Enrollee documents, in both forms. The indexes are named after their fields, so the
+     * indexes of the compact and expanded forms do not clash.
+     *
+     * @param enrolleeCollection the name of the Enrollee collection
+     * @param dependentCollection the name of the Dependent collection
+     */
+    void ensureIndexes(String enrolleeCollection, String dependentCollection) {
+
+        String dateOfBirth = this.fieldName(Dependent.class, "dateOfBirth");
+
+        this.mongoOperations.indexOps(dependentCollection).ensureIndex(new Index()
+                .on(ENROLLEE_ID, Sort.Direction.ASC)
+                .on(DEPENDENT_ID, Sort.Direction.ASC)
+                .unique()
+                .named("enrolleeId_dependentId"));
+
+        this.mongoOperations.indexOps(dependentCollection).ensureIndex(new Index()
+                .on(dateOfBirth, Sort.Direction.ASC)
+                .named(dateOfBirth));
+
+        this.mongoOperations.indexOps(enrolleeCollection).ensureIndex(new Index()
+                .on(this.dependentsField() + "." + dateOfBirth, Sort.Direction.ASC)
+                .named(this.dependentsField() + "_" + dateOfBirth));
+
+        //the same index the other form creates, as documents not yet converted are matched in that form as well
+        String otherDependents = CompactFieldNames.otherForm(this.dependentsField());
+        String otherDateOfBirth = CompactFieldNames.otherForm(dateOfBirth);
+        this.mongoOperations.indexOps(enrolleeCollection).ensureIndex(new Index()
+                .on(otherDependents + "." + otherDateOfBirth, Sort.Direction.ASC)
+                .named(otherDependents + "_" + otherDateOfBirth));
+    }
+
+    /**
+     * @return the document field name the Enrollee's Dependents are embedded in
+     */
+    String dependentsField() {
+        return this.fieldName(Enrollee.class, "dependents");
+    }
+
+    /**
+     * @return the name of the current tenant's Enrollee collection
+     */
+    String enrolleeCollection() {
+        return this.mongoOperations.getCollectionName(Enrollee.class);
+    }
+
+    /**
+     * @return the name of the current tenant's Dependent collection
+     */
+    String collection() {
+        return this.tenantRegistry.dependentCollection();
+    }
+
+    /**
+     * Helper method to build a query for Dependents of an Enrollee by Id
+     */
+    private Query dependentsQuery(String enrolleeId, Collection<String> dependentIds) {
+        return Query.query(Criteria.where(ENROLLEE_ID).is(this.storedId(enrolleeId)).and(DEPENDENT_ID).in(this.storedIds(dependentIds)));
+    }
+
+    /**
+     * Helper method to convert a Dependent into an external document, keyed by Enrollee Id and Dependent Id
+     */
+    private Document toDocument(String enrolleeId, Dependent dependent) {
+
+        Document embedded = new Document();
+        this.mongoOperations.getConverter().write(dependent, embedded);
+        embedded.remove("_class");
+
+        Document document = new Document(ENROLLEE_ID, this.storedId(enrolleeId));
+        document.put(DEPENDENT_ID, embedded.remove("_id"));
+        document.putAll(embedded);
+        return document;
+    }
+
+    /**
+     * Helper method to convert an external document, in either form, back into a Dependent
+     */
+    private Dependent toDependent(Document stored) {
+
+        Document embedded = new Document(stored);
+        CompactFieldNames.normalize(embedded, this.compact);
+        embedded.remove(ENROLLEE_ID);
+        embedded.put("_id", embedded.remove(DEPENDENT_ID));
+        return this.mongoOperations.getConverter().read(Dependent.class, embedded);
+    }
+
+    /**
+     * Helper method to build an update setting every Dependent field of an external document
+     */
+    private Update setAll(Document replacement) {
+
+        Update update = new Update();
+        for (Map.Entry<String, Object> field : replacement.entrySet()) {
+            if (!ENROLLEE_ID.equals(field.getKey()) && !DEPENDENT_ID.equals(field.getKey())) {
+                update.set(field.getKey(), field.getValue());
+            }
+        }
+        return update;
+    }
+
+    /**
+     * Helper method to compare the Dependent fields of a stored document with a replacement
+     */
+    private static boolean sameFields(Document stored, Document replacement) {
+
+        for (Map.Entry<String, Object> field : replacement.entrySet()) {
+            if (!Objects.equals(stored.get(field.getKey()), field.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to look up the document field name of a property
+     */
+    private String fieldName(Class<?> type, String property) {
+
+        return this.mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(type)
+                .getRequiredPersistentProperty(property)
+                .getFieldName();
+    }
+
+}
@@ -0,0 +1,63 @@
+package enrollment.repository;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.domain.EntityScanner;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.annotation.Persistent;
+import org.springframework.data.mapping.model.FieldNamingStrategy;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.Collections;
+
+/**
+ * Configuration of the MongoDb mapping, set up as Spring Boot would set it up, but with a NumericIdMappingContext
+ * so the stored type of Ids can be configured, and the conversion of Ids to the numbers they are stored as
+ * @author Michael Kulaga
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("!memory")
+class MongoMappingConfiguration {
+
+    /**
+     * @return the MongoCustomConversions, converting Ids only when they are stored as the same number
+     */
+    @Bean
+    MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(Collections.singletonList(NumericIds.StoredIdConverter.INSTANCE));
+    }
+
+    /**
+     * @param applicationContext the ApplicationContext to scan for mapped classes
+     * @param properties the MongoProperties to configure the mapping with
+     * @param conversions the MongoCustomConversions whose types are stored as they are
+     * @param numericIds whether Enrollee and Dependent Ids are stored as 64-bit integers
+     * @return the MongoMappingContext
+     */
+    @Bean
+    MongoMappingContext mongoMappingContext(ApplicationContext applicationContext,
+                                            MongoProperties properties,
+                                            MongoCustomConversions conversions,
+                                            @Value("${enrollment.storage.numeric-ids:false}") boolean numericIds) throws ClassNotFoundException {
+
+        NumericIdMappingContext context = new NumericIdMappingContext(numericIds);
+
+        if (properties.isAutoIndexCreation() != null) {
+            context.setAutoIndexCreation(properties.isAutoIndexCreation());
+        }
+        context.setInitialEntitySet(new EntityScanner(applicationContext).scan(Document.class, Persistent.class));
+        if (properties.getFieldNamingStrategy() != null) {
+            context.setFieldNamingStrategy((FieldNamingStrategy) BeanUtils.instantiateClass(properties.getFieldNamingStrategy()));
+        }
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+
+        return context;
+    }
+
+}
@@ -0,0 +1,61 @@
+package enrollment.repository;
+
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import org.springframework.data.mapping.model.FieldNamingStrategy;
+import org.springframework.data.mapping.model.Property;
+import org.springframework.data.mapping.model.PropertyNameFieldNamingStrategy;
+import org.springframework.data.mapping.model.SimpleTypeHolder;
+import org.springframework.data.mongodb.core.mapping.BasicMongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.CachingMongoPersistentProperty;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+
+/**
+ * MongoDb mapping that, when numeric Ids are enabled, stores the Ids of Enrollees and Dependents as 64-bit integers
+ * while they stay strings everywhere else. Ids are converted to their stored type wherever the mapping converts
+ * them: when documents are written and read, and when queries on the Id properties are mapped. Only Ids that
+ * NumericIds can store as numbers are converted, by its StoredIdConverter, and the rest stay strings. Queries that name
+ * the Id fields directly, or compare Ids by range, are not mapped, and convert their Ids with NumericIds.
+ * @author Michael Kulaga
+ */
+class NumericIdMappingContext extends MongoMappingContext {
+
+    private final boolean numericIds;
+
+    //kept here as well, as the mapping context does not expose the strategy its properties are created with
+    private FieldNamingStrategy fieldNamingStrategy = PropertyNameFieldNamingStrategy.INSTANCE;
+
+    /**
+     * Constructor for NumericIdMappingContext
+     *
+     * @param numericIds whether Enrollee and Dependent Ids are stored as 64-bit integers
+     */
+    NumericIdMappingContext(boolean numericIds) {
+        this.numericIds = numericIds;
+    }
+
+    @Override
+    public void setFieldNamingStrategy(FieldNamingStrategy fieldNamingStrategy) {
+        super.setFieldNamingStrategy(fieldNamingStrategy);
+        this.fieldNamingStrategy = fieldNamingStrategy != null ? fieldNamingStrategy : PropertyNameFieldNamingStrategy.INSTANCE;
+    }
+
+    @Override
+    public MongoPersistentProperty createPersistentProperty(Property property, BasicMongoPersistentEntity<?> owner,
+                                                            SimpleTypeHolder simpleTypeHolder) {
+
+        if (!this.numericIds || (owner.getType() != Enrollee.class && owner.getType() != Dependent.class)) {
+            return super.createPersistentProperty(property, owner, simpleTypeHolder);
+        }
+
+        return new CachingMongoPersistentProperty(property, owner, simpleTypeHolder, this.fieldNamingStrategy) {
+
+            @Override
+            public Class<?> getFieldType() {
+                return this.isIdProperty() ? Long.class : super.getFieldType();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,142 @@
+package enrollment.repository;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The stored form of Enrollee and Dependent Ids. Ids are numeric strings, so when numeric Ids are enabled they are
+ * stored as 64-bit integers, which take 8 bytes in a document and in an index however many digits they have, and
+ * which MongoDb sorts as numbers rather than as strings. An Id is only stored as a number when the number gives back
+ * the same Id, so Ids with leading zeros or too long for 64 bits keep being stored as strings.
+ * @author Michael Kulaga
+ */
+final class NumericIds {
+
+    //the fields holding Enrollee and Dependent Ids in external Dependent documents
+    private static final String[] ID_FIELDS = {"_id", ExternalDependentStore.ENROLLEE_ID, ExternalDependentStore.DEPENDENT_ID};
+
+    //the types Ids are stored as, in the order MongoDb sorts them: numbers, strings and ObjectIds, each below all Ids of its type
+    private static final List<Object> ID_TYPE_FLOORS = Arrays.asList(Long.MIN_VALUE, "", new ObjectId(new byte[12]));
+
+    private NumericIds() {
+    }
+
+    /**
+     * @param id an Id
+     * @return true if the Id is stored as the same 64-bit integer it reads as
+     */
+    static boolean isConvertible(String id) {
+
+        int length = id != null ? id.length() : 0;
+        if (length == 0 || length > 19 || (length > 1 && id.charAt(0) == '0')) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (id.charAt(i) < '0' || id.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return length < 19 || id.compareTo(String.valueOf(Long.MAX_VALUE)) <= 0;
+    }
+
+    /**
+     * Converts an Id, or a stored Id in either form, to the form it is stored in
+     *
+     * @param id the Id
+     * @param numeric whether numeric Ids are enabled
+     * @return the Id as a Long if numeric Ids are enabled and it converts, or as a String otherwise
+     */
+    static Object toStored(Object id, boolean numeric) {
+
+        if (numeric && id instanceof String && isConvertible((String) id)) {
+            return Long.valueOf((String) id);
+        }
+        if (!numeric && (id instanceof Long || id instanceof Integer)) {
+            return id.toString();
+        }
+        return id;
+    }
+
+    /**
+     * Converts Ids to the 64-bit integers they are stored as, wherever the mapping converts the Id properties. An Id
+     * that is not stored as a number, such as one with leading zeros, fails to convert, which the mapping takes to
+     * keep it as a string, so "007" is never written or looked up as 7.
+     */
+    @ReadingConverter
+    enum StoredIdConverter implements Converter<String, Long> {
+
+        INSTANCE;
+
+        @Override
+        public Long convert(String id) {
+
+            if (!isConvertible(id)) {
+                throw new IllegalArgumentException("Id Is Not Stored As A Number: " + id);
+            }
+            return Long.valueOf(id);
+        }
+    }
+
+    /**
+     * Pages through a collection in Id order across the types its Ids are stored as. MongoDb compares an Id only
+     * with Ids of the same type, so the documents after an Id are only those with Ids of its type, and once none
+     * of them are left paging goes on from below the Ids of the next type.
+     *
+     * @param lastId the Id paged from, or null before the first page
+     * @return a value below every Id of the next type, to page on from, or null once every type was paged through
+     */
+    static Object nextIdType(Object lastId) {
+
+        int next = 0;
+        if (lastId instanceof Number) {
+            next = 1;
+        } else if (lastId instanceof String) {
+            next = 2;
+        } else if (lastId != null) {
+            return null;
+        }
+        return ID_TYPE_FLOORS.get(next);
+    }
+
+    /**
+     * Converts, in place, the Ids of a stored Enrollee or external Dependent document to the form they are stored
+     * in: the document's own Id and the Enrollee and Dependent Ids it holds, and the Ids of the Dependents embedded
+     * in its arrays. ObjectIds, such as those of external Dependent documents, are left as they are.
+     *
+     * @param document the stored document
+     * @param numeric whether numeric Ids are enabled
+     * @return true if any Id was converted
+     */
+    static boolean convert(Document document, boolean numeric) {
+
+        boolean converted = false;
+
+        for (String field : ID_FIELDS) {
+            Object id = document.get(field);
+            Object stored = toStored(id, numeric);
+            if (stored != id) {
+                document.put(field, stored);
+                converted = true;
+            }
+        }
+
+        for (Object value : document.values()) {
+            if (value instanceof List) {
+                for (Object element : (List<?>) value) {
+                    if (element instanceof Document) {
+                        converted |= convert((Document) element, numeric);
+                    }
+                }
+            }
+        }
+
+        return converted;
+    }
+
+}
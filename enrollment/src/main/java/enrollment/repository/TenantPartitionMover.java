@@ -0,0 +1,312 @@
+package enrollment.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.WriteModel;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.exceptions.ResourceDoesNotExistException;
+import enrollment.exceptions.ValidationException;
+import enrollment.tenancy.TenantMove;
+import enrollment.tenancy.TenantMove.State;
+import enrollment.tenancy.TenantRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+
+/**
+ * Moves a tenant from one partition to another while it keeps serving requests. The tenant's Enrollees and
+ * Dependents are copied to the new partition's collections in Id order and in batches, while the Ids of the
+ * Enrollees written meanwhile are tracked. Those are copied again, first while writes continue and then while the
+ * tenant's writes are paused, after which the tenant is switched to the new partition. Reads are never paused.
+ * The collections of the old partition are left in place to be dropped once the move has been checked.
+ * Only writes made through this node are tracked and paused, so a write to the tenant through another node during
+ * the move could be left behind in the old partition. Moves are therefore refused unless the application is
+ * declared to run as a single node; other nodes only serving reads pick up the new partition once they reload
+ * the recorded partitions.
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+public class TenantPartitionMover {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(TenantPartitionMover.class);
+
+    private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+    private final MongoOperations mongoOperations;
+    private final TenantRegistry tenantRegistry;
+    private final ExternalDependentStore dependentStore;
+    private final int batchSize;
+    private final long writePauseTimeoutMillis;
+    private final boolean singleNode;
+    private final ExecutorService executor;
+
+    private final Map<String, TenantMove> moves = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> touched = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for TenantPartitionMover
+     *
+     * @param mongoOperations the MongoOperations to use
+     * @param tenantRegistry the TenantRegistry to record the new partition in
+     * @param dependentStore the ExternalDependentStore to create the new partition's indexes with
+     * @param batchSize the number of documents copied at a time
+     * @param writePauseTimeoutMillis how long to wait for the tenant's writes in flight to finish before switching
+     * @param singleNode whether this node is the only one writing, which moves require
+     */
+    TenantPartitionMover(MongoOperations mongoOperations,
+                         TenantRegistry tenantRegistry,
+                         ExternalDependentStore dependentStore,
+                         @Value("${enrollment.tenancy.move-batch-size:1000}") int batchSize,
+                         @Value("${enrollment.tenancy.write-pause-timeout-ms:10000}") long writePauseTimeoutMillis,
+                         @Value("${enrollment.tenancy.single-node:false}") boolean singleNode) {
+        this.mongoOperations = mongoOperations;
+        this.tenantRegistry = tenantRegistry;
+        this.dependentStore = dependentStore;
+        this.batchSize = Math.max(1, batchSize);
+        this.writePauseTimeoutMillis = writePauseTimeoutMillis;
+        this.singleNode = singleNode;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-tenant-mover");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts moving a tenant to another partition
+     *
+     * @param tenant the tenant to move
+     * @param partition the partition to move it to, which must not be in use and must have empty collections
+     * @return the TenantMove, which starts once any earlier moves have finished
+     */
+    public TenantMove startMove(String tenant, String partition) {
+
+        if (!this.singleNode) {
+            throw new ValidationException("Validation Error: Tenants Can Only Be Moved While A Single Node Serves Them (enrollment.tenancy.single-node)");
+        }
+        if (!this.tenantRegistry.isKnown(tenant)) {
+            throw new ResourceDoesNotExistException("Unable To Move Tenant, Tenant Does Not Exist: " + tenant);
+        }
+        if (!TenantRegistry.isValidName(partition)) {
+            throw new ValidationException("Validation Error: Partition Names Must Be Lower Case Letters, Digits And Dashes");
+        }
+
+        synchronized (this.moves) {
+            TenantMove previous = this.moves.get(tenant);
+            if (previous != null && previous.getState() == State.RUNNING) {
+                throw new ValidationException("Validation Error: Tenant Is Already Moving To Partition " + previous.getToPartition());
+            }
+            for (TenantMove move : this.moves.values()) {
+                if (move.getState() == State.RUNNING && move.getToPartition().equals(partition)) {
+                    throw new ValidationException("Validation Error: Partition Is In Use: " + partition);
+                }
+            }
+            if (this.tenantRegistry.isPartitionInUse(partition)) {
+                throw new ValidationException("Validation Error: Partition Is In Use: " + partition);
+            }
+            if (this.count(TenantRegistry.ENROLLEES, partition) > 0 || this.count(TenantRegistry.DEPENDENTS, partition) > 0) {
+                throw new ValidationException("Validation Error: Partition Is Not Empty: " + partition);
+            }
+
+            TenantMove move = new TenantMove(tenant, this.tenantRegistry.partitionOf(tenant), partition, Instant.now().toString());
+            this.touched.put(tenant, ConcurrentHashMap.newKeySet());
+            this.moves.put(tenant, move);
+            this.executor.submit(() -> this.run(move));
+            return move;
+        }
+    }
+
+    /**
+     * @param tenant the tenant
+     * @return the latest move of the tenant since startup, or null if there has not been one
+     */
+    public TenantMove getMove(String tenant) {
+        return this.moves.get(tenant);
+    }
+
+    /**
+     * Tracks the Enrollees written while their tenant is moving
+     *
+     * @param event the EnrolleeChangedEvent
+     */
+    @EventListener
+    public void enrolleeChanged(EnrolleeChangedEvent event) {
+
+        Set<String> ids = this.touched.get(event.getTenant());
+        if (ids != null) {
+            ids.add(event.getEnrolleeId());
+        }
+    }
+
+    /**
+     * Stops any running move, leaving the tenant in the partition it is in
+     */
+    @PreDestroy
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Helper method to copy a tenant and switch it to the new partition
+     */
+    private void run(TenantMove move) {
+
+        String tenant = move.getTenant();
+        String fromEnrollees = TenantRegistry.collectionName(TenantRegistry.ENROLLEES, move.getFromPartition());
+        String fromDependents = TenantRegistry.collectionName(TenantRegistry.DEPENDENTS, move.getFromPartition());
+        String toEnrollees = TenantRegistry.collectionName(TenantRegistry.ENROLLEES, move.getToPartition());
+        String toDependents = TenantRegistry.collectionName(TenantRegistry.DEPENDENTS, move.getToPartition());
+
+        try {
+            this.dependentStore.ensureIndexes(toEnrollees, toDependents);
+
+            move.setCopiedEnrollees(this.copy(fromEnrollees, toEnrollees));
+            move.setCopiedDependents(this.copy(fromDependents, toDependents));
+
+            //catch up with the writes made during the copy, so fewer are left to copy while writes are paused
+            int recopied = this.recopy(tenant, fromEnrollees, fromDependents, toEnrollees, toDependents);
+
+            Lock pause = this.tenantRegistry.writeLock(tenant).writeLock();
+            if (!pause.tryLock(this.writePauseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Timed Out Waiting For Writes To Tenant " + tenant + " To Finish");
+            }
+
+            long pauseStart = System.nanoTime();
+            try {
+                recopied += this.recopy(tenant, fromEnrollees, fromDependents, toEnrollees, toDependents);
+                this.tenantRegistry.movePartition(tenant, move.getToPartition());
+            } finally {
+                this.touched.remove(tenant);
+                pause.unlock();
+            }
+
+            move.setRecopiedEnrollees(recopied);
+            move.setPauseMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pauseStart));
+            move.finish(State.COMPLETED, Instant.now().toString(), null);
+        } catch (InterruptedException e) {
+            this.fail(move, toEnrollees, toDependents, "Interrupted");
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable To Move Tenant " + tenant + " To Partition " + move.getToPartition(), e);
+            this.fail(move, toEnrollees, toDependents, e.getMessage());
+        }
+    }
+
+    /**
+     * Helper method to copy every document of a collection, in Id order and in batches
+     *
+     * @return the number of documents copied
+     */
+    private long copy(String from, String to) {
+
+        MongoCollection<Document> source = this.mongoOperations.getCollection(from);
+        MongoCollection<Document> target = this.mongoOperations.getCollection(to);
+
+        long copied = 0;
+        Object after = NumericIds.nextIdType(null);
+
+        while (!Thread.currentThread().isInterrupted()) {
+
+            List<Document> batch = source.find(Filters.gt("_id", after)).sort(Sorts.ascending("_id")).limit(this.batchSize).into(new ArrayList<>());
+
+            if (batch.isEmpty()) {
+                after = NumericIds.nextIdType(after);
+                if (after == null) {
+                    return copied;
+                }
+                continue;
+            }
+
+            List<WriteModel<Document>> writes = batch.stream()
+                    .map(document -> new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, UPSERT))
+                    .collect(Collectors.toList());
+            target.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+
+            copied += batch.size();
+            after = batch.get(batch.size() - 1).get("_id");
+        }
+
+        throw new IllegalStateException("Interrupted");
+    }
+
+    /**
+     * Helper method to copy again the Enrollees written since they were last copied, along with their Dependents
+     *
+     * @return the number of Enrollees copied again
+     */
+    private int recopy(String tenant, String fromEnrollees, String fromDependents, String toEnrollees, String toDependents) {
+
+        Set<String> ids = this.touched.get(tenant);
+        List<String> drained = new ArrayList<>(ids);
+        ids.removeAll(drained);
+
+        MongoCollection<Document> sourceEnrollees = this.mongoOperations.getCollection(fromEnrollees);
+        MongoCollection<Document> sourceDependents = this.mongoOperations.getCollection(fromDependents);
+        MongoCollection<Document> targetEnrollees = this.mongoOperations.getCollection(toEnrollees);
+        MongoCollection<Document> targetDependents = this.mongoOperations.getCollection(toDependents);
+
+        for (String enrolleeId : drained) {
+
+            Object id = this.dependentStore.storedId(enrolleeId);
+            Document enrollee = sourceEnrollees.find(Filters.eq("_id", id)).first();
+            if (enrollee != null) {
+                targetEnrollees.replaceOne(Filters.eq("_id", id), enrollee, UPSERT);
+            } else {
+                targetEnrollees.deleteOne(Filters.eq("_id", id));
+            }
+
+            targetDependents.deleteMany(Filters.eq(ExternalDependentStore.ENROLLEE_ID, id));
+            List<Document> dependents = sourceDependents.find(Filters.eq(ExternalDependentStore.ENROLLEE_ID, id)).into(new ArrayList<>());
+            if (!dependents.isEmpty()) {
+                targetDependents.insertMany(dependents);
+            }
+        }
+
+        return drained.size();
+    }
+
+    /**
+     * Helper method to record a failed move, and drop what was copied so the move can be retried
+     */
+    private void fail(TenantMove move, String toEnrollees, String toDependents, String error) {
+
+        this.touched.remove(move.getTenant());
+        move.finish(State.FAILED, Instant.now().toString(), error);
+
+        try {
+            this.mongoOperations.dropCollection(toEnrollees);
+            this.mongoOperations.dropCollection(toDependents);
+        } catch (RuntimeException e) {
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Unable To Drop Partition " + move.getToPartition() + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private long count(String base, String partition) {
+        return this.mongoOperations.getCollection(TenantRegistry.collectionName(base, partition)).countDocuments();
+    }
+
+}
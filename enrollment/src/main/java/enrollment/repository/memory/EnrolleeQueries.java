@@ -0,0 +1,169 @@
+package enrollment.repository.memory;
+
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.ExampleMatcherAccessor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Sorts Enrollees and matches them against Query by Example probes in memory, for the in-memory storage engine.
+ * Sorting follows MongoDb in putting missing values first in ascending order. Probes match as MongoDb matches
+ * them: every non-null property of the probe, including primitives, must match unless the matcher ignores it,
+ * and each Dependent of the probe must match one of the Enrollee's Dependents.
+ * @author Michael Kulaga
+ */
+final class EnrolleeQueries {
+
+    private static final String[] ENROLLEE_PROPERTIES = {"id", "name", "activationStatus", "dateOfBirth", "phoneNumber"};
+    private static final String[] DEPENDENT_PROPERTIES = {"id", "name", "dateOfBirth"};
+
+    private EnrolleeQueries() {
+    }
+
+    /**
+     * Builds a comparator ordering Enrollees as a Sort asks, then by Id so pages are stable
+     *
+     * @param sort the Sort, which may be unsorted
+     * @return the comparator
+     */
+    static Comparator<Enrollee> comparator(Sort sort) {
+
+        Comparator<Enrollee> comparator = (left, right) -> 0;
+
+        for (Sort.Order order : sort) {
+            Comparator<Enrollee> property = (left, right) -> compare(
+                    new BeanWrapperImpl(left).getPropertyValue(order.getProperty()),
+                    new BeanWrapperImpl(right).getPropertyValue(order.getProperty()),
+                    order);
+            comparator = comparator.thenComparing(order.isAscending() ? property : property.reversed());
+        }
+
+        return comparator.thenComparing(Enrollee::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    /**
+     * Checks whether an Enrollee matches a Query by Example probe
+     *
+     * @param example the probe and its matcher
+     * @param enrollee the Enrollee
+     * @return true if the Enrollee matches
+     */
+    static boolean matches(Example<? extends Enrollee> example, Enrollee enrollee) {
+
+        ExampleMatcherAccessor matcher = new ExampleMatcherAccessor(example.getMatcher());
+        Enrollee probe = example.getProbe();
+        List<Boolean> results = new ArrayList<>();
+
+        BeanWrapper probeWrapper = new BeanWrapperImpl(probe);
+        BeanWrapper enrolleeWrapper = new BeanWrapperImpl(enrollee);
+        for (String property : ENROLLEE_PROPERTIES) {
+            Object expected = probeWrapper.getPropertyValue(property);
+            if (isConsidered(matcher, example.getMatcher(), property, expected)) {
+                results.add(valueMatches(matcher, property, expected, enrolleeWrapper.getPropertyValue(property)));
+            }
+        }
+
+        if (!matcher.isIgnoredPath("dependents")) {
+            for (Dependent dependent : probe.getDependents()) {
+                results.add(enrollee.getDependents().stream()
+                        .anyMatch(candidate -> dependentMatches(matcher, example.getMatcher(), dependent, candidate)));
+            }
+        }
+
+        return example.getMatcher().isAllMatching()
+                ? results.stream().allMatch(Boolean::booleanValue)
+                : results.isEmpty() || results.stream().anyMatch(Boolean::booleanValue);
+    }
+
+    /**
+     * Helper method to check whether a Dependent matches every considered property of a probe Dependent
+     */
+    private static boolean dependentMatches(ExampleMatcherAccessor matcher, ExampleMatcher exampleMatcher, Dependent probe, Dependent dependent) {
+
+        BeanWrapper probeWrapper = new BeanWrapperImpl(probe);
+        BeanWrapper dependentWrapper = new BeanWrapperImpl(dependent);
+
+        for (String property : DEPENDENT_PROPERTIES) {
+            String path = "dependents." + property;
+            Object expected = probeWrapper.getPropertyValue(property);
+            if (isConsidered(matcher, exampleMatcher, path, expected)
+                    && !valueMatches(matcher, path, expected, dependentWrapper.getPropertyValue(property))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to check whether a property of the probe takes part in matching
+     */
+    private static boolean isConsidered(ExampleMatcherAccessor matcher, ExampleMatcher exampleMatcher, String path, Object expected) {
+
+        if (matcher.isIgnoredPath(path)) {
+            return false;
+        }
+        return expected != null || exampleMatcher.getNullHandler() == ExampleMatcher.NullHandler.INCLUDE;
+    }
+
+    /**
+     * Helper method to match one value of the probe with the matcher's string matching and case sensitivity
+     */
+    private static boolean valueMatches(ExampleMatcherAccessor matcher, String path, Object expected, Object actual) {
+
+        Object transformed = matcher.getValueTransformerForPath(path).apply(Optional.ofNullable(expected)).orElse(null);
+
+        if (transformed == null || actual == null) {
+            return transformed == actual;
+        }
+
+        if (!(transformed instanceof String)) {
+            return transformed.equals(actual);
+        }
+
+        boolean ignoreCase = matcher.isIgnoreCaseForPath(path);
+        String expectedText = ignoreCase ? ((String) transformed).toLowerCase(Locale.ROOT) : (String) transformed;
+        String actualText = ignoreCase ? actual.toString().toLowerCase(Locale.ROOT) : actual.toString();
+
+        switch (matcher.getStringMatcherForPath(path)) {
+            case STARTING:
+                return actualText.startsWith(expectedText);
+            case ENDING:
+                return actualText.endsWith(expectedText);
+            case CONTAINING:
+                return actualText.contains(expectedText);
+            case REGEX:
+                return Pattern.compile((String) transformed, ignoreCase ? Pattern.CASE_INSENSITIVE : 0).matcher(actual.toString()).find();
+            default:
+                return actualText.equals(expectedText);
+        }
+    }
+
+    /**
+     * Helper method to compare two values of a sorted property, missing values first
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object left, Object right, Sort.Order order) {
+
+        if (left == null || right == null) {
+            return left == right ? 0 : left == null ? -1 : 1;
+        }
+
+        if (order.isIgnoreCase() && left instanceof String && right instanceof String) {
+            return ((String) left).compareToIgnoreCase((String) right);
+        }
+
+        return ((Comparable) left).compareTo(right);
+    }
+
+}
@@ -0,0 +1,136 @@
+package enrollment.repository.memory;
+
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes Enrollees into the compact binary records held by the in-memory index, the write-ahead log and snapshots
+ * @author Michael Kulaga
+ */
+final class EnrolleeRecordCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final int ACTIVE_FLAG = 1;
+
+    private EnrolleeRecordCodec() {
+    }
+
+    /**
+     * Encodes an Enrollee and its Dependents into a compact record
+     *
+     * @param enrollee the Enrollee to encode
+     * @return the encoded record
+     */
+    static byte[] encode(Enrollee enrollee) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+
+            out.writeByte(VERSION);
+            out.writeByte(enrollee.isActivationStatus() ? ACTIVE_FLAG : 0);
+            writeString(out, enrollee.getId());
+            writeString(out, enrollee.getName());
+            writeString(out, enrollee.getDateOfBirth());
+            writeString(out, enrollee.getPhoneNumber());
+
+            List<Dependent> dependents = enrollee.getDependents() != null ? enrollee.getDependents() : new ArrayList<>();
+            out.writeInt(dependents.size());
+
+            for (Dependent dependent : dependents) {
+                writeString(out, dependent.getId());
+                writeString(out, dependent.getName());
+                writeString(out, dependent.getDateOfBirth());
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a record into a new Enrollee, so callers never share state with the index
+     *
+     * @param record the encoded record
+     * @return the decoded Enrollee
+     */
+    static Enrollee decode(byte[] record) {
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported Enrollee Record Version: " + version);
+            }
+
+            Enrollee enrollee = new Enrollee();
+            enrollee.setActivationStatus((in.readByte() & ACTIVE_FLAG) != 0);
+            enrollee.setId(readString(in));
+            enrollee.setName(readString(in));
+            enrollee.setDateOfBirth(readString(in));
+            enrollee.setPhoneNumber(readString(in));
+
+            int dependentCount = in.readInt();
+            List<Dependent> dependents = new ArrayList<>(dependentCount);
+
+            for (int i = 0; i < dependentCount; i++) {
+                Dependent dependent = new Dependent();
+                dependent.setId(readString(in));
+                dependent.setName(readString(in));
+                dependent.setDateOfBirth(readString(in));
+                dependents.add(dependent);
+            }
+
+            enrollee.setDependents(dependents);
+
+            return enrollee;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method to write a length-prefixed UTF-8 String, using a length of -1 for null
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    /**
+     * Helper method to read a String written by writeString
+     */
+    private static String readString(DataInputStream in) throws IOException {
+
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] encoded = new byte[length];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+}
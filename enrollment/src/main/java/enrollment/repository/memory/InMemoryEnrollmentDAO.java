@@ -0,0 +1,712 @@
+package enrollment.repository.memory;
+
+import enrollment.common.ActivationJobRequest;
+import enrollment.common.AgedOutDependent;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleePatch;
+import enrollment.repository.EnrollmentDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Embedded in-memory implementation of the EnrollmentDAO, used in place of MongoDb with the "memory" profile.
+ * Enrollees are held as compact records in a concurrent index keyed by Enrollee Id. Writes to the same Id are
+ * serialized by a striped lock and appended to a write-ahead log before they become visible, and the index is
+ * periodically written to a memory-mapped snapshot so that a restart only has to replay the log written since.
+ * A sorted secondary index of Dependent Dates of Birth is kept alongside, and rebuilt from the index on recovery.
+ *
+ * Sorting, paging and Query by Example are answered by decoding and scanning every Enrollee, so they suit small
+ * data sets. The engine is never initialized lazily, so recovery happens during startup rather than on the first request.
+ * @author Michael Kulaga
+ */
+@Repository
+@Profile("memory")
+@Lazy(false)
+public class InMemoryEnrollmentDAO implements EnrollmentDAO {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(InMemoryEnrollmentDAO.class);
+
+    private static final char KEY_SEPARATOR = '\0';
+
+    private final ConcurrentHashMap<String, byte[]> index = new ConcurrentHashMap<>();
+
+    //keys of Dependent Date of Birth, Enrollee Id and Dependent Id, separated by KEY_SEPARATOR
+    private final ConcurrentSkipListSet<String> dependentBirthDates = new ConcurrentSkipListSet<>();
+    private final ReentrantLock[] stripes;
+    private final Path directory;
+    private final WriteAheadLog writeAheadLog;
+    private final ScheduledExecutorService snapshotScheduler;
+
+    /**
+     * Constructor for InMemoryEnrollmentDAO, recovering the index from the latest snapshot and write-ahead log
+     *
+     * @param directory the directory holding the snapshot and write-ahead log
+     * @param stripes the number of lock stripes, rounded up to a power of two
+     * @param syncOnWrite whether every write is forced to disk before returning
+     * @param snapshotIntervalSeconds the seconds between snapshots, or 0 to only snapshot on shutdown
+     */
+    public InMemoryEnrollmentDAO(@Value("${enrollment.memory.directory:data}") String directory,
+                                 @Value("${enrollment.memory.stripes:64}") int stripes,
+                                 @Value("${enrollment.memory.sync-on-write:true}") boolean syncOnWrite,
+                                 @Value("${enrollment.memory.snapshot-interval-seconds:300}") long snapshotIntervalSeconds) throws IOException {
+
+        this.directory = Paths.get(directory);
+        Files.createDirectories(this.directory);
+
+        this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+
+        this.writeAheadLog = new WriteAheadLog(this.directory, this.recover(), syncOnWrite);
+
+        if (snapshotIntervalSeconds > 0) {
+            this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "enrollment-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.snapshotScheduler.scheduleWithFixedDelay(this::scheduledSnapshot,
+                    snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            this.snapshotScheduler = null;
+        }
+    }
+
+    @Override
+    public <S extends Enrollee> S insert(S entity) {
+
+        String id = requireId(entity);
+        byte[] record = EnrolleeRecordCodec.encode(entity);
+
+        ReentrantLock lock = this.stripeFor(id);
+        lock.lock();
+        try {
+            if (this.index.containsKey(id)) {
+                throw new DuplicateKeyException("Enrollee Already Exists For Id: " + id);
+            }
+            this.append(WriteAheadLog.PUT, id, record);
+            this.put(id, record, entity);
+        } finally {
+            lock.unlock();
+        }
+
+        return entity;
+    }
+
+    @Override
+    public <S extends Enrollee> List<S> insert(Iterable<S> entities) {
+
+        List<S> inserted = new ArrayList<>();
+        for (S entity : entities) {
+            inserted.add(this.insert(entity));
+        }
+        return inserted;
+    }
+
+    @Override
+    public <S extends Enrollee> S save(S entity) {
+
+        String id = requireId(entity);
+        byte[] record = EnrolleeRecordCodec.encode(entity);
+
+        ReentrantLock lock = this.stripeFor(id);
+        lock.lock();
+        try {
+            this.append(WriteAheadLog.PUT, id, record);
+            this.put(id, record, entity);
+        } finally {
+            lock.unlock();
+        }
+
+        return entity;
+    }
+
+    @Override
+    public <S extends Enrollee> List<S> saveAll(Iterable<S> entities) {
+
+        List<S> saved = new ArrayList<>();
+        for (S entity : entities) {
+            saved.add(this.save(entity));
+        }
+        return saved;
+    }
+
+    @Override
+    public Optional<Enrollee> findById(String id) {
+
+        byte[] record = this.index.get(id);
+        return record != null ? Optional.of(EnrolleeRecordCodec.decode(record)) : Optional.empty();
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return this.index.containsKey(id);
+    }
+
+    @Override
+    public List<Enrollee> findAll() {
+
+        List<Enrollee> enrollees = new ArrayList<>(this.index.size());
+        for (byte[] record : this.index.values()) {
+            enrollees.add(EnrolleeRecordCodec.decode(record));
+        }
+        return enrollees;
+    }
+
+    @Override
+    public Iterable<Enrollee> findAllById(Iterable<String> ids) {
+
+        List<Enrollee> enrollees = new ArrayList<>();
+        for (String id : ids) {
+            this.findById(id).ifPresent(enrollees::add);
+        }
+        return enrollees;
+    }
+
+    @Override
+    public long count() {
+        return this.index.size();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        this.findAndRemoveById(id);
+    }
+
+    @Override
+    public Enrollee findAndRemoveById(String enrolleeId) {
+
+        ReentrantLock lock = this.stripeFor(enrolleeId);
+        lock.lock();
+        try {
+            if (!this.index.containsKey(enrolleeId)) {
+                return null;
+            }
+            this.append(WriteAheadLog.DELETE, enrolleeId, null);
+            byte[] removed = this.index.remove(enrolleeId);
+            this.unindexDependents(enrolleeId, removed);
+            return EnrolleeRecordCodec.decode(removed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(Enrollee entity) {
+        this.deleteById(requireId(entity));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Enrollee> entities) {
+
+        for (Enrollee entity : entities) {
+            this.delete(entity);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+
+        this.lockAll();
+        try {
+            this.append(WriteAheadLog.CLEAR, null, null);
+            this.index.clear();
+            this.dependentBirthDates.clear();
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public Enrollee applyPatch(String enrolleeId, EnrolleePatch patch) {
+
+        ReentrantLock lock = this.stripeFor(enrolleeId);
+        lock.lock();
+        try {
+            byte[] existing = this.index.get(enrolleeId);
+            if (existing == null) {
+                return null;
+            }
+
+            Enrollee before = EnrolleeRecordCodec.decode(existing);
+            if (patch.isEmpty()) {
+                return before;
+            }
+
+            Enrollee enrollee = patch.applyTo(before);
+
+            byte[] record = EnrolleeRecordCodec.encode(enrollee);
+            this.append(WriteAheadLog.PUT, enrolleeId, record);
+            this.put(enrolleeId, record, enrollee);
+
+            return before;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Scans the index, only decoding the records of Enrollees after the given Id
+     */
+    @Override
+    public List<String> findActivationCandidates(ActivationJobRequest request, String afterId, int limit) {
+
+        Collection<String> ids = request.getIds() != null && !request.getIds().isEmpty()
+                ? new HashSet<>(request.getIds()) : this.index.keySet();
+
+        TreeSet<String> candidates = new TreeSet<>();
+
+        for (String id : ids) {
+
+            if (afterId != null && id.compareTo(afterId) <= 0
+                    || candidates.size() == limit && id.compareTo(candidates.last()) >= 0) {
+                continue;
+            }
+
+            byte[] record = this.index.get(id);
+            if (record == null) {
+                continue;
+            }
+
+            Enrollee enrollee = EnrolleeRecordCodec.decode(record);
+
+            if (enrollee.isActivationStatus() != request.getActivationStatus()
+                    && (request.getDateOfBirthFrom() == null || enrollee.getDateOfBirth().compareTo(request.getDateOfBirthFrom()) >= 0)
+                    && (request.getDateOfBirthTo() == null || enrollee.getDateOfBirth().compareTo(request.getDateOfBirthTo()) <= 0)) {
+                candidates.add(id);
+                if (candidates.size() > limit) {
+                    candidates.pollLast();
+                }
+            }
+        }
+
+        return new ArrayList<>(candidates);
+    }
+
+    @Override
+    public List<String> updateActivationStatus(List<String> enrolleeIds, boolean activationStatus) {
+
+        List<String> modified = new ArrayList<>();
+
+        for (String id : enrolleeIds) {
+
+            ReentrantLock lock = this.stripeFor(id);
+            lock.lock();
+            try {
+                byte[] existing = this.index.get(id);
+                if (existing == null) {
+                    continue;
+                }
+
+                Enrollee enrollee = EnrolleeRecordCodec.decode(existing);
+                if (enrollee.isActivationStatus() == activationStatus) {
+                    continue;
+                }
+
+                enrollee.setActivationStatus(activationStatus);
+                byte[] record = EnrolleeRecordCodec.encode(enrollee);
+                this.append(WriteAheadLog.PUT, id, record);
+                //the Dependents are unchanged, so the Date of Birth index is too
+                this.index.put(id, record);
+                modified.add(id);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return modified;
+    }
+
+    /**
+     * Walks the range of the Date of Birth index, only decoding the records of Enrollees with matching Dependents
+     */
+    @Override
+    public Stream<AgedOutDependent> streamAgedOutDependents(String bornAfter, String bornOnOrBefore) {
+
+        String from = bornAfter != null ? bornAfter + (char) (KEY_SEPARATOR + 1) : "";
+        String to = bornOnOrBefore + (char) (KEY_SEPARATOR + 1);
+
+        return this.dependentBirthDates.subSet(from, to).stream()
+                .map(this::agedOutDependent)
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public Stream<Enrollee> streamNamesAndDatesOfBirth() {
+        return this.index.values().stream().map(EnrolleeRecordCodec::decode);
+    }
+
+    @Override
+    public Stream<Enrollee> streamActivationStatuses() {
+        return this.index.values().stream().map(EnrolleeRecordCodec::decode);
+    }
+
+    @Override
+    public Stream<Enrollee> streamAll() {
+        return this.index.values().stream().map(EnrolleeRecordCodec::decode);
+    }
+
+    @Override
+    public void upsertAll(List<Enrollee> enrollees) {
+
+        List<String> ids = new ArrayList<>(enrollees.size());
+        List<byte[]> records = new ArrayList<>(enrollees.size());
+        for (Enrollee enrollee : enrollees) {
+            ids.add(requireId(enrollee));
+            records.add(EnrolleeRecordCodec.encode(enrollee));
+        }
+
+        //one write-ahead log sync for the whole batch
+        this.lockAll();
+        try {
+            try {
+                this.writeAheadLog.appendPuts(ids, records);
+            } catch (IOException e) {
+                throw new DataAccessResourceFailureException("Unable To Append To Write-Ahead Log", e);
+            }
+            for (int i = 0; i < enrollees.size(); i++) {
+                this.put(ids.get(i), records.get(i), enrollees.get(i));
+            }
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the index and discards the write-ahead log it covers
+     */
+    public synchronized void snapshot() {
+
+        List<Map.Entry<String, byte[]>> entries = new ArrayList<>(this.index.size());
+        long generation;
+
+        this.lockAll();
+        try {
+            generation = this.writeAheadLog.rotate();
+            for (Map.Entry<String, byte[]> entry : this.index.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+            }
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable To Rotate Write-Ahead Log", e);
+        } finally {
+            this.unlockAll();
+        }
+
+        try {
+            SnapshotFile.write(this.directory, generation, entries);
+            this.writeAheadLog.deleteBefore(generation);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable To Write Snapshot", e);
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Wrote In-Memory Snapshot Of " + entries.size() + " Enrollees At Generation " + generation);
+        }
+    }
+
+    /**
+     * Writes a final snapshot and closes the write-ahead log
+     */
+    @PreDestroy
+    public void close() throws IOException {
+
+        if (this.snapshotScheduler != null) {
+            this.snapshotScheduler.shutdownNow();
+        }
+
+        this.snapshot();
+        this.writeAheadLog.close();
+    }
+
+    @Override
+    public List<Enrollee> findAll(Sort sort) {
+
+        List<Enrollee> enrollees = this.findAll();
+        enrollees.sort(EnrolleeQueries.comparator(sort));
+        return enrollees;
+    }
+
+    @Override
+    public Page<Enrollee> findAll(Pageable pageable) {
+        return page(this.findAll(), pageable);
+    }
+
+    @Override
+    public <S extends Enrollee> Optional<S> findOne(Example<S> example) {
+
+        List<S> enrollees = this.findAll(example);
+        if (enrollees.size() > 1) {
+            throw new IncorrectResultSizeDataAccessException(1, enrollees.size());
+        }
+        return enrollees.stream().findFirst();
+    }
+
+    @Override
+    public <S extends Enrollee> List<S> findAll(Example<S> example) {
+        return this.findAll(example, Sort.unsorted());
+    }
+
+    @Override
+    public <S extends Enrollee> List<S> findAll(Example<S> example, Sort sort) {
+
+        List<S> enrollees = this.matching(example);
+        enrollees.sort(EnrolleeQueries.comparator(sort));
+        return enrollees;
+    }
+
+    @Override
+    public <S extends Enrollee> Page<S> findAll(Example<S> example, Pageable pageable) {
+        return page(this.matching(example), pageable);
+    }
+
+    @Override
+    public <S extends Enrollee> long count(Example<S> example) {
+        return this.matching(example).size();
+    }
+
+    @Override
+    public <S extends Enrollee> boolean exists(Example<S> example) {
+        return this.index.values().stream()
+                .map(EnrolleeRecordCodec::decode)
+                .anyMatch(enrollee -> EnrolleeQueries.matches(example, enrollee));
+    }
+
+    /**
+     * Helper method to decode the Enrollees matching a Query by Example probe, as the probe's type
+     *
+     * @param example the probe and its matcher
+     * @return the matching Enrollees, unsorted
+     */
+    @SuppressWarnings("unchecked")
+    private <S extends Enrollee> List<S> matching(Example<S> example) {
+
+        List<S> enrollees = new ArrayList<>();
+        for (byte[] record : this.index.values()) {
+            Enrollee enrollee = EnrolleeRecordCodec.decode(record);
+            if (EnrolleeQueries.matches(example, enrollee)) {
+                enrollees.add((S) enrollee);
+            }
+        }
+        return enrollees;
+    }
+
+    /**
+     * Helper method to sort Enrollees as a Pageable asks and cut the page it asks for
+     *
+     * @param enrollees all of the Enrollees to page through
+     * @param pageable the page to cut, which may be unpaged
+     * @return the page
+     */
+    private static <S extends Enrollee> Page<S> page(List<S> enrollees, Pageable pageable) {
+
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(enrollees);
+        }
+
+        enrollees.sort(EnrolleeQueries.comparator(pageable.getSort()));
+        int from = (int) Math.min(pageable.getOffset(), enrollees.size());
+        int to = (int) Math.min((long) from + pageable.getPageSize(), enrollees.size());
+
+        return new PageImpl<>(new ArrayList<>(enrollees.subList(from, to)), pageable, enrollees.size());
+    }
+
+    /**
+     * Helper method to rebuild the index from the latest snapshot and the write-ahead log written since
+     *
+     * @return the write-ahead log generation to continue appending to
+     */
+    private long recover() throws IOException {
+
+        long generation = SnapshotFile.load(this.directory, this.index::put);
+        int replayed = 0;
+
+        for (Path file : WriteAheadLog.logFiles(this.directory)) {
+
+            long fileGeneration = WriteAheadLog.generationOf(file);
+
+            if (fileGeneration < generation) {
+                Files.delete(file);
+                continue;
+            }
+
+            replayed += WriteAheadLog.replay(file, (operation, id, record) -> {
+                if (operation == WriteAheadLog.PUT) {
+                    this.index.put(id, record);
+                } else if (operation == WriteAheadLog.DELETE) {
+                    this.index.remove(id);
+                } else if (operation == WriteAheadLog.CLEAR) {
+                    this.index.clear();
+                }
+            });
+
+            generation = fileGeneration;
+        }
+
+        this.index.forEach((id, record) -> this.indexDependents(id, EnrolleeRecordCodec.decode(record)));
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Recovered " + this.index.size() + " Enrollees, Replaying " + replayed + " Write-Ahead Log Entries");
+        }
+
+        return generation;
+    }
+
+    /**
+     * Helper method to put a record in the index and bring the Date of Birth index in line with it. The caller
+     * must hold the lock stripe for the Id.
+     */
+    private void put(String id, byte[] record, Enrollee enrollee) {
+
+        this.unindexDependents(id, this.index.put(id, record));
+        this.indexDependents(id, enrollee);
+    }
+
+    private void indexDependents(String id, Enrollee enrollee) {
+
+        if (enrollee.getDependents() != null) {
+            for (Dependent dependent : enrollee.getDependents()) {
+                if (dependent != null && dependent.getDateOfBirth() != null) {
+                    this.dependentBirthDates.add(birthDateKey(id, dependent));
+                }
+            }
+        }
+    }
+
+    private void unindexDependents(String id, byte[] previous) {
+
+        if (previous == null) {
+            return;
+        }
+
+        List<Dependent> dependents = EnrolleeRecordCodec.decode(previous).getDependents();
+        if (dependents != null) {
+            for (Dependent dependent : dependents) {
+                if (dependent != null && dependent.getDateOfBirth() != null) {
+                    this.dependentBirthDates.remove(birthDateKey(id, dependent));
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method to read the Dependent a Date of Birth key refers to, or null if it has since changed
+     */
+    private AgedOutDependent agedOutDependent(String key) {
+
+        int enrolleeStart = key.indexOf(KEY_SEPARATOR) + 1;
+        int dependentStart = key.indexOf(KEY_SEPARATOR, enrolleeStart) + 1;
+        String enrolleeId = key.substring(enrolleeStart, dependentStart - 1);
+        String dependentId = key.substring(dependentStart);
+
+        byte[] record = this.index.get(enrolleeId);
+        if (record == null) {
+            return null;
+        }
+
+        for (Dependent dependent : EnrolleeRecordCodec.decode(record).getDependents()) {
+            if (dependent != null && dependentId.equals(dependent.getId()) && key.startsWith(dependent.getDateOfBirth() + KEY_SEPARATOR)) {
+                return new AgedOutDependent(enrolleeId, dependent);
+            }
+        }
+        return null;
+    }
+
+    private static String birthDateKey(String id, Dependent dependent) {
+        return dependent.getDateOfBirth() + KEY_SEPARATOR + id + KEY_SEPARATOR + dependent.getId();
+    }
+
+    /**
+     * Helper method for the scheduled snapshot, which must not throw or it will stop being scheduled
+     */
+    private void scheduledSnapshot() {
+
+        try {
+            this.snapshot();
+        } catch (RuntimeException e) {
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Unable To Write In-Memory Snapshot: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Helper method to append to the write-ahead log, translating failures into DataAccessExceptions
+     */
+    private void append(byte operation, String id, byte[] record) {
+
+        try {
+            this.writeAheadLog.append(operation, id, record);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable To Append To Write-Ahead Log", e);
+        }
+    }
+
+    /**
+     * Helper method to select the lock stripe for an Id
+     */
+    private ReentrantLock stripeFor(String id) {
+
+        int hash = id.hashCode();
+        return this.stripes[(hash ^ (hash >>> 16)) & (this.stripes.length - 1)];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock stripe : this.stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = this.stripes.length - 1; i >= 0; i--) {
+            this.stripes[i].unlock();
+        }
+    }
+
+    /**
+     * Helper method to require an Id, as the in-memory engine does not generate them
+     */
+    private static String requireId(Enrollee entity) {
+
+        if (entity.getId() == null) {
+            throw new IllegalArgumentException("Enrollee Id Must Not Be Null");
+        }
+        return entity.getId();
+    }
+
+}
@@ -0,0 +1,138 @@
+package enrollment.repository.memory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped snapshot of the in-memory index. A snapshot of generation N contains every change written to the
+ * write-ahead log generations before N
+ * @author Michael Kulaga
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x454E524C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    static final String FILE_NAME = "snapshot.dat";
+    private static final String TEMP_FILE_NAME = "snapshot.tmp";
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot through a memory-mapped buffer and atomically replaces the previous snapshot
+     *
+     * @param directory the directory holding the snapshot
+     * @param generation the first write-ahead log generation not covered by this snapshot
+     * @param entries the Enrollee Ids and records to write
+     */
+    static void write(Path directory, long generation, List<Map.Entry<String, byte[]>> entries) throws IOException {
+
+        long size = HEADER_SIZE + 8;
+        for (Map.Entry<String, byte[]> entry : entries) {
+            size += 8 + entry.getKey().getBytes(StandardCharsets.UTF_8).length + entry.getValue().length;
+        }
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot Is Too Large To Map: " + size + " Bytes");
+        }
+
+        Path temp = directory.resolve(TEMP_FILE_NAME);
+        Files.deleteIfExists(temp);
+
+        try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(generation);
+            buffer.putInt(entries.size());
+
+            for (Map.Entry<String, byte[]> entry : entries) {
+                byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                buffer.putInt(id.length).put(id);
+                buffer.putInt(entry.getValue().length).put(entry.getValue());
+            }
+
+            buffer.putLong(checksum(buffer, (int) size - 8));
+            buffer.force();
+        }
+
+        Files.move(temp, directory.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the snapshot in a directory, if there is one
+     *
+     * @param directory the directory holding the snapshot
+     * @param consumer the callback receiving each Enrollee Id and record
+     * @return the first write-ahead log generation not covered by the snapshot, or 0 when there is no snapshot
+     */
+    static long load(Path directory, BiConsumer<String, byte[]> consumer) throws IOException {
+
+        Path path = directory.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(path)) {
+
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (size < HEADER_SIZE + 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Snapshot Is Not A Valid Enrollment Snapshot: " + path);
+            }
+
+            if (buffer.getLong((int) size - 8) != checksum(buffer, (int) size - 8)) {
+                throw new IOException("Snapshot Checksum Does Not Match: " + path);
+            }
+
+            long generation = buffer.getLong();
+            int count = buffer.getInt();
+
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[buffer.getInt()];
+                buffer.get(id);
+                byte[] record = new byte[buffer.getInt()];
+                buffer.get(record);
+                consumer.accept(new String(id, StandardCharsets.UTF_8), record);
+            }
+
+            return generation;
+        }
+    }
+
+    /**
+     * Helper method to checksum the first bytes of a buffer without moving its position
+     */
+    private static long checksum(MappedByteBuffer buffer, int length) {
+
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+
+        for (int offset = 0; offset < length; offset += chunk.length) {
+            int read = Math.min(chunk.length, length - offset);
+            for (int i = 0; i < read; i++) {
+                chunk[i] = buffer.get(offset + i);
+            }
+            crc.update(chunk, 0, read);
+        }
+
+        return crc.getValue();
+    }
+
+}
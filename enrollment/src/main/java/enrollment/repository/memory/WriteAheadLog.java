@@ -0,0 +1,267 @@
+package enrollment.repository.memory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of changes to the in-memory index, split into numbered generations so that
+ * everything before a snapshot can be discarded
+ * @author Michael Kulaga
+ */
+class WriteAheadLog implements Closeable {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte CLEAR = 3;
+
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final boolean syncOnWrite;
+
+    private FileChannel channel;
+    private long generation;
+
+    /**
+     * Callback for the entries of a log being replayed
+     */
+    interface Replayer {
+        void replay(byte operation, String id, byte[] record);
+    }
+
+    /**
+     * Opens the log for appending, continuing the given generation if it already exists
+     *
+     * @param directory the directory holding the log files
+     * @param generation the generation to append to
+     * @param syncOnWrite whether every append is forced to disk before returning
+     */
+    WriteAheadLog(Path directory, long generation, boolean syncOnWrite) throws IOException {
+        this.directory = directory;
+        this.syncOnWrite = syncOnWrite;
+        this.generation = generation;
+        this.channel = open(directory, generation);
+    }
+
+    /**
+     * Appends a single entry to the log
+     *
+     * @param operation the operation (PUT, DELETE or CLEAR)
+     * @param id the Id of the Enrollee, or null for CLEAR
+     * @param record the encoded Enrollee, or null unless the operation is PUT
+     */
+    synchronized void append(byte operation, String id, byte[] record) throws IOException {
+
+        this.write(operation, id, record);
+
+        if (this.syncOnWrite) {
+            this.channel.force(false);
+        }
+    }
+
+    /**
+     * Appends many PUT entries to the log, forcing them to disk together rather than one at a time
+     *
+     * @param ids the Ids of the Enrollees
+     * @param records the encoded Enrollees, in the same order as their Ids
+     */
+    synchronized void appendPuts(List<String> ids, List<byte[]> records) throws IOException {
+
+        for (int i = 0; i < ids.size(); i++) {
+            this.write(PUT, ids.get(i), records.get(i));
+        }
+
+        if (this.syncOnWrite) {
+            this.channel.force(false);
+        }
+    }
+
+    /**
+     * Helper method to write a single entry without forcing it to disk
+     */
+    private void write(byte operation, String id, byte[] record) throws IOException {
+
+        byte[] idBytes = id != null ? id.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] recordBytes = record != null ? record : new byte[0];
+
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 + idBytes.length + 4 + recordBytes.length);
+        payload.put(operation);
+        payload.putInt(idBytes.length).put(idBytes);
+        payload.putInt(recordBytes.length).put(recordBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+
+        ByteBuffer entry = ByteBuffer.allocate(8 + payload.capacity());
+        entry.putInt(payload.capacity());
+        entry.putInt((int) crc.getValue());
+        entry.put(payload.array());
+        entry.flip();
+
+        while (entry.hasRemaining()) {
+            this.channel.write(entry);
+        }
+    }
+
+    /**
+     * Seals the current generation and starts appending to the next one
+     *
+     * @return the new generation
+     */
+    synchronized long rotate() throws IOException {
+
+        this.channel.force(false);
+        this.channel.close();
+
+        this.generation++;
+        this.channel = open(this.directory, this.generation);
+
+        return this.generation;
+    }
+
+    /**
+     * Forces any appended entries to disk
+     */
+    synchronized void sync() throws IOException {
+        this.channel.force(false);
+    }
+
+    /**
+     * Deletes all log files older than the given generation
+     *
+     * @param generation the oldest generation to keep
+     */
+    void deleteBefore(long generation) throws IOException {
+
+        for (Path file : logFiles(this.directory)) {
+            if (generationOf(file) < generation) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.channel.force(false);
+        this.channel.close();
+    }
+
+    /**
+     * Replays a log file, stopping at the first torn or corrupted entry and truncating the file there
+     *
+     * @param file the log file to replay
+     * @param replayer the callback receiving each entry
+     * @return the number of entries replayed
+     */
+    static int replay(Path file, Replayer replayer) throws IOException {
+
+        long validLength = 0;
+        int entries = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            while (true) {
+
+                byte[] payload;
+                int checksum;
+
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+
+                    if (length < 9) {
+                        break;
+                    }
+
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                byte operation = buffer.get();
+
+                byte[] idBytes = new byte[buffer.getInt()];
+                buffer.get(idBytes);
+
+                byte[] record = new byte[buffer.getInt()];
+                buffer.get(record);
+
+                replayer.replay(operation, idBytes.length > 0 ? new String(idBytes, StandardCharsets.UTF_8) : null, record);
+
+                validLength += 8 + payload.length;
+                entries++;
+            }
+        }
+
+        if (validLength < Files.size(file)) {
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Lists the log files in a directory, oldest generation first
+     *
+     * @param directory the directory holding the log files
+     * @return the log files
+     */
+    static List<Path> logFiles(Path directory) throws IOException {
+
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX)
+                            && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(WriteAheadLog::generationOf))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Helper method to read the generation out of a log file name
+     */
+    static long generationOf(Path file) {
+
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Helper method to open a log generation for appending
+     */
+    private static FileChannel open(Path directory, long generation) throws IOException {
+
+        return FileChannel.open(directory.resolve(PREFIX + generation + SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Embedded In-Memory Storage Engine for Enrollment Application, enabled with the "memory" profile
+ * @author Michael Kulaga
+ */
+package enrollment.repository.memory;
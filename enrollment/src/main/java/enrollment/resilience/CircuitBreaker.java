@@ -0,0 +1,243 @@
+package enrollment.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker over the outcomes of the most recent calls. While CLOSED every call is permitted, and once
+ * enough calls have been made the breaker OPENs when too many of the recent ones failed or were slow. While OPEN
+ * every call is rejected, until the open duration has passed and the breaker becomes HALF_OPEN, permitting a few
+ * probe calls: it CLOSEs again once they have all succeeded in time, and OPENs again as soon as one does not.
+ * @author Michael Kulaga
+ */
+public class CircuitBreaker {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final int RECENT_TRANSITIONS = 20;
+
+    /**
+     * The state of a CircuitBreaker
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int slowCallRateThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier nanoTime;
+
+    //outcomes of the most recent calls, as a ring
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int calls;
+    private int next;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    private long permittedCalls;
+    private long failedCalls;
+    private long slowCallsSeen;
+    private long rejectedCalls;
+    private final Map<String, Long> transitionCounts = new LinkedHashMap<>();
+    private final Deque<CircuitBreakerStatus.Transition> transitions = new ArrayDeque<>();
+
+    /**
+     * Constructor for CircuitBreaker
+     *
+     * @param windowSize the number of most recent calls the failure and slow call rates are taken over
+     * @param minimumCalls the number of calls to make before the breaker can open
+     * @param failureRateThreshold the percentage of failed recent calls at which the breaker opens
+     * @param slowCallMillis how long a call may take before it counts as slow
+     * @param slowCallRateThreshold the percentage of slow recent calls at which the breaker opens
+     * @param openMillis how long the breaker stays open before probing
+     * @param halfOpenProbes the number of probe calls that must succeed for the breaker to close again
+     */
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, long slowCallMillis,
+                          int slowCallRateThreshold, long openMillis, int halfOpenProbes) {
+        this(windowSize, minimumCalls, failureRateThreshold, slowCallMillis, slowCallRateThreshold, openMillis,
+                halfOpenProbes, System::nanoTime);
+    }
+
+    CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, long slowCallMillis,
+                   int slowCallRateThreshold, long openMillis, int halfOpenProbes, LongSupplier nanoTime) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.nanoTime = nanoTime;
+        this.failed = new boolean[this.windowSize];
+        this.slow = new boolean[this.windowSize];
+    }
+
+    /**
+     * Asks to make a call, which must be followed by a call to onResult if permitted
+     *
+     * @return true if the call may be made, false if it must be rejected
+     */
+    public synchronized boolean tryAcquire() {
+
+        if (this.state == State.OPEN) {
+            if (this.nanoTime.getAsLong() - this.openedAtNanos < this.openNanos) {
+                this.rejectedCalls++;
+                return false;
+            }
+            this.transition(State.HALF_OPEN);
+        }
+
+        if (this.state == State.HALF_OPEN) {
+            if (this.probesStarted >= this.halfOpenProbes) {
+                this.rejectedCalls++;
+                return false;
+            }
+            this.probesStarted++;
+        }
+
+        this.permittedCalls++;
+        return true;
+    }
+
+    /**
+     * Records the outcome of a permitted call
+     *
+     * @param callFailed whether the call failed
+     * @param nanos how long the call took
+     */
+    public void onResult(boolean callFailed, long nanos) {
+        this.onResult(callFailed, nanos, this.slowCallNanos);
+    }
+
+    /**
+     * Records the outcome of a permitted call that is expected to take longer than most, such as reading every record
+     *
+     * @param callFailed whether the call failed
+     * @param nanos how long the call took
+     * @param slowCallNanos how long the call may take before it counts as slow
+     */
+    public synchronized void onResult(boolean callFailed, long nanos, long slowCallNanos) {
+
+        boolean callSlow = nanos >= slowCallNanos;
+        if (callFailed) {
+            this.failedCalls++;
+        }
+        if (callSlow) {
+            this.slowCallsSeen++;
+        }
+
+        if (this.state == State.HALF_OPEN) {
+            if (callFailed || callSlow) {
+                this.transition(State.OPEN);
+            } else if (++this.probesSucceeded >= this.halfOpenProbes) {
+                this.transition(State.CLOSED);
+            }
+            return;
+        }
+
+        if (this.state == State.OPEN) {
+            //a call permitted before the breaker opened, which has no more to say
+            return;
+        }
+
+        if (this.calls == this.windowSize) {
+            this.failures -= this.failed[this.next] ? 1 : 0;
+            this.slowCalls -= this.slow[this.next] ? 1 : 0;
+        } else {
+            this.calls++;
+        }
+        this.failed[this.next] = callFailed;
+        this.slow[this.next] = callSlow;
+        this.failures += callFailed ? 1 : 0;
+        this.slowCalls += callSlow ? 1 : 0;
+        this.next = (this.next + 1) % this.windowSize;
+
+        if (this.calls >= this.minimumCalls
+                && (this.failures * 100 >= this.failureRateThreshold * this.calls
+                    || this.slowCalls * 100 >= this.slowCallRateThreshold * this.calls)) {
+            this.transition(State.OPEN);
+        }
+    }
+
+    /**
+     * @return the state of the breaker
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * @return how long until an open breaker starts probing, or 0 if it is not open
+     */
+    public synchronized long getRemainingOpenMillis() {
+
+        if (this.state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(this.openNanos - (this.nanoTime.getAsLong() - this.openedAtNanos)));
+    }
+
+    /**
+     * @return the state of the breaker, its recent failure and slow call rates, its call counts since startup
+     * and its transitions
+     */
+    public synchronized CircuitBreakerStatus getStatus() {
+
+        return new CircuitBreakerStatus(this.state,
+                this.calls == 0 ? 0 : this.failures * 100.0 / this.calls,
+                this.calls == 0 ? 0 : this.slowCalls * 100.0 / this.calls,
+                this.permittedCalls, this.failedCalls, this.slowCallsSeen, this.rejectedCalls,
+                new LinkedHashMap<>(this.transitionCounts), new ArrayList<>(this.transitions));
+    }
+
+    /**
+     * Helper method to move to another state, starting afresh in it
+     */
+    private void transition(State to) {
+
+        State from = this.state;
+        this.state = to;
+
+        this.calls = 0;
+        this.next = 0;
+        this.failures = 0;
+        this.slowCalls = 0;
+        this.probesStarted = 0;
+        this.probesSucceeded = 0;
+        if (to == State.OPEN) {
+            this.openedAtNanos = this.nanoTime.getAsLong();
+        }
+
+        this.transitionCounts.merge(from + "_TO_" + to, 1L, Long::sum);
+        this.transitions.addFirst(new CircuitBreakerStatus.Transition(from, to, Instant.now().toString()));
+        if (this.transitions.size() > RECENT_TRANSITIONS) {
+            this.transitions.removeLast();
+        }
+
+        if (LOGGER.isWarnEnabled()) {
+            LOGGER.warn("Storage Circuit Breaker Changed From " + from + " To " + to);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package enrollment.resilience;
+
+import enrollment.repository.EnrollmentDAO;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Advises the EnrollmentDAO with the StorageCircuitBreaker, adding to its existing proxy when it is one
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+public class CircuitBreakerPostProcessor implements BeanPostProcessor {
+
+    private final boolean enabled;
+    private final ObjectProvider<StorageCircuitBreaker> circuitBreaker;
+
+    /**
+     * Constructor for CircuitBreakerPostProcessor
+     *
+     * @param enabled whether EnrollmentDAO calls are guarded by the circuit breaker
+     * @param circuitBreaker the StorageCircuitBreaker, looked up once the EnrollmentDAO is created
+     */
+    public CircuitBreakerPostProcessor(@Value("${enrollment.circuit-breaker.enabled:true}") boolean enabled,
+                                       ObjectProvider<StorageCircuitBreaker> circuitBreaker) {
+        this.enabled = enabled;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+
+        if (!this.enabled || !(bean instanceof EnrollmentDAO)) {
+            return bean;
+        }
+
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvice(0, this.circuitBreaker.getObject());
+            return bean;
+        }
+
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.addAdvice(this.circuitBreaker.getObject());
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+}
@@ -0,0 +1,136 @@
+package enrollment.resilience;
+
+import enrollment.resilience.CircuitBreaker.State;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of the storage circuit breaker, the failure and slow call rates of its recent calls, its call counts
+ * since startup and its transitions, newest first
+ * @author Michael Kulaga
+ */
+public class CircuitBreakerStatus {
+
+    private final State state;
+    private final double failureRate;
+    private final double slowCallRate;
+    private final long permittedCalls;
+    private final long failedCalls;
+    private final long slowCalls;
+    private final long rejectedCalls;
+    private final Map<String, Long> transitionCounts;
+    private final List<Transition> transitions;
+
+    private long staleReads;
+
+    /**
+     * Constructor for CircuitBreakerStatus
+     *
+     * @param state the state of the breaker
+     * @param failureRate the percentage of recent calls that failed
+     * @param slowCallRate the percentage of recent calls that were slow
+     * @param permittedCalls the number of calls permitted since startup
+     * @param failedCalls the number of permitted calls that failed
+     * @param slowCalls the number of permitted calls that were slow
+     * @param rejectedCalls the number of calls rejected since startup
+     * @param transitionCounts the number of times the breaker moved between each pair of states
+     * @param transitions the most recent transitions, newest first
+     */
+    public CircuitBreakerStatus(State state, double failureRate, double slowCallRate, long permittedCalls,
+                                long failedCalls, long slowCalls, long rejectedCalls,
+                                Map<String, Long> transitionCounts, List<Transition> transitions) {
+        this.state = state;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.permittedCalls = permittedCalls;
+        this.failedCalls = failedCalls;
+        this.slowCalls = slowCalls;
+        this.rejectedCalls = rejectedCalls;
+        this.transitionCounts = transitionCounts;
+        this.transitions = transitions;
+    }
+
+    //Getters and Setters
+
+    public State getState() {
+        return state;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public double getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    public long getPermittedCalls() {
+        return permittedCalls;
+    }
+
+    public long getFailedCalls() {
+        return failedCalls;
+    }
+
+    public long getSlowCalls() {
+        return slowCalls;
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    public Map<String, Long> getTransitionCounts() {
+        return transitionCounts;
+    }
+
+    public List<Transition> getTransitions() {
+        return transitions;
+    }
+
+    public long getStaleReads() {
+        return staleReads;
+    }
+
+    public void setStaleReads(long staleReads) {
+        this.staleReads = staleReads;
+    }
+
+    /**
+     * A change of state of the breaker
+     */
+    public static class Transition {
+
+        private final State from;
+        private final State to;
+        private final String at;
+
+        /**
+         * Constructor for Transition
+         *
+         * @param from the state the breaker left
+         * @param to the state the breaker entered
+         * @param at when the breaker changed state
+         */
+        public Transition(State from, State to, String at) {
+            this.from = from;
+            this.to = to;
+            this.at = at;
+        }
+
+        //Getters
+
+        public State getFrom() {
+            return from;
+        }
+
+        public State getTo() {
+            return to;
+        }
+
+        public String getAt() {
+            return at;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package enrollment.resilience;
+
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.tenancy.TenantContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Enrollees last read from storage by Id, to answer reads with while storage is unavailable. Enrollees are
+ * kept least recently read first, up to the maximum size. Enrollees are copied going in and coming out, since
+ * callers change the Enrollees they read.
+ * @author Michael Kulaga
+ */
+class StaleEnrolleeCache {
+
+    private final int maximumSize;
+    private final Map<String, Stale<Enrollee>> enrollees;
+
+    /**
+     * Constructor for StaleEnrolleeCache
+     *
+     * @param maximumSize the number of Enrollees to keep, or 0 to keep none
+     */
+    StaleEnrolleeCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.enrollees = new LinkedHashMap<String, Stale<Enrollee>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stale<Enrollee>> eldest) {
+                return this.size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Keeps an Enrollee of the current tenant as it was read
+     */
+    void put(Enrollee enrollee) {
+
+        if (this.maximumSize <= 0) {
+            return;
+        }
+
+        Stale<Enrollee> stale = new Stale<>(copy(enrollee));
+        synchronized (this.enrollees) {
+            this.enrollees.put(TenantContext.scopedKey(enrollee.getId()), stale);
+        }
+    }
+
+    /**
+     * @return the Enrollee of the current tenant as it was last read, or null if it is not kept
+     */
+    Stale<Enrollee> get(String enrolleeId) {
+
+        Stale<Enrollee> stale;
+        synchronized (this.enrollees) {
+            stale = this.enrollees.get(TenantContext.scopedKey(enrolleeId));
+        }
+        return stale != null ? new Stale<>(copy(stale.value), stale.readAtMillis) : null;
+    }
+
+    /**
+     * Forgets an Enrollee that was changed
+     */
+    void evict(String tenant, String enrolleeId) {
+
+        synchronized (this.enrollees) {
+            this.enrollees.remove(TenantContext.scopedKey(tenant, enrolleeId));
+        }
+    }
+
+    /**
+     * Forgets an Enrollee of the current tenant that no longer exists
+     */
+    void evict(String enrolleeId) {
+        this.evict(TenantContext.current(), enrolleeId);
+    }
+
+    private static Enrollee copy(Enrollee enrollee) {
+
+        Enrollee copied = new Enrollee();
+        copied.setId(enrollee.getId());
+        copied.setName(enrollee.getName());
+        copied.setActivationStatus(enrollee.isActivationStatus());
+        copied.setDateOfBirth(enrollee.getDateOfBirth());
+        copied.setPhoneNumber(enrollee.getPhoneNumber());
+
+        List<Dependent> dependents = new ArrayList<>();
+        if (enrollee.getDependents() != null) {
+            for (Dependent dependent : enrollee.getDependents()) {
+                Dependent copiedDependent = new Dependent();
+                copiedDependent.setId(dependent.getId());
+                copiedDependent.setName(dependent.getName());
+                copiedDependent.setDateOfBirth(dependent.getDateOfBirth());
+                dependents.add(copiedDependent);
+            }
+        }
+        copied.setDependents(dependents);
+
+        return copied;
+    }
+
+    /**
+     * A value, and when it was read from storage
+     */
+    static class Stale<T> {
+
+        final T value;
+        final long readAtMillis;
+
+        Stale(T value) {
+            this(value, System.currentTimeMillis());
+        }
+
+        Stale(T value, long readAtMillis) {
+            this.value = value;
+            this.readAtMillis = readAtMillis;
+        }
+    }
+}
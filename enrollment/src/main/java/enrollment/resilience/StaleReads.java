@@ -0,0 +1,44 @@
+package enrollment.resilience;
+
+import java.util.function.Supplier;
+
+/**
+ * Marks the reads of an Enrollee by Id that the StorageCircuitBreaker may answer with the Enrollee as it was last
+ * read while storage is unavailable. Only reads answered to clients as they are may be marked, never the read of a
+ * read-modify-write, whose write would put the stale Enrollee back over newer changes.
+ * @author Michael Kulaga
+ */
+public final class StaleReads {
+
+    private static final ThreadLocal<Boolean> ALLOWED = new ThreadLocal<>();
+
+    private StaleReads() {
+    }
+
+    /**
+     * Runs a read that may be answered with stale Enrollees
+     *
+     * @param read the read
+     * @return the result of the read
+     */
+    public static <T> T allow(Supplier<T> read) {
+
+        Boolean previous = ALLOWED.get();
+        ALLOWED.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) {
+                ALLOWED.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if the current thread is running a read that may be answered with stale Enrollees
+     */
+    static boolean isAllowed() {
+        return ALLOWED.get() != null;
+    }
+
+}
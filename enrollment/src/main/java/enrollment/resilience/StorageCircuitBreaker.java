@@ -0,0 +1,265 @@
+package enrollment.resilience;
+
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.exceptions.StorageUnavailableException;
+import enrollment.resilience.StaleEnrolleeCache.Stale;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Guards every EnrollmentDAO call with a CircuitBreaker, so that once MongoDb starts failing or answering slowly,
+ * such as during a failover, calls fail fast instead of each waiting for the driver to time out. Calls that fail
+ * because MongoDb could not be reached, or did not answer in time, count as failures and are rethrown as a
+ * StorageUnavailableException; calls that fail for any other reason, such as a duplicate key or a write conflict,
+ * do not.
+ *
+ * Bulk calls, which read or write many Enrollees at once, take longer than the rest however healthy MongoDb is,
+ * so they count as slow only once they take longer than a threshold of their own.
+ *
+ * While the breaker rejects calls, and when such a call fails, reads of an Enrollee by Id that StaleReads marks as
+ * answered to the client are answered with the Enrollee as it was last read, when it is kept, and the response is
+ * marked with a Warning header saying it is stale and an Age header saying how many seconds ago it was read. Only
+ * Enrollees read by Id are kept, so reads of many Enrollees do not copy them all. Reads made to modify an Enrollee
+ * are never answered stale, as their write would put the stale Enrollee back over newer changes. Every other call
+ * is rejected with a StorageUnavailableException, answered with 503 Service Unavailable and a Retry-After header.
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+public class StorageCircuitBreaker implements MethodInterceptor {
+
+    static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+    private final CircuitBreaker circuitBreaker;
+    private final long bulkSlowCallNanos;
+    private final StaleEnrolleeCache staleEnrollees;
+    private final LongAdder staleReads = new LongAdder();
+
+    /**
+     * Constructor for StorageCircuitBreaker
+     *
+     * @param windowSize the number of most recent calls the failure and slow call rates are taken over
+     * @param minimumCalls the number of calls to make before the breaker can open
+     * @param failureRateThreshold the percentage of failed recent calls at which the breaker opens
+     * @param slowCallMillis how long a call may take before it counts as slow
+     * @param bulkSlowCallMillis how long a bulk call may take before it counts as slow
+     * @param slowCallRateThreshold the percentage of slow recent calls at which the breaker opens
+     * @param openMillis how long the breaker stays open before probing
+     * @param halfOpenProbes the number of probe calls that must succeed for the breaker to close again
+     * @param staleCacheSize the number of Enrollees last read by Id to keep
+     */
+    public StorageCircuitBreaker(@Value("${enrollment.circuit-breaker.window-size:50}") int windowSize,
+                                 @Value("${enrollment.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                 @Value("${enrollment.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                                 @Value("${enrollment.circuit-breaker.slow-call-threshold-ms:2000}") long slowCallMillis,
+                                 @Value("${enrollment.circuit-breaker.bulk-slow-call-threshold-ms:60000}") long bulkSlowCallMillis,
+                                 @Value("${enrollment.circuit-breaker.slow-call-rate-threshold:80}") int slowCallRateThreshold,
+                                 @Value("${enrollment.circuit-breaker.open-duration-ms:10000}") long openMillis,
+                                 @Value("${enrollment.circuit-breaker.half-open-probes:3}") int halfOpenProbes,
+                                 @Value("${enrollment.circuit-breaker.stale-cache-size:10000}") int staleCacheSize) {
+        this.circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, slowCallMillis,
+                slowCallRateThreshold, openMillis, halfOpenProbes);
+        this.bulkSlowCallNanos = TimeUnit.MILLISECONDS.toNanos(bulkSlowCallMillis);
+        this.staleEnrollees = new StaleEnrolleeCache(staleCacheSize);
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+
+        Method method = invocation.getMethod();
+        if (method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+
+        boolean findById = isFindById(method);
+        boolean staleable = findById && StaleReads.isAllowed();
+
+        if (!this.circuitBreaker.tryAcquire()) {
+            Object stale = staleable ? this.stale(invocation.getArguments()) : null;
+            if (stale == null) {
+                throw this.unavailable();
+            }
+            return stale;
+        }
+
+        long start = System.nanoTime();
+        Object result;
+
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            boolean failed = isStorageFailure(e);
+            this.onResult(method, failed, System.nanoTime() - start);
+            if (!failed) {
+                throw e;
+            }
+            Object stale = staleable ? this.stale(invocation.getArguments()) : null;
+            if (stale == null) {
+                throw this.unavailable(e);
+            }
+            return stale;
+        }
+
+        this.onResult(method, false, System.nanoTime() - start);
+        if (findById) {
+            this.remember(invocation.getArguments(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the Enrollees last read of a changed Enrollee, so a stale read never answers with what was there
+     * before a write made through this node
+     *
+     * @param event the EnrolleeChangedEvent
+     */
+    @EventListener
+    public void enrolleeChanged(EnrolleeChangedEvent event) {
+        this.staleEnrollees.evict(event.getTenant(), event.getEnrolleeId());
+    }
+
+    /**
+     * @return the state of the breaker, its recent failure and slow call rates, its call counts and transitions
+     * since startup, and the number of reads answered with stale Enrollees
+     */
+    public CircuitBreakerStatus getStatus() {
+
+        CircuitBreakerStatus status = this.circuitBreaker.getStatus();
+        status.setStaleReads(this.staleReads.sum());
+        return status;
+    }
+
+    /**
+     * Helper method to record the outcome of a call, against the threshold of bulk calls for those
+     */
+    private void onResult(Method method, boolean failed, long nanos) {
+
+        if (isBulk(method)) {
+            this.circuitBreaker.onResult(failed, nanos, this.bulkSlowCallNanos);
+        } else {
+            this.circuitBreaker.onResult(failed, nanos);
+        }
+    }
+
+    /**
+     * Helper method to keep the Enrollee read by a successful call
+     */
+    private void remember(Object[] arguments, Object result) {
+
+        if (((Optional<?>) result).isPresent()) {
+            this.staleEnrollees.put((Enrollee) ((Optional<?>) result).get());
+        } else {
+            this.staleEnrollees.evict(String.valueOf(arguments[0]));
+        }
+    }
+
+    /**
+     * Helper method to answer a read with the Enrollee last read, marking the response as stale
+     *
+     * @return the answer, or null if the Enrollee is not kept
+     */
+    private Object stale(Object[] arguments) {
+
+        Stale<Enrollee> stale = this.staleEnrollees.get(String.valueOf(arguments[0]));
+        if (stale == null) {
+            return null;
+        }
+
+        this.staleReads.increment();
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+            if (response != null && !response.isCommitted()) {
+                response.setHeader(HttpHeaders.WARNING, STALE_WARNING);
+                response.setHeader(HttpHeaders.AGE, String.valueOf(
+                        TimeUnit.MILLISECONDS.toSeconds(Math.max(0, System.currentTimeMillis() - stale.readAtMillis))));
+            }
+        }
+
+        return Optional.of(stale.value);
+    }
+
+    private StorageUnavailableException unavailable() {
+        return this.unavailable(null);
+    }
+
+    /**
+     * Helper method to reject a call, or report one that failed to reach storage, with the seconds to retry after
+     */
+    private StorageUnavailableException unavailable(Throwable cause) {
+
+        long retryAfterSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(this.circuitBreaker.getRemainingOpenMillis() + 999));
+        return new StorageUnavailableException("Storage Is Unavailable, Retry After " + retryAfterSeconds + " Seconds", retryAfterSeconds, cause);
+    }
+
+    private static boolean isFindById(Method method) {
+        return method.getName().equals("findById") && method.getParameterCount() == 1;
+    }
+
+    /**
+     * Helper method to decide whether a call reads or writes many Enrollees at once: the calls on every Enrollee,
+     * those taking a collection of Enrollees or Ids, and those streaming their results
+     */
+    static boolean isBulk(Method method) {
+
+        if (method.getName().contains("All") || Stream.class.isAssignableFrom(method.getReturnType())) {
+            return true;
+        }
+
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (Iterable.class.isAssignableFrom(parameterType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper method to decide whether a call failed because MongoDb could not be reached or did not answer in
+     * time, rather than because of the call itself. Other transient failures, such as write conflicts, are left
+     * to the caller, as they say nothing of the health of MongoDb.
+     */
+    static boolean isStorageFailure(Throwable e) {
+
+        if (e instanceof DataAccessResourceFailureException || e instanceof TransientDataAccessResourceException
+                || e instanceof QueryTimeoutException) {
+            return true;
+        }
+
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof MongoSocketException || cause instanceof MongoTimeoutException
+                    || cause instanceof MongoExecutionTimeoutException || cause instanceof MongoNotPrimaryException
+                    || cause instanceof MongoNodeIsRecoveringException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Resilience to storage outages for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.resilience;
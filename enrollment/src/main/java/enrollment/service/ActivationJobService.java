@@ -0,0 +1,298 @@
+package enrollment.service;
+
+import enrollment.audit.AuditJournal;
+import enrollment.common.ActivationJob;
+import enrollment.common.ActivationJob.State;
+import enrollment.common.ActivationJobRequest;
+import enrollment.common.AuditRecord.Action;
+import enrollment.common.AuditRecord.FieldChange;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+import enrollment.eligibility.ActivationIndex;
+import enrollment.exceptions.ResourceDoesNotExistException;
+import enrollment.exceptions.ValidationException;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import enrollment.validation.EnrollmentValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Services for changing the activation status of many Enrollees at once, as jobs run on the server. Jobs run one
+ * at a time on a single background thread, changing one chunk of Enrollees per update, and are slowed down to at
+ * most the configured number of changes per second so foreground requests are not starved. A job changes the
+ * Enrollees of the tenant it was started for, and is only visible to that tenant.
+ * @author Michael Kulaga
+ */
+@Service
+public class ActivationJobService {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ActivationJobService.class);
+
+    public final EnrollmentDAO enrollmentDAO;
+    public final EnrollmentValidator validator;
+    public final ApplicationEventPublisher eventPublisher;
+    public final TenantRegistry tenantRegistry;
+    public final AuditJournal auditJournal;
+    public final ActivationIndex activationIndex;
+
+    private final int chunkSize;
+    private final long nanosPerChange;
+    private final ExecutorService executor;
+    private final AtomicLong nextJobId = new AtomicLong(1);
+    private final Map<String, ActivationJob> jobs;
+    private final Map<String, Future<?>> running = new LinkedHashMap<>();
+
+    /**
+     * Constructor for ActivationJobService
+     *
+     * @param enrollmentDAO the EnrollmentDAO to use
+     * @param validator the EnrollmentValidator to validate requests with
+     * @param eventPublisher the ApplicationEventPublisher to announce changed Enrollees with
+     * @param tenantRegistry the TenantRegistry to hold the tenant's write lock through while changing a chunk
+     * @param auditJournal the AuditJournal to record changes in
+     * @param activationIndex the ActivationIndex to keep up to date
+     * @param chunkSize the number of Enrollees changed by each update
+     * @param maximumChangesPerSecond the most Enrollees changed per second, or 0 for no limit
+     * @param retainedJobs the number of jobs kept for polling, oldest finished jobs being forgotten first
+     */
+    public ActivationJobService(EnrollmentDAO enrollmentDAO,
+                                EnrollmentValidator validator,
+                                ApplicationEventPublisher eventPublisher,
+                                TenantRegistry tenantRegistry,
+                                AuditJournal auditJournal,
+                                ActivationIndex activationIndex,
+                                @Value("${enrollment.activation-jobs.chunk-size:500}") int chunkSize,
+                                @Value("${enrollment.activation-jobs.maximum-changes-per-second:2000}") int maximumChangesPerSecond,
+                                @Value("${enrollment.activation-jobs.retained-jobs:100}") int retainedJobs) {
+        this.enrollmentDAO = enrollmentDAO;
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.tenantRegistry = tenantRegistry;
+        this.auditJournal = auditJournal;
+        this.activationIndex = activationIndex;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.nanosPerChange = maximumChangesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maximumChangesPerSecond : 0;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-activation-jobs");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.jobs = new LinkedHashMap<String, ActivationJob>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ActivationJob> eldest) {
+                return this.size() > retainedJobs && eldest.getValue().isFinished();
+            }
+        };
+    }
+
+    /**
+     * Starts a job changing the activation status of every Enrollee matching the request
+     *
+     * @param request the criteria and the activation status to change to
+     * @return the ActivationJob, which starts once any earlier jobs have finished
+     */
+    public ActivationJob startJob(ActivationJobRequest request) {
+
+        this.validator.activationJobValidator(request);
+
+        ActivationJob job = new ActivationJob(String.valueOf(this.nextJobId.getAndIncrement()), TenantContext.current(),
+                request, Instant.now().toString());
+
+        synchronized (this.jobs) {
+            this.jobs.put(job.getId(), job);
+            this.running.put(job.getId(), this.executor.submit(() -> this.run(job)));
+        }
+
+        return job;
+    }
+
+    /**
+     * Retrieves all jobs of the current tenant still kept, oldest first
+     *
+     * @return the List of ActivationJob objects
+     */
+    public List<ActivationJob> getJobs() {
+
+        String tenant = TenantContext.current();
+
+        synchronized (this.jobs) {
+            List<ActivationJob> tenantJobs = new ArrayList<>();
+            for (ActivationJob job : this.jobs.values()) {
+                if (job.getTenant().equals(tenant)) {
+                    tenantJobs.add(job);
+                }
+            }
+            return tenantJobs;
+        }
+    }
+
+    /**
+     * Retrieves a job of the current tenant by Id
+     *
+     * @param jobId the Id of the job
+     * @return the ActivationJob with the passed in Id
+     */
+    public ActivationJob getJob(String jobId) {
+
+        synchronized (this.jobs) {
+            ActivationJob job = this.jobs.get(jobId);
+            if (job == null || !job.getTenant().equals(TenantContext.current())) {
+                throw new ResourceDoesNotExistException("Unable To Retrieve Activation Job, Activation Job Does Not Exist For Id: " + jobId);
+            }
+            return job;
+        }
+    }
+
+    /**
+     * Cancels a job that has not finished. Enrollees already changed stay changed.
+     *
+     * @param jobId the Id of the job
+     * @return the cancelled ActivationJob
+     */
+    public ActivationJob cancelJob(String jobId) {
+
+        ActivationJob job = this.getJob(jobId);
+
+        synchronized (this.jobs) {
+            Future<?> future = this.running.remove(jobId);
+            if (future != null && !job.isFinished()) {
+                future.cancel(true);
+                if (job.getState() == State.PENDING) {
+                    this.finish(job, State.CANCELLED, null);
+                }
+            }
+        }
+
+        return job;
+    }
+
+    /**
+     * Resumes a cancelled or failed job after the last Enrollee it reached
+     *
+     * @param jobId the Id of the job
+     * @return the resumed ActivationJob
+     */
+    public ActivationJob resumeJob(String jobId) {
+
+        ActivationJob job = this.getJob(jobId);
+
+        synchronized (this.jobs) {
+            if (job.getState() != State.CANCELLED && job.getState() != State.FAILED) {
+                throw new ValidationException("Validation Error: Only Cancelled Or Failed Activation Jobs Can Be Resumed, Job Is " + job.getState());
+            }
+
+            job.setState(State.PENDING);
+            job.setFinishedAt(null);
+            job.setError(null);
+            this.running.put(job.getId(), this.executor.submit(() -> this.run(job)));
+        }
+
+        return job;
+    }
+
+    /**
+     * Stops any running job, so it can be resumed if the application is restarted
+     */
+    @PreDestroy
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Helper method to run a job, one chunk at a time, until no Enrollees are left to change
+     */
+    private void run(ActivationJob job) {
+
+        TenantContext.run(job.getTenant(), () -> this.runChunks(job));
+    }
+
+    private void runChunks(ActivationJob job) {
+
+        synchronized (this.jobs) {
+            if (job.isFinished() || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            job.setState(State.RUNNING);
+            if (job.getStartedAt() == null) {
+                job.setStartedAt(Instant.now().toString());
+            }
+        }
+
+        boolean activationStatus = job.getRequest().getActivationStatus();
+        //candidates are only those not already at the requested status
+        List<FieldChange> changes = Collections.singletonList(new FieldChange("activationStatus",
+                String.valueOf(!activationStatus), String.valueOf(activationStatus)));
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+
+                long chunkStart = System.nanoTime();
+
+                List<String> enrolleeIds = this.enrollmentDAO.findActivationCandidates(job.getRequest(), job.getLastEnrolleeId(), this.chunkSize);
+
+                if (enrolleeIds.isEmpty()) {
+                    this.finish(job, State.COMPLETED, null);
+                    return;
+                }
+
+                this.tenantRegistry.runWrite(job.getTenant(), () -> {
+                    //Enrollees changed by another write since they were found are left out, so only real changes are journaled
+                    List<String> modified = this.enrollmentDAO.updateActivationStatus(enrolleeIds, activationStatus);
+                    job.chunkCompleted(enrolleeIds.size(), modified.size(), enrolleeIds.get(enrolleeIds.size() - 1));
+
+                    for (String enrolleeId : modified) {
+                        this.activationIndex.activationChanged(enrolleeId, activationStatus);
+                        this.auditJournal.record(enrolleeId, null, Action.MODIFIED, changes);
+                        this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrolleeId, ChangeType.MODIFIED, activationStatus));
+                    }
+                });
+
+                long remainingNanos = enrolleeIds.size() * this.nanosPerChange - (System.nanoTime() - chunkStart);
+                if (remainingNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remainingNanos);
+                }
+            }
+
+            this.finish(job, State.CANCELLED, null);
+        } catch (InterruptedException e) {
+            this.finish(job, State.CANCELLED, null);
+        } catch (RuntimeException e) {
+            if (Thread.interrupted()) {
+                //cancelled while waiting on the database
+                this.finish(job, State.CANCELLED, null);
+                return;
+            }
+            LOGGER.error("Activation Job " + job.getId() + " Failed After Enrollee " + job.getLastEnrolleeId(), e);
+            this.finish(job, State.FAILED, e.getMessage());
+        }
+    }
+
+    private void finish(ActivationJob job, State state, String error) {
+
+        synchronized (this.jobs) {
+            job.setError(error);
+            job.setFinishedAt(Instant.now().toString());
+            job.setState(state);
+            this.running.remove(job.getId());
+        }
+    }
+
+}
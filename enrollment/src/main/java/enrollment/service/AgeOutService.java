@@ -0,0 +1,431 @@
+package enrollment.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enrollment.common.AgeOutRun;
+import enrollment.common.AgedOutDependent;
+import enrollment.common.Dependent;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Services for the scheduled dependent age-out scan. Each run exports the Dependents who have reached the age-out
+ * threshold since the previous run, reading them through the index on Dependent Dates of Birth between the
+ * high-water mark left by the previous run and today's threshold date, so a run reads only the Dependents it
+ * exports. Exports are written in batches as JSON Lines, one file per run, and the high-water mark is only
+ * advanced once the file is complete, so a failed run is repeated in full by the next. The first run of a tenant
+ * only sets the high-water mark, rather than exporting every Dependent already past the threshold.
+ * Dependents written with a Date of Birth the high-water mark has already passed, such as a new Dependent born
+ * decades ago, are never read by a later run, so the services report them as they are written and they are kept
+ * in a file of late Dependents until the next run exports them too. A Dependent written while a run is exporting
+ * its Date of Birth may be exported twice, but is never missed. Each tenant is scanned separately, with its own
+ * high-water mark and exports in a directory named after it. Scheduled runs start once the application is ready.
+ * @author Michael Kulaga
+ */
+@Service
+@Lazy(false)
+public class AgeOutService {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(AgeOutService.class);
+
+    static final String HIGH_WATER_MARK = "high-water-mark";
+    static final String LATE_DEPENDENTS = "late-dependents.jsonl";
+
+    public final EnrollmentDAO enrollmentDAO;
+    public final ObjectMapper objectMapper;
+    public final TenantRegistry tenantRegistry;
+
+    private final int age;
+    private final int batchSize;
+    private final Path directory;
+    private final long intervalMinutes;
+    private ScheduledExecutorService scheduler;
+
+    private final Map<String, AgeOutRun> lastRuns = new ConcurrentHashMap<>();
+
+    //the latest Date of Birth each tenant's runs have exported, or are exporting, or empty before its first run
+    private final Map<String, Optional<LocalDate>> checkpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for AgeOutService
+     *
+     * @param enrollmentDAO the EnrollmentDAO to use
+     * @param objectMapper the ObjectMapper to write exported Dependents with
+     * @param tenantRegistry the TenantRegistry of the tenants to scan
+     * @param age the age in years at which Dependents age out
+     * @param batchSize the number of Dependents written to the export at a time
+     * @param directory the directory holding the high-water mark and the exports
+     * @param intervalMinutes the minutes between runs, or 0 to only run on request
+     */
+    public AgeOutService(EnrollmentDAO enrollmentDAO,
+                         ObjectMapper objectMapper,
+                         TenantRegistry tenantRegistry,
+                         @Value("${enrollment.age-out.age:26}") int age,
+                         @Value("${enrollment.age-out.batch-size:1000}") int batchSize,
+                         @Value("${enrollment.age-out.directory:age-out}") String directory,
+                         @Value("${enrollment.age-out.interval-minutes:1440}") long intervalMinutes) {
+        this.enrollmentDAO = enrollmentDAO;
+        this.objectMapper = objectMapper;
+        this.tenantRegistry = tenantRegistry;
+        this.age = age;
+        this.batchSize = Math.max(1, batchSize);
+        this.directory = Paths.get(directory);
+        this.intervalMinutes = intervalMinutes;
+    }
+
+    /**
+     * Starts scheduling runs once the application is ready, unless runs are only made on request
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+
+        if (this.intervalMinutes <= 0 || this.scheduler != null) {
+            return;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-age-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::scheduledRun, 1, this.intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Checks whether any of the Dependents of an Enrollee about to be written has a Date of Birth the current tenant's
+     * runs have already passed, for writers that only read what they replace when it may hold late Dependents
+     *
+     * @param dependents the Dependents about to be written
+     * @return true if any of them has a Date of Birth on or before the tenant's high-water mark
+     */
+    public boolean hasPastDependents(Collection<Dependent> dependents) {
+
+        Optional<LocalDate> checkpoint = this.checkpoint(TenantContext.current());
+        if (!checkpoint.isPresent()) {
+            return false;
+        }
+
+        return dependents.stream()
+                .map(dependent -> parseDateOfBirth(dependent.getDateOfBirth()))
+                .anyMatch(dateOfBirth -> dateOfBirth != null && !dateOfBirth.isAfter(checkpoint.get()));
+    }
+
+    /**
+     * Keeps the Dependents of an Enrollee that were written with a Date of Birth the current tenant's runs have
+     * already passed, so the next run exports them. A Dependent only counts when it is new or its Date of Birth has
+     * moved behind the high-water mark, so Dependents already exported are not kept again.
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @param before the Dependents before the write, or empty for a new Enrollee
+     * @param after the Dependents written
+     */
+    public void dependentsChanged(String enrolleeId, Collection<Dependent> before, Collection<Dependent> after) {
+
+        String tenant = TenantContext.current();
+        Optional<LocalDate> checkpoint = this.checkpoint(tenant);
+        if (!checkpoint.isPresent() || after.isEmpty()) {
+            return;
+        }
+
+        Map<String, LocalDate> datesBefore = new HashMap<>();
+        before.forEach(dependent -> datesBefore.put(dependent.getId(), parseDateOfBirth(dependent.getDateOfBirth())));
+
+        List<AgedOutDependent> late = new ArrayList<>();
+        for (Dependent dependent : after) {
+            LocalDate dateOfBirth = parseDateOfBirth(dependent.getDateOfBirth());
+            LocalDate dateOfBirthBefore = datesBefore.get(dependent.getId());
+            if (dateOfBirth != null && !dateOfBirth.isAfter(checkpoint.get()) && (dateOfBirthBefore == null || dateOfBirthBefore.isAfter(checkpoint.get()))) {
+                late.add(new AgedOutDependent(enrolleeId, dependent));
+            }
+        }
+
+        if (late.isEmpty()) {
+            return;
+        }
+
+        Path tenantDirectory = this.directory(tenant);
+        try {
+            synchronized (this.checkpoints) {
+                Files.createDirectories(tenantDirectory);
+                try (OutputStream out = Files.newOutputStream(tenantDirectory.resolve(LATE_DEPENDENTS),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    this.writeBatch(out, late);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs the age-out scan of the current tenant for today
+     *
+     * @return the completed run
+     */
+    public AgeOutRun run() {
+        return this.run(LocalDate.now());
+    }
+
+    /**
+     * Runs the age-out scan of the current tenant, exporting the Dependents who reached the age-out threshold after the high-water mark
+     * and on or before the given day, along with the late Dependents kept since the last run
+     *
+     * @param today the day to run the scan for
+     * @return the completed run, which exports nothing if it is the tenant's first or if the high-water mark is already at or past the
+     * day's threshold
+     */
+    public synchronized AgeOutRun run(LocalDate today) {
+
+        String tenant = TenantContext.current();
+        LocalDate threshold = today.minusYears(this.age);
+        String bornOnOrBefore = threshold.toString();
+        Path tenantDirectory = this.directory(tenant);
+
+        try {
+            Files.createDirectories(tenantDirectory);
+
+            String bornAfter = this.readHighWaterMark(tenantDirectory);
+            AgeOutRun run = new AgeOutRun(bornAfter, bornOnOrBefore, Instant.now().toString());
+
+            if (bornAfter == null) {
+                //the first run only marks where the next one starts from
+                this.writeHighWaterMark(tenant, tenantDirectory, threshold);
+            } else if (LocalDate.parse(bornAfter).isBefore(threshold)) {
+
+                //Dependents written from now on with a Date of Birth up to the threshold are left to this run
+                this.checkpoints.put(tenant, Optional.of(threshold));
+
+                Path export = tenantDirectory.resolve("aged-out-" + bornOnOrBefore + ".jsonl");
+                Path partial = tenantDirectory.resolve(export.getFileName() + ".partial");
+                int lateBytes;
+
+                try (OutputStream out = Files.newOutputStream(partial);
+                     Stream<AgedOutDependent> dependents = this.enrollmentDAO.streamAgedOutDependents(bornAfter, bornOnOrBefore)) {
+
+                    Iterator<AgedOutDependent> iterator = dependents.iterator();
+                    List<AgedOutDependent> batch = new ArrayList<>(this.batchSize);
+
+                    while (iterator.hasNext()) {
+                        batch.add(iterator.next());
+                        if (batch.size() == this.batchSize || !iterator.hasNext()) {
+                            this.writeBatch(out, batch);
+                            run.batchExported(batch.size());
+                            batch.clear();
+                        }
+                    }
+
+                    lateBytes = this.exportLateDependents(out, tenantDirectory, run);
+                } catch (IOException | RuntimeException e) {
+                    this.checkpoints.remove(tenant);
+                    throw e;
+                }
+
+                Files.move(partial, export, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                run.setExportFile(export.toAbsolutePath().toString());
+
+                this.writeHighWaterMark(tenant, tenantDirectory, threshold);
+                this.removeLateDependents(tenantDirectory, lateBytes);
+            }
+
+            run.setFinishedAt(Instant.now().toString());
+            this.lastRuns.put(tenant, run);
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Age-Out Scan Of Tenant " + tenant + " Exported " + run.getDependentsExported()
+                        + " Dependents Born After " + bornAfter + " And On Or Before " + bornOnOrBefore);
+            }
+
+            return run;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the last completed run of the current tenant since startup, or null if there has not been one
+     */
+    public AgeOutRun getLastRun() {
+        return this.lastRuns.get(TenantContext.current());
+    }
+
+    /**
+     * Stops scheduling runs
+     */
+    @PreDestroy
+    public void close() {
+
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Helper method to write a batch of exported Dependents as JSON Lines
+     */
+    private void writeBatch(OutputStream out, List<AgedOutDependent> batch) throws IOException {
+
+        for (AgedOutDependent dependent : batch) {
+            out.write(this.objectMapper.writeValueAsBytes(dependent));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Helper method to read the high-water mark, or null if no run has completed
+     */
+    private String readHighWaterMark(Path tenantDirectory) throws IOException {
+
+        Path file = tenantDirectory.resolve(HIGH_WATER_MARK);
+        return Files.exists(file) ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim() : null;
+    }
+
+    /**
+     * Helper method to write the high-water mark and make it the tenant's checkpoint
+     */
+    private void writeHighWaterMark(String tenant, Path tenantDirectory, LocalDate bornOnOrBefore) throws IOException {
+
+        Path file = tenantDirectory.resolve(HIGH_WATER_MARK);
+        Path partial = tenantDirectory.resolve(HIGH_WATER_MARK + ".partial");
+        Files.write(partial, bornOnOrBefore.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.checkpoints.put(tenant, Optional.of(bornOnOrBefore));
+    }
+
+    /**
+     * Helper method to get a tenant's checkpoint, reading its high-water mark the first time
+     */
+    private Optional<LocalDate> checkpoint(String tenant) {
+
+        return this.checkpoints.computeIfAbsent(tenant, key -> {
+            try {
+                return Optional.ofNullable(this.readHighWaterMark(this.directory(key))).map(LocalDate::parse);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Helper method to copy the late Dependents kept so far into an export
+     *
+     * @return the number of bytes copied, to remove from the file of late Dependents once the export is complete
+     */
+    private int exportLateDependents(OutputStream out, Path tenantDirectory, AgeOutRun run) throws IOException {
+
+        Path file = tenantDirectory.resolve(LATE_DEPENDENTS);
+
+        byte[] late;
+        synchronized (this.checkpoints) {
+            if (!Files.exists(file)) {
+                return 0;
+            }
+            late = Files.readAllBytes(file);
+        }
+
+        int lines = 0;
+        for (byte value : late) {
+            if (value == '\n') {
+                lines++;
+            }
+        }
+
+        if (lines > 0) {
+            out.write(late);
+            out.flush();
+            run.batchExported(lines);
+        }
+        return late.length;
+    }
+
+    /**
+     * Helper method to remove the exported late Dependents, keeping those kept since they were copied
+     */
+    private void removeLateDependents(Path tenantDirectory, int exportedBytes) throws IOException {
+
+        if (exportedBytes == 0) {
+            return;
+        }
+
+        Path file = tenantDirectory.resolve(LATE_DEPENDENTS);
+        synchronized (this.checkpoints) {
+            byte[] late = Files.readAllBytes(file);
+            if (late.length == exportedBytes) {
+                Files.delete(file);
+            } else {
+                Files.write(file, Arrays.copyOfRange(late, exportedBytes, late.length));
+            }
+        }
+    }
+
+    /**
+     * Helper method to parse a Date of Birth, or get null for one stored before Dates of Birth had to be zero-padded
+     */
+    private static LocalDate parseDateOfBirth(String dateOfBirth) {
+
+        try {
+            return dateOfBirth != null ? LocalDate.parse(dateOfBirth) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper method to get the directory of a tenant, which is the configured directory for the default tenant
+     */
+    private Path directory(String tenant) {
+        return TenantContext.DEFAULT_TENANT.equals(tenant) ? this.directory : this.directory.resolve(tenant);
+    }
+
+    /**
+     * Helper method for the scheduled run of every tenant, which must not throw or it will stop being scheduled
+     */
+    private void scheduledRun() {
+
+        for (String tenant : this.tenantRegistry.getTenants()) {
+            try {
+                TenantContext.run(tenant, this::run);
+            } catch (RuntimeException e) {
+                if (LOGGER.isErrorEnabled()) {
+                    LOGGER.error("Unable To Run Age-Out Scan Of Tenant " + tenant + ": " + e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+
+}
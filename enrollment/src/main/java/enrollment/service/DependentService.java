@@ -1,13 +1,22 @@
 package enrollment.service;
 
+import enrollment.audit.AuditJournal;
+import enrollment.common.AuditRecord.Action;
 import enrollment.common.Dependent;
 import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+import enrollment.common.EnrolleePatch;
 import enrollment.exceptions.ResourceAlreadyExistsException;
 import enrollment.exceptions.ResourceDoesNotExistException;
 import enrollment.repository.EnrollmentDAO;
 import enrollment.validation.EnrollmentValidator;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Services for Adding, Modifying, and Deleting Dependents
  * @author Michael Kulaga
@@ -17,15 +26,27 @@ public class DependentService {
 
     public final EnrollmentDAO enrollmentDAO;
     public final EnrollmentValidator validator;
+    public final ApplicationEventPublisher eventPublisher;
+    public final AuditJournal auditJournal;
+    public final AgeOutService ageOutService;
 
     /**
      * Default Constructor for DependentService
      * @param enrollmentDAO the EnrollmentDAO to use
+     * @param eventPublisher the ApplicationEventPublisher to announce changed Enrollees with
+     * @param auditJournal the AuditJournal to record changes in
+     * @param ageOutService the AgeOutService to report Dependents written with past Dates of Birth to
      */
     public DependentService(EnrollmentDAO enrollmentDAO,
-                            EnrollmentValidator validator) {
+                            EnrollmentValidator validator,
+                            ApplicationEventPublisher eventPublisher,
+                            AuditJournal auditJournal,
+                            AgeOutService ageOutService) {
         this.enrollmentDAO = enrollmentDAO;
         this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.auditJournal = auditJournal;
+        this.ageOutService = ageOutService;
     }
 
     /**
@@ -36,6 +57,7 @@ public class DependentService {
      */
     public void addDependent(Dependent addDependent, String enrolleeId) {
 
+        this.validator.idValidator(enrolleeId);
         this.validateDependent(addDependent);
 
         Enrollee existingEnrollee = this.enrollmentDAO.findById(enrolleeId)
@@ -50,6 +72,9 @@ public class DependentService {
         }
 
         this.enrollmentDAO.save(existingEnrollee);
+        this.auditJournal.dependentChanged(enrolleeId, addDependent.getId(), Action.ADDED, null, addDependent);
+        this.ageOutService.dependentsChanged(enrolleeId, Collections.emptyList(), Collections.singletonList(addDependent));
+        this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrolleeId, addDependent.getId(), ChangeType.ADDED, existingEnrollee.isActivationStatus()));
 
     }
 
@@ -62,6 +87,8 @@ public class DependentService {
      */
     public void modifyDependent(Dependent modifiedDependent, String enrolleeId, String dependentId) {
 
+        this.validator.idValidator(enrolleeId);
+        this.validator.idValidator(dependentId);
         this.validateDependent(modifiedDependent);
 
         Enrollee existingEnrollee = this.enrollmentDAO.findById(enrolleeId)
@@ -79,6 +106,56 @@ public class DependentService {
         }
 
         this.enrollmentDAO.save(existingEnrollee);
+        this.auditJournal.dependentChanged(enrolleeId, dependentId, Action.MODIFIED, existingDependent, modifiedDependent);
+        this.ageOutService.dependentsChanged(enrolleeId, Collections.singletonList(existingDependent), Collections.singletonList(modifiedDependent));
+        this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrolleeId, dependentId, ChangeType.MODIFIED, existingEnrollee.isActivationStatus()));
+
+    }
+
+    /**
+     * Applies a JSON Merge Patch (RFC 7396) to an existing Dependent, changing only the fields it supplies. The
+     * Enrollee is not read before it is patched, as the patch returns it as it was, so only the fields supplied are
+     * validated, and a Dependent that does not exist is left as it is by the patch.
+     *
+     * @param mergePatch the merge patch document
+     * @param enrolleeId the Id of the Enrollee with the Dependent to patch
+     * @param dependentId the Id of the Dependent to patch
+     */
+    public void patchDependent(Map<String, Object> mergePatch, String enrolleeId, String dependentId) {
+
+        this.validator.idValidator(enrolleeId);
+        this.validator.idValidator(dependentId);
+
+        //merged into an empty Dependent, so that every field supplied is recorded and only those are validated
+        EnrolleePatch patch = new EnrolleePatch();
+        Dependent suppliedFields = MergePatch.mergeDependent(patch, new Dependent(), dependentId, mergePatch);
+        if (mergePatch.containsKey("name")) {
+            this.validator.nameValidator(suppliedFields.getName());
+        }
+        if (mergePatch.containsKey("dateOfBirth")) {
+            this.validator.dateOfBirthValidator(suppliedFields.getDateOfBirth());
+        }
+
+        Enrollee existingEnrollee = this.enrollmentDAO.applyPatch(enrolleeId, patch);
+        if (existingEnrollee == null) {
+            throw new ResourceDoesNotExistException("Unable To Patch Dependent, Enrollee Does Not Exist For Id: " + enrolleeId);
+        }
+
+        Dependent existingDependent = this.retrieveDependentFromEnrollee(existingEnrollee, dependentId);
+
+        if (existingDependent == null) {
+            throw new ResourceDoesNotExistException("Unable To Patch Dependent, Dependent Does Not Exist For Id: " + dependentId);
+        }
+
+        if (patch.isEmpty()) {
+            return;
+        }
+
+        Dependent mergedDependent = this.retrieveDependentFromEnrollee(patch.applyTo(existingEnrollee), dependentId);
+
+        this.auditJournal.dependentChanged(enrolleeId, dependentId, Action.MODIFIED, existingDependent, mergedDependent);
+        this.ageOutService.dependentsChanged(enrolleeId, Collections.singletonList(existingDependent), Collections.singletonList(mergedDependent));
+        this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrolleeId, dependentId, ChangeType.MODIFIED, existingEnrollee.isActivationStatus()));
 
     }
 
@@ -90,6 +167,9 @@ public class DependentService {
      */
     public void deleteDependent(String enrolleeId, String dependentId) {
 
+        this.validator.idValidator(enrolleeId);
+        this.validator.idValidator(dependentId);
+
         Enrollee existingEnrollee = this.enrollmentDAO.findById(enrolleeId)
                 .orElseThrow(() -> new ResourceDoesNotExistException("Unable To Delete Dependent, Enrollee Does Not Exist For Id: " + enrolleeId));
 
@@ -102,6 +182,8 @@ public class DependentService {
         }
 
         this.enrollmentDAO.save(existingEnrollee);
+        this.auditJournal.dependentChanged(enrolleeId, dependentId, Action.DELETED, existingDependent, null);
+        this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrolleeId, dependentId, ChangeType.DELETED, existingEnrollee.isActivationStatus()));
 
     }
 
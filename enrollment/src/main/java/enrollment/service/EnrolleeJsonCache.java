@@ -0,0 +1,206 @@
+package enrollment.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeLookupResponse;
+import enrollment.common.Enrollee;
+import enrollment.json.SerializedJson;
+import enrollment.profiling.Phase;
+import enrollment.profiling.RequestTrace;
+import enrollment.tenancy.TenantContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of Enrollees already serialized to JSON, so repeated reads of the same Enrollee are answered by copying
+ * bytes. Entries are evicted when an EnrolleeChangedEvent is published on this node, so the cache is only safe
+ * when every write goes through this node, such as with the in-memory storage engine. Entries are keyed by
+ * tenant as well as Id, and held in a Caffeine cache, so hits never wait on a lock. Disabled by default.
+ * @author Michael Kulaga
+ */
+@Service
+public class EnrolleeJsonCache {
+
+    private final EnrolleeService enrolleeService;
+    private final ObjectMapper objectMapper;
+    private final int maximumSize;
+    private final Cache<String, SerializedJson> entries;
+
+    //incremented on every eviction, so a read that raced with a write does not cache what it read
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Constructor for EnrolleeJsonCache
+     *
+     * @param enrolleeService the EnrolleeService to read Enrollees through
+     * @param objectMapper the ObjectMapper to serialize Enrollees with
+     * @param maximumSize the number of serialized Enrollees to keep, or 0 to serialize on every read
+     */
+    public EnrolleeJsonCache(EnrolleeService enrolleeService,
+                             ObjectMapper objectMapper,
+                             @Value("${enrollment.json.serialized-cache-size:0}") int maximumSize) {
+        this.enrolleeService = enrolleeService;
+        this.objectMapper = objectMapper;
+        this.maximumSize = maximumSize;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(Math.max(maximumSize, 0))
+                .build();
+    }
+
+    /**
+     * Retrieves an Enrollee by Id as serialized JSON
+     *
+     * @param enrolleeId the Id of the Enrollee to search for
+     * @return the JSON of the Enrollee with the passed in Id
+     */
+    public SerializedJson getEnrolleeById(String enrolleeId) {
+
+        if (this.maximumSize <= 0) {
+            return this.serialize(enrolleeId);
+        }
+
+        String key = TenantContext.scopedKey(enrolleeId);
+
+        SerializedJson cached = this.entries.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long readGeneration = this.generation.get();
+        SerializedJson json = this.serialize(enrolleeId);
+
+        this.cache(key, json, readGeneration);
+
+        return json;
+    }
+
+    /**
+     * Retrieves many Enrollees by Id as serialized JSON, reading only those that are not already cached
+     *
+     * @param ids the Ids of the Enrollees to search for
+     * @return the JSON of the EnrolleeLookupResponse for the passed in Ids
+     */
+    public SerializedJson lookupEnrollees(List<String> ids) {
+
+        if (this.maximumSize <= 0) {
+            return this.write(this.enrolleeService.lookupEnrollees(ids));
+        }
+
+        this.enrolleeService.validateLookup(ids);
+
+        final List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        final Map<String, SerializedJson> found = new LinkedHashMap<>();
+        final List<String> misses = new ArrayList<>();
+
+        for (String id : uniqueIds) {
+            SerializedJson cached = this.entries.getIfPresent(TenantContext.scopedKey(id));
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+
+        List<String> missingIds = new ArrayList<>();
+
+        if (!misses.isEmpty()) {
+            long readGeneration = this.generation.get();
+            EnrolleeLookupResponse response = this.enrolleeService.lookupEnrollees(misses);
+            Map<String, SerializedJson> read = new LinkedHashMap<>();
+            for (Enrollee enrollee : response.getEnrollees()) {
+                read.put(enrollee.getId(), this.write(enrollee));
+            }
+
+            read.forEach((id, json) -> this.cache(TenantContext.scopedKey(id), json, readGeneration));
+
+            found.putAll(read);
+            missingIds = response.getMissingIds();
+        }
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        json.write('{');
+        this.writeRaw(json, "\"enrollees\":[");
+        boolean first = true;
+        for (String id : uniqueIds) {
+            SerializedJson enrollee = found.get(id);
+            if (enrollee != null) {
+                if (!first) {
+                    json.write(',');
+                }
+                byte[] bytes = enrollee.getBytes();
+                json.write(bytes, 0, bytes.length);
+                first = false;
+            }
+        }
+        this.writeRaw(json, "],\"missingIds\":");
+        byte[] missing = this.write(missingIds).getBytes();
+        json.write(missing, 0, missing.length);
+        json.write('}');
+
+        return new SerializedJson(json.toByteArray());
+    }
+
+    /**
+     * Evicts a changed Enrollee
+     *
+     * @param event the EnrolleeChangedEvent
+     */
+    @EventListener
+    public void enrolleeChanged(EnrolleeChangedEvent event) {
+
+        if (this.maximumSize > 0) {
+            this.entries.asMap().compute(TenantContext.scopedKey(event.getTenant(), event.getEnrolleeId()), (key, cached) -> {
+                this.generation.incrementAndGet();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Helper method to cache what was read, unless an Enrollee was evicted since the read began. The check and the
+     * put are atomic with any eviction of the same key, so a stale read is either refused or evicted after.
+     */
+    private void cache(String key, SerializedJson json, long readGeneration) {
+        this.entries.asMap().compute(key, (cachedKey, cached) -> this.generation.get() == readGeneration ? json : cached);
+    }
+
+    /**
+     * Helper method to read and serialize an Enrollee
+     */
+    private SerializedJson serialize(String enrolleeId) {
+        return this.write(this.enrolleeService.getEnrolleeById(enrolleeId));
+    }
+
+    private SerializedJson write(Object value) {
+
+        RequestTrace.enter(Phase.SERIALIZE);
+        try {
+            return new SerializedJson(this.objectMapper.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            RequestTrace.exit();
+        }
+    }
+
+    private void writeRaw(ByteArrayOutputStream json, String text) {
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        json.write(bytes, 0, bytes.length);
+    }
+
+}
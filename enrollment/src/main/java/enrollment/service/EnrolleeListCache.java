@@ -0,0 +1,184 @@
+package enrollment.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.json.SerializedJson;
+import enrollment.profiling.Phase;
+import enrollment.profiling.RequestTrace;
+import enrollment.tenancy.TenantContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of the list of every Enrollee already serialized to JSON, and optionally gzipped, so repeated reads of
+ * the list while nothing changes are answered by writing the same bytes. Each tenant has a write generation,
+ * advanced by every EnrolleeChangedEvent published on this node, and the list is only served while it was read
+ * at the current generation. When it is not, the list is read and serialized again by a single request, while
+ * any others wait for it, so it is rebuilt at most once per generation. As with the EnrolleeJsonCache, the cache
+ * is only safe when every write goes through this node. Disabled by default.
+ * @author Michael Kulaga
+ */
+@Service
+public class EnrolleeListCache {
+
+    private final EnrolleeService enrolleeService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean gzip;
+
+    private final Map<String, TenantList> lists = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for EnrolleeListCache
+     *
+     * @param enrolleeService the EnrolleeService to read Enrollees through
+     * @param objectMapper the ObjectMapper to serialize Enrollees with
+     * @param enabled whether the serialized list is kept, rather than serialized on every read
+     * @param gzip whether the serialized list is also kept gzipped, for clients that accept it
+     */
+    public EnrolleeListCache(EnrolleeService enrolleeService,
+                             ObjectMapper objectMapper,
+                             @Value("${enrollment.json.list-cache-enabled:false}") boolean enabled,
+                             @Value("${enrollment.json.list-cache-gzip:false}") boolean gzip) {
+        this.enrolleeService = enrolleeService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.gzip = enabled && gzip;
+    }
+
+    /**
+     * Retrieves every Enrollee of the current tenant as serialized JSON
+     *
+     * @return the JSON of the list of Enrollees
+     */
+    public SerializedJson getEnrollees() {
+
+        if (!this.enabled) {
+            return this.serialize();
+        }
+        return this.current().json;
+    }
+
+    /**
+     * Retrieves every Enrollee of the current tenant as gzipped serialized JSON, when gzipped lists are kept
+     *
+     * @return the gzipped JSON of the list of Enrollees, or null if gzipped lists are not kept
+     */
+    public SerializedJson getGzippedEnrollees() {
+
+        if (!this.gzip) {
+            return null;
+        }
+        return this.current().gzipped;
+    }
+
+    /**
+     * Advances the write generation of the changed Enrollee's tenant
+     *
+     * @param event the EnrolleeChangedEvent
+     */
+    @EventListener
+    public void enrolleeChanged(EnrolleeChangedEvent event) {
+
+        if (this.enabled) {
+            this.tenantList(event.getTenant()).generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Helper method to get the list of the current tenant read at the current generation, reading it if there is
+     * none. The generation is read before the Enrollees, so a list read while a write is made is never served
+     * after the write has been announced.
+     */
+    private CachedList current() {
+
+        TenantList tenantList = this.tenantList(TenantContext.current());
+
+        CachedList cached = tenantList.cached;
+        if (cached != null && cached.generation == tenantList.generation.get()) {
+            return cached;
+        }
+
+        synchronized (tenantList) {
+
+            long generation = tenantList.generation.get();
+            cached = tenantList.cached;
+            if (cached != null && cached.generation == generation) {
+                return cached;
+            }
+
+            SerializedJson json = this.serialize();
+            cached = new CachedList(generation, json, this.gzip ? gzip(json) : null);
+            tenantList.cached = cached;
+            return cached;
+        }
+    }
+
+    private TenantList tenantList(String tenant) {
+        return this.lists.computeIfAbsent(tenant, key -> new TenantList());
+    }
+
+    /**
+     * Helper method to read and serialize every Enrollee
+     */
+    private SerializedJson serialize() {
+
+        Object enrollees = this.enrolleeService.getEnrollees();
+
+        RequestTrace.enter(Phase.SERIALIZE);
+        try {
+            return new SerializedJson(this.objectMapper.writeValueAsBytes(enrollees));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            RequestTrace.exit();
+        }
+    }
+
+    private static SerializedJson gzip(SerializedJson json) {
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.getBytes().length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(json.getBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SerializedJson(compressed.toByteArray());
+    }
+
+    /**
+     * The write generation of a tenant, and its list as last read
+     */
+    private static class TenantList {
+
+        private final AtomicLong generation = new AtomicLong();
+        private volatile CachedList cached;
+    }
+
+    /**
+     * A serialized list, and the generation it was read at
+     */
+    private static class CachedList {
+
+        private final long generation;
+        private final SerializedJson json;
+        private final SerializedJson gzipped;
+
+        private CachedList(long generation, SerializedJson json, SerializedJson gzipped) {
+            this.generation = generation;
+            this.json = json;
+            this.gzipped = gzipped;
+        }
+    }
+
+}
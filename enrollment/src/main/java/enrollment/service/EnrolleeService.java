@@ -1,14 +1,37 @@
 package enrollment.service;
 
+import enrollment.audit.AuditJournal;
+import enrollment.common.AuditRecord.Action;
 import enrollment.common.Dependent;
 import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeActivationResponse;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+import enrollment.common.EnrolleeLookupResponse;
+import enrollment.common.EnrolleePatch;
+import enrollment.common.PossibleDuplicate;
+import enrollment.duplicates.DuplicateIndex;
+import enrollment.eligibility.ActivationIndex;
 import enrollment.exceptions.ResourceAlreadyExistsException;
 import enrollment.exceptions.ResourceDoesNotExistException;
+import enrollment.exceptions.ValidationException;
 import enrollment.repository.EnrollmentDAO;
+import enrollment.resilience.StaleReads;
 import enrollment.validation.EnrollmentValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Services for Adding, Modifying, and Deleting Enrollees
@@ -17,21 +40,57 @@ import java.util.List;
 @Service
 public class EnrolleeService {
 
+    private final Logger LOGGER = LoggerFactory.getLogger(EnrolleeService.class);
+
     public final DependentService dependentService;
     public final EnrollmentDAO enrollmentDAO;
     public final EnrollmentValidator validator;
+    public final ApplicationEventPublisher eventPublisher;
+    public final DuplicateIndex duplicateIndex;
+    public final AuditJournal auditJournal;
+    public final ActivationIndex activationIndex;
+    public final AgeOutService ageOutService;
+
+    //what to do when a new Enrollee looks like a duplicate: "ignore", "warn" or "reject"
+    public final String duplicatesOnAdd;
+    public final int lookupMaximumIds;
+    public final int lookupChunkSize;
 
     /**
      * Constructor for EnrollmentService
      *
      * @param enrollmentDAO the EnrollmentDAO to use
+     * @param eventPublisher the ApplicationEventPublisher to announce changed Enrollees with
+     * @param duplicateIndex the DuplicateIndex to keep up to date and to check new Enrollees against
+     * @param auditJournal the AuditJournal to record changes in
+     * @param activationIndex the ActivationIndex to keep up to date and to look up activation statuses in
+     * @param ageOutService the AgeOutService to report Dependents written with past Dates of Birth to
+     * @param duplicatesOnAdd what to do when a new Enrollee looks like a duplicate: "ignore", "warn" or "reject"
+     * @param lookupMaximumIds the most Ids a lookup may ask for
+     * @param lookupChunkSize the most Ids a lookup reads from the database at once
      */
     public EnrolleeService(DependentService dependentService,
                            EnrollmentDAO enrollmentDAO,
-                           EnrollmentValidator validator) {
+                           EnrollmentValidator validator,
+                           ApplicationEventPublisher eventPublisher,
+                           DuplicateIndex duplicateIndex,
+                           AuditJournal auditJournal,
+                           ActivationIndex activationIndex,
+                           AgeOutService ageOutService,
+                           @Value("${enrollment.duplicates.on-add:warn}") String duplicatesOnAdd,
+                           @Value("${enrollment.lookup.maximum-ids:1000}") int lookupMaximumIds,
+                           @Value("${enrollment.lookup.chunk-size:500}") int lookupChunkSize) {
         this.dependentService = dependentService;
         this.enrollmentDAO = enrollmentDAO;
         this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.duplicateIndex = duplicateIndex;
+        this.auditJournal = auditJournal;
+        this.activationIndex = activationIndex;
+        this.ageOutService = ageOutService;
+        this.duplicatesOnAdd = duplicatesOnAdd;
+        this.lookupMaximumIds = lookupMaximumIds;
+        this.lookupChunkSize = lookupChunkSize;
     }
 
     /**
@@ -43,6 +102,16 @@ public class EnrolleeService {
         return this.enrollmentDAO.findAll();
     }
 
+    /**
+     * Streams all Enrollees from a database cursor, so they are read as they are consumed rather than all at once.
+     * The Stream holds the cursor, so it must be closed.
+     *
+     * @return the Stream of Enrollee objects
+     */
+    public Stream<Enrollee> streamEnrollees() {
+        return this.enrollmentDAO.streamAll();
+    }
+
     /**
      * Add a new Enrollee
      *
@@ -55,7 +124,13 @@ public class EnrolleeService {
         final Enrollee existingEnrollee = this.enrollmentDAO.findById(addEnrollee.getId()).orElse(null);
 
         if (existingEnrollee == null) {
+            this.checkPossibleDuplicates(addEnrollee);
             this.enrollmentDAO.insert(addEnrollee);
+            this.duplicateIndex.put(addEnrollee.getId(), addEnrollee.getName(), addEnrollee.getDateOfBirth());
+            this.activationIndex.put(addEnrollee.getId(), addEnrollee.isActivationStatus());
+            this.auditJournal.enrolleeChanged(addEnrollee.getId(), Action.ADDED, null, addEnrollee);
+            this.ageOutService.dependentsChanged(addEnrollee.getId(), Collections.emptyList(), addEnrollee.getDependents());
+            this.eventPublisher.publishEvent(new EnrolleeChangedEvent(addEnrollee.getId(), ChangeType.ADDED, addEnrollee.isActivationStatus()));
         } else {
             throw new ResourceAlreadyExistsException("Unable To Add Enrollee, Enrollee Already Exists For Id: " + addEnrollee.getId());
         }
@@ -68,10 +143,133 @@ public class EnrolleeService {
      * @return the Enrollee with the passed in Id
      */
     public Enrollee getEnrolleeById(String id) {
-        return this.enrollmentDAO.findById(id)
+
+        this.validator.idValidator(id);
+
+        //answered to the client as it is, so it may be answered with the Enrollee last read while storage is unavailable
+        return StaleReads.allow(() -> this.enrollmentDAO.findById(id))
                 .orElseThrow(() -> new ResourceDoesNotExistException("Unable To Retrieve Enrollee, Enrollee Does Not Exist For Id: " + id));
     }
 
+    /**
+     * Retrieves many Enrollees by Id, querying for them in chunks rather than one at a time
+     *
+     * @param ids the Ids of the Enrollees to search for
+     * @return the Enrollees that were found, in the order they were asked for, and the Ids that were not found
+     */
+    public EnrolleeLookupResponse lookupEnrollees(List<String> ids) {
+
+        this.validateLookup(ids);
+
+        final List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        final Map<String, Enrollee> found = new HashMap<>();
+
+        for (int start = 0; start < uniqueIds.size(); start += this.lookupChunkSize) {
+            List<String> chunk = uniqueIds.subList(start, Math.min(start + this.lookupChunkSize, uniqueIds.size()));
+            for (Enrollee enrollee : this.enrollmentDAO.findAllById(chunk)) {
+                found.put(enrollee.getId(), enrollee);
+            }
+        }
+
+        final EnrolleeLookupResponse response = new EnrolleeLookupResponse();
+
+        for (String id : uniqueIds) {
+            Enrollee enrollee = found.get(id);
+            if (enrollee != null) {
+                response.getEnrollees().add(enrollee);
+            } else {
+                response.getMissingIds().add(id);
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Retrieves whether an Enrollee is active, from the ActivationIndex rather than the database when it can tell
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @return true if the Enrollee is active
+     */
+    public boolean isEnrolleeActive(String enrolleeId) {
+
+        this.validator.idValidator(enrolleeId);
+
+        switch (this.activationIndex.eligibility(enrolleeId)) {
+            case ACTIVE:
+                return true;
+            case INACTIVE:
+                return false;
+            case MISSING:
+                throw new ResourceDoesNotExistException("Unable To Retrieve Enrollee, Enrollee Does Not Exist For Id: " + enrolleeId);
+            default:
+                return this.getEnrolleeById(enrolleeId).isActivationStatus();
+        }
+    }
+
+    /**
+     * Retrieves whether many Enrollees are active, from the ActivationIndex rather than the database when it can tell,
+     * querying for the rest in chunks
+     *
+     * @param ids the Ids of the Enrollees
+     * @return the Ids of the Enrollees that are active, that are not and that were not found, in the order they were asked for
+     */
+    public EnrolleeActivationResponse getActivationStatuses(List<String> ids) {
+
+        this.validateLookup(ids);
+
+        final List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        final Map<String, Boolean> found = new HashMap<>();
+        final List<String> unknownIds = new ArrayList<>();
+
+        for (String id : uniqueIds) {
+            switch (this.activationIndex.eligibility(id)) {
+                case ACTIVE:
+                    found.put(id, true);
+                    break;
+                case INACTIVE:
+                    found.put(id, false);
+                    break;
+                case UNKNOWN:
+                    unknownIds.add(id);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        for (int start = 0; start < unknownIds.size(); start += this.lookupChunkSize) {
+            List<String> chunk = unknownIds.subList(start, Math.min(start + this.lookupChunkSize, unknownIds.size()));
+            for (Enrollee enrollee : this.enrollmentDAO.findAllById(chunk)) {
+                found.put(enrollee.getId(), enrollee.isActivationStatus());
+            }
+        }
+
+        final EnrolleeActivationResponse response = new EnrolleeActivationResponse();
+
+        for (String id : uniqueIds) {
+            Boolean active = found.get(id);
+            if (active == null) {
+                response.getMissingIds().add(id);
+            } else if (active) {
+                response.getActiveIds().add(id);
+            } else {
+                response.getInactiveIds().add(id);
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Validates the Ids of a lookup, for callers that answer part of it themselves
+     *
+     * @param ids the Ids of the Enrollees to search for
+     */
+    public void validateLookup(List<String> ids) {
+        this.validator.lookupValidator(ids, this.lookupMaximumIds);
+    }
+
     /**
      * Modifies an existing Enrollee
      *
@@ -80,10 +278,13 @@ public class EnrolleeService {
      */
     public void modifyEnrollee(Enrollee modifiedEnrollee, String enrolleeId) {
 
+        this.validator.idValidator(enrolleeId);
         this.validateEnrollee(modifiedEnrollee);
 
         final Enrollee existingEnrollee = this.enrollmentDAO.findById(enrolleeId)
                 .orElseThrow(() -> new ResourceDoesNotExistException("Unable To Modify Enrollee, Enrollee Does Not Exist For Id: " + enrolleeId));
+        final Enrollee beforeEnrollee = this.auditJournal.snapshot(existingEnrollee);
+        final List<Dependent> beforeDependents = new ArrayList<>(existingEnrollee.getDependents());
 
         for (Dependent modifiedDependent : modifiedEnrollee.getDependents()) {
 
@@ -102,16 +303,218 @@ public class EnrolleeService {
         modifiedEnrollee.getDependents().addAll(existingEnrollee.getDependents());
 
         this.enrollmentDAO.save(modifiedEnrollee);
+        this.duplicateIndex.put(enrolleeId, modifiedEnrollee.getName(), modifiedEnrollee.getDateOfBirth());
+        this.activationIndex.put(enrolleeId, modifiedEnrollee.isActivationStatus());
+        this.auditJournal.enrolleeChanged(enrolleeId, Action.MODIFIED, beforeEnrollee, modifiedEnrollee);
+        this.ageOutService.dependentsChanged(enrolleeId, beforeDependents, modifiedEnrollee.getDependents());
+        this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrolleeId, ChangeType.MODIFIED, modifiedEnrollee.isActivationStatus()));
 
     }
 
     /**
-     * Deletes an existing Enrollee
+     * Applies a JSON Merge Patch (RFC 7396) to an existing Enrollee, changing only the fields it supplies.
+     * Dependents may be patched as an object keyed by Dependent Id, where a null value removes the Dependent,
+     * or replaced entirely by supplying an array. The Enrollee is only read before it is patched when Dependents
+     * are patched by Id, to tell the Dependents added from those changed; otherwise the patch returns the Enrollee
+     * as it was.
+     *
+     * @param mergePatch the merge patch document
+     * @param enrolleeId the Id of the Enrollee to patch
+     */
+    public void patchEnrollee(Map<String, Object> mergePatch, String enrolleeId) {
+
+        this.validator.idValidator(enrolleeId);
+
+        final Enrollee storedEnrollee = mergePatch.containsKey("dependents") && !(mergePatch.get("dependents") instanceof List)
+                ? this.enrollmentDAO.findById(enrolleeId)
+                        .orElseThrow(() -> new ResourceDoesNotExistException("Unable To Patch Enrollee, Enrollee Does Not Exist For Id: " + enrolleeId))
+                : null;
+
+        final EnrolleePatch patch = new EnrolleePatch();
+
+        for (Map.Entry<String, Object> member : mergePatch.entrySet()) {
+
+            switch (member.getKey()) {
+                case "id":
+                    MergePatch.requireSameId(enrolleeId, member.getValue());
+                    break;
+                case "name":
+                    String name = MergePatch.text("Name", member.getValue());
+                    this.validator.nameValidator(name);
+                    patch.set("name", name);
+                    break;
+                case "dateOfBirth":
+                    String dateOfBirth = MergePatch.text("Date Of Birth", member.getValue());
+                    this.validator.dateOfBirthValidator(dateOfBirth);
+                    patch.set("dateOfBirth", dateOfBirth);
+                    break;
+                case "activationStatus":
+                    patch.set("activationStatus", MergePatch.bool("Activation Status", member.getValue()));
+                    break;
+                case "phoneNumber":
+                    if (member.getValue() == null) {
+                        patch.unset("phoneNumber");
+                    } else {
+                        patch.set("phoneNumber", MergePatch.text("Phone Number", member.getValue()));
+                    }
+                    break;
+                case "dependents":
+                    this.patchDependents(patch, storedEnrollee, member.getValue());
+                    break;
+                default:
+                    throw new ValidationException("Validation Error: Unknown Enrollee Field: " + member.getKey());
+            }
+        }
+
+        final Enrollee existingEnrollee = this.enrollmentDAO.applyPatch(enrolleeId, patch);
+        if (existingEnrollee == null) {
+            throw new ResourceDoesNotExistException("Unable To Patch Enrollee, Enrollee Does Not Exist For Id: " + enrolleeId);
+        }
+
+        if (patch.isEmpty()) {
+            return;
+        }
+
+        final Enrollee patchedEnrollee = patch.applyTo(existingEnrollee);
+
+        if (patch.getSetFields().containsKey("name") || patch.getSetFields().containsKey("dateOfBirth")) {
+            this.duplicateIndex.put(enrolleeId, patchedEnrollee.getName(), patchedEnrollee.getDateOfBirth());
+        }
+
+        this.activationIndex.put(enrolleeId, patchedEnrollee.isActivationStatus());
+
+        this.auditJournal.enrolleeChanged(enrolleeId, Action.MODIFIED, existingEnrollee, patchedEnrollee);
+        this.ageOutService.dependentsChanged(enrolleeId, existingEnrollee.getDependents(), patchedEnrollee.getDependents());
+        this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrolleeId, ChangeType.MODIFIED, patchedEnrollee.isActivationStatus()));
+
+    }
+
+    /**
+     * Deletes an existing Enrollee. The Enrollee is returned as it was deleted in the same call, so the deletion is
+     * journaled with the deleted fields and Dependents, and only if the Enrollee existed.
      *
      * @param enrolleeId the Id of the Enrollee to delete
      */
     public void deleteEnrollee(String enrolleeId) {
-        this.enrollmentDAO.deleteById(enrolleeId);
+
+        this.validator.idValidator(enrolleeId);
+
+        final Enrollee deletedEnrollee = this.enrollmentDAO.findAndRemoveById(enrolleeId);
+        if (deletedEnrollee == null) {
+            return;
+        }
+
+        this.duplicateIndex.remove(enrolleeId);
+        this.activationIndex.remove(enrolleeId);
+        this.auditJournal.enrolleeChanged(enrolleeId, Action.DELETED, deletedEnrollee, null);
+        this.eventPublisher.publishEvent(new EnrolleeChangedEvent(enrolleeId, ChangeType.DELETED));
+    }
+
+    /**
+     * Retrieves the Enrollees that may be duplicates of an existing Enrollee: those born on the same day with a
+     * similar name
+     *
+     * @param enrolleeId the Id of the Enrollee
+     * @return the possible duplicates, most similar first
+     */
+    public List<PossibleDuplicate> getPossibleDuplicates(String enrolleeId) {
+
+        final Enrollee enrollee = this.getEnrolleeById(enrolleeId);
+
+        return this.duplicateIndex.findPossibleDuplicates(enrollee.getName(), enrollee.getDateOfBirth(), enrolleeId);
+    }
+
+    /**
+     * Helper method to warn about, or reject, a new Enrollee that looks like a duplicate of an existing one
+     *
+     * @param addEnrollee the new Enrollee
+     */
+    private void checkPossibleDuplicates(Enrollee addEnrollee) {
+
+        if ("ignore".equals(this.duplicatesOnAdd)) {
+            return;
+        }
+
+        final List<PossibleDuplicate> duplicates = this.duplicateIndex.findPossibleDuplicates(addEnrollee.getName(),
+                addEnrollee.getDateOfBirth(), addEnrollee.getId());
+
+        if (duplicates.isEmpty()) {
+            return;
+        }
+
+        final String ids = duplicates.stream().map(PossibleDuplicate::getEnrolleeId).collect(Collectors.joining(", "));
+
+        if ("reject".equals(this.duplicatesOnAdd)) {
+            throw new ResourceAlreadyExistsException("Unable To Add Enrollee, Possible Duplicate Of Enrollee Ids: " + ids);
+        }
+
+        if (LOGGER.isWarnEnabled()) {
+            LOGGER.warn("Enrollee " + addEnrollee.getId() + " Is A Possible Duplicate Of Enrollee Ids: " + ids);
+        }
+    }
+
+    /**
+     * Helper method to merge the Dependents member of a merge patch, matching Dependents by Id through a hash index
+     *
+     * @param patch the EnrolleePatch to record changes in
+     * @param existingEnrollee the Enrollee being patched
+     * @param dependents the Dependents member of the merge patch
+     */
+    private void patchDependents(EnrolleePatch patch, Enrollee existingEnrollee, Object dependents) {
+
+        if (dependents instanceof List) {
+
+            List<Dependent> replacedDependents = new ArrayList<>();
+
+            for (Object dependent : (List<?>) dependents) {
+                Map<String, Object> dependentMembers = MergePatch.object("Dependent", dependent);
+                Dependent replacedDependent = MergePatch.mergeDependent(patch, null,
+                        String.valueOf(dependentMembers.get("id")), dependentMembers);
+                this.validateDependent(replacedDependent);
+                replacedDependents.add(replacedDependent);
+            }
+
+            patch.replaceDependents(replacedDependents);
+            return;
+        }
+
+        final Map<String, Dependent> existingDependents = new HashMap<>();
+        for (Dependent existingDependent : existingEnrollee.getDependents()) {
+            existingDependents.put(existingDependent.getId(), existingDependent);
+        }
+
+        for (Map.Entry<String, Object> dependent : MergePatch.object("Dependents", dependents).entrySet()) {
+
+            final Dependent existingDependent = existingDependents.get(dependent.getKey());
+
+            if (dependent.getValue() == null) {
+                if (existingDependent == null) {
+                    throw new ResourceDoesNotExistException("Unable To Delete Dependent, Dependent Does Not Exist For Id: " + dependent.getKey());
+                }
+                patch.removeDependent(dependent.getKey());
+                continue;
+            }
+
+            final Dependent mergedDependent = MergePatch.mergeDependent(patch, existingDependent, dependent.getKey(),
+                    MergePatch.object("Dependent", dependent.getValue()));
+            this.validateDependent(mergedDependent);
+
+            if (existingDependent == null) {
+                patch.addDependent(mergedDependent);
+            }
+        }
+
+    }
+
+    /**
+     * Helper method to validate a Dependent
+     *
+     * @param dependent the Dependent to validate
+     */
+    private void validateDependent(Dependent dependent) {
+
+        this.validator.entityValidator(dependent.getId(), dependent.getName(), dependent.getDateOfBirth());
+
     }
 
     /**
@@ -124,7 +527,7 @@ public class EnrolleeService {
         this.validator.entityValidator(enrollee.getId(), enrollee.getName(), enrollee.getDateOfBirth());
 
         for (Dependent dependent : enrollee.getDependents()) {
-            this.validator.entityValidator(dependent.getId(), dependent.getName(), dependent.getDateOfBirth());
+            this.validateDependent(dependent);
         }
 
     }
@@ -0,0 +1,121 @@
+package enrollment.service;
+
+import enrollment.common.Dependent;
+import enrollment.common.EnrolleePatch;
+import enrollment.exceptions.ValidationException;
+
+import java.util.Map;
+
+/**
+ * Helpers for translating JSON Merge Patch (RFC 7396) documents into EnrolleePatches
+ * @author Michael Kulaga
+ */
+final class MergePatch {
+
+    private MergePatch() {
+    }
+
+    /**
+     * Merges a patch for a single Dependent, recording the changed fields of an existing Dependent in the
+     * EnrolleePatch. New Dependents are not recorded, as they must be validated before they are added.
+     *
+     * @param patch the EnrolleePatch to record changes in
+     * @param existing the existing Dependent, or null if the patch creates a new one
+     * @param dependentId the Id of the Dependent
+     * @param mergePatch the merge patch for the Dependent
+     * @return the Dependent as it will be once the patch is applied, for validation
+     */
+    static Dependent mergeDependent(EnrolleePatch patch, Dependent existing, String dependentId, Map<String, Object> mergePatch) {
+
+        Dependent merged = new Dependent();
+        merged.setId(dependentId);
+        merged.setName(existing != null ? existing.getName() : null);
+        merged.setDateOfBirth(existing != null ? existing.getDateOfBirth() : null);
+
+        for (Map.Entry<String, Object> member : mergePatch.entrySet()) {
+
+            switch (member.getKey()) {
+                case "id":
+                    requireSameId(dependentId, member.getValue());
+                    break;
+                case "name":
+                    merged.setName(text("Name", member.getValue()));
+                    break;
+                case "dateOfBirth":
+                    merged.setDateOfBirth(text("Date Of Birth", member.getValue()));
+                    break;
+                default:
+                    throw new ValidationException("Validation Error: Unknown Dependent Field: " + member.getKey());
+            }
+
+            if (existing != null && !"id".equals(member.getKey())) {
+                patch.setDependentField(dependentId, member.getKey(), member.getValue());
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Reads a merge patch value that must be text, or null to remove the field
+     *
+     * @param field the display name of the field, for error messages
+     * @param value the merge patch value
+     * @return the text value
+     */
+    static String text(String field, Object value) {
+
+        if (value != null && !(value instanceof String)) {
+            throw new ValidationException("Validation Error: " + field + " Must Be Text");
+        }
+
+        return (String) value;
+    }
+
+    /**
+     * Reads a merge patch value that must be true or false
+     *
+     * @param field the display name of the field, for error messages
+     * @param value the merge patch value
+     * @return the boolean value
+     */
+    static boolean bool(String field, Object value) {
+
+        if (!(value instanceof Boolean)) {
+            throw new ValidationException("Validation Error: " + field + " Must Be true Or false");
+        }
+
+        return (Boolean) value;
+    }
+
+    /**
+     * Reads a merge patch value that must be an object
+     *
+     * @param field the display name of the field, for error messages
+     * @param value the merge patch value
+     * @return the object value
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> object(String field, Object value) {
+
+        if (!(value instanceof Map)) {
+            throw new ValidationException("Validation Error: " + field + " Must Be An Object");
+        }
+
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Checks that an Id in a merge patch, if given, matches the Id of the resource being patched
+     *
+     * @param id the Id of the resource being patched
+     * @param value the merge patch value
+     */
+    static void requireSameId(String id, Object value) {
+
+        if (value == null || !id.equals(String.valueOf(value))) {
+            throw new ValidationException("Validation Error: Id Cannot Be Changed");
+        }
+    }
+
+}
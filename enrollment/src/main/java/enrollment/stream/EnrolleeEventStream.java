@@ -0,0 +1,249 @@
+package enrollment.stream;
+
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeStreamEvent;
+import enrollment.tenancy.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Events stream of the changes to Enrollees and their Dependents, so consumers are told of changes
+ * rather than polling for them. The stream is fed by the EnrolleeChangedEvents the services publish: the write
+ * only hands its event to a bounded queue, and a dispatcher thread numbers it, keeps it for replay and buffers it
+ * for each subscriber that wants it, filtering on the activation status the Enrollee was written with, which the
+ * event carries, so dispatching never reads the database. Each subscriber is sent its events by a sender thread of its own while it has any, so a slow client only
+ * delays itself, and is resynced once its buffer is full. A subscriber reconnecting with the Id of the last event
+ * it was sent is sent the events it missed, if they are still kept.
+ * @author Michael Kulaga
+ */
+@Service
+public class EnrolleeEventStream {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(EnrolleeEventStream.class);
+
+    private final int bufferSize;
+    private final int maximumSubscribers;
+    private final long timeoutMillis;
+
+    private final BlockingQueue<EnrolleeChangedEvent> changes;
+    private final Set<EventSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Thread dispatcher;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeats;
+
+    //the events kept for replay, guarded by itself; Ids start from the startup time, so Ids from an earlier run are never replayed
+    private final EnrolleeStreamEvent[] replay;
+    private final long firstEventId = System.currentTimeMillis() * 1000;
+    private long nextEventId = this.firstEventId;
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for EnrolleeEventStream
+     *
+     * @param queueCapacity the most changes waiting to be dispatched, beyond which every subscriber is resynced
+     * @param bufferSize the most events waiting to be sent to a subscriber before it is resynced
+     * @param replaySize the number of recent events kept to send to reconnecting subscribers
+     * @param maximumSubscribers the most subscribers at once
+     * @param timeoutMinutes the minutes after which a subscriber's response is completed, for it to reconnect
+     * @param heartbeatSeconds the seconds between comments sent to keep idle connections open
+     */
+    public EnrolleeEventStream(@Value("${enrollment.events.queue-capacity:10000}") int queueCapacity,
+                               @Value("${enrollment.events.buffer-size:256}") int bufferSize,
+                               @Value("${enrollment.events.replay-size:10000}") int replaySize,
+                               @Value("${enrollment.events.maximum-subscribers:200}") int maximumSubscribers,
+                               @Value("${enrollment.events.timeout-minutes:30}") long timeoutMinutes,
+                               @Value("${enrollment.events.heartbeat-seconds:15}") long heartbeatSeconds) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maximumSubscribers = maximumSubscribers;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.changes = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.replay = new EnrolleeStreamEvent[Math.max(1, replaySize)];
+
+        this.dispatcher = new Thread(this::dispatch, "enrollment-events");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+
+        AtomicInteger senderNumber = new AtomicInteger();
+        this.senders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-events-" + senderNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "enrollment-events-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatSeconds > 0) {
+            this.heartbeats.scheduleWithFixedDelay(() -> this.subscribers.forEach(EventSubscriber::heartbeat),
+                    heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Subscribes to the changes to the Enrollees of the current tenant
+     *
+     * @param enrolleeIds the Ids of the Enrollees to be sent changes of, or empty for every Enrollee
+     * @param activationStatus the activation status of the Enrollees to be sent changes of, or null for any.
+     *                         Deletions, and events replayed on reconnecting, are sent whatever the status.
+     * @param lastEventId the Id of the last event received before reconnecting, or null
+     * @return the SseEmitter of the subscriber's response, sent a resync event first if the events since the last
+     * event received are no longer kept
+     */
+    public SseEmitter subscribe(Set<String> enrolleeIds, Boolean activationStatus, String lastEventId) {
+        return this.subscribe(new SseEmitter(this.timeoutMillis), enrolleeIds, activationStatus, lastEventId);
+    }
+
+    /**
+     * Subscribes to the changes to the Enrollees of the current tenant, sending them to the given SseEmitter
+     */
+    SseEmitter subscribe(SseEmitter emitter, Set<String> enrolleeIds, Boolean activationStatus, String lastEventId) {
+
+        if (this.subscribers.size() >= this.maximumSubscribers) {
+            throw new IllegalStateException("Unable To Subscribe To Enrollee Events, There Are Already " + this.maximumSubscribers + " Subscribers");
+        }
+
+        EventSubscriber subscriber = new EventSubscriber(emitter, TenantContext.current(), enrolleeIds, activationStatus,
+                this.bufferSize, this.senders);
+
+        emitter.onCompletion(() -> this.subscribers.remove(subscriber));
+        emitter.onTimeout(() -> this.subscribers.remove(subscriber));
+        emitter.onError(error -> this.subscribers.remove(subscriber));
+
+        synchronized (this.replay) {
+            if (lastEventId != null) {
+                List<EnrolleeStreamEvent> missed = this.missedSince(lastEventId);
+                if (missed == null) {
+                    subscriber.resync();
+                } else {
+                    missed.stream().filter(subscriber::wants).forEach(subscriber::offer);
+                }
+            }
+            this.subscribers.add(subscriber);
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Hands a change to the dispatcher. If the dispatcher has fallen too far behind, the change is dropped and
+     * every subscriber is resynced, rather than the write waiting.
+     *
+     * @param event the EnrolleeChangedEvent
+     */
+    @EventListener
+    public void enrolleeChanged(EnrolleeChangedEvent event) {
+
+        if (!this.changes.offer(event)) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Enrollee Events Are Behind, Resyncing Subscribers After Dropping Event For Enrollee " + event.getEnrolleeId());
+            }
+            this.subscribers.forEach(EventSubscriber::resync);
+        }
+    }
+
+    /**
+     * @return the number of subscribers
+     */
+    public int getSubscriberCount() {
+        return this.subscribers.size();
+    }
+
+    /**
+     * Completes every subscriber's response and stops dispatching
+     */
+    @PreDestroy
+    public void close() {
+
+        this.running = false;
+        this.dispatcher.interrupt();
+        this.heartbeats.shutdownNow();
+        this.subscribers.forEach(EventSubscriber::close);
+        this.senders.shutdown();
+    }
+
+    /**
+     * Helper method for the dispatcher thread: numbers each change, keeps it for replay and buffers it for the
+     * subscribers that want it
+     */
+    private void dispatch() {
+
+        while (this.running) {
+
+            EnrolleeChangedEvent changed;
+            try {
+                changed = this.changes.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                //an event without a status, such as a deletion, is sent whatever the subscribers' filters rather than lost
+                Boolean activationStatus = changed.getActivationStatus();
+
+                synchronized (this.replay) {
+
+                    EnrolleeStreamEvent event = new EnrolleeStreamEvent(this.nextEventId, changed, System.currentTimeMillis());
+                    this.replay[(int) (this.nextEventId % this.replay.length)] = event;
+                    this.nextEventId++;
+
+                    for (EventSubscriber subscriber : this.subscribers) {
+                        if (subscriber.isClosed()) {
+                            this.subscribers.remove(subscriber);
+                        } else if (subscriber.wants(event) && (activationStatus == null || subscriber.getActivationStatus() == null
+                                || activationStatus.equals(subscriber.getActivationStatus()))) {
+                            subscriber.offer(event);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Unable To Dispatch Enrollee Event For Enrollee " + changed.getEnrolleeId(), e);
+            }
+        }
+    }
+
+    /**
+     * Helper method to find the kept events after the one a reconnecting subscriber last received
+     *
+     * @return the events, or null if some of them are no longer kept or the Id is not one of this run's
+     */
+    private List<EnrolleeStreamEvent> missedSince(String lastEventId) {
+
+        long lastId;
+        try {
+            lastId = Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        long oldestKept = Math.max(this.firstEventId, this.nextEventId - this.replay.length);
+        if (lastId >= this.nextEventId || lastId < oldestKept - 1) {
+            return null;
+        }
+
+        List<EnrolleeStreamEvent> missed = new ArrayList<>();
+        for (long id = lastId + 1; id < this.nextEventId; id++) {
+            missed.add(this.replay[(int) (id % this.replay.length)]);
+        }
+        return missed;
+    }
+}
@@ -0,0 +1,164 @@
+package enrollment.stream;
+
+import enrollment.common.EnrolleeStreamEvent;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A subscriber of the Enrollee event stream, with the filters it subscribed with and a bounded buffer of the
+ * events waiting to be sent to it. A subscriber too slow to keep up has its buffer emptied and is sent a resync
+ * event in place of the events it missed, so one slow client never holds events for the others.
+ * @author Michael Kulaga
+ */
+final class EventSubscriber {
+
+    static final String CHANGE_EVENT = "enrollee";
+    static final String RESYNC_EVENT = "resync";
+
+    private final SseEmitter emitter;
+    private final String tenant;
+    private final Set<String> enrolleeIds;
+    private final Boolean activationStatus;
+    private final Executor sender;
+
+    private final BlockingQueue<EnrolleeStreamEvent> buffer;
+    private final AtomicBoolean resync = new AtomicBoolean();
+    private final AtomicBoolean heartbeat = new AtomicBoolean();
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Constructor for EventSubscriber
+     *
+     * @param emitter the SseEmitter of the subscriber's response
+     * @param tenant the tenant the subscriber sees the changes of
+     * @param enrolleeIds the Ids of the Enrollees to send changes of, or empty for every Enrollee
+     * @param activationStatus the activation status of the Enrollees to send changes of, or null for any
+     * @param bufferSize the most events waiting to be sent before the subscriber is resynced
+     * @param sender the Executor to send events on
+     */
+    EventSubscriber(SseEmitter emitter, String tenant, Set<String> enrolleeIds, Boolean activationStatus, int bufferSize, Executor sender) {
+        this.emitter = emitter;
+        this.tenant = tenant;
+        this.enrolleeIds = enrolleeIds;
+        this.activationStatus = activationStatus;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.sender = sender;
+    }
+
+    /**
+     * @param event an event
+     * @return true if the event is of an Enrollee the subscriber has asked for, not counting its activation status
+     */
+    boolean wants(EnrolleeStreamEvent event) {
+        return this.tenant.equals(event.getTenant())
+                && (this.enrolleeIds.isEmpty() || this.enrolleeIds.contains(event.getEnrolleeId()));
+    }
+
+    /**
+     * Buffers an event to send, emptying the buffer and resyncing the subscriber if it is full
+     *
+     * @param event the event
+     */
+    void offer(EnrolleeStreamEvent event) {
+
+        if (!this.buffer.offer(event)) {
+            this.dropped.addAndGet(this.buffer.size() + 1L);
+            this.buffer.clear();
+            this.resync.set(true);
+        }
+        this.send();
+    }
+
+    /**
+     * Sends a resync event in place of anything buffered, for a subscriber that has missed events
+     */
+    void resync() {
+        this.buffer.clear();
+        this.resync.set(true);
+        this.send();
+    }
+
+    /**
+     * Sends a comment, so idle connections are not closed by proxies and closed clients are noticed
+     */
+    void heartbeat() {
+        this.heartbeat.set(true);
+        this.send();
+    }
+
+    /**
+     * Completes the subscriber's response
+     */
+    void close() {
+        this.closed = true;
+        this.emitter.complete();
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    Boolean getActivationStatus() {
+        return this.activationStatus;
+    }
+
+    long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Helper method to start sending what is waiting, unless it is already being sent
+     */
+    private void send() {
+        if (!this.closed && this.sending.compareAndSet(false, true)) {
+            this.sender.execute(this::drain);
+        }
+    }
+
+    /**
+     * Helper method to send what is waiting, from one sender thread at a time
+     */
+    private void drain() {
+
+        do {
+            try {
+                while (!this.closed) {
+
+                    if (this.resync.getAndSet(false)) {
+                        this.emitter.send(SseEmitter.event().name(RESYNC_EVENT).data("{}", MediaType.APPLICATION_JSON));
+                        continue;
+                    }
+
+                    EnrolleeStreamEvent event = this.buffer.poll();
+                    if (event != null) {
+                        this.emitter.send(SseEmitter.event().id(String.valueOf(event.getId())).name(CHANGE_EVENT)
+                                .data(event, MediaType.APPLICATION_JSON));
+                    } else if (this.heartbeat.getAndSet(false)) {
+                        this.emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        break;
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                //the client has gone, or its response has completed
+                this.closed = true;
+                this.emitter.completeWithError(e);
+            }
+
+            this.sending.set(false);
+
+        //checks again for anything offered after the buffer was seen empty but before sending was released
+        } while (!this.closed && (this.resync.get() || this.heartbeat.get() || !this.buffer.isEmpty())
+                && this.sending.compareAndSet(false, true));
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Server-Sent Events stream of changes to Enrollees for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.stream;
@@ -0,0 +1,106 @@
+package enrollment.tenancy;
+
+import java.util.function.Supplier;
+
+/**
+ * The tenant whose Enrollees the current thread is working with. Set by the TenantFilter for each request, and by
+ * background work for the tenant it was started for; threads that have not set one work with the default tenant.
+ * @author Michael Kulaga
+ */
+public final class TenantContext {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private TenantContext() {
+    }
+
+    /**
+     * @return the tenant of the current thread
+     */
+    public static String current() {
+
+        String tenant = CURRENT.get();
+        return tenant != null ? tenant : DEFAULT_TENANT;
+    }
+
+    /**
+     * Sets the tenant of the current thread
+     *
+     * @param tenant the tenant
+     * @return the tenant set before, to be passed to restore
+     */
+    public static String set(String tenant) {
+
+        String previous = CURRENT.get();
+        CURRENT.set(tenant);
+        return previous;
+    }
+
+    /**
+     * Restores the tenant set before a call to set
+     *
+     * @param previous the tenant returned by set
+     */
+    public static void restore(String previous) {
+
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Runs work as a tenant, restoring the current tenant afterwards
+     *
+     * @param tenant the tenant
+     * @param work the work to run
+     */
+    public static void run(String tenant, Runnable work) {
+        call(tenant, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Calls work as a tenant, restoring the current tenant afterwards
+     *
+     * @param tenant the tenant
+     * @param work the work to call
+     * @return what the work returned
+     */
+    public static <T> T call(String tenant, Supplier<T> work) {
+
+        String previous = set(tenant);
+        try {
+            return work.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Scopes a key to the tenant of the current thread, for caches and indexes shared by every tenant
+     *
+     * @param key the key, such as an Enrollee Id
+     * @return the key, unchanged for the default tenant
+     */
+    public static String scopedKey(String key) {
+        return scopedKey(current(), key);
+    }
+
+    /**
+     * Scopes a key to a tenant, for caches and indexes shared by every tenant
+     *
+     * @param tenant the tenant
+     * @param key the key, such as an Enrollee Id
+     * @return the key, unchanged for the default tenant
+     */
+    public static String scopedKey(String tenant, String key) {
+        return DEFAULT_TENANT.equals(tenant) ? key : tenant + '\0' + key;
+    }
+
+}
@@ -0,0 +1,178 @@
+package enrollment.tenancy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the tenant of each request, from a "/tenants/{tenant}" prefix on the path or else from the tenant
+ * header, and handles the request as that tenant, recording its metrics. Requests with neither are handled as
+ * the default tenant. Writes hold the tenant's write lock, so they pause while the tenant moves between partitions.
+ * Requests are told apart by endpoint, as the gRPC TenantServerInterceptor does, so the lookups answered to POST,
+ * whose bodies carry more Ids than a query string could, are reads too.
+ * @author Michael Kulaga
+ */
+@Component
+public class TenantFilter extends OncePerRequestFilter {
+
+    private static final Pattern TENANT_PATH = Pattern.compile("^/tenants/([^/]+)(/.*)$");
+
+    private static final Set<String> POST_READS = new HashSet<>(Arrays.asList("/enrollees/lookup", "/enrollees/active"));
+
+    private final TenantRegistry tenantRegistry;
+    private final ObjectMapper objectMapper;
+    private final String header;
+    private final long writePauseTimeoutMillis;
+
+    /**
+     * Constructor for TenantFilter
+     *
+     * @param tenantRegistry the TenantRegistry of known tenants
+     * @param objectMapper the ObjectMapper to write errors with
+     * @param header the name of the request header naming the tenant
+     * @param writePauseTimeoutMillis how long a write waits for a tenant to finish moving before it is refused
+     */
+    public TenantFilter(TenantRegistry tenantRegistry,
+                        ObjectMapper objectMapper,
+                        @Value("${enrollment.tenancy.header:X-Tenant-Id}") String header,
+                        @Value("${enrollment.tenancy.write-pause-timeout-ms:10000}") long writePauseTimeoutMillis) {
+        this.tenantRegistry = tenantRegistry;
+        this.objectMapper = objectMapper;
+        this.header = header;
+        this.writePauseTimeoutMillis = writePauseTimeoutMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        String tenant = request.getHeader(this.header);
+        HttpServletRequest tenantRequest = request;
+
+        Matcher path = TENANT_PATH.matcher(request.getRequestURI().substring(request.getContextPath().length()));
+        if (path.matches()) {
+            tenant = path.group(1);
+            tenantRequest = new TenantPathRequest(request, path.group(2));
+        }
+
+        if (tenant == null || tenant.isEmpty()) {
+            tenant = TenantContext.DEFAULT_TENANT;
+        } else if (!this.tenantRegistry.isKnown(tenant)) {
+            this.writeError(response, HttpStatus.NOT_FOUND, "Tenant Does Not Exist: " + tenant);
+            return;
+        }
+
+        Lock writeLock = null;
+        if (!isRead(tenantRequest)) {
+            writeLock = this.tenantRegistry.writeLock(tenant).readLock();
+            try {
+                if (!writeLock.tryLock(this.writePauseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    this.writeError(response, HttpStatus.SERVICE_UNAVAILABLE, "Tenant Is Moving Between Partitions: " + tenant);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.writeError(response, HttpStatus.SERVICE_UNAVAILABLE, "Interrupted Waiting For Tenant: " + tenant);
+                return;
+            }
+        }
+
+        String previous = TenantContext.set(tenant);
+        long start = System.nanoTime();
+        boolean failed = true;
+
+        try {
+            filterChain.doFilter(tenantRequest, response);
+            failed = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            TenantContext.restore(previous);
+            if (writeLock != null) {
+                writeLock.unlock();
+            }
+            this.tenantRegistry.metrics(tenant).record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Helper method to write an error in the shape of the DefaultExceptionHandler's errors
+     */
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+
+        Map<String, String> error = new LinkedHashMap<>();
+        error.put("exception", status.getReasonPhrase());
+        error.put("message", message);
+
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        this.objectMapper.writeValue(response.getOutputStream(), error);
+    }
+
+    /**
+     * Helper method to decide whether a request only reads, by its method or, for POST, by its endpoint
+     */
+    private static boolean isRead(HttpServletRequest request) {
+
+        String method = request.getMethod();
+        if ("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)) {
+            return true;
+        }
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return "POST".equals(method) && POST_READS.contains(path);
+    }
+
+    /**
+     * Request with the "/tenants/{tenant}" prefix taken off its path, so it is mapped as any other request
+     */
+    private static class TenantPathRequest extends HttpServletRequestWrapper {
+
+        private final String path;
+
+        private TenantPathRequest(HttpServletRequest request, String path) {
+            super(request);
+            this.path = path;
+        }
+
+        @Override
+        public String getRequestURI() {
+            return this.getContextPath() + this.path;
+        }
+
+        @Override
+        public StringBuffer getRequestURL() {
+
+            StringBuffer url = new StringBuffer(super.getRequestURL());
+            url.setLength(url.length() - super.getRequestURI().length());
+            return url.append(this.getRequestURI());
+        }
+
+        @Override
+        public String getServletPath() {
+            return this.path;
+        }
+
+        @Override
+        public String getPathInfo() {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package enrollment.tenancy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counts and latencies of one tenant since startup
+ * @author Michael Kulaga
+ */
+public class TenantMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maximumNanos = new AtomicLong();
+
+    /**
+     * Records a completed request
+     *
+     * @param nanos how long the request took
+     * @param failed whether the request failed
+     */
+    public void record(long nanos, boolean failed) {
+
+        this.requests.increment();
+        this.totalNanos.add(nanos);
+        if (failed) {
+            this.errors.increment();
+        }
+        this.maximumNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    //Getters
+
+    public long getRequests() {
+        return this.requests.sum();
+    }
+
+    public long getErrors() {
+        return this.errors.sum();
+    }
+
+    public double getAverageMillis() {
+
+        long requests = this.requests.sum();
+        return requests == 0 ? 0 : this.totalNanos.sum() / (double) requests / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaximumMillis() {
+        return this.maximumNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,120 @@
+package enrollment.tenancy;
+
+/**
+ * A move of a tenant's Enrollees and Dependents from one partition to another, and its progress
+ * @author Michael Kulaga
+ */
+public class TenantMove {
+
+    /**
+     * The state of a TenantMove
+     */
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String tenant;
+    private final String fromPartition;
+    private final String toPartition;
+    private final String startedAt;
+
+    private volatile State state = State.RUNNING;
+    private volatile long copiedEnrollees;
+    private volatile long copiedDependents;
+    private volatile long recopiedEnrollees;
+    private volatile long pauseMillis;
+    private volatile String finishedAt;
+    private volatile String error;
+
+    /**
+     * Constructor for TenantMove
+     *
+     * @param tenant the tenant being moved
+     * @param fromPartition the partition the tenant is stored in
+     * @param toPartition the partition the tenant is moving to
+     * @param startedAt when the move started
+     */
+    public TenantMove(String tenant, String fromPartition, String toPartition, String startedAt) {
+        this.tenant = tenant;
+        this.fromPartition = fromPartition;
+        this.toPartition = toPartition;
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * Records the end of the move
+     *
+     * @param finalState the state the move ended in
+     * @param finishedTime when the move ended
+     * @param failure the reason the move failed, or null
+     */
+    public void finish(State finalState, String finishedTime, String failure) {
+        this.finishedAt = finishedTime;
+        this.error = failure;
+        this.state = finalState;
+    }
+
+    //Getters and Setters
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getFromPartition() {
+        return fromPartition;
+    }
+
+    public String getToPartition() {
+        return toPartition;
+    }
+
+    public String getStartedAt() {
+        return startedAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getCopiedEnrollees() {
+        return copiedEnrollees;
+    }
+
+    public void setCopiedEnrollees(long copiedEnrollees) {
+        this.copiedEnrollees = copiedEnrollees;
+    }
+
+    public long getCopiedDependents() {
+        return copiedDependents;
+    }
+
+    public void setCopiedDependents(long copiedDependents) {
+        this.copiedDependents = copiedDependents;
+    }
+
+    public long getRecopiedEnrollees() {
+        return recopiedEnrollees;
+    }
+
+    public void setRecopiedEnrollees(long recopiedEnrollees) {
+        this.recopiedEnrollees = recopiedEnrollees;
+    }
+
+    public long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    public void setPauseMillis(long pauseMillis) {
+        this.pauseMillis = pauseMillis;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
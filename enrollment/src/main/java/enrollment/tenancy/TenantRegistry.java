@@ -0,0 +1,255 @@
+package enrollment.tenancy;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * The tenants of the Enrollment Application, and the partition each is stored in. A partition is a set of
+ * collections named after it, such as "enrollees_acme" and "dependents_acme" for the partition "acme", so every
+ * tenant has its own collections, indexes and hot documents. The default tenant is stored in the unsuffixed
+ * collections, and every other tenant starts out in the partition named after it. Tenants moved to another
+ * partition are recorded in the "tenant_partitions" collection, which every node reloads periodically, so nodes
+ * other than the one that ran a move switch to the new partition too.
+ * @author Michael Kulaga
+ */
+@Component
+public class TenantRegistry {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(TenantRegistry.class);
+
+    public static final String ENROLLEES = "enrollees";
+    public static final String DEPENDENTS = "dependents";
+
+    static final String ROUTES_COLLECTION = "tenant_partitions";
+    static final String PARTITION = "partition";
+
+    private static final Pattern NAME = Pattern.compile("[a-z0-9][a-z0-9-]{0,31}");
+
+    private final Set<String> tenants = new LinkedHashSet<>();
+    private final MongoOperations mongoOperations;
+    private final Map<String, String> partitions = new ConcurrentHashMap<>();
+    private final Map<String, ReadWriteLock> writeLocks = new ConcurrentHashMap<>();
+    private final Map<String, TenantMetrics> metrics = new ConcurrentHashMap<>();
+
+    private final long routesRefreshNanos;
+    private volatile boolean routesLoaded;
+    private volatile long routesLoadedAt;
+
+    /**
+     * Constructor for TenantRegistry
+     *
+     * @param tenants the tenants besides the default tenant, separated by commas
+     * @param routesRefreshSeconds the seconds after which the recorded partitions are loaded again, or 0 to load them once
+     * @param mongoOperations the MongoOperations to record partitions with, absent with the in-memory storage engine
+     */
+    public TenantRegistry(@Value("${enrollment.tenancy.tenants:}") String tenants,
+                          @Value("${enrollment.tenancy.routes-refresh-seconds:30}") long routesRefreshSeconds,
+                          Optional<MongoOperations> mongoOperations) {
+
+        this.tenants.add(TenantContext.DEFAULT_TENANT);
+
+        for (String tenant : tenants.split(",")) {
+            String trimmed = tenant.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (!isValidName(trimmed)) {
+                throw new IllegalArgumentException("Invalid Tenant Name: " + trimmed);
+            }
+            this.tenants.add(trimmed);
+        }
+
+        if (this.tenants.size() > 1 && !mongoOperations.isPresent()) {
+            throw new IllegalStateException("Tenants Are Not Supported By The In-Memory Storage Engine");
+        }
+
+        this.mongoOperations = mongoOperations.orElse(null);
+        this.routesLoaded = this.mongoOperations == null;
+        this.routesRefreshNanos = TimeUnit.SECONDS.toNanos(routesRefreshSeconds);
+
+        for (String tenant : this.tenants) {
+            this.writeLocks.put(tenant, new ReentrantReadWriteLock(true));
+            this.metrics.put(tenant, new TenantMetrics());
+        }
+    }
+
+    /**
+     * @return every tenant, the default tenant first
+     */
+    public Set<String> getTenants() {
+        return Collections.unmodifiableSet(this.tenants);
+    }
+
+    /**
+     * @param tenant the tenant
+     * @return true if the tenant is configured
+     */
+    public boolean isKnown(String tenant) {
+        return this.tenants.contains(tenant);
+    }
+
+    /**
+     * @param tenant the tenant
+     * @return the partition the tenant is stored in, which is empty for the unsuffixed collections
+     */
+    public String partitionOf(String tenant) {
+
+        if (this.isRoutesStale()) {
+            this.loadRoutes();
+        }
+
+        String partition = this.partitions.get(tenant);
+        if (partition != null) {
+            return partition;
+        }
+        return TenantContext.DEFAULT_TENANT.equals(tenant) ? "" : tenant;
+    }
+
+    /**
+     * @return the name of the Enrollee collection of the current tenant, as used by the mapping of Enrollee
+     */
+    public String enrolleeCollection() {
+        return collectionName(ENROLLEES, this.partitionOf(TenantContext.current()));
+    }
+
+    /**
+     * @return the name of the external Dependent collection of the current tenant
+     */
+    public String dependentCollection() {
+        return collectionName(DEPENDENTS, this.partitionOf(TenantContext.current()));
+    }
+
+    /**
+     * The lock every write for a tenant holds, shared with other writes, and held exclusively while a tenant
+     * moves between partitions
+     *
+     * @param tenant the tenant
+     * @return the lock of the tenant
+     */
+    public ReadWriteLock writeLock(String tenant) {
+        return this.writeLocks.get(tenant);
+    }
+
+    /**
+     * @param tenant the tenant
+     * @return the request metrics of the tenant
+     */
+    public TenantMetrics metrics(String tenant) {
+        return this.metrics.get(tenant);
+    }
+
+    /**
+     * Records that a tenant is now stored in another partition. The caller must hold the tenant's write lock
+     * exclusively.
+     *
+     * @param tenant the tenant
+     * @param partition the partition the tenant has been copied to
+     */
+    public void movePartition(String tenant, String partition) {
+
+        this.mongoOperations.upsert(Query.query(Criteria.where("_id").is(tenant)), new Update().set(PARTITION, partition), ROUTES_COLLECTION);
+        this.partitions.put(tenant, partition);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Tenant " + tenant + " Moved To Partition " + partition);
+        }
+    }
+
+    /**
+     * Checks whether a partition is in use by any tenant
+     *
+     * @param partition the partition
+     * @return true if a tenant is stored in it
+     */
+    public boolean isPartitionInUse(String partition) {
+
+        for (String tenant : this.tenants) {
+            if (this.partitionOf(tenant).equals(partition)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a write for a tenant while holding its write lock, shared with other writes
+     *
+     * @param tenant the tenant
+     * @param write the write to run
+     */
+    public void runWrite(String tenant, Runnable write) {
+
+        Lock lock = this.writeLocks.get(tenant).readLock();
+        lock.lock();
+        try {
+            TenantContext.run(tenant, write);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param base the base name of a collection, such as "enrollees"
+     * @param partition the partition
+     * @return the name of the collection in the partition
+     */
+    public static String collectionName(String base, String partition) {
+        return partition.isEmpty() ? base : base + "_" + partition;
+    }
+
+    /**
+     * @param name a tenant or partition name
+     * @return true if the name is lower case letters, digits and dashes, at most 32 long
+     */
+    public static boolean isValidName(String name) {
+        return name != null && NAME.matcher(name).matches();
+    }
+
+    /**
+     * Helper method to check whether the recorded partitions have not been loaded yet, or are due to be loaded again
+     */
+    private boolean isRoutesStale() {
+
+        if (this.mongoOperations == null) {
+            return false;
+        }
+        return !this.routesLoaded || this.routesRefreshNanos > 0 && System.nanoTime() - this.routesLoadedAt >= this.routesRefreshNanos;
+    }
+
+    /**
+     * Helper method to load the recorded partitions. If the database is unavailable the lookup fails, rather than
+     * risk using the partition a tenant has moved from, and loading is retried on the next lookup.
+     */
+    private synchronized void loadRoutes() {
+
+        if (!this.isRoutesStale()) {
+            return;
+        }
+
+        for (Document route : this.mongoOperations.findAll(Document.class, ROUTES_COLLECTION)) {
+            this.partitions.put(route.get("_id").toString(), route.getString(PARTITION));
+        }
+        this.routesLoadedAt = System.nanoTime();
+        this.routesLoaded = true;
+    }
+
+}
@@ -0,0 +1,46 @@
+package enrollment.tenancy;
+
+/**
+ * A tenant, the partition it is stored in, its request metrics and its latest move
+ * @author Michael Kulaga
+ */
+public class TenantStatus {
+
+    private final String tenant;
+    private final String partition;
+    private final TenantMetrics metrics;
+    private final TenantMove lastMove;
+
+    /**
+     * Constructor for TenantStatus
+     *
+     * @param tenant the tenant
+     * @param partition the partition the tenant is stored in
+     * @param metrics the request metrics of the tenant
+     * @param lastMove the latest move of the tenant, or null
+     */
+    public TenantStatus(String tenant, String partition, TenantMetrics metrics, TenantMove lastMove) {
+        this.tenant = tenant;
+        this.partition = partition;
+        this.metrics = metrics;
+        this.lastMove = lastMove;
+    }
+
+    //Getters
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getPartition() {
+        return partition;
+    }
+
+    public TenantMetrics getMetrics() {
+        return metrics;
+    }
+
+    public TenantMove getLastMove() {
+        return lastMove;
+    }
+}
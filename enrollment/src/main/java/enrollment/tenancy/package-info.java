@@ -0,0 +1,5 @@
+/**
+ * Tenant partitioning for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.tenancy;
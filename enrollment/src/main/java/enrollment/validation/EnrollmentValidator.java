@@ -1,12 +1,17 @@
 package enrollment.validation;
 
+import enrollment.common.ActivationJobRequest;
 import enrollment.exceptions.ValidationException;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Validator for Enrollment Application
@@ -15,6 +20,20 @@ import java.text.SimpleDateFormat;
 @Service
 public class EnrollmentValidator {
 
+    //Dates of Birth are compared as strings in range queries, so they must be zero-padded to order as dates do
+    private static final Pattern DATE_OF_BIRTH = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+    private final boolean numericIds;
+
+    /**
+     * Constructor for EnrollmentValidator
+     *
+     * @param numericIds whether Ids are stored as 64-bit integers, which every Id must then be written as
+     */
+    public EnrollmentValidator(@Value("${enrollment.storage.numeric-ids:false}") boolean numericIds) {
+        this.numericIds = numericIds;
+    }
+
     /**
      * Validates Enrollees and Dependents
      * @param id the Id to validate
@@ -28,12 +47,120 @@ public class EnrollmentValidator {
         this.validateDateOfBirth(dateOfBirth);
     }
 
+    /**
+     * Validates the Id of an existing Enrollee or Dependent, as given in a request path. Ids with leading zeros are
+     * accepted, as they may have been stored before numeric Ids were enabled, and are stored as strings.
+     * @param id the Id to validate
+     */
+    public void idValidator(String id) {
+
+        this.validateNumeric(id);
+
+    }
+
+    /**
+     * Validates a Name given on its own, such as by a patch
+     * @param name the Name to validate
+     */
+    public void nameValidator(String name) {
+
+        this.validateName(name);
+
+    }
+
+    /**
+     * Validates a Date of Birth given on its own, such as by a patch
+     * @param dateOfBirth the Date of Birth to validate
+     */
+    public void dateOfBirthValidator(String dateOfBirth) {
+
+        this.validateDateOfBirth(dateOfBirth);
+
+    }
+
+    /**
+     * Validates the Ids of a lookup
+     * @param ids the Ids to validate
+     * @param maximumIds the most Ids a single lookup may ask for
+     */
+    public void lookupValidator(List<String> ids, int maximumIds) {
+
+        if (ids == null || ids.isEmpty()) {
+            throw new ValidationException("Validation Error: Ids Must Not Be Empty");
+        }
+
+        if (ids.size() > maximumIds) {
+            throw new ValidationException("Validation Error: At Most " + maximumIds + " Ids May Be Looked Up At Once");
+        }
+
+        for (String id : ids) {
+            this.validateId(id);
+        }
+
+    }
+
+    /**
+     * Validates the criteria of an activation job
+     * @param request the ActivationJobRequest to validate
+     */
+    public void activationJobValidator(ActivationJobRequest request) {
+
+        if (request.getActivationStatus() == null) {
+            throw new ValidationException("Validation Error: Activation Status Must Not Be Blank");
+        }
+
+        boolean hasIds = request.getIds() != null && !request.getIds().isEmpty();
+
+        if (!hasIds && request.getCurrentStatus() == null && request.getDateOfBirthFrom() == null && request.getDateOfBirthTo() == null) {
+            throw new ValidationException("Validation Error: At Least One Of Ids, Current Status Or Date Of Birth Range Must Be Given");
+        }
+
+        if (request.getCurrentStatus() != null && request.getCurrentStatus().equals(request.getActivationStatus())) {
+            throw new ValidationException("Validation Error: Current Status Must Differ From Activation Status");
+        }
+
+        if (hasIds) {
+            for (String id : request.getIds()) {
+                this.validateId(id);
+            }
+        }
+
+        if (request.getDateOfBirthFrom() != null) {
+            this.validateDateOfBirth(request.getDateOfBirthFrom());
+        }
+
+        if (request.getDateOfBirthTo() != null) {
+            this.validateDateOfBirth(request.getDateOfBirthTo());
+        }
+
+        if (request.getDateOfBirthFrom() != null && request.getDateOfBirthTo() != null
+                && request.getDateOfBirthFrom().compareTo(request.getDateOfBirthTo()) > 0) {
+            throw new ValidationException("Validation Error: Date Of Birth From Must Not Be After Date Of Birth To");
+        }
+
+    }
+
     /**
      * Validates Id
      * @param id the Id to validate
      */
     private void validateId(String id) {
 
+        this.validateNumeric(id);
+
+        //two Ids differing only in leading zeros would be stored as the same number
+        if (this.numericIds && !id.equals(String.valueOf(NumberUtils.toLong(id, -1)))) {
+            throw new ValidationException("Validation Error: Ids Must Be Numbers Without Leading Zeros Of At Most " + Long.MAX_VALUE);
+        }
+
+    }
+
+    /**
+     * Validates that an Id is a number
+     * @param id the Id to validate
+     */
+    private void validateNumeric(String id) {
+
         if (StringUtils.isBlank(id)) {
             throw new ValidationException("Validation Error: Id Must Not Be Blank");
         }
@@ -66,6 +193,10 @@ public class EnrollmentValidator {
             throw new ValidationException("Validation Error: Date Of Birth Must Not Be Blank");
         }
 
+        if (!DATE_OF_BIRTH.matcher(dateOfBirth).matches()) {
+            throw new ValidationException("Validation Error: Date Of Birth Is Not In A Valid Format (yyyy-MM-dd)");
+        }
+
         DateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
         sdf.setLenient(false);
         try {
@@ -0,0 +1,118 @@
+package enrollment.warmup;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens connections of the MongoDb connection pool before the application is ready, so the first requests do not
+ * wait for connections to be opened. The pool is told to keep at least that many connections, and the connections
+ * are opened by running that many pings at once until the pool holds them.
+ * @author Michael Kulaga
+ */
+@Component
+@Profile("!memory")
+public class ConnectionPoolWarmer implements ConnectionPoolListener, MongoClientSettingsBuilderCustomizer {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ConnectionPoolWarmer.class);
+
+    private static final Document PING = new Document("ping", 1);
+
+    private final int connections;
+    private final AtomicInteger open = new AtomicInteger();
+
+    /**
+     * Constructor for ConnectionPoolWarmer
+     *
+     * @param enabled whether the application warms up on startup
+     * @param connections the number of connections to open, or 0 to open none
+     */
+    public ConnectionPoolWarmer(@Value("${enrollment.warm-up.enabled:false}") boolean enabled,
+                                @Value("${enrollment.warm-up.connections:10}") int connections) {
+        this.connections = enabled ? Math.max(0, connections) : 0;
+    }
+
+    @Override
+    public void customize(MongoClientSettings.Builder clientSettingsBuilder) {
+
+        clientSettingsBuilder.applyToConnectionPoolSettings(pool -> {
+            pool.addConnectionPoolListener(this);
+            if (this.connections > 0) {
+                pool.minSize(this.connections);
+            }
+        });
+    }
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        this.open.incrementAndGet();
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        this.open.decrementAndGet();
+    }
+
+    /**
+     * Opens connections until the pool holds as many as it was told to keep, or the timeout passes
+     *
+     * @param mongoOperations the MongoOperations to ping through
+     * @param timeoutMillis how long to keep opening connections
+     * @return the number of connections open
+     */
+    int openConnections(MongoOperations mongoOperations, long timeoutMillis) {
+
+        if (this.connections == 0) {
+            return this.open.get();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(this.connections, runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            //each ping holds a connection while it runs, so pings running at once need as many connections
+            while (this.open.get() < this.connections && System.nanoTime() < deadline) {
+                List<CompletableFuture<Void>> pings = new ArrayList<>();
+                for (int i = 0; i < this.connections; i++) {
+                    pings.add(CompletableFuture.runAsync(() -> mongoOperations.executeCommand(PING), executor));
+                }
+                CompletableFuture.allOf(pings.toArray(new CompletableFuture<?>[0])).join();
+            }
+        } catch (CompletionException e) {
+            if (!(e.getCause() instanceof DataAccessException)) {
+                throw e;
+            }
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Unable To Open Connections To MongoDb: " + e.getCause().getLocalizedMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return this.open.get();
+    }
+
+}
@@ -0,0 +1,189 @@
+package enrollment.warmup;
+
+import enrollment.tenancy.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Counts the reads of each Enrollee, so the hottest Enrollees of a run are written to a file on shutdown and
+ * preloaded by the next run's warm-up. At most ten times as many Enrollees as are kept are counted: past that the
+ * least read are forgotten and the counts of the rest halved, so Enrollees that were hot long ago make way for
+ * those hot now.
+ * @author Michael Kulaga
+ */
+@Component
+public class HotEnrollees {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(HotEnrollees.class);
+
+    private static final char SEPARATOR = '\t';
+
+    private final ConcurrentHashMap<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+    private final Path file;
+    private final int size;
+    private final int capacity;
+    private volatile boolean recording;
+
+    /**
+     * Constructor for HotEnrollees
+     *
+     * @param enabled whether the application warms up on startup, so reads are counted at all
+     * @param file the file the hottest Enrollees are written to and read from
+     * @param size the number of hottest Enrollees kept, or 0 to count none
+     */
+    public HotEnrollees(@Value("${enrollment.warm-up.enabled:false}") boolean enabled,
+                        @Value("${enrollment.warm-up.hot-ids-file:warm-up/hot-enrollees.txt}") String file,
+                        @Value("${enrollment.warm-up.hot-ids:1000}") int size) {
+        this.file = Paths.get(file);
+        this.size = Math.max(0, size);
+        this.capacity = this.size * 10;
+        this.recording = enabled && this.size > 0;
+    }
+
+    /**
+     * Counts a read of an Enrollee of the current tenant
+     *
+     * @param enrolleeId the Id of the Enrollee read
+     */
+    public void record(String enrolleeId) {
+
+        if (!this.recording || enrolleeId == null) {
+            return;
+        }
+
+        this.counts.computeIfAbsent(TenantContext.current() + SEPARATOR + enrolleeId, key -> new AtomicLong()).incrementAndGet();
+
+        if (this.counts.size() > this.capacity && this.pruning.compareAndSet(false, true)) {
+            try {
+                this.prune();
+            } finally {
+                this.pruning.set(false);
+            }
+        }
+    }
+
+    /**
+     * Counts a read of many Enrollees of the current tenant
+     *
+     * @param enrolleeIds the Ids of the Enrollees read
+     */
+    public void recordAll(List<String> enrolleeIds) {
+
+        if (this.recording && enrolleeIds != null) {
+            enrolleeIds.forEach(this::record);
+        }
+    }
+
+    /**
+     * Stops or resumes counting reads, so the warm-up's own reads are not counted
+     *
+     * @param paused whether counting is paused
+     */
+    void pause(boolean paused) {
+        this.recording = !paused && this.size > 0;
+    }
+
+    /**
+     * Reads the hottest Enrollees written by the previous run
+     *
+     * @return the hottest Enrollees, hottest first, by tenant, or none if there is no file
+     */
+    Map<String, List<String>> load() {
+
+        Map<String, List<String>> hottest = new LinkedHashMap<>();
+
+        if (this.size == 0 || !Files.exists(this.file)) {
+            return hottest;
+        }
+
+        try {
+            for (String line : Files.readAllLines(this.file, StandardCharsets.UTF_8)) {
+                int separator = line.indexOf(SEPARATOR);
+                if (separator > 0 && separator < line.length() - 1) {
+                    hottest.computeIfAbsent(line.substring(0, separator), tenant -> new ArrayList<>()).add(line.substring(separator + 1));
+                }
+            }
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Unable To Read Hot Enrollees From " + this.file + ": " + e.getLocalizedMessage());
+            }
+        }
+        return hottest;
+    }
+
+    /**
+     * Writes the hottest Enrollees counted, replacing those of the previous run only if any were counted
+     */
+    @PreDestroy
+    public void save() {
+
+        List<String> top = this.top();
+        if (top.isEmpty()) {
+            return;
+        }
+
+        try {
+            Path directory = this.file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, this.file.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (String key : top) {
+                    writer.write(key);
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Unable To Write Hot Enrollees To " + this.file + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Helper method to list the keys of the most read Enrollees, most read first
+     */
+    private List<String> top() {
+
+        return this.counts.entrySet().stream()
+                .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().get()))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(this.size)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Helper method to forget all but the most read Enrollees and halve their counts
+     */
+    private void prune() {
+
+        Set<String> kept = new HashSet<>(this.top());
+        this.counts.keySet().retainAll(kept);
+        this.counts.values().forEach(count -> count.updateAndGet(value -> Math.max(1, value / 2)));
+    }
+
+}
@@ -0,0 +1,83 @@
+package enrollment.warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A uniform sample of request latencies of bounded size, from which percentiles are read. Once the sample is
+ * full, each further latency replaces a random one with the probability of it having been kept, so the sample
+ * stays uniform over every latency added however many there were.
+ * @author Michael Kulaga
+ */
+class LatencySample {
+
+    private final long[] nanos;
+    private long count;
+
+    /**
+     * Constructor for LatencySample
+     *
+     * @param capacity the most latencies kept
+     */
+    LatencySample(int capacity) {
+        this.nanos = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds a latency
+     *
+     * @param latencyNanos the latency in nanoseconds
+     */
+    synchronized void add(long latencyNanos) {
+
+        if (this.count < this.nanos.length) {
+            this.nanos[(int) this.count] = latencyNanos;
+        } else {
+            long slot = ThreadLocalRandom.current().nextLong(this.count + 1);
+            if (slot < this.nanos.length) {
+                this.nanos[(int) slot] = latencyNanos;
+            }
+        }
+        this.count++;
+    }
+
+    /**
+     * @return the number of latencies added, including those no longer kept
+     */
+    synchronized long count() {
+        return this.count;
+    }
+
+    /**
+     * Reads a percentile of the latencies kept
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency at the percentile in microseconds, or -1 if no latency was added
+     */
+    synchronized long percentileMicros(double percentile) {
+        return percentileMicros(this.nanos, 0, (int) Math.min(this.count, this.nanos.length), percentile);
+    }
+
+    /**
+     * Reads a percentile of a range of latencies
+     *
+     * @param nanos the latencies in nanoseconds
+     * @param from the index of the first latency of the range
+     * @param to the index after the last latency of the range
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency at the percentile in microseconds, or -1 if the range is empty
+     */
+    static long percentileMicros(long[] nanos, int from, int to, double percentile) {
+
+        int size = to - from;
+        if (size <= 0) {
+            return -1;
+        }
+
+        long[] sorted = Arrays.copyOfRange(nanos, from, to);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))] / 1000;
+    }
+
+}
@@ -0,0 +1,391 @@
+package enrollment.warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import enrollment.common.Enrollee;
+import enrollment.configuration.StartupOrder;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Warms the application up before it reports ready. Runs once the web server is listening and the in-memory indexes
+ * are rebuilt, as a listener of the ApplicationReadyEvent, and before Spring Boot marks the application as accepting
+ * traffic, which it only does once every such listener has returned: opens MongoDb connections, reads the hottest Enrollees of the previous run, then sends read-only requests to the
+ * application itself, so they run through the same filters, controllers, services, validation and storage as real
+ * requests and leave the JIT compiler, the connection pool and the caches warm. Then times the first minute of
+ * real requests, to report how much the warm-up lowered their latency.
+ * @author Michael Kulaga
+ */
+@Component
+public class StartupWarmUp extends OncePerRequestFilter {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    //the first and last requests of the warm-up whose latencies are reported
+    private static final int WINDOW = 200;
+
+    private static final long FIRST_MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int LOOKUP_BATCH_SIZE = 50;
+    private static final int TRAFFIC_BATCH_SIZE = 10;
+
+    private final ApplicationAvailability applicationAvailability;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Environment environment;
+    private final EnrollmentDAO enrollmentDAO;
+    private final TenantRegistry tenantRegistry;
+    private final HotEnrollees hotEnrollees;
+    private final ObjectProvider<ConnectionPoolWarmer> poolWarmer;
+    private final ObjectProvider<MongoOperations> mongoOperations;
+    private final boolean enabled;
+    private final int maximumRequests;
+    private final long maximumDurationMillis;
+    private final int threads;
+    private final int sampleSize;
+    private final int lookupBatchSize;
+    private final String tenantHeader;
+
+    private final LatencySample firstMinute = new LatencySample(10000);
+    private final AtomicBoolean firstMinuteReported = new AtomicBoolean();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private volatile String state;
+    private volatile long startedNanos;
+    private volatile long durationNanos;
+    private volatile long readyNanos;
+    private volatile int connectionsOpen;
+    private volatile int enrolleesPreloaded;
+    private volatile long[] latencies = new long[0];
+    private volatile int completed;
+
+    /**
+     * Constructor for StartupWarmUp
+     *
+     * @param applicationAvailability the ApplicationAvailability reporting whether the application accepts traffic
+     * @param eventPublisher the ApplicationEventPublisher to change the readiness of the application with
+     * @param environment the Environment holding the port the web server listens on
+     * @param enrollmentDAO the EnrollmentDAO to read Enrollees to request from, when no hot Enrollees were recorded
+     * @param tenantRegistry the TenantRegistry of known tenants
+     * @param hotEnrollees the HotEnrollees of the previous run
+     * @param poolWarmer the ConnectionPoolWarmer to open connections with, absent with the in-memory storage engine
+     * @param mongoOperations the MongoOperations to open connections through, absent with the in-memory storage engine
+     * @param enabled whether the application warms up on startup
+     * @param maximumRequests the most synthetic requests to send
+     * @param maximumDurationSeconds the longest to send synthetic requests for
+     * @param threads the number of synthetic requests sent at once
+     * @param sampleSize the number of Enrollees to read and request, when no hot Enrollees were recorded
+     * @param lookupMaximumIds the most Ids a lookup may ask for
+     * @param tenantHeader the name of the request header naming the tenant
+     */
+    public StartupWarmUp(ApplicationAvailability applicationAvailability,
+                         ApplicationEventPublisher eventPublisher,
+                         Environment environment,
+                         EnrollmentDAO enrollmentDAO,
+                         TenantRegistry tenantRegistry,
+                         HotEnrollees hotEnrollees,
+                         ObjectProvider<ConnectionPoolWarmer> poolWarmer,
+                         ObjectProvider<MongoOperations> mongoOperations,
+                         @Value("${enrollment.warm-up.enabled:false}") boolean enabled,
+                         @Value("${enrollment.warm-up.requests:10000}") int maximumRequests,
+                         @Value("${enrollment.warm-up.max-duration-seconds:60}") long maximumDurationSeconds,
+                         @Value("${enrollment.warm-up.threads:4}") int threads,
+                         @Value("${enrollment.warm-up.hot-ids:1000}") int sampleSize,
+                         @Value("${enrollment.lookup.maximum-ids:1000}") int lookupMaximumIds,
+                         @Value("${enrollment.tenancy.header:X-Tenant-Id}") String tenantHeader) {
+        this.applicationAvailability = applicationAvailability;
+        this.eventPublisher = eventPublisher;
+        this.environment = environment;
+        this.enrollmentDAO = enrollmentDAO;
+        this.tenantRegistry = tenantRegistry;
+        this.hotEnrollees = hotEnrollees;
+        this.poolWarmer = poolWarmer;
+        this.mongoOperations = mongoOperations;
+        this.enabled = enabled;
+        this.maximumRequests = Math.max(0, maximumRequests);
+        this.maximumDurationMillis = TimeUnit.SECONDS.toMillis(maximumDurationSeconds);
+        this.threads = Math.max(1, threads);
+        this.sampleSize = Math.max(0, sampleSize);
+        this.lookupBatchSize = Math.max(1, Math.min(LOOKUP_BATCH_SIZE, lookupMaximumIds));
+        this.tenantHeader = tenantHeader;
+        this.state = enabled ? "NOT_STARTED" : "DISABLED";
+    }
+
+    /**
+     * Warms the application up once it is running, after the in-memory indexes are rebuilt
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(StartupOrder.WARM_UP)
+    public void run() {
+
+        if (!this.enabled) {
+            //the first minute is still timed, to compare against a node that warms up
+            this.readyNanos = System.nanoTime();
+            return;
+        }
+
+        AvailabilityChangeEvent.publish(this.eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+
+        this.state = "WARMING_UP";
+        this.startedNanos = System.nanoTime();
+        this.hotEnrollees.pause(true);
+
+        try {
+            this.warmUp();
+            this.state = "COMPLETED";
+        } catch (RuntimeException e) {
+            this.state = "FAILED";
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Warm-Up Failed, Continuing Startup: " + e.getLocalizedMessage());
+            }
+        } finally {
+            this.hotEnrollees.pause(false);
+            this.durationNanos = System.nanoTime() - this.startedNanos;
+            this.readyNanos = System.nanoTime();
+        }
+
+        if ("COMPLETED".equals(this.state) && LOGGER.isInfoEnabled()) {
+            WarmUpStatus status = this.getStatus();
+            LOGGER.info("Warm-Up Completed In " + status.getDurationMillis() + " ms: " + status.getConnectionsOpen() + " MongoDb Connections Open, "
+                    + status.getEnrolleesPreloaded() + " Hot Enrollees Preloaded, " + status.getRequests() + " Requests Sent, "
+                    + "p99 " + status.getColdP99Micros() + " us Cold And " + status.getWarmedP99Micros() + " us Warmed");
+        }
+    }
+
+    /**
+     * @return the state of the warm-up and whether the application is ready
+     */
+    public WarmUpStatus getStatus() {
+
+        long[] sent = this.latencies;
+        int done = this.completed;
+        long duration = this.durationNanos > 0 || this.startedNanos == 0 ? this.durationNanos : System.nanoTime() - this.startedNanos;
+
+        return new WarmUpStatus(this.state,
+                this.applicationAvailability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC,
+                TimeUnit.NANOSECONDS.toMillis(duration),
+                this.connectionsOpen,
+                this.enrolleesPreloaded,
+                this.requests.get(),
+                this.failedRequests.get(),
+                LatencySample.percentileMicros(sent, 0, Math.min(WINDOW, done), 50),
+                LatencySample.percentileMicros(sent, 0, Math.min(WINDOW, done), 99),
+                LatencySample.percentileMicros(sent, Math.max(0, done - WINDOW), done, 50),
+                LatencySample.percentileMicros(sent, Math.max(0, done - WINDOW), done, 99),
+                this.firstMinute.count(),
+                this.firstMinute.percentileMicros(50),
+                this.firstMinute.percentileMicros(99));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        long ready = this.readyNanos;
+        long start = System.nanoTime();
+
+        if (ready == 0 || start - ready > FIRST_MINUTE_NANOS || request.getRequestURI().contains("/admin/")) {
+            filterChain.doFilter(request, response);
+            if (ready != 0 && start - ready > FIRST_MINUTE_NANOS && this.firstMinuteReported.compareAndSet(false, true)) {
+                this.reportFirstMinute();
+            }
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            this.firstMinute.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Helper method to open connections, preload the hot Enrollees and send the synthetic requests
+     */
+    private void warmUp() {
+
+        ConnectionPoolWarmer warmer = this.poolWarmer.getIfAvailable();
+        MongoOperations operations = this.mongoOperations.getIfAvailable();
+        if (warmer != null && operations != null) {
+            this.connectionsOpen = warmer.openConnections(operations, this.maximumDurationMillis);
+        }
+
+        String port = this.environment.getProperty("local.server.port");
+        if (port == null || this.maximumRequests == 0) {
+            return;
+        }
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(10));
+        requestFactory.setReadTimeout((int) TimeUnit.SECONDS.toMillis(30));
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        String baseUrl = "http://localhost:" + port + this.environment.getProperty("server.servlet.context-path", "");
+
+        Map<String, List<String>> hot = this.hotEnrollees.load();
+        hot.keySet().removeIf(tenant -> !this.tenantRegistry.isKnown(tenant));
+        Map<String, List<String>> candidates = hot.isEmpty() ? this.sample() : hot;
+
+        //the Enrollees found by the preload are the ones requested one at a time, as reading one that does not exist fails
+        List<String[]> found = new ArrayList<>();
+        candidates.forEach((tenant, ids) -> {
+            for (int start = 0; start < ids.size(); start += this.lookupBatchSize) {
+                List<String> batch = ids.subList(start, Math.min(start + this.lookupBatchSize, ids.size()));
+                JsonNode response = this.send(restTemplate, baseUrl + "/enrollees/lookup", HttpMethod.POST, tenant, batch, JsonNode.class);
+                if (response != null) {
+                    response.path("enrollees").forEach(enrollee -> found.add(new String[]{tenant, enrollee.path("id").asText()}));
+                }
+            }
+        });
+        if (!hot.isEmpty()) {
+            this.enrolleesPreloaded = found.size();
+        }
+        boolean exist = !found.isEmpty();
+        if (!exist) {
+            //lookups of Ids that do not exist still run through every layer
+            IntStream.rangeClosed(1, TRAFFIC_BATCH_SIZE).forEach(id -> found.add(new String[]{TenantContext.DEFAULT_TENANT, String.valueOf(id)}));
+        }
+
+        this.traffic(restTemplate, baseUrl, found, exist);
+    }
+
+    /**
+     * Helper method to send the synthetic requests, from several threads, until enough were sent or time ran out
+     */
+    private void traffic(RestTemplate restTemplate, String baseUrl, List<String[]> enrollees, boolean exist) {
+
+        this.latencies = new long[this.maximumRequests];
+        long deadline = this.startedNanos + TimeUnit.MILLISECONDS.toNanos(this.maximumDurationMillis);
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "startup-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<CompletableFuture<Void>> workers = new ArrayList<>();
+            for (int worker = 0; worker < this.threads; worker++) {
+                workers.add(CompletableFuture.runAsync(() -> {
+                    int index;
+                    while (System.nanoTime() < deadline && (index = next.getAndIncrement()) < this.maximumRequests) {
+                        String[] enrollee = enrollees.get(index % enrollees.size());
+                        List<String> batch = IntStream.range(index, index + TRAFFIC_BATCH_SIZE)
+                                .mapToObj(i -> enrollees.get(i % enrollees.size())[1])
+                                .collect(Collectors.toList());
+
+                        long start = System.nanoTime();
+                        //reads of single Enrollees are only sent for Enrollees known to exist
+                        switch (exist ? index % 4 : 2 + index % 2) {
+                            case 0:
+                                this.send(restTemplate, baseUrl + "/enrollees/" + enrollee[1], HttpMethod.GET, enrollee[0], null, byte[].class);
+                                break;
+                            case 1:
+                                this.send(restTemplate, baseUrl + "/enrollees/" + enrollee[1] + "/active", HttpMethod.GET, enrollee[0], null, byte[].class);
+                                break;
+                            case 2:
+                                this.send(restTemplate, baseUrl + "/enrollees/lookup", HttpMethod.POST, enrollee[0], batch, byte[].class);
+                                break;
+                            default:
+                                this.send(restTemplate, baseUrl + "/enrollees/active", HttpMethod.POST, enrollee[0], batch, byte[].class);
+                                break;
+                        }
+                        this.latencies[index] = System.nanoTime() - start;
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        this.completed = Math.min(next.get(), this.maximumRequests);
+    }
+
+    /**
+     * Helper method to send one synthetic request as a tenant, counting it and whether it failed
+     */
+    private <T> T send(RestTemplate restTemplate, String url, HttpMethod method, String tenant, List<String> ids, Class<T> responseType) {
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(this.tenantHeader, tenant);
+        HttpEntity<Object> entity = new HttpEntity<>(ids != null ? Collections.singletonMap("ids", ids) : null, headers);
+
+        this.requests.incrementAndGet();
+        try {
+            return restTemplate.exchange(url, method, entity, responseType).getBody();
+        } catch (RestClientException e) {
+            this.failedRequests.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Helper method to read the Ids of the first Enrollees of the default tenant, when no hot Enrollees were recorded
+     */
+    private Map<String, List<String>> sample() {
+
+        Map<String, List<String>> sample = new LinkedHashMap<>();
+
+        List<String> ids = TenantContext.call(TenantContext.DEFAULT_TENANT, () -> this.enrollmentDAO.findAll(PageRequest.of(0, Math.max(1, this.sampleSize))))
+                .map(Enrollee::getId)
+                .getContent();
+        if (!ids.isEmpty()) {
+            sample.put(TenantContext.DEFAULT_TENANT, ids);
+        }
+        return sample;
+    }
+
+    /**
+     * Helper method to log the latencies of the first minute of requests against those of the first synthetic requests
+     */
+    private void reportFirstMinute() {
+
+        if (LOGGER.isInfoEnabled()) {
+            WarmUpStatus status = this.getStatus();
+            LOGGER.info("First Minute After Warm-Up: " + status.getFirstMinuteRequests() + " Requests, p50 " + status.getFirstMinuteP50Micros()
+                    + " us, p99 " + status.getFirstMinuteP99Micros() + " us, " + status.getFirstMinuteP99ImprovementPercent()
+                    + "% Below The p99 Of The First Warm-Up Requests");
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package enrollment.warmup;
+
+/**
+ * The state of the startup warm-up: whether the application is ready, what the warm-up did and how long it took,
+ * and the latencies of its first and last requests and of the first minute of requests once ready
+ * @author Michael Kulaga
+ */
+public class WarmUpStatus {
+
+    private final String state;
+    private final boolean ready;
+    private final long durationMillis;
+    private final int connectionsOpen;
+    private final int enrolleesPreloaded;
+    private final long requests;
+    private final long failedRequests;
+    private final long coldP50Micros;
+    private final long coldP99Micros;
+    private final long warmedP50Micros;
+    private final long warmedP99Micros;
+    private final long firstMinuteRequests;
+    private final long firstMinuteP50Micros;
+    private final long firstMinuteP99Micros;
+
+    /**
+     * Constructor for WarmUpStatus
+     *
+     * @param state DISABLED, WARMING_UP, COMPLETED or FAILED
+     * @param ready whether the application accepts traffic
+     * @param durationMillis how long the warm-up took, so far if it is still running
+     * @param connectionsOpen the MongoDb connections open once the pool was warmed
+     * @param enrolleesPreloaded the hottest Enrollees of the previous run that were read
+     * @param requests the synthetic requests sent
+     * @param failedRequests the synthetic requests that failed
+     * @param coldP50Micros the median latency of the first synthetic requests, or -1
+     * @param coldP99Micros the 99th percentile latency of the first synthetic requests, or -1
+     * @param warmedP50Micros the median latency of the last synthetic requests, or -1
+     * @param warmedP99Micros the 99th percentile latency of the last synthetic requests, or -1
+     * @param firstMinuteRequests the requests served in the first minute after the warm-up
+     * @param firstMinuteP50Micros the median latency of the first minute of requests, or -1
+     * @param firstMinuteP99Micros the 99th percentile latency of the first minute of requests, or -1
+     */
+    public WarmUpStatus(String state, boolean ready, long durationMillis, int connectionsOpen, int enrolleesPreloaded,
+                        long requests, long failedRequests, long coldP50Micros, long coldP99Micros, long warmedP50Micros,
+                        long warmedP99Micros, long firstMinuteRequests, long firstMinuteP50Micros, long firstMinuteP99Micros) {
+        this.state = state;
+        this.ready = ready;
+        this.durationMillis = durationMillis;
+        this.connectionsOpen = connectionsOpen;
+        this.enrolleesPreloaded = enrolleesPreloaded;
+        this.requests = requests;
+        this.failedRequests = failedRequests;
+        this.coldP50Micros = coldP50Micros;
+        this.coldP99Micros = coldP99Micros;
+        this.warmedP50Micros = warmedP50Micros;
+        this.warmedP99Micros = warmedP99Micros;
+        this.firstMinuteRequests = firstMinuteRequests;
+        this.firstMinuteP50Micros = firstMinuteP50Micros;
+        this.firstMinuteP99Micros = firstMinuteP99Micros;
+    }
+
+    /**
+     * @return how much lower the 99th percentile latency of the first minute is than that of the first synthetic
+     * requests, which stand in for a first minute without a warm-up, as a percentage, or 0 if either is unknown
+     */
+    public long getFirstMinuteP99ImprovementPercent() {
+
+        if (this.coldP99Micros <= 0 || this.firstMinuteP99Micros < 0) {
+            return 0;
+        }
+        return Math.round(100.0 * (this.coldP99Micros - this.firstMinuteP99Micros) / this.coldP99Micros);
+    }
+
+    //Getters
+
+    public String getState() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getConnectionsOpen() {
+        return connectionsOpen;
+    }
+
+    public int getEnrolleesPreloaded() {
+        return enrolleesPreloaded;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getFailedRequests() {
+        return failedRequests;
+    }
+
+    public long getColdP50Micros() {
+        return coldP50Micros;
+    }
+
+    public long getColdP99Micros() {
+        return coldP99Micros;
+    }
+
+    public long getWarmedP50Micros() {
+        return warmedP50Micros;
+    }
+
+    public long getWarmedP99Micros() {
+        return warmedP99Micros;
+    }
+
+    public long getFirstMinuteRequests() {
+        return firstMinuteRequests;
+    }
+
+    public long getFirstMinuteP50Micros() {
+        return firstMinuteP50Micros;
+    }
+
+    public long getFirstMinuteP99Micros() {
+        return firstMinuteP99Micros;
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Startup warm-up for Enrollment Application
+ * @author Michael Kulaga
+ */
+package enrollment.warmup;
@@ -0,0 +1,213 @@
+package enrollment.audit;
+
+import enrollment.common.AuditRecord;
+import enrollment.common.AuditRecord.Action;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.tenancy.TenantContext;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for AuditJournal class
+ * @author Michael Kulaga
+ */
+public class AuditJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AuditJournal auditJournal;
+
+    @After
+    public void tearDown() {
+        if (this.auditJournal != null) {
+            this.auditJournal.close();
+        }
+    }
+
+    /**
+     * Test that an Enrollee's history is read back from every segment it was written across, oldest first, with
+     * the fields each change made, and without the changes to other Enrollees or to the same Enrollee of another tenant
+     */
+    @Test
+    public void historyTest() {
+
+        this.auditJournal = this.open(0);
+
+        this.auditJournal.enrolleeChanged("1", Action.ADDED, null, createEnrollee("1", "Enrollee One"));
+        for (int i = 0; i < 200; i++) {
+            this.auditJournal.enrolleeChanged("2", Action.ADDED, null, createEnrollee("2", "Enrollee Two " + i));
+            if (i % 50 == 0) {
+                this.auditJournal.dependentChanged("1", "11", Action.ADDED, null, createDependent("11", "Dependent " + i));
+            }
+        }
+        this.auditJournal.enrolleeChanged("1", Action.MODIFIED, createEnrollee("1", "Enrollee One"), createEnrollee("1", "Enrollee Uno"));
+        TenantContext.run("other", () -> this.auditJournal.enrolleeChanged("1", Action.DELETED, null, null));
+
+        List<AuditRecord> history = this.auditJournal.history("1", Long.MIN_VALUE, Integer.MAX_VALUE);
+
+        assertTrue(this.auditJournal.getStatus().getSegments() > 2);
+        assertEquals(6, history.size());
+        assertEquals(Action.ADDED, history.get(0).getAction());
+        assertEquals("Dependent 150", history.get(4).getChanges().get(0).getAfter());
+        assertEquals("11", history.get(4).getDependentId());
+
+        AuditRecord modified = history.get(5);
+        assertEquals(Action.MODIFIED, modified.getAction());
+        assertEquals(1, modified.getChanges().size());
+        assertEquals("name", modified.getChanges().get(0).getField());
+        assertEquals("Enrollee One", modified.getChanges().get(0).getBefore());
+        assertEquals("Enrollee Uno", modified.getChanges().get(0).getAfter());
+
+        for (int i = 1; i < history.size(); i++) {
+            assertTrue(history.get(i - 1).getSequence() < history.get(i).getSequence());
+        }
+
+        assertEquals(2, this.auditJournal.history("1", Long.MIN_VALUE, 2).size());
+        assertEquals(0, this.auditJournal.history("1", modified.getTimestamp() + 1, Integer.MAX_VALUE).size());
+        assertEquals(Action.DELETED, TenantContext.call("other", () -> this.auditJournal.history("1", Long.MIN_VALUE, 10)).get(0).getAction());
+    }
+
+    /**
+     * Test that a journal reopened after a crash keeps every whole record, drops a record torn part way through
+     * being written, and carries on from the next sequence
+     */
+    @Test
+    public void recoveryTest() throws IOException {
+
+        this.auditJournal = this.open(0);
+        for (int i = 0; i < 120; i++) {
+            this.auditJournal.enrolleeChanged("1", Action.MODIFIED, createEnrollee("1", "Name " + i), createEnrollee("1", "Name " + (i + 1)));
+        }
+        this.auditJournal.close();
+
+        //a record whose length was written but whose contents were not
+        Path active = this.segmentFiles().get(this.segmentFiles().size() - 1);
+        try (FileChannel channel = FileChannel.open(active, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int position = 0;
+            while (segment.getInt(position) != 0) {
+                position += JournalSegment.RECORD_HEADER + segment.getInt(position);
+            }
+            segment.putInt(position, 40);
+        }
+
+        this.auditJournal = this.open(0);
+        List<AuditRecord> history = this.auditJournal.history("1", Long.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(120, history.size());
+        assertEquals(119, history.get(119).getSequence());
+
+        this.auditJournal.enrolleeChanged("1", Action.DELETED, null, null);
+        history = this.auditJournal.history("1", Long.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(121, history.size());
+        assertEquals(120, history.get(120).getSequence());
+        assertNull(history.get(120).getDependentId());
+    }
+
+    /**
+     * Test that compaction drops the records older than the retention period and merges the segments left, and
+     * that the compacted journal is what is read after reopening it
+     */
+    @Test
+    public void compactionTest() throws Exception {
+
+        this.auditJournal = this.open(1);
+        for (int i = 0; i < 150; i++) {
+            this.auditJournal.enrolleeChanged("1", Action.ADDED, null, createEnrollee("1", "Old Name " + i));
+        }
+        this.auditJournal.history("1", Long.MIN_VALUE, 1);
+
+        TimeUnit.MILLISECONDS.sleep(20);
+        long cutoff = System.currentTimeMillis();
+
+        for (int i = 0; i < 20; i++) {
+            this.auditJournal.enrolleeChanged("1", Action.ADDED, null, createEnrollee("1", "New Name " + i));
+        }
+        this.auditJournal.history("1", Long.MIN_VALUE, 1);
+
+        int segments = this.auditJournal.getStatus().getSegments();
+        this.auditJournal.compact(cutoff + TimeUnit.DAYS.toMillis(1));
+
+        assertTrue(this.auditJournal.getStatus().getSegments() < segments);
+        assertEquals(1, this.auditJournal.getStatus().getCompactions());
+        assertEquals(20, this.auditJournal.history("1", Long.MIN_VALUE, Integer.MAX_VALUE).size());
+
+        this.auditJournal.close();
+        this.auditJournal = this.open(1);
+
+        List<AuditRecord> history = this.auditJournal.history("1", Long.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(20, history.size());
+        assertEquals("New Name 0", history.get(0).getChanges().get(0).getAfter());
+    }
+
+    /**
+     * Test that changes journaled faster than the writer keeps up wait for room in the queue rather than being dropped
+     */
+    @Test
+    public void fullQueueTest() throws Exception {
+
+        this.auditJournal = new AuditJournal(true, this.folder.getRoot().getPath(), 65536, 2, 1000, 0, 0, 0, 10000);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    this.auditJournal.enrolleeChanged("1", Action.MODIFIED, createEnrollee("1", "Name"), createEnrollee("1", "Name " + i));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(2000, this.auditJournal.history("1", Long.MIN_VALUE, Integer.MAX_VALUE).size());
+        assertEquals(0, this.auditJournal.getStatus().getRecordsDropped());
+    }
+
+    private AuditJournal open(int retentionDays) {
+        return new AuditJournal(true, this.folder.getRoot().getPath(), 4096, 1024, 1000, 1000, retentionDays, 0, 1000);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(this.folder.getRoot().toPath())) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Enrollee createEnrollee(String id, String name) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(id);
+        enrollee.setName(name);
+        enrollee.setDateOfBirth("1990-01-01");
+        return enrollee;
+    }
+
+    private static Dependent createDependent(String id, String name) {
+
+        Dependent dependent = new Dependent();
+        dependent.setId(id);
+        dependent.setName(name);
+        dependent.setDateOfBirth("2010-01-01");
+        return dependent;
+    }
+}
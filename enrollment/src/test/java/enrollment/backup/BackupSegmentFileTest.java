@@ -0,0 +1,134 @@
+package enrollment.backup;
+
+import enrollment.common.BackupManifest.Segment;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for BackupSegmentFile class
+ * @author Michael Kulaga
+ */
+public class BackupSegmentFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that every record is read back as it was written, byte for byte and in order, and that the checksum
+     * taken while writing is that of the finished file
+     */
+    @Test
+    public void roundTripTest() throws IOException {
+
+        List<Document> documents = Arrays.asList(
+                new Document("_id", "1").append("name", "Enrollee One").append("activationStatus", true)
+                        .append("dependents", Arrays.asList(new Document("_id", "11").append("name", "Dependent Eleven"))),
+                new Document("_id", new ObjectId("5f0c7a1e2b3c4d5e6f708192")).append("n", "Compact Enrollee").append("externalDependents", true),
+                new Document("_id", new ObjectId()).append("enrolleeId", "5f0c7a1e2b3c4d5e6f708192").append("dependentId", "21"));
+
+        Path file = this.folder.getRoot().toPath().resolve("segment-0001.bson.gz");
+        BackupSegmentFile.Writer writer = new BackupSegmentFile.Writer(file);
+        writer.write(BackupSegmentFile.ENROLLEE, raw(documents.get(0)));
+        writer.write(BackupSegmentFile.ENROLLEE, raw(documents.get(1)));
+        writer.write(BackupSegmentFile.DEPENDENT, raw(documents.get(2)));
+        writer.close();
+
+        assertEquals(BackupSegmentFile.sha256(file), writer.getSha256());
+        assertEquals(Files.size(file), writer.size());
+
+        List<RawBsonDocument> read = new ArrayList<>();
+        List<Boolean> dependents = new ArrayList<>();
+        try (BackupSegmentFile.Reader reader = new BackupSegmentFile.Reader(file)) {
+            while (reader.next()) {
+                read.add(reader.getDocument());
+                dependents.add(reader.isDependent());
+            }
+        }
+
+        assertEquals(Arrays.asList(false, false, true), dependents);
+        for (int i = 0; i < documents.size(); i++) {
+            assertEquals(raw(documents.get(i)), read.get(i));
+            assertEquals(documents.get(i), read.get(i).decode(new DocumentCodec()));
+        }
+    }
+
+    /**
+     * Test that a damaged segment no longer matches its checksum, and that a truncated one fails to read rather
+     * than ending early
+     */
+    @Test
+    public void damagedTest() throws IOException {
+
+        Path file = this.folder.getRoot().toPath().resolve("segment-0001.bson.gz");
+        try (BackupSegmentFile.Writer writer = new BackupSegmentFile.Writer(file)) {
+            for (int i = 0; i < 100; i++) {
+                writer.write(BackupSegmentFile.ENROLLEE, raw(new Document("_id", String.valueOf(i)).append("name", "Enrollee " + i)));
+            }
+        }
+        String sha256 = BackupSegmentFile.sha256(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertNotEquals(sha256, BackupSegmentFile.sha256(file));
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        try (BackupSegmentFile.Reader reader = new BackupSegmentFile.Reader(file)) {
+            while (reader.next()) {
+                assertFalse(reader.isDependent());
+            }
+            fail("Expected A Truncated Segment To Fail");
+        } catch (IOException expected) {
+            //truncated
+        }
+    }
+
+    /**
+     * Test that a restore by Id range reads only the segments that may hold Ids in the range, and compares numeric
+     * Ids as numbers
+     */
+    @Test
+    public void idRangeTest() {
+
+        Segment first = new Segment("segment-0001.bson.gz", "string", null, "200");
+        Segment second = new Segment("segment-0002.bson.gz", "string", "200", "400");
+        Segment last = new Segment("segment-0003.bson.gz", "string", "400", null);
+
+        assertTrue(BackupService.overlaps(first, "100", "199"));
+        assertFalse(BackupService.overlaps(second, "100", "199"));
+        assertTrue(BackupService.overlaps(second, "100", "200"));
+        assertFalse(BackupService.overlaps(first, "200", "399"));
+        assertFalse(BackupService.overlaps(last, "100", "399"));
+        assertTrue(BackupService.overlaps(last, "900", "999"));
+
+        //sorted as strings, 1000 to 1999 are among 100 to 199, and 90 is after 400
+        assertTrue(BackupService.overlaps(last, "90", "150"));
+        assertTrue(BackupService.overlaps(second, "150", null));
+
+        assertTrue(BackupService.compareIds("90", "150") < 0);
+        assertTrue(BackupService.compareIds("1000", "199") > 0);
+        assertEquals(0, BackupService.compareIds("0042", "42"));
+    }
+
+    private static RawBsonDocument raw(Document document) {
+        return new RawBsonDocument(document, new DocumentCodec());
+    }
+}
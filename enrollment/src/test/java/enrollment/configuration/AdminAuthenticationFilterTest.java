@@ -0,0 +1,80 @@
+package enrollment.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the AdminAuthenticationFilter class
+ * @author Michael Kulaga
+ */
+public class AdminAuthenticationFilterTest {
+
+    /**
+     * Test that admin requests, with or without a tenant prefix, need the configured bearer token
+     */
+    @Test
+    public void tokenRequiredTest() throws Exception {
+
+        AdminAuthenticationFilter filter = new AdminAuthenticationFilter(new ObjectMapper(), "secret");
+
+        assertEquals(401, this.filter(filter, "/admin/backups", null).getStatus());
+        assertEquals(401, this.filter(filter, "/tenants/acme/admin/backups", "Bearer wrong").getStatus());
+        assertEquals(200, this.filter(filter, "/tenants/acme/admin/backups", "Bearer secret").getStatus());
+    }
+
+    /**
+     * Test that admin requests are refused until a token is configured, except for the readiness probe
+     */
+    @Test
+    public void noTokenTest() throws Exception {
+
+        AdminAuthenticationFilter filter = new AdminAuthenticationFilter(new ObjectMapper(), "");
+
+        assertEquals(403, this.filter(filter, "/admin/slow-requests", "Bearer ").getStatus());
+        assertEquals(200, this.filter(filter, "/admin/readiness", null).getStatus());
+    }
+
+    /**
+     * Test that requests outside of /admin pass without a token
+     */
+    @Test
+    public void otherPathsTest() throws Exception {
+
+        AdminAuthenticationFilter filter = new AdminAuthenticationFilter(new ObjectMapper(), "secret");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/enrollees/administrator"), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+    }
+
+    /**
+     * Helper Method to pass a request through the filter
+     *
+     * @return the response
+     */
+    private MockHttpServletResponse filter(AdminAuthenticationFilter filter, String path, String authorization) throws Exception {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        if (response.getStatus() != 200) {
+            assertNull(chain.getRequest());
+        }
+        return response;
+    }
+
+}
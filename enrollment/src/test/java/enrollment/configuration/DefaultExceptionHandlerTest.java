@@ -0,0 +1,118 @@
+package enrollment.configuration;
+
+import enrollment.audit.AuditJournal;
+import enrollment.common.Dependent;
+import enrollment.controller.EnrollmentController;
+import enrollment.exceptions.ResourceAlreadyExistsException;
+import enrollment.exceptions.StorageUnavailableException;
+import enrollment.service.DependentService;
+import enrollment.service.EnrolleeJsonCache;
+import enrollment.service.EnrolleeListCache;
+import enrollment.service.EnrolleeService;
+import enrollment.stream.EnrolleeEventStream;
+import enrollment.warmup.HotEnrollees;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests for the DefaultExceptionHandler class
+ * @author Michael Kulaga
+ */
+public class DefaultExceptionHandlerTest {
+
+    @Mock
+    private EnrolleeService enrolleeService;
+
+    @Mock
+    private DependentService dependentService;
+
+    @Mock
+    private EnrolleeJsonCache enrolleeJsonCache;
+
+    @Mock
+    private EnrolleeListCache enrolleeListCache;
+
+    @Mock
+    private AuditJournal auditJournal;
+
+    @Mock
+    private EnrolleeEventStream enrolleeEventStream;
+
+    @Mock
+    private HotEnrollees hotEnrollees;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+
+        initMocks(this);
+
+        EnrollmentController enrollmentController = new EnrollmentController(this.enrolleeService, this.dependentService,
+                this.enrolleeJsonCache, this.enrolleeListCache, this.auditJournal, this.enrolleeEventStream, this.hotEnrollees);
+
+        this.mockMvc = MockMvcBuilders.standaloneSetup(enrollmentController)
+                .setControllerAdvice(new DefaultExceptionHandler())
+                .build();
+    }
+
+    /**
+     * Test that adding a Dependent that already exists is answered with 409 Conflict
+     */
+    @Test
+    public void resourceAlreadyExistsTest() throws Exception {
+
+        willThrow(new ResourceAlreadyExistsException("Unable To Add Dependent, Dependent Already Exists For Id: 2"))
+                .given(this.dependentService).addDependent(any(Dependent.class), eq("1"));
+
+        this.mockMvc.perform(post("/enrollees/1/dependents")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\": \"2\", \"name\": \"Test Testing\", \"dateOfBirth\": \"2000-01-01\"}"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value("Unable To Add Dependent, Dependent Already Exists For Id: 2"));
+    }
+
+    /**
+     * Test that requests made while storage is unavailable are answered with 503 Service Unavailable and when to
+     * retry
+     */
+    @Test
+    public void storageUnavailableTest() throws Exception {
+
+        willThrow(new StorageUnavailableException("Storage Is Unavailable, Retry After 5 Seconds", 5))
+                .given(this.enrolleeService).deleteEnrollee("1");
+
+        this.mockMvc.perform(delete("/enrollees/1"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+    }
+
+    /**
+     * Test that any other failure is answered with 500 Internal Server Error
+     */
+    @Test
+    public void runtimeExceptionTest() throws Exception {
+
+        willThrow(new IllegalStateException("Failed"))
+                .given(this.enrolleeService).deleteEnrollee("1");
+
+        this.mockMvc.perform(delete("/enrollees/1"))
+                .andExpect(status().isInternalServerError());
+    }
+
+}
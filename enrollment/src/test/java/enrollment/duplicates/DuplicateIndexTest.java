@@ -0,0 +1,134 @@
+package enrollment.duplicates;
+
+import enrollment.common.Enrollee;
+import enrollment.common.PossibleDuplicate;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for DuplicateIndex class
+ * @author Michael Kulaga
+ */
+public class DuplicateIndexTest {
+
+    @Mock
+    private EnrollmentDAO enrollmentDAO;
+
+    private DuplicateIndex duplicateIndex;
+
+    /**
+     * Setting up mocks
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        this.duplicateIndex = new DuplicateIndex(enrollmentDAO, new TenantRegistry("", 0, Optional.empty()), true, 0.5, 10);
+    }
+
+    /**
+     * Test that only Enrollees born on the same day with similar names are possible duplicates
+     */
+    @Test
+    public void findPossibleDuplicatesTest() {
+
+        this.duplicateIndex.put("1", "John Smith", "1980-01-01");
+        this.duplicateIndex.put("2", "Jon  Smith", "1980-01-01");
+        this.duplicateIndex.put("3", "John Smith", "1981-01-01");
+        this.duplicateIndex.put("4", "Mary Jones", "1980-01-01");
+
+        List<PossibleDuplicate> duplicates = this.duplicateIndex.findPossibleDuplicates("JOHN SMITH", "1980-01-01", "1");
+
+        assertEquals(1, duplicates.size());
+        assertEquals("2", duplicates.get(0).getEnrolleeId());
+        assertTrue(duplicates.get(0).getSimilarity() >= 0.5 && duplicates.get(0).getSimilarity() < 1);
+
+        assertEquals(1.0, this.duplicateIndex.findPossibleDuplicates("Jöhn Smith!", "1981-01-01", null).get(0).getSimilarity(), 0);
+        assertTrue(this.duplicateIndex.findPossibleDuplicates("John Smith", "1999-01-01", null).isEmpty());
+    }
+
+    /**
+     * Test that modified and removed Enrollees are no longer found where they were
+     */
+    @Test
+    public void putAndRemoveTest() {
+
+        this.duplicateIndex.put("1", "John Smith", "1980-01-01");
+        this.duplicateIndex.put("2", "Jon Smith", "1980-01-01");
+
+        this.duplicateIndex.put("2", "Jon Smith", "1982-01-01");
+        assertTrue(this.duplicateIndex.findPossibleDuplicates("John Smith", "1980-01-01", "1").isEmpty());
+        assertEquals("2", this.duplicateIndex.findPossibleDuplicates("John Smith", "1982-01-01", null).get(0).getEnrolleeId());
+
+        this.duplicateIndex.remove("2");
+        assertTrue(this.duplicateIndex.findPossibleDuplicates("John Smith", "1982-01-01", null).isEmpty());
+        assertEquals(1, this.duplicateIndex.size());
+        assertEquals(1, this.duplicateIndex.partitionCount());
+    }
+
+    /**
+     * Test that names are folded to lower case the same way whatever the default locale
+     */
+    @Test
+    public void localeIndependentTest() {
+
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            this.duplicateIndex.put("1", "IRIS", "1980-01-01");
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+
+        assertEquals(1.0, this.duplicateIndex.findPossibleDuplicates("iris", "1980-01-01", null).get(0).getSimilarity(), 0);
+    }
+
+    /**
+     * Test that a rebuild indexes every stored Enrollee, and that the most similar are returned first
+     */
+    @Test
+    public void rebuildTest() {
+
+        given(enrollmentDAO.streamNamesAndDatesOfBirth()).willReturn(IntStream.range(0, 1000)
+                .mapToObj(i -> this.createEnrollee(String.valueOf(i), i % 2 == 0 ? "Alexander Hamilton" : "Alexandra Hamilton" + i))
+                .collect(Collectors.toList()).stream());
+
+        this.duplicateIndex.rebuild();
+
+        assertEquals(1000, this.duplicateIndex.size());
+
+        List<PossibleDuplicate> duplicates = this.duplicateIndex.findPossibleDuplicates("Alexander Hamilton", "1980-01-01", null);
+        assertEquals(10, duplicates.size());
+        assertEquals(1.0, duplicates.get(9).getSimilarity(), 0);
+    }
+
+    /**
+     * Helper Method to create Enrollee objects for tests
+     *
+     * @return an Enrollee object
+     */
+    private Enrollee createEnrollee(String id, String name) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(id);
+        enrollee.setName(name);
+        enrollee.setDateOfBirth("1980-01-01");
+
+        return enrollee;
+    }
+
+}
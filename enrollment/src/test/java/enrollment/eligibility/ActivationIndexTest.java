@@ -0,0 +1,143 @@
+package enrollment.eligibility;
+
+import enrollment.common.Enrollee;
+import enrollment.eligibility.ActivationIndex.Eligibility;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for ActivationIndex class
+ * @author Michael Kulaga
+ */
+public class ActivationIndexTest {
+
+    @Mock
+    private EnrollmentDAO enrollmentDAO;
+
+    private ActivationIndex activationIndex;
+
+    /**
+     * Setting up mocks
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        this.activationIndex = new ActivationIndex(enrollmentDAO, new TenantRegistry("", 0, Optional.empty()), true);
+    }
+
+    /**
+     * Test that lookups are only answered once the index is built, follow the Enrollees written since, and are not
+     * answered for Ids that are not indexed or for other tenants
+     */
+    @Test
+    public void eligibilityTest() {
+
+        given(enrollmentDAO.streamActivationStatuses()).willAnswer(invocation -> Stream.of(createEnrollee("1", true)));
+
+        this.activationIndex.put("2", true);
+        assertEquals(Eligibility.UNKNOWN, this.activationIndex.eligibility("2"));
+
+        this.activationIndex.rebuild();
+        assertEquals(Eligibility.ACTIVE, this.activationIndex.eligibility("1"));
+        assertEquals(Eligibility.MISSING, this.activationIndex.eligibility("2"));
+
+        this.activationIndex.put("2", true);
+        this.activationIndex.activationChanged("2", false);
+        this.activationIndex.activationChanged("3", true);
+        this.activationIndex.remove("1");
+
+        assertEquals(Eligibility.MISSING, this.activationIndex.eligibility("1"));
+        assertEquals(Eligibility.INACTIVE, this.activationIndex.eligibility("2"));
+        assertEquals(Eligibility.MISSING, this.activationIndex.eligibility("3"));
+        assertEquals(Eligibility.UNKNOWN, this.activationIndex.eligibility("02"));
+        assertEquals(Eligibility.UNKNOWN, this.activationIndex.eligibility("99999999999"));
+        assertEquals(Eligibility.UNKNOWN, TenantContext.call("other", () -> this.activationIndex.eligibility("2")));
+        assertEquals(1, this.activationIndex.size());
+    }
+
+    /**
+     * Test that Enrollees written while the index is rebuilt keep what they were indexed with, rather than what the
+     * rebuild read before they were written
+     */
+    @Test
+    public void rebuildTest() {
+
+        AtomicBoolean written = new AtomicBoolean();
+        given(enrollmentDAO.streamActivationStatuses()).willAnswer(invocation ->
+                Stream.of(createEnrollee("1", true), createEnrollee("2", false), createEnrollee("3", true))
+                        .peek(enrollee -> {
+                            if (written.compareAndSet(false, true)) {
+                                this.activationIndex.remove("1");
+                                this.activationIndex.put("4", true);
+                                this.activationIndex.activationChanged("4", false);
+                                this.activationIndex.activationChanged("3", false);
+                            }
+                        }));
+
+        this.activationIndex.rebuild();
+
+        assertEquals(Eligibility.MISSING, this.activationIndex.eligibility("1"));
+        assertEquals(Eligibility.INACTIVE, this.activationIndex.eligibility("2"));
+        assertEquals(Eligibility.INACTIVE, this.activationIndex.eligibility("3"));
+        assertEquals(Eligibility.INACTIVE, this.activationIndex.eligibility("4"));
+        assertEquals(3, this.activationIndex.size());
+    }
+
+    /**
+     * Test that dense and sparse Ids are both kept in a few bytes each, and are still found after their chunks change
+     * between arrays and bitmaps
+     */
+    @Test
+    public void compressionTest() {
+
+        IdBitmap bitmap = new IdBitmap();
+
+        //dense Ids fill whole chunks as bitmaps, sparse ones are kept as arrays
+        for (int id = 0; id < 200000; id++) {
+            bitmap.add(id);
+        }
+        for (int id = 200000000; id < 2000000000; id += 100000) {
+            bitmap.add(id);
+        }
+
+        assertEquals(200000 + 18000, bitmap.cardinality());
+        assertTrue(bitmap.sizeInBytes() <= 4L * bitmap.cardinality());
+        assertTrue(bitmap.contains(199999));
+        assertTrue(bitmap.contains(200100000));
+        assertFalse(bitmap.contains(200000));
+        assertFalse(bitmap.contains(200100001));
+
+        //emptying most of a bitmap chunk turns it back into an array
+        for (int id = 0; id < 65536 - 100; id++) {
+            bitmap.remove(id);
+        }
+        assertFalse(bitmap.contains(0));
+        assertTrue(bitmap.contains(65500));
+        assertFalse(bitmap.add(65500));
+        assertTrue(bitmap.remove(65535));
+        assertEquals(200000 + 18000 - 65536 + 99, bitmap.cardinality());
+    }
+
+    private static Enrollee createEnrollee(String id, boolean activationStatus) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(id);
+        enrollee.setActivationStatus(activationStatus);
+        return enrollee;
+    }
+}
@@ -0,0 +1,219 @@
+package enrollment.grpc;
+
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeLookupResponse;
+import enrollment.exceptions.ResourceAlreadyExistsException;
+import enrollment.exceptions.ResourceDoesNotExistException;
+import enrollment.grpc.api.AddEnrolleesResponse;
+import enrollment.grpc.api.EnrolleeId;
+import enrollment.grpc.api.EnrolleeIds;
+import enrollment.grpc.api.EnrolleeMessage;
+import enrollment.grpc.api.EnrolleesPage;
+import enrollment.grpc.api.EnrolleesResponse;
+import enrollment.grpc.api.EnrollmentGrpc;
+import enrollment.grpc.api.ListEnrolleesRequest;
+import enrollment.service.DependentService;
+import enrollment.service.EnrolleeService;
+import enrollment.tenancy.TenantContext;
+import enrollment.tenancy.TenantRegistry;
+import enrollment.warmup.HotEnrollees;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for EnrollmentGrpcService class, calling it through an in-process gRPC server
+ * @author Michael Kulaga
+ */
+public class EnrollmentGrpcServiceTest {
+
+    @Mock
+    private EnrolleeService enrolleeService;
+
+    @Mock
+    private DependentService dependentService;
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    private Server server;
+    private ManagedChannel channel;
+
+    /**
+     * Setting up mocks, and serving the EnrollmentGrpcService in-process for the tenants "default" and "acme"
+     */
+    @Before
+    public void setUp() throws IOException {
+
+        initMocks(this);
+
+        EnrollmentGrpcService service = new EnrollmentGrpcService(enrolleeService, dependentService,
+                new HotEnrollees(false, "hot-enrollees.txt", 0), 100, 1000, 10);
+        TenantServerInterceptor interceptor = new TenantServerInterceptor(new TenantRegistry("acme", 0, Optional.of(mongoOperations)),
+                "X-Tenant-Id", 1000);
+
+        String name = InProcessServerBuilder.generateName();
+        this.server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(ServerInterceptors.intercept(service, interceptor))
+                .build()
+                .start();
+        this.channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    @After
+    public void tearDown() {
+        this.channel.shutdownNow();
+        this.server.shutdownNow();
+    }
+
+    /**
+     * Test that a batch of Enrollees is retrieved in one call, as the tenant named in the call's metadata, with the
+     * Ids that were not found, and that a missing Enrollee is answered with NOT_FOUND
+     */
+    @Test
+    public void getEnrolleesTest() {
+
+        EnrolleeLookupResponse lookup = new EnrolleeLookupResponse();
+        lookup.getEnrollees().add(createEnrollee("1"));
+        lookup.getMissingIds().add("2");
+        AtomicReference<String> tenant = new AtomicReference<>();
+        given(enrolleeService.lookupEnrollees(Arrays.asList("1", "2"))).willAnswer(invocation -> {
+            tenant.set(TenantContext.current());
+            return lookup;
+        });
+
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("X-Tenant-Id", Metadata.ASCII_STRING_MARSHALLER), "acme");
+        EnrolleesResponse response = EnrollmentGrpc.newBlockingStub(this.channel)
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers))
+                .getEnrollees(EnrolleeIds.newBuilder().addIds("1").addIds("2").build());
+
+        assertEquals(1, response.getEnrolleesCount());
+        assertEquals("1", response.getEnrollees(0).getId());
+        assertEquals("", response.getEnrollees(0).getPhoneNumber());
+        assertEquals(Collections.singletonList("2"), response.getMissingIdsList());
+        assertEquals("acme", tenant.get());
+
+        given(enrolleeService.getEnrolleeById("3")).willThrow(new ResourceDoesNotExistException("Missing"));
+        try {
+            EnrollmentGrpc.newBlockingStub(this.channel).getEnrollee(EnrolleeId.newBuilder().setId("3").build());
+            fail();
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.NOT_FOUND, e.getStatus().getCode());
+        }
+    }
+
+    /**
+     * Test that every Enrollee is streamed from the service's cursor in pages of the size asked for, and that the
+     * cursor is closed once they all are
+     */
+    @Test
+    public void listEnrolleesTest() {
+
+        AtomicBoolean closed = new AtomicBoolean();
+        given(enrolleeService.streamEnrollees()).willReturn(IntStream.range(0, 1000)
+                .mapToObj(i -> createEnrollee(String.valueOf(i)))
+                .onClose(() -> closed.set(true)));
+
+        Iterator<EnrolleesPage> pages = EnrollmentGrpc.newBlockingStub(this.channel)
+                .listEnrollees(ListEnrolleesRequest.newBuilder().setPageSize(300).build());
+
+        int count = 0;
+        List<Integer> pageSizes = new ArrayList<>();
+        while (pages.hasNext()) {
+            EnrolleesPage page = pages.next();
+            pageSizes.add(page.getEnrolleesCount());
+            for (EnrolleeMessage enrollee : page.getEnrolleesList()) {
+                assertEquals(String.valueOf(count++), enrollee.getId());
+            }
+        }
+
+        assertEquals(1000, count);
+        assertEquals(Arrays.asList(300, 300, 300, 100), pageSizes);
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Test that a stream of new Enrollees is added one by one, and that those that cannot be added are reported
+     * without stopping the rest
+     */
+    @Test
+    public void addEnrolleesTest() throws Exception {
+
+        willThrow(new ResourceAlreadyExistsException("Already Exists")).given(enrolleeService)
+                .addEnrollee(argThat(enrollee -> enrollee != null && "2".equals(enrollee.getId())));
+
+        CompletableFuture<AddEnrolleesResponse> response = new CompletableFuture<>();
+        StreamObserver<EnrolleeMessage> enrollees = EnrollmentGrpc.newStub(this.channel).addEnrollees(new StreamObserver<AddEnrolleesResponse>() {
+            @Override
+            public void onNext(AddEnrolleesResponse value) {
+                response.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                response.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+
+        for (String id : Arrays.asList("1", "2", "3")) {
+            enrollees.onNext(EnrolleeMessages.toMessage(createEnrollee(id)));
+        }
+        enrollees.onCompleted();
+
+        AddEnrolleesResponse added = response.get(5, TimeUnit.SECONDS);
+        assertEquals(2, added.getAdded());
+        assertEquals(1, added.getFailed());
+        assertEquals("2", added.getFailures(0).getId());
+        assertEquals("Already Exists", added.getFailures(0).getMessage());
+    }
+
+    private Enrollee createEnrollee(String id) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(id);
+        enrollee.setName("Test Name");
+        enrollee.setDateOfBirth("01/01/2000");
+        enrollee.setActivationStatus(true);
+
+        return enrollee;
+    }
+
+}
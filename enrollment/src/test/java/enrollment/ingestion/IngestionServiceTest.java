@@ -0,0 +1,199 @@
+package enrollment.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enrollment.audit.AuditJournal;
+import enrollment.common.Enrollee;
+import enrollment.common.IngestionRun;
+import enrollment.duplicates.DuplicateIndex;
+import enrollment.eligibility.ActivationIndex;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.service.AgeOutService;
+import enrollment.tenancy.TenantRegistry;
+import enrollment.validation.EnrollmentValidator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for IngestionService class
+ * @author Michael Kulaga
+ */
+public class IngestionServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private EnrollmentDAO enrollmentDAO;
+
+    @Mock
+    private DuplicateIndex duplicateIndex;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private AuditJournal auditJournal;
+
+    @Mock
+    private ActivationIndex activationIndex;
+
+    @Mock
+    private AgeOutService ageOutService;
+
+    private IngestionService ingestionService;
+    private final List<Enrollee> written = new ArrayList<>();
+
+    /**
+     * Setting up mocks
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        this.ingestionService = new IngestionService(enrollmentDAO, new EnrollmentValidator(false), duplicateIndex, eventPublisher,
+                new TenantRegistry("", 0, Optional.empty()), new ObjectMapper(), auditJournal, activationIndex, ageOutService, 2, 2, 1,
+                "enrolleeId:3,dependentId:3,name:10,dateOfBirth:10,activationStatus:1");
+
+        willAnswer(invocation -> this.written.addAll(invocation.getArgument(0))).given(enrollmentDAO).upsertAll(anyList());
+    }
+
+    /**
+     * Test that each Enrollee's rows are grouped into the Enrollee and its Dependents, that rows which cannot be
+     * ingested are written to the rejects file with the reason, and that a completed file is not ingested again
+     */
+    @Test
+    public void csvTest() throws IOException {
+
+        Path file = this.write("carrier.csv",
+                "enrolleeId,dependentId,name,dateOfBirth,activationStatus,phoneNumber",
+                "1,,Enrollee One,1980-01-01,y,555-0100",
+                "1,11,\"Dependent, Eleven\",2010-02-02,,",
+                "1,11,Dependent Again,2010-02-02,,",
+                "2,,Enrollee Two,1985-13-01,,",
+                "2,21,Dependent,2012-01-01,,",
+                "3,,Enrollee Three,1990-03-03,maybe,",
+                "4,,\"Unterminated,1990-01-01,,",
+                "",
+                "5,,Enrollee Five,1991-05-05,n,");
+
+        IngestionRun run = this.ingestionService.ingest(file, IngestionFormat.CSV, "default", false);
+
+        assertEquals(IngestionRun.State.COMPLETED, run.getState());
+        assertEquals(8, run.getRowsRead());
+        assertEquals(2, run.getEnrolleesWritten());
+        assertEquals(1, run.getDependentsWritten());
+        assertEquals(5, run.getRowsRejected());
+
+        assertEquals(2, this.written.size());
+        Enrollee first = this.written.get(0);
+        assertEquals("1", first.getId());
+        assertTrue(first.isActivationStatus());
+        assertEquals("555-0100", first.getPhoneNumber());
+        assertEquals("Dependent, Eleven", first.getDependents().get(0).getName());
+        assertEquals("5", this.written.get(1).getId());
+
+        List<String> rejects = Files.readAllLines(Paths.get(run.getRejectsFile()));
+        assertEquals(6, rejects.size());
+        assertEquals("4,\"Duplicate Dependent Id: 11\",\"1,11,Dependent Again,2010-02-02,,\"", rejects.get(1));
+        assertTrue(rejects.get(2).startsWith("5,\"Validation Error: Date Of Birth"));
+        assertTrue(rejects.get(3).startsWith("6,\"No Valid Enrollee Row"));
+        assertTrue(rejects.get(4).startsWith("7,\"Invalid Activation Status: maybe\""));
+        assertTrue(rejects.get(5).startsWith("8,\"Unterminated Quoted Field\""));
+
+        IngestionRun again = this.ingestionService.ingest(file, IngestionFormat.CSV, "default", false);
+        assertEquals(IngestionRun.State.COMPLETED, again.getState());
+        assertEquals(2, again.getEnrolleesWritten());
+        verify(enrollmentDAO, times(2)).upsertAll(anyList());
+    }
+
+    /**
+     * Test that an ingestion which fails part way resumes from the last batch it wrote, writing every Enrollee and
+     * rejected row once
+     */
+    @Test
+    public void resumeTest() throws IOException {
+
+        Path file = this.write("carrier.csv",
+                "enrolleeId,name,dateOfBirth",
+                "1,Enrollee One,1980-01-01",
+                "9,Enrollee Nine,1980-99-01",
+                "2,Enrollee Two,1980-01-02",
+                "3,Enrollee Three,1980-01-03",
+                "4,Enrollee Four,1980-01-04",
+                "5,Enrollee Five,1980-01-05");
+
+        AtomicInteger batches = new AtomicInteger();
+        willAnswer(invocation -> {
+            if (batches.incrementAndGet() == 2) {
+                throw new DataAccessResourceFailureException("Timed Out");
+            }
+            return this.written.addAll(invocation.getArgument(0));
+        }).given(enrollmentDAO).upsertAll(anyList());
+
+        IngestionRun failed = this.ingestionService.ingest(file, IngestionFormat.CSV, "default", false);
+        assertEquals(IngestionRun.State.FAILED, failed.getState());
+        assertEquals(2, failed.getEnrolleesWritten());
+
+        IngestionRun resumed = this.ingestionService.ingest(file, IngestionFormat.CSV, "default", false);
+        assertEquals(IngestionRun.State.COMPLETED, resumed.getState());
+        assertEquals(4, resumed.getResumedFromLine());
+        assertEquals(6, resumed.getRowsRead());
+        assertEquals(5, resumed.getEnrolleesWritten());
+
+        List<String> ids = new ArrayList<>();
+        this.written.forEach(enrollee -> ids.add(enrollee.getId()));
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), ids);
+        assertEquals(2, Files.readAllLines(Paths.get(resumed.getRejectsFile())).size());
+        verify(duplicateIndex, times(5)).put(any(), any(), any());
+    }
+
+    /**
+     * Test that fixed-width rows are read by the configured layout, with fields missing from short lines left blank
+     */
+    @Test
+    public void fixedWidthTest() throws IOException {
+
+        Path file = this.write("carrier.txt",
+                String.format("%-3s%-3s%-10s%-10s%s", "7", "", "Enrollee", "1980-01-01", "Y"),
+                String.format("%-3s%-3s%-10s%-10s", "7", "71", "Dependent", "2010-01-01"),
+                String.format("%-3s%-3s%-10s", "7", "72", "Short"));
+
+        IngestionRun run = this.ingestionService.ingest(file, IngestionFormat.FIXED_WIDTH, "default", false);
+
+        assertEquals(IngestionRun.State.COMPLETED, run.getState());
+        assertEquals(3, run.getRowsRead());
+        assertEquals(1, run.getRowsRejected());
+        assertEquals("Enrollee", this.written.get(0).getName());
+        assertTrue(this.written.get(0).isActivationStatus());
+        assertEquals("71", this.written.get(0).getDependents().get(0).getId());
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        return Files.write(this.folder.getRoot().toPath().resolve(name), String.join("\n", lines).concat("\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
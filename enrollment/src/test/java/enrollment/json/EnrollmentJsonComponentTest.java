@@ -0,0 +1,166 @@
+package enrollment.json;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the EnrollmentJsonComponent class, comparing it with the default Jackson binding
+ * @author Michael Kulaga
+ */
+public class EnrollmentJsonComponentTest {
+
+    private ObjectMapper defaultMapper;
+    private ObjectMapper streamingMapper;
+
+    /**
+     * Setting up ObjectMappers configured as Spring Boot configures them, with and without the streaming codecs
+     */
+    @Before
+    public void setUp() {
+
+        this.defaultMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.streamingMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .registerModule(EnrollmentJsonComponent.module());
+    }
+
+    /**
+     * Test that an Enrollee is written exactly as the default binding writes it
+     */
+    @Test
+    public void serializeEnrolleeTest() throws Exception {
+
+        Enrollee enrollee = this.createEnrollee();
+
+        assertEquals(this.defaultMapper.writeValueAsString(enrollee), this.streamingMapper.writeValueAsString(enrollee));
+    }
+
+    /**
+     * Test that nulls, empty Dependents and characters that need escaping are written as the default binding writes them
+     */
+    @Test
+    public void serializeEdgeCasesTest() throws Exception {
+
+        Enrollee empty = new Enrollee();
+        Enrollee noDependents = this.createEnrollee();
+        noDependents.setDependents(null);
+        Enrollee escaped = this.createEnrollee();
+        escaped.setName("Zoë \"Jr\" \\ O'Brien\n ");
+        escaped.getDependents().add(null);
+
+        for (Enrollee enrollee : Arrays.asList(empty, noDependents, escaped)) {
+            assertEquals(this.defaultMapper.writeValueAsString(enrollee), this.streamingMapper.writeValueAsString(enrollee));
+        }
+
+        List<Enrollee> enrollees = Arrays.asList(empty, noDependents, escaped);
+        assertEquals(this.defaultMapper.writeValueAsString(enrollees), this.streamingMapper.writeValueAsString(enrollees));
+    }
+
+    /**
+     * Test that an Enrollee survives a round trip, and reads the same as with the default binding
+     */
+    @Test
+    public void roundTripEnrolleeTest() throws Exception {
+
+        Enrollee enrollee = this.createEnrollee();
+        byte[] json = this.streamingMapper.writeValueAsBytes(enrollee);
+
+        Enrollee streamed = this.streamingMapper.readValue(json, Enrollee.class);
+        Enrollee bound = this.defaultMapper.readValue(json, Enrollee.class);
+
+        assertEquals(this.defaultMapper.writeValueAsString(enrollee), this.defaultMapper.writeValueAsString(streamed));
+        assertEquals(this.defaultMapper.writeValueAsString(bound), this.defaultMapper.writeValueAsString(streamed));
+    }
+
+    /**
+     * Test that requests in other shapes are read as the default binding reads them
+     */
+    @Test
+    public void deserializeLenientInputTest() throws Exception {
+
+        String json = "{\"unknown\":{\"nested\":[1,2]},\"dependents\":[{\"dateOfBirth\":\"2000-01-01\",\"id\":7,\"extra\":true},null],"
+                + "\"id\":1,\"activationStatus\":\"true\",\"phoneNumber\":null,\"name\":\"Test\"}";
+
+        Enrollee streamed = this.streamingMapper.readValue(json, Enrollee.class);
+        Enrollee bound = this.defaultMapper.readValue(json, Enrollee.class);
+
+        assertEquals(this.defaultMapper.writeValueAsString(bound), this.defaultMapper.writeValueAsString(streamed));
+        assertEquals("1", streamed.getId());
+        assertTrue(streamed.isActivationStatus());
+        assertEquals("7", streamed.getDependents().get(0).getId());
+        assertNull(streamed.getDependents().get(1));
+
+        Enrollee missingFields = this.streamingMapper.readValue("{\"id\":\"2\",\"dependents\":null}", Enrollee.class);
+        assertFalse(missingFields.isActivationStatus());
+        assertNull(missingFields.getDependents());
+    }
+
+    /**
+     * Test that a Dependent on its own survives a round trip
+     */
+    @Test
+    public void roundTripDependentTest() throws Exception {
+
+        Dependent dependent = this.createDependent("1");
+        String json = this.streamingMapper.writeValueAsString(dependent);
+
+        assertEquals(this.defaultMapper.writeValueAsString(dependent), json);
+        assertEquals(json, this.streamingMapper.writeValueAsString(this.streamingMapper.readValue(json, Dependent.class)));
+    }
+
+    /**
+     * Test that unknown properties are rejected when the ObjectMapper is configured to reject them
+     */
+    @Test(expected = UnrecognizedPropertyException.class)
+    public void deserializeUnknownPropertyTest() throws Exception {
+
+        new ObjectMapper().registerModule(EnrollmentJsonComponent.module())
+                .readValue("{\"id\":\"1\",\"unknown\":1}", Enrollee.class);
+    }
+
+    /**
+     * Helper Method to create Enrollee objects for tests
+     *
+     * @return an Enrollee object
+     */
+    private Enrollee createEnrollee() {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId("1");
+        enrollee.setName("Test");
+        enrollee.setActivationStatus(true);
+        enrollee.setDateOfBirth("1900-01-01");
+        enrollee.setDependents(new ArrayList<>(Arrays.asList(this.createDependent("1"), this.createDependent("2"))));
+
+        return enrollee;
+    }
+
+    /**
+     * Helper Method to create Dependent objects for tests
+     *
+     * @return a Dependent object
+     */
+    private Dependent createDependent(String id) {
+
+        Dependent dependent = new Dependent();
+        dependent.setId(id);
+        dependent.setName("Junior");
+        dependent.setDateOfBirth("2000-01-01");
+
+        return dependent;
+    }
+
+}
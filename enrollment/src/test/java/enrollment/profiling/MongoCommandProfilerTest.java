@@ -0,0 +1,43 @@
+package enrollment.profiling;
+
+import org.bson.BsonDocument;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the MongoCommandProfiler class
+ * @author Michael Kulaga
+ */
+public class MongoCommandProfilerTest {
+
+    /**
+     * Test that redacting a command keeps its shape, collection and database but none of its values
+     */
+    @Test
+    public void redactTest() {
+
+        BsonDocument command = BsonDocument.parse("{\"find\": \"enrollee\", \"filter\": {\"name\": \"Jane Doe\", "
+                + "\"dependents\": {\"$elemMatch\": {\"dateOfBirth\": \"2000-01-01\"}}}, "
+                + "\"sort\": {\"name\": 1}, \"$db\": \"enrollment\"}");
+
+        BsonDocument redacted = MongoCommandProfiler.redact(command);
+
+        assertEquals(BsonDocument.parse("{\"find\": \"enrollee\", \"filter\": {\"name\": \"?\", "
+                + "\"dependents\": {\"$elemMatch\": {\"dateOfBirth\": \"?\"}}}, "
+                + "\"sort\": {\"name\": \"?\"}, \"$db\": \"enrollment\"}"), redacted);
+    }
+
+    /**
+     * Test that the values inside arrays are redacted, such as the documents of an insert
+     */
+    @Test
+    public void redactArrayTest() {
+
+        BsonDocument command = BsonDocument.parse("{\"insert\": \"enrollee\", \"documents\": [{\"_id\": \"1\", \"phoneNumber\": \"555-555-5555\"}]}");
+
+        assertEquals(BsonDocument.parse("{\"insert\": \"enrollee\", \"documents\": [{\"_id\": \"?\", \"phoneNumber\": \"?\"}]}"),
+                MongoCommandProfiler.redact(command));
+    }
+
+}
@@ -0,0 +1,112 @@
+package enrollment.profiling;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the RequestTrace class
+ * @author Michael Kulaga
+ */
+public class RequestTraceTest {
+
+    /**
+     * Making sure no test leaves this thread traced
+     */
+    @After
+    public void tearDown() {
+        RequestTrace.begin(false).end();
+    }
+
+    /**
+     * Test that a phase is not charged for the phases nested inside it
+     */
+    @Test
+    public void nestedPhasesTest() throws Exception {
+
+        RequestTrace trace = RequestTrace.begin(false);
+
+        RequestTrace.enter(Phase.SERVICE);
+        RequestTrace.enter(Phase.FIND);
+        Thread.sleep(50);
+        RequestTrace.exit();
+        RequestTrace.exit();
+
+        long total = trace.end();
+        SlowRequest slowRequest = trace.snapshot("GET", "/enrollees/1", 200, total);
+
+        assertTrue(slowRequest.getPhaseMillis().get("find") >= 50);
+        assertTrue(slowRequest.getPhaseMillis().get("service") < 50);
+        assertFalse(slowRequest.getPhaseMillis().containsKey("write"));
+        assertTrue(slowRequest.getTotalMillis() >= slowRequest.getPhaseMillis().get("find") + slowRequest.getPhaseMillis().get("service"));
+    }
+
+    /**
+     * Test the format of the Server-Timing header
+     */
+    @Test
+    public void serverTimingTest() {
+
+        RequestTrace trace = RequestTrace.begin(false);
+
+        RequestTrace.enter(Phase.VALIDATE);
+        RequestTrace.exit();
+        RequestTrace.commandCompleted(1, "find", 1_234_567, false);
+
+        String serverTiming = trace.serverTiming();
+
+        assertTrue(serverTiming, serverTiming.matches("validate;desc=\"Validation\";dur=\\d+\\.\\d{3}, "
+                + "mongo;desc=\"1 Command\";dur=1\\.234, total;dur=\\d+\\.\\d{3}"));
+    }
+
+    /**
+     * Test that Mongo commands keep their text only when the request is sampled, and are counted past the limit
+     */
+    @Test
+    public void mongoCommandsTest() {
+
+        RequestTrace trace = RequestTrace.begin(true);
+
+        for (int i = 0; i < RequestTrace.MAXIMUM_COMMANDS + 5; i++) {
+            if (RequestTrace.isSampled()) {
+                RequestTrace.commandStarted(i, "{\"find\": \"enrollees\"}");
+            }
+            RequestTrace.commandCompleted(i, "find", 1000, false);
+        }
+
+        SlowRequest slowRequest = trace.snapshot("GET", "/enrollees", 200, trace.end());
+
+        assertEquals(RequestTrace.MAXIMUM_COMMANDS + 5, slowRequest.getMongoCommandCount());
+        assertEquals(RequestTrace.MAXIMUM_COMMANDS, slowRequest.getMongoCommands().size());
+        assertEquals("{\"find\": \"enrollees\"}", slowRequest.getMongoCommands().get(0).getCommand());
+
+        trace = RequestTrace.begin(false);
+        assertFalse(RequestTrace.isSampled());
+        RequestTrace.commandCompleted(1, "find", 1000, false);
+        assertNull(trace.snapshot("GET", "/enrollees", 200, trace.end()).getMongoCommands().get(0).getCommand());
+    }
+
+    /**
+     * Test that nothing is recorded outside of a traced request
+     */
+    @Test
+    public void notTracedTest() {
+
+        RequestTrace trace = RequestTrace.begin(false);
+        trace.end();
+
+        RequestTrace.enter(Phase.WRITE);
+        RequestTrace.exit();
+        RequestTrace.commandCompleted(1, "insert", 1000, false);
+
+        SlowRequest slowRequest = trace.snapshot("POST", "/enrollees", 200, 0);
+
+        assertTrue(slowRequest.getPhaseMillis().isEmpty());
+        assertEquals(0, slowRequest.getMongoCommandCount());
+    }
+
+}
@@ -0,0 +1,59 @@
+package enrollment.profiling;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the SlowRequestLog class
+ * @author Michael Kulaga
+ */
+public class SlowRequestLogTest {
+
+    /**
+     * Test that the newest slow requests are kept, newest first, once the buffer wraps around
+     */
+    @Test
+    public void recentTest() {
+
+        SlowRequestLog slowRequestLog = new SlowRequestLog(3);
+
+        for (int i = 1; i <= 5; i++) {
+            slowRequestLog.add(this.createSlowRequest("/enrollees/" + i));
+        }
+
+        List<SlowRequest> recent = slowRequestLog.recent();
+
+        assertEquals(3, recent.size());
+        assertEquals("/enrollees/5", recent.get(0).getPath());
+        assertEquals("/enrollees/3", recent.get(2).getPath());
+    }
+
+    /**
+     * Test that clearing forgets every slow request
+     */
+    @Test
+    public void clearTest() {
+
+        SlowRequestLog slowRequestLog = new SlowRequestLog(3);
+        slowRequestLog.add(this.createSlowRequest("/enrollees/1"));
+
+        slowRequestLog.clear();
+
+        assertTrue(slowRequestLog.recent().isEmpty());
+    }
+
+    /**
+     * Helper Method to create SlowRequest objects for tests
+     *
+     * @return a SlowRequest object
+     */
+    private SlowRequest createSlowRequest(String path) {
+        return new SlowRequest("GET", path, 200, "2020-01-01T00:00:00Z", 600, Collections.emptyMap(), 0, Collections.emptyList(), false);
+    }
+
+}
@@ -0,0 +1,77 @@
+package enrollment.repository;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for CompactFieldNames class
+ * @author Michael Kulaga
+ */
+public class CompactFieldNamesTest {
+
+    /**
+     * Test that a stored Enrollee is converted to the compact form, Dependents included, leaving out nulls, empty
+     * arrays and the type key, and back again
+     */
+    @Test
+    public void convertTest() {
+
+        Document expanded = new Document("_id", "1")
+                .append("name", "Test")
+                .append("activationStatus", true)
+                .append("dateOfBirth", "1900-01-01")
+                .append("phoneNumber", null)
+                .append("dependents", Arrays.asList(new Document("_id", "2").append("name", "Junior").append("dateOfBirth", "2000-01-01")))
+                .append("_class", "enrollment.common.Enrollee");
+
+        Document compact = CompactFieldNames.convert(expanded, true);
+
+        assertEquals(new Document("_id", "1").append("n", "Test").append("a", true).append("b", "1900-01-01")
+                .append("d", Arrays.asList(new Document("_id", "2").append("n", "Junior").append("b", "2000-01-01"))), compact);
+        assertEquals("Junior", ((Document) expanded.getList("dependents", Object.class).get(0)).get("name"));
+
+        Document restored = CompactFieldNames.convert(compact, false);
+        assertEquals("Junior", ((Document) restored.getList("dependents", Object.class).get(0)).get("name"));
+        assertEquals("1900-01-01", restored.get("dateOfBirth"));
+
+        Document empty = CompactFieldNames.convert(new Document("_id", "3").append("dependents", new ArrayList<>()), true);
+        assertFalse(empty.containsKey("d"));
+    }
+
+    /**
+     * Test that a stored document is renamed in place only when it is in the other form
+     */
+    @Test
+    public void normalizeTest() {
+
+        Document legacy = new Document("_id", "1").append("name", "Test").append("externalDependents", true);
+
+        assertTrue(CompactFieldNames.normalize(legacy, true));
+        assertEquals(new Document("_id", "1").append("n", "Test").append("externalDependents", true), legacy);
+        assertFalse(CompactFieldNames.normalize(legacy, true));
+    }
+
+    /**
+     * Test that a field stored in both forms is merged into the given form, the arrays by Id and otherwise keeping
+     * the value in the given form
+     */
+    @Test
+    public void normalizeBothFormsTest() {
+
+        Document mixed = new Document("_id", "1").append("name", "Old").append("n", "New")
+                .append("dependents", Arrays.asList(new Document("_id", "2").append("name", "Stale"), new Document("_id", "3").append("name", "Three")))
+                .append("d", Arrays.asList(new Document("_id", "2").append("n", "Two")));
+
+        assertTrue(CompactFieldNames.normalize(mixed, true));
+        assertEquals(new Document("_id", "1").append("n", "New")
+                .append("d", Arrays.asList(new Document("_id", "2").append("n", "Two"), new Document("_id", "3").append("n", "Three"))), mixed);
+    }
+
+}
@@ -0,0 +1,143 @@
+package enrollment.repository;
+
+import com.mongodb.client.MongoCollection;
+import enrollment.common.Dependent;
+import enrollment.tenancy.TenantRegistry;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for ExternalDependentStore class
+ * @author Michael Kulaga
+ */
+public class ExternalDependentStoreTest {
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private MongoCollection<Document> collection;
+
+    private ExternalDependentStore dependentStore;
+
+    /**
+     * Setting up mocks, with a converter that needs no database
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        given(mongoOperations.getConverter()).willReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        given(mongoOperations.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), anyString())).willReturn(bulkOperations);
+        given(mongoOperations.getCollection(anyString())).willReturn(collection);
+
+        this.dependentStore = new ExternalDependentStore(mongoOperations, new TenantRegistry("", 0, Optional.empty()), 3, false, false);
+    }
+
+    /**
+     * Test that a sync only inserts added Dependents, updates changed ones and removes missing ones, in one bulk write
+     */
+    @Test
+    public void syncWritesOnlyChangesTest() {
+
+        given(mongoOperations.find(any(Query.class), eq(Document.class), anyString())).willReturn(Arrays.asList(
+                createStored("1", "Unchanged"), createStored("2", "Before"), createStored("3", "Removed")));
+
+        this.dependentStore.sync("1", Arrays.asList(createDependent("1", "Unchanged"), createDependent("2", "After"),
+                createDependent("4", "Added")));
+
+        verify(bulkOperations).insert(any(Document.class));
+        verify(bulkOperations).updateOne(any(Query.class), any(Update.class));
+        verify(bulkOperations).remove(any(Query.class));
+        verify(bulkOperations, times(1)).execute();
+    }
+
+    /**
+     * Test that a sync of unchanged Dependents writes nothing
+     */
+    @Test
+    public void syncWithoutChangesTest() {
+
+        given(mongoOperations.find(any(Query.class), eq(Document.class), anyString()))
+                .willReturn(Collections.singletonList(createStored("1", "Unchanged")));
+
+        this.dependentStore.sync("1", Collections.singletonList(createDependent("1", "Unchanged")));
+
+        verify(bulkOperations, never()).execute();
+    }
+
+    /**
+     * Test that Dependents are only added when none of them already exist
+     */
+    @Test
+    public void addExistingDependentTest() {
+
+        given(mongoOperations.exists(any(Query.class), anyString())).willReturn(true);
+
+        assertFalse(this.dependentStore.add("1", Arrays.asList(createDependent("1", "Existing"), createDependent("5", "New"))));
+        verify(collection, never()).insertMany(anyList());
+
+        given(mongoOperations.exists(any(Query.class), anyString())).willReturn(false);
+
+        assertTrue(this.dependentStore.add("1", Collections.singletonList(createDependent("5", "New"))));
+        verify(collection).insertMany(anyList());
+    }
+
+    /**
+     * Helper Method to create Dependent objects for tests
+     *
+     * @return a Dependent object
+     */
+    private Dependent createDependent(String id, String name) {
+
+        Dependent dependent = new Dependent();
+        dependent.setId(id);
+        dependent.setName(name);
+        dependent.setDateOfBirth("2000-01-01");
+
+        return dependent;
+    }
+
+    /**
+     * Helper Method to create stored external Dependent documents for tests
+     *
+     * @return a stored Dependent document
+     */
+    private Document createStored(String id, String name) {
+
+        return new Document("_id", id + "-stored")
+                .append(ExternalDependentStore.ENROLLEE_ID, "1")
+                .append(ExternalDependentStore.DEPENDENT_ID, id)
+                .append("name", name)
+                .append("dateOfBirth", "2000-01-01");
+    }
+
+}
@@ -0,0 +1,123 @@
+package enrollment.repository;
+
+import enrollment.common.Enrollee;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for NumericIds class
+ * @author Michael Kulaga
+ */
+public class NumericIdsTest {
+
+    /**
+     * Test that only Ids that read back the same as a 64-bit integer are stored as one
+     */
+    @Test
+    public void toStoredTest() {
+
+        assertEquals(10L, NumericIds.toStored("10", true));
+        assertEquals(0L, NumericIds.toStored("0", true));
+        assertEquals(Long.MAX_VALUE, NumericIds.toStored(String.valueOf(Long.MAX_VALUE), true));
+        assertEquals("007", NumericIds.toStored("007", true));
+        assertEquals("9223372036854775808", NumericIds.toStored("9223372036854775808", true));
+        assertEquals("10", NumericIds.toStored("10", false));
+        assertEquals("10", NumericIds.toStored(10L, false));
+    }
+
+    /**
+     * Test that a stored Enrollee and its embedded Dependents are given numeric Ids, and string Ids again
+     */
+    @Test
+    public void convertEnrolleeTest() {
+
+        Document enrollee = new Document("_id", "10")
+                .append("n", "Test")
+                .append("d", Arrays.asList(new Document("_id", "9").append("n", "Junior"), new Document("_id", "08").append("n", "Other")));
+
+        assertTrue(NumericIds.convert(enrollee, true));
+        assertEquals(new Document("_id", 10L)
+                .append("n", "Test")
+                .append("d", Arrays.asList(new Document("_id", 9L).append("n", "Junior"), new Document("_id", "08").append("n", "Other"))), enrollee);
+        assertFalse(NumericIds.convert(enrollee, true));
+
+        assertTrue(NumericIds.convert(enrollee, false));
+        assertEquals("10", enrollee.get("_id"));
+        assertEquals("9", ((Document) enrollee.getList("d", Object.class).get(0)).get("_id"));
+    }
+
+    /**
+     * Test that an external Dependent is given numeric Enrollee and Dependent Ids, keeping its own ObjectId
+     */
+    @Test
+    public void convertDependentTest() {
+
+        ObjectId id = new ObjectId();
+        Document dependent = new Document("_id", id).append("enrolleeId", "10").append("dependentId", "11").append("n", "Junior");
+
+        assertTrue(NumericIds.convert(dependent, true));
+        assertEquals(new Document("_id", id).append("enrolleeId", 10L).append("dependentId", 11L).append("n", "Junior"), dependent);
+    }
+
+    /**
+     * Test that the mapping writes and looks up only Ids that read back the same as 64-bit integers, keeping Ids
+     * with leading zeros as strings
+     */
+    @Test
+    public void storedIdConverterTest() {
+
+        MappingMongoConverter converter = this.createConverter();
+
+        assertEquals(7L, this.write(converter, "7").get("_id"));
+        assertEquals("007", this.write(converter, "007").get("_id"));
+
+        QueryMapper queryMapper = new QueryMapper(converter);
+        assertEquals(new Document("_id", "007"), queryMapper.getMappedObject(new Document("id", "007"),
+                converter.getMappingContext().getPersistentEntity(Enrollee.class)));
+        assertEquals(new Document("_id", 7L), queryMapper.getMappedObject(new Document("id", "7"),
+                converter.getMappingContext().getPersistentEntity(Enrollee.class)));
+    }
+
+    /**
+     * Helper Method to create a MappingMongoConverter storing numeric Ids, as configured by MongoMappingConfiguration
+     */
+    private MappingMongoConverter createConverter() {
+
+        MongoCustomConversions conversions = new MongoCustomConversions(Collections.singletonList(NumericIds.StoredIdConverter.INSTANCE));
+        NumericIdMappingContext context = new NumericIdMappingContext(true);
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        context.afterPropertiesSet();
+
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    /**
+     * Helper Method to write an Enrollee with the given Id
+     */
+    private Document write(MappingMongoConverter converter, String id) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(id);
+        enrollee.setName("Test");
+
+        Document document = new Document();
+        converter.write(enrollee, document);
+        return document;
+    }
+
+}
@@ -0,0 +1,436 @@
+package enrollment.repository.memory;
+
+import enrollment.common.ActivationJobRequest;
+import enrollment.common.AgedOutDependent;
+import enrollment.common.Dependent;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleePatch;
+import enrollment.exceptions.ResourceAlreadyExistsException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the InMemoryEnrollmentDAO class, including recovery from its snapshot and write-ahead log
+ * @author Michael Kulaga
+ */
+public class InMemoryEnrollmentDAOTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemoryEnrollmentDAO enrollmentDAO;
+
+    /**
+     * Setting up the storage engine in an empty directory
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.enrollmentDAO = this.open();
+    }
+
+    /**
+     * Closing the storage engine
+     */
+    @After
+    public void tearDown() throws IOException {
+        this.enrollmentDAO.close();
+    }
+
+    /**
+     * Test to insert and retrieve an Enrollee
+     */
+    @Test
+    public void insertAndFindByIdTest() {
+
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+
+        Enrollee actual = this.enrollmentDAO.findById("1").orElse(null);
+
+        assertEquals("Test Testing", actual.getName());
+        assertEquals("1900-01-01", actual.getDateOfBirth());
+        assertEquals("111-222-3333", actual.getPhoneNumber());
+        assertTrue(actual.isActivationStatus());
+        assertEquals(1, actual.getDependents().size());
+        assertEquals("Test Junior", actual.getDependents().get(0).getName());
+    }
+
+    /**
+     * Test to insert an Enrollee that already exists
+     */
+    @Test(expected = DuplicateKeyException.class)
+    public void insertExistingEnrolleeTest() {
+
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+    }
+
+    /**
+     * Test that changes to a retrieved Enrollee are not visible until it is saved
+     */
+    @Test
+    public void findByIdReturnsCopyTest() {
+
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+
+        Enrollee retrieved = this.enrollmentDAO.findById("1").orElse(null);
+        retrieved.setName("Changed Name");
+        retrieved.getDependents().clear();
+
+        assertEquals("Test Testing", this.enrollmentDAO.findById("1").get().getName());
+        assertEquals(1, this.enrollmentDAO.findById("1").get().getDependents().size());
+
+        this.enrollmentDAO.save(retrieved);
+
+        assertEquals("Changed Name", this.enrollmentDAO.findById("1").get().getName());
+        assertTrue(this.enrollmentDAO.findById("1").get().getDependents().isEmpty());
+    }
+
+    /**
+     * Test to delete an Enrollee
+     */
+    @Test
+    public void deleteByIdTest() {
+
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+        this.enrollmentDAO.insert(this.createEnrollee("2"));
+
+        this.enrollmentDAO.deleteById("1");
+
+        assertFalse(this.enrollmentDAO.existsById("1"));
+        assertEquals(1, this.enrollmentDAO.findAll().size());
+    }
+
+    /**
+     * Test that a patch adding a Dependent that already exists is refused without changing anything
+     */
+    @Test
+    public void applyPatchWithExistingDependentTest() {
+
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+
+        Dependent dependent = new Dependent();
+        dependent.setId("1");
+        dependent.setName("Test Again");
+
+        EnrolleePatch patch = new EnrolleePatch();
+        patch.set("name", "Changed Name");
+        patch.addDependent(dependent);
+
+        try {
+            this.enrollmentDAO.applyPatch("1", patch);
+            fail();
+        } catch (ResourceAlreadyExistsException e) {
+            assertEquals("Test Testing", this.enrollmentDAO.findById("1").get().getName());
+        }
+
+        assertNull(this.enrollmentDAO.applyPatch("2", patch));
+    }
+
+    /**
+     * Test to sort, page and query by example
+     */
+    @Test
+    public void sortPageAndExampleTest() {
+
+        for (String id : Arrays.asList("3", "1", "4", "2")) {
+            Enrollee enrollee = this.createEnrollee(id);
+            enrollee.setName("Test " + (char) ('A' + Integer.parseInt(id)));
+            this.enrollmentDAO.insert(enrollee);
+        }
+
+        Page<Enrollee> page = this.enrollmentDAO.findAll(PageRequest.of(1, 3, Sort.by(Sort.Direction.DESC, "name")));
+
+        assertEquals(4, page.getTotalElements());
+        assertEquals(Arrays.asList("1"), page.getContent().stream().map(Enrollee::getId).collect(Collectors.toList()));
+
+        Enrollee probe = new Enrollee();
+        probe.setName("test c");
+        probe.setDependents(new ArrayList<>());
+        ExampleMatcher matcher = ExampleMatcher.matching().withIgnorePaths("activationStatus").withIgnoreCase();
+
+        assertEquals("2", this.enrollmentDAO.findOne(Example.of(probe, matcher)).get().getId());
+        assertEquals(4, this.enrollmentDAO.count(Example.of(probe, matcher.withMatcher("name", ExampleMatcher.GenericPropertyMatchers.startsWith()).withIgnorePaths("name"))));
+        assertFalse(this.enrollmentDAO.exists(Example.of(probe)));
+    }
+
+    /**
+     * Test to recover from the write-ahead log alone
+     */
+    @Test
+    public void recoverFromWriteAheadLogTest() throws IOException {
+
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+        this.enrollmentDAO.insert(this.createEnrollee("2"));
+
+        Enrollee modified = this.createEnrollee("2");
+        modified.setPhoneNumber(null);
+        this.enrollmentDAO.save(modified);
+        this.enrollmentDAO.deleteById("1");
+
+        this.reopenWithoutSnapshot();
+
+        assertEquals(1, this.enrollmentDAO.count());
+        assertFalse(this.enrollmentDAO.existsById("1"));
+        assertNull(this.enrollmentDAO.findById("2").get().getPhoneNumber());
+    }
+
+    /**
+     * Test to recover from a snapshot plus the write-ahead log written after it
+     */
+    @Test
+    public void recoverFromSnapshotAndWriteAheadLogTest() throws IOException {
+
+        for (int i = 1; i <= 100; i++) {
+            this.enrollmentDAO.insert(this.createEnrollee(String.valueOf(i)));
+        }
+
+        this.enrollmentDAO.snapshot();
+
+        this.enrollmentDAO.deleteById("1");
+        this.enrollmentDAO.insert(this.createEnrollee("101"));
+
+        this.reopenWithoutSnapshot();
+
+        assertTrue(Files.exists(this.folder.getRoot().toPath().resolve(SnapshotFile.FILE_NAME)));
+        assertEquals(100, this.enrollmentDAO.count());
+        assertFalse(this.enrollmentDAO.existsById("1"));
+        assertTrue(this.enrollmentDAO.existsById("101"));
+    }
+
+    /**
+     * Test that a torn entry at the end of the write-ahead log is discarded and later writes still recover
+     */
+    @Test
+    public void recoverFromTornWriteAheadLogTest() throws IOException {
+
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+        this.enrollmentDAO.insert(this.createEnrollee("2"));
+
+        this.abandon();
+
+        List<Path> logFiles = WriteAheadLog.logFiles(this.folder.getRoot().toPath());
+        Path lastLog = logFiles.get(logFiles.size() - 1);
+        long size = Files.size(lastLog);
+
+        try (FileChannel channel = FileChannel.open(lastLog, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        this.enrollmentDAO = this.open();
+
+        assertTrue(this.enrollmentDAO.existsById("1"));
+        assertFalse(this.enrollmentDAO.existsById("2"));
+
+        this.enrollmentDAO.insert(this.createEnrollee("3"));
+
+        this.reopenWithoutSnapshot();
+
+        assertEquals(2, this.enrollmentDAO.count());
+        assertTrue(this.enrollmentDAO.existsById("3"));
+    }
+
+    /**
+     * Test that a batch upsert adds new Enrollees and replaces existing ones, and is recovered from the write-ahead log
+     */
+    @Test
+    public void upsertAllTest() throws IOException {
+
+        this.enrollmentDAO.insert(this.createEnrollee("1"));
+
+        Enrollee replaced = this.createEnrollee("1");
+        replaced.setName("Replaced");
+        replaced.getDependents().clear();
+        this.enrollmentDAO.upsertAll(Arrays.asList(replaced, this.createEnrollee("2")));
+
+        this.reopenWithoutSnapshot();
+
+        assertEquals(2, this.enrollmentDAO.count());
+        assertEquals("Replaced", this.enrollmentDAO.findById("1").get().getName());
+        assertTrue(this.enrollmentDAO.findById("1").get().getDependents().isEmpty());
+        assertEquals(Arrays.asList("2"), this.agedOutEnrolleeIds(null, "2100-01-01"));
+    }
+
+    /**
+     * Test to find the Enrollees an activation job would change, a chunk at a time, and change them
+     */
+    @Test
+    public void activationCandidatesTest() throws IOException {
+
+        for (int i = 1; i <= 5; i++) {
+            Enrollee enrollee = this.createEnrollee(String.valueOf(i));
+            enrollee.setDateOfBirth("190" + i + "-01-01");
+            this.enrollmentDAO.insert(enrollee);
+        }
+
+        ActivationJobRequest request = new ActivationJobRequest();
+        request.setActivationStatus(false);
+        request.setDateOfBirthFrom("1902-01-01");
+
+        assertEquals(Arrays.asList("2", "3"), this.enrollmentDAO.findActivationCandidates(request, null, 2));
+        assertEquals(Arrays.asList("4", "5"), this.enrollmentDAO.findActivationCandidates(request, "3", 2));
+
+        assertEquals(Arrays.asList("2", "3"), this.enrollmentDAO.updateActivationStatus(Arrays.asList("2", "3", "9"), false));
+        assertEquals(Collections.emptyList(), this.enrollmentDAO.updateActivationStatus(Arrays.asList("2"), false));
+
+        request.setIds(Arrays.asList("1", "3", "4"));
+        assertEquals(Arrays.asList("4"), this.enrollmentDAO.findActivationCandidates(request, null, 10));
+
+        this.reopenWithoutSnapshot();
+
+        assertFalse(this.enrollmentDAO.findById("3").get().isActivationStatus());
+        assertTrue(this.enrollmentDAO.findById("4").get().isActivationStatus());
+    }
+
+    /**
+     * Test that Dependents are found by Date of Birth range as they are saved, patched and deleted, and after recovery
+     */
+    @Test
+    public void agedOutDependentsTest() throws IOException {
+
+        for (int i = 1; i <= 4; i++) {
+            Enrollee enrollee = this.createEnrollee(String.valueOf(i));
+            enrollee.getDependents().get(0).setDateOfBirth("199" + i + "-06-15");
+            this.enrollmentDAO.insert(enrollee);
+        }
+
+        assertEquals(Arrays.asList("1", "2"), this.agedOutEnrolleeIds(null, "1992-06-15"));
+        assertEquals(Arrays.asList("2", "3"), this.agedOutEnrolleeIds("1991-06-15", "1993-06-15"));
+
+        EnrolleePatch patch = new EnrolleePatch();
+        patch.setDependentField("1", "dateOfBirth", "1999-01-01");
+        this.enrollmentDAO.applyPatch("2", patch);
+
+        Enrollee moved = this.createEnrollee("4");
+        moved.getDependents().get(0).setDateOfBirth("1990-01-01");
+        this.enrollmentDAO.save(moved);
+        this.enrollmentDAO.deleteById("1");
+
+        assertEquals(Arrays.asList("4", "3"), this.agedOutEnrolleeIds(null, "1993-06-15"));
+
+        this.reopenWithoutSnapshot();
+
+        assertEquals(Arrays.asList("4", "3"), this.agedOutEnrolleeIds(null, "1993-06-15"));
+
+        try (Stream<AgedOutDependent> dependents = this.enrollmentDAO.streamAgedOutDependents("1998-12-31", "1999-01-01")) {
+            AgedOutDependent dependent = dependents.findFirst().get();
+            assertEquals("2", dependent.getEnrolleeId());
+            assertEquals("1", dependent.getDependentId());
+            assertEquals("Test Junior", dependent.getName());
+        }
+
+        this.enrollmentDAO.deleteAll();
+
+        assertTrue(this.agedOutEnrolleeIds(null, "2000-01-01").isEmpty());
+    }
+
+    /**
+     * Helper Method to collect the Enrollee Ids of the Dependents born within a range of dates
+     */
+    private List<String> agedOutEnrolleeIds(String bornAfter, String bornOnOrBefore) {
+
+        try (Stream<AgedOutDependent> dependents = this.enrollmentDAO.streamAgedOutDependents(bornAfter, bornOnOrBefore)) {
+            return dependents.map(AgedOutDependent::getEnrolleeId).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Helper Method to open a storage engine on the temporary folder without scheduled snapshots
+     */
+    private InMemoryEnrollmentDAO open() throws IOException {
+        return new InMemoryEnrollmentDAO(this.folder.getRoot().getAbsolutePath(), 4, true, 0);
+    }
+
+    /**
+     * Helper Method to simulate a crash, leaving only what was written to the write-ahead log, then reopen
+     */
+    private void reopenWithoutSnapshot() throws IOException {
+        this.abandon();
+        this.enrollmentDAO = this.open();
+    }
+
+    /**
+     * Helper Method to simulate a crash by copying the data aside before the engine writes its closing snapshot
+     */
+    private void abandon() throws IOException {
+
+        Path root = this.folder.getRoot().toPath();
+        Path crashed = this.folder.newFolder().toPath();
+
+        for (Path file : WriteAheadLog.logFiles(root)) {
+            Files.copy(file, crashed.resolve(file.getFileName()));
+        }
+        if (Files.exists(root.resolve(SnapshotFile.FILE_NAME))) {
+            Files.copy(root.resolve(SnapshotFile.FILE_NAME), crashed.resolve(SnapshotFile.FILE_NAME));
+        }
+
+        this.enrollmentDAO.close();
+
+        for (Path file : WriteAheadLog.logFiles(root)) {
+            Files.delete(file);
+        }
+        Files.deleteIfExists(root.resolve(SnapshotFile.FILE_NAME));
+
+        for (Path file : WriteAheadLog.logFiles(crashed)) {
+            Files.copy(file, root.resolve(file.getFileName()));
+        }
+        if (Files.exists(crashed.resolve(SnapshotFile.FILE_NAME))) {
+            Files.copy(crashed.resolve(SnapshotFile.FILE_NAME), root.resolve(SnapshotFile.FILE_NAME));
+        }
+    }
+
+    /**
+     * Helper Method to create Enrollee objects for tests
+     *
+     * @return an Enrollee object
+     */
+    private Enrollee createEnrollee(String id) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(id);
+        enrollee.setName("Test Testing");
+        enrollee.setActivationStatus(true);
+        enrollee.setDateOfBirth("1900-01-01");
+        enrollee.setPhoneNumber("111-222-3333");
+
+        Dependent dependent = new Dependent();
+        dependent.setId("1");
+        dependent.setName("Test Junior");
+        dependent.setDateOfBirth("1900-01-01");
+
+        List<Dependent> dependentList = new ArrayList<>();
+        dependentList.add(dependent);
+
+        enrollee.setDependents(dependentList);
+
+        return enrollee;
+
+    }
+
+}
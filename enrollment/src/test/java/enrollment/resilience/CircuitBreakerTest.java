@@ -0,0 +1,107 @@
+package enrollment.resilience;
+
+import enrollment.resilience.CircuitBreaker.State;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for CircuitBreaker class
+ * @author Michael Kulaga
+ */
+public class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final AtomicLong now = new AtomicLong();
+
+    /**
+     * Test that the breaker only opens once enough calls have been made and too many of the recent ones failed,
+     * and rejects calls while open
+     */
+    @Test
+    public void failureRateTest() {
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker(10, 4, 50, 100, 100, 1000, 2, now::get);
+
+        this.call(circuitBreaker, true, FAST);
+        this.call(circuitBreaker, true, FAST);
+        this.call(circuitBreaker, false, FAST);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+
+        this.call(circuitBreaker, true, FAST);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(1000, circuitBreaker.getRemainingOpenMillis());
+        assertEquals(1, circuitBreaker.getStatus().getRejectedCalls());
+        assertEquals(Long.valueOf(1), circuitBreaker.getStatus().getTransitionCounts().get("CLOSED_TO_OPEN"));
+    }
+
+    /**
+     * Test that the breaker opens when too many recent calls are slow, even though they succeed
+     */
+    @Test
+    public void slowCallRateTest() {
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker(4, 4, 50, 100, 75, 1000, 2, now::get);
+
+        this.call(circuitBreaker, false, FAST);
+        this.call(circuitBreaker, false, SLOW);
+        this.call(circuitBreaker, false, SLOW);
+        this.call(circuitBreaker, false, FAST);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+
+        //the oldest fast call leaves the window
+        this.call(circuitBreaker, false, SLOW);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertEquals(3, circuitBreaker.getStatus().getSlowCalls());
+    }
+
+    /**
+     * Test that an open breaker permits only its probes once the open duration has passed, opens again when a
+     * probe fails, and closes once every probe has succeeded
+     */
+    @Test
+    public void halfOpenTest() {
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 1, 50, 100, 100, 1000, 2, now::get);
+
+        this.call(circuitBreaker, true, FAST);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.onResult(true, FAST);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+        circuitBreaker.onResult(false, FAST);
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.onResult(false, FAST);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+
+        CircuitBreakerStatus status = circuitBreaker.getStatus();
+        assertEquals(Long.valueOf(2), status.getTransitionCounts().get("OPEN_TO_HALF_OPEN"));
+        assertEquals(Long.valueOf(1), status.getTransitionCounts().get("HALF_OPEN_TO_OPEN"));
+        assertEquals(Long.valueOf(1), status.getTransitionCounts().get("HALF_OPEN_TO_CLOSED"));
+        assertEquals(State.CLOSED, status.getTransitions().get(0).getTo());
+        assertEquals(5, status.getTransitions().size());
+    }
+
+    private void call(CircuitBreaker circuitBreaker, boolean failed, long nanos) {
+
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onResult(failed, nanos);
+    }
+}
@@ -0,0 +1,192 @@
+package enrollment.resilience;
+
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+import enrollment.exceptions.StorageUnavailableException;
+import enrollment.repository.EnrollmentDAO;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for StorageCircuitBreaker class
+ * @author Michael Kulaga
+ */
+public class StorageCircuitBreakerTest {
+
+    @Mock
+    private EnrollmentDAO enrollmentDAO;
+
+    private StorageCircuitBreaker storageCircuitBreaker;
+    private EnrollmentDAO guardedDAO;
+
+    /**
+     * Setting up mocks
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        this.storageCircuitBreaker = new StorageCircuitBreaker(2, 2, 100, 1000, 60000, 100, 60000, 1, 10);
+
+        ProxyFactory proxyFactory = new ProxyFactory(enrollmentDAO);
+        proxyFactory.addAdvice(this.storageCircuitBreaker);
+        this.guardedDAO = (EnrollmentDAO) proxyFactory.getProxy();
+    }
+
+    /**
+     * Test that once storage fails, client reads by Id are answered with the Enrollees last read, marked as stale,
+     * and reads made to modify an Enrollee, reads of every Enrollee and writes are rejected without reaching storage
+     */
+    @Test
+    public void staleReadTest() {
+
+        Enrollee enrollee = this.createEnrollee("1");
+        given(enrollmentDAO.findById("1")).willReturn(Optional.of(enrollee));
+        given(enrollmentDAO.findAll()).willReturn(Collections.singletonList(enrollee));
+
+        assertEquals("Name 1", this.guardedDAO.findById("1").get().getName());
+        assertEquals(1, this.guardedDAO.findAll().size());
+
+        //callers change the Enrollees they read, which must not change the ones kept
+        enrollee.setName("Changed");
+
+        given(enrollmentDAO.findById(any())).willThrow(new DataAccessResourceFailureException("Timed Out"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), response));
+
+        try {
+            assertEquals("Name 1", StaleReads.allow(() -> this.guardedDAO.findById("1")).get().getName());
+            assertEquals(StorageCircuitBreaker.STALE_WARNING, response.getHeader(HttpHeaders.WARNING));
+
+            try {
+                StaleReads.allow(() -> this.guardedDAO.findById("2"));
+                fail("Expected StorageUnavailableException");
+            } catch (StorageUnavailableException e) {
+                assertTrue(e.getCause() instanceof DataAccessResourceFailureException);
+                assertEquals(CircuitBreaker.State.OPEN, this.storageCircuitBreaker.getStatus().getState());
+            }
+
+            try {
+                this.guardedDAO.findById("1");
+                fail("Expected StorageUnavailableException");
+            } catch (StorageUnavailableException e) {
+                verify(enrollmentDAO, times(3)).findById(any());
+            }
+
+            try {
+                this.guardedDAO.findAll();
+                fail("Expected StorageUnavailableException");
+            } catch (StorageUnavailableException e) {
+                verify(enrollmentDAO, times(1)).findAll();
+            }
+
+            try {
+                this.guardedDAO.save(enrollee);
+                fail("Expected StorageUnavailableException");
+            } catch (StorageUnavailableException e) {
+                assertEquals(60, e.getRetryAfterSeconds());
+            }
+            verify(enrollmentDAO, never()).save(any());
+
+            assertEquals(1, this.storageCircuitBreaker.getStatus().getStaleReads());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    /**
+     * Test that failures unrelated to reaching storage, write conflicts included, do not open the breaker, and that
+     * a changed Enrollee is no longer answered with
+     */
+    @Test
+    public void unrelatedFailureTest() {
+
+        given(enrollmentDAO.findById("1")).willReturn(Optional.of(this.createEnrollee("1")));
+        given(enrollmentDAO.insert(any(Enrollee.class))).willThrow(new DuplicateKeyException("Duplicate"));
+
+        this.guardedDAO.findById("1");
+        this.storageCircuitBreaker.enrolleeChanged(new EnrolleeChangedEvent("1", ChangeType.MODIFIED));
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            try {
+                this.guardedDAO.insert(this.createEnrollee("1"));
+                fail("Expected DuplicateKeyException");
+            } catch (DuplicateKeyException e) {
+                assertEquals(CircuitBreaker.State.CLOSED, this.storageCircuitBreaker.getStatus().getState());
+            }
+        }
+
+        given(enrollmentDAO.findById("1")).willThrow(new DataAccessResourceFailureException("Timed Out"));
+
+        try {
+            StaleReads.allow(() -> this.guardedDAO.findById("1"));
+            fail("Expected StorageUnavailableException");
+        } catch (StorageUnavailableException e) {
+            assertFalse(StorageCircuitBreaker.isStorageFailure(new DuplicateKeyException("Duplicate")));
+            assertFalse(StorageCircuitBreaker.isStorageFailure(new OptimisticLockingFailureException("Conflict")));
+            assertTrue(StorageCircuitBreaker.isStorageFailure(new QueryTimeoutException("Timed Out")));
+        }
+    }
+
+    /**
+     * Test that bulk calls are held to their own slow call threshold, while other calls taking as long open the
+     * breaker
+     */
+    @Test
+    public void bulkSlowCallTest() {
+
+        StorageCircuitBreaker breaker = new StorageCircuitBreaker(2, 2, 100, 0, 60000, 100, 60000, 1, 10);
+        ProxyFactory proxyFactory = new ProxyFactory(enrollmentDAO);
+        proxyFactory.addAdvice(breaker);
+        EnrollmentDAO guarded = (EnrollmentDAO) proxyFactory.getProxy();
+
+        given(enrollmentDAO.findAll()).willReturn(Collections.singletonList(this.createEnrollee("1")));
+        given(enrollmentDAO.findById("1")).willReturn(Optional.of(this.createEnrollee("1")));
+
+        guarded.findAll();
+        guarded.findAll();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getStatus().getState());
+
+        guarded.findById("1");
+        guarded.findById("1");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getStatus().getState());
+    }
+
+    /**
+     * Helper Method to create an Enrollee
+     */
+    private Enrollee createEnrollee(String id) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(id);
+        enrollee.setName("Name " + id);
+        enrollee.setDateOfBirth("01/01/1990");
+        return enrollee;
+    }
+}
@@ -0,0 +1,164 @@
+package enrollment.service;
+
+import enrollment.audit.AuditJournal;
+import enrollment.common.ActivationJob;
+import enrollment.common.ActivationJobRequest;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.eligibility.ActivationIndex;
+import enrollment.exceptions.ResourceDoesNotExistException;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantRegistry;
+import enrollment.validation.EnrollmentValidator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for ActivationJobService class
+ * @author Michael Kulaga
+ */
+public class ActivationJobServiceTest {
+
+    @Mock
+    private EnrollmentDAO enrollmentDAO;
+
+    @Mock
+    private EnrollmentValidator enrollmentValidator;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private AuditJournal auditJournal;
+
+    @Mock
+    private ActivationIndex activationIndex;
+
+    private ActivationJobService activationJobService;
+
+    /**
+     * Setting up mocks
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        this.activationJobService = new ActivationJobService(enrollmentDAO, enrollmentValidator, eventPublisher, new TenantRegistry("", 0, Optional.empty()), auditJournal, activationIndex, 2, 0, 10);
+    }
+
+    /**
+     * Stopping the job thread
+     */
+    @After
+    public void tearDown() {
+        this.activationJobService.close();
+    }
+
+    /**
+     * Test that a job changes every matching Enrollee a chunk at a time, resuming each chunk after the last
+     */
+    @Test
+    public void runJobTest() throws Exception {
+
+        ActivationJobRequest request = this.createRequest();
+
+        given(enrollmentDAO.findActivationCandidates(eq(request), isNull(), eq(2))).willReturn(Arrays.asList("1", "2"));
+        given(enrollmentDAO.findActivationCandidates(eq(request), eq("2"), eq(2))).willReturn(Collections.singletonList("3"));
+        given(enrollmentDAO.findActivationCandidates(eq(request), eq("3"), eq(2))).willReturn(Collections.emptyList());
+        given(enrollmentDAO.updateActivationStatus(any(), eq(false))).willAnswer(invocation -> invocation.getArgument(0));
+
+        ActivationJob job = this.awaitFinished(this.activationJobService.startJob(request));
+
+        assertEquals(ActivationJob.State.COMPLETED, job.getState());
+        assertEquals(3, job.getMatched());
+        assertEquals(3, job.getModified());
+        assertEquals(2, job.getChunks());
+        verify(this.enrollmentValidator, times(1)).activationJobValidator(request);
+        verify(this.eventPublisher, times(3)).publishEvent(any(EnrolleeChangedEvent.class));
+    }
+
+    /**
+     * Test that a cancelled job stops, and resumes after the last Enrollee it reached
+     */
+    @Test
+    public void cancelAndResumeJobTest() throws Exception {
+
+        this.activationJobService.close();
+        this.activationJobService = new ActivationJobService(enrollmentDAO, enrollmentValidator, eventPublisher, new TenantRegistry("", 0, Optional.empty()), auditJournal, activationIndex, 2, 1, 10);
+
+        ActivationJobRequest request = this.createRequest();
+
+        given(enrollmentDAO.findActivationCandidates(eq(request), isNull(), anyInt())).willReturn(Arrays.asList("1", "2"));
+        given(enrollmentDAO.findActivationCandidates(eq(request), eq("2"), anyInt())).willReturn(Collections.emptyList());
+
+        ActivationJob job = this.activationJobService.startJob(request);
+
+        //one change per second, so the job is held up after its first chunk
+        while (job.getChunks() == 0) {
+            Thread.sleep(10);
+        }
+
+        this.activationJobService.cancelJob(job.getId());
+        assertEquals(ActivationJob.State.CANCELLED, this.awaitFinished(job).getState());
+
+        this.activationJobService.resumeJob(job.getId());
+        assertEquals(ActivationJob.State.COMPLETED, this.awaitFinished(job).getState());
+
+        verify(this.enrollmentDAO, times(1)).updateActivationStatus(Arrays.asList("1", "2"), false);
+        verify(this.enrollmentDAO, times(1)).findActivationCandidates(request, "2", 2);
+    }
+
+    /**
+     * Test to retrieve a job that doesn't exist
+     */
+    @Test(expected = ResourceDoesNotExistException.class)
+    public void getJobWithInvalidIdTest() {
+        this.activationJobService.getJob("-1");
+    }
+
+    /**
+     * Helper Method to wait for a job to finish
+     */
+    private ActivationJob awaitFinished(ActivationJob job) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished());
+        return job;
+    }
+
+    /**
+     * Helper Method to create ActivationJobRequest objects for tests
+     *
+     * @return an ActivationJobRequest object
+     */
+    private ActivationJobRequest createRequest() {
+
+        ActivationJobRequest request = new ActivationJobRequest();
+        request.setActivationStatus(false);
+        request.setDateOfBirthTo("1950-12-31");
+
+        return request;
+    }
+
+}
@@ -0,0 +1,169 @@
+package enrollment.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enrollment.common.AgeOutRun;
+import enrollment.common.AgedOutDependent;
+import enrollment.common.Dependent;
+import enrollment.repository.EnrollmentDAO;
+import enrollment.tenancy.TenantRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for AgeOutService class
+ * @author Michael Kulaga
+ */
+public class AgeOutServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private EnrollmentDAO enrollmentDAO;
+
+    private AgeOutService ageOutService;
+
+    /**
+     * Setting up mocks
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        this.ageOutService = new AgeOutService(enrollmentDAO, new ObjectMapper(), new TenantRegistry("", 0, Optional.empty()), 26, 2,
+                this.folder.getRoot().getAbsolutePath(), 0);
+    }
+
+    /**
+     * Stopping the scheduler
+     */
+    @After
+    public void tearDown() {
+        this.ageOutService.close();
+    }
+
+    /**
+     * Test that the first run only sets the high-water mark, that the next exports the Dependents who reached the
+     * threshold since in batches, and that the one after only asks for those born after the mark it left behind
+     */
+    @Test
+    public void runFromHighWaterMarkTest() throws IOException {
+
+        given(enrollmentDAO.streamAgedOutDependents("1994-06-13", "1994-06-15")).willReturn(Stream.of(
+                this.createAgedOutDependent("1", "1994-06-14"),
+                this.createAgedOutDependent("2", "1994-06-14"),
+                this.createAgedOutDependent("3", "1994-06-15")));
+        given(enrollmentDAO.streamAgedOutDependents("1994-06-15", "1994-06-16")).willReturn(Stream.of(
+                this.createAgedOutDependent("4", "1994-06-16")));
+
+        AgeOutRun initial = this.ageOutService.run(LocalDate.of(2020, 6, 13));
+
+        verify(enrollmentDAO, never()).streamAgedOutDependents(any(), any());
+        assertEquals(0, initial.getDependentsExported());
+        assertNull(initial.getExportFile());
+
+        AgeOutRun first = this.ageOutService.run(LocalDate.of(2020, 6, 15));
+
+        assertEquals(3, first.getDependentsExported());
+        assertEquals(2, first.getBatches());
+
+        List<String> lines = Files.readAllLines(Paths.get(first.getExportFile()));
+        assertEquals(3, lines.size());
+        assertEquals("3", new ObjectMapper().readValue(lines.get(2), AgedOutDependent.class).getEnrolleeId());
+
+        AgeOutRun second = this.ageOutService.run(LocalDate.of(2020, 6, 16));
+
+        assertEquals("1994-06-15", second.getBornAfter());
+        assertEquals(1, second.getDependentsExported());
+        assertEquals(1, Files.readAllLines(Paths.get(second.getExportFile())).size());
+
+        Path highWaterMark = this.folder.getRoot().toPath().resolve(AgeOutService.HIGH_WATER_MARK);
+        assertEquals("1994-06-16", new String(Files.readAllBytes(highWaterMark)));
+    }
+
+    /**
+     * Test that Dependents written with a Date of Birth the high-water mark has passed are exported by the next run,
+     * unless they were already past it before the write
+     */
+    @Test
+    public void lateDependentsTest() throws IOException {
+
+        Files.write(this.folder.getRoot().toPath().resolve(AgeOutService.HIGH_WATER_MARK), "1994-06-15".getBytes());
+        given(enrollmentDAO.streamAgedOutDependents("1994-06-15", "1994-06-16")).willReturn(Stream.empty());
+
+        Dependent exported = this.createDependent("1", "1980-01-01");
+        this.ageOutService.dependentsChanged("1", Collections.singletonList(exported),
+                Arrays.asList(exported, this.createDependent("2", "1990-01-01"), this.createDependent("3", "2010-01-01")));
+
+        AgeOutRun run = this.ageOutService.run(LocalDate.of(2020, 6, 16));
+
+        assertEquals(1, run.getDependentsExported());
+        List<String> lines = Files.readAllLines(Paths.get(run.getExportFile()));
+        assertEquals("2", new ObjectMapper().readValue(lines.get(0), AgedOutDependent.class).getDependentId());
+        assertFalse(Files.exists(this.folder.getRoot().toPath().resolve(AgeOutService.LATE_DEPENDENTS)));
+    }
+
+    /**
+     * Test that a run on a day already covered reads nothing
+     */
+    @Test
+    public void runAlreadyCoveredTest() throws IOException {
+
+        Files.write(this.folder.getRoot().toPath().resolve(AgeOutService.HIGH_WATER_MARK), "1994-06-15".getBytes());
+
+        AgeOutRun run = this.ageOutService.run(LocalDate.of(2020, 6, 15));
+
+        verify(enrollmentDAO, never()).streamAgedOutDependents(any(), any());
+        assertEquals(0, run.getDependentsExported());
+        assertNull(run.getExportFile());
+    }
+
+    /**
+     * Helper Method to create AgedOutDependent objects for tests
+     *
+     * @return an AgedOutDependent object
+     */
+    private AgedOutDependent createAgedOutDependent(String enrolleeId, String dateOfBirth) {
+        return new AgedOutDependent(enrolleeId, this.createDependent("1", dateOfBirth));
+    }
+
+    /**
+     * Helper Method to create Dependent objects for tests
+     *
+     * @return a Dependent object
+     */
+    private Dependent createDependent(String id, String dateOfBirth) {
+
+        Dependent dependent = new Dependent();
+        dependent.setId(id);
+        dependent.setName("Test Junior");
+        dependent.setDateOfBirth(dateOfBirth);
+
+        return dependent;
+    }
+
+}
@@ -1,21 +1,31 @@
 package enrollment.service;
 
+import enrollment.audit.AuditJournal;
+import enrollment.common.AuditRecord.Action;
 import enrollment.common.Dependent;
 import enrollment.common.Enrollee;
+import enrollment.common.EnrolleePatch;
 import enrollment.exceptions.ResourceAlreadyExistsException;
 import enrollment.exceptions.ResourceDoesNotExistException;
 import enrollment.repository.EnrollmentDAO;
 import enrollment.validation.EnrollmentValidator;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -32,6 +42,15 @@ public class DependentServiceTest {
     @Mock
     private EnrollmentValidator enrollmentValidator;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private AuditJournal auditJournal;
+
+    @Mock
+    private AgeOutService ageOutService;
+
     private DependentService dependentService;
 
     /**
@@ -41,7 +60,7 @@ public class DependentServiceTest {
     public void setUp() {
         initMocks(this);
 
-        this.dependentService = new DependentService(enrollmentDAO, enrollmentValidator);
+        this.dependentService = new DependentService(enrollmentDAO, enrollmentValidator, eventPublisher, auditJournal, ageOutService);
     }
 
     /**
@@ -141,6 +160,50 @@ public class DependentServiceTest {
 
     }
 
+    /**
+     * Test to merge patch a Dependent, changing only the supplied fields without reading the Enrollee first
+     */
+    @Test
+    public void patchDependentTest() {
+
+        Enrollee enrollee = this.createEnrollee();
+        enrollee.getDependents().add(this.createDependent());
+
+        given(this.enrollmentDAO.applyPatch(anyString(), any(EnrolleePatch.class))).willReturn(enrollee);
+
+        Map<String, Object> mergePatch = new HashMap<>();
+        mergePatch.put("dateOfBirth", "2000-02-02");
+
+        this.dependentService.patchDependent(mergePatch, "1", "1");
+
+        ArgumentCaptor<EnrolleePatch> patch = ArgumentCaptor.forClass(EnrolleePatch.class);
+        verify(this.enrollmentDAO, times(1)).applyPatch(eq("1"), patch.capture());
+        verify(this.enrollmentDAO, never()).save(any(Enrollee.class));
+
+        assertEquals("2000-02-02", patch.getValue().getDependentFields().get("1").get("dateOfBirth"));
+        assertEquals(1, patch.getValue().getDependentFields().get("1").size());
+        verify(this.enrollmentValidator, times(1)).dateOfBirthValidator("2000-02-02");
+        verify(this.enrollmentDAO, never()).findById(anyString());
+        verify(this.auditJournal, times(1)).dependentChanged(eq("1"), eq("1"), eq(Action.MODIFIED), any(Dependent.class),
+                argThat(dependent -> "2000-02-02".equals(dependent.getDateOfBirth()) && "Test Junior".equals(dependent.getName())));
+
+    }
+
+    /**
+     * Test to merge patch a Dependent that doesn't exist
+     */
+    @Test(expected = ResourceDoesNotExistException.class)
+    public void patchDependentWithInvalidDependentIdTest() {
+
+        Enrollee enrollee = this.createEnrollee();
+        enrollee.getDependents().add(this.createDependent());
+
+        given(this.enrollmentDAO.applyPatch(anyString(), any(EnrolleePatch.class))).willReturn(enrollee);
+
+        this.dependentService.patchDependent(new HashMap<>(), "1", "-1");
+
+    }
+
     /**
      * Test to delete a Dependent
      */
@@ -0,0 +1,161 @@
+package enrollment.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+import enrollment.json.SerializedJson;
+import enrollment.tenancy.TenantContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for EnrolleeListCache class
+ * @author Michael Kulaga
+ */
+public class EnrolleeListCacheTest {
+
+    @Mock
+    private EnrolleeService enrolleeService;
+
+    private EnrolleeListCache enrolleeListCache;
+
+    /**
+     * Setting up mocks
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        this.enrolleeListCache = new EnrolleeListCache(enrolleeService, new ObjectMapper(), true, true);
+    }
+
+    /**
+     * Test that the list is served from the cache until an Enrollee of the same tenant changes, and that the
+     * gzipped list holds the same JSON
+     */
+    @Test
+    public void generationTest() throws IOException {
+
+        given(enrolleeService.getEnrollees()).willReturn(Collections.singletonList(this.createEnrollee("1")));
+
+        SerializedJson first = this.enrolleeListCache.getEnrollees();
+        assertSame(first, this.enrolleeListCache.getEnrollees());
+        assertArrayEquals(first.getBytes(), gunzip(this.enrolleeListCache.getGzippedEnrollees()));
+
+        TenantContext.run("acme", () -> this.enrolleeListCache.enrolleeChanged(new EnrolleeChangedEvent("1", ChangeType.MODIFIED)));
+        assertSame(first, this.enrolleeListCache.getEnrollees());
+        verify(enrolleeService, times(1)).getEnrollees();
+
+        given(enrolleeService.getEnrollees()).willReturn(Collections.emptyList());
+        this.enrolleeListCache.enrolleeChanged(new EnrolleeChangedEvent("1", ChangeType.DELETED));
+
+        assertEquals("[]", new String(this.enrolleeListCache.getEnrollees().getBytes(), StandardCharsets.UTF_8));
+        verify(enrolleeService, times(2)).getEnrollees();
+    }
+
+    /**
+     * Test that concurrent reads of a changed list read it only once
+     */
+    @Test
+    public void singleRebuildTest() throws Exception {
+
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        given(enrolleeService.getEnrollees()).willAnswer(invocation -> {
+            reading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.singletonList(this.createEnrollee("1"));
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SerializedJson>> reads = new ArrayList<>();
+            reads.add(executor.submit(this.enrolleeListCache::getEnrollees));
+            reading.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 3; i++) {
+                reads.add(executor.submit(this.enrolleeListCache::getEnrollees));
+            }
+            release.countDown();
+
+            for (Future<SerializedJson> read : reads) {
+                assertSame(reads.get(0).get(5, TimeUnit.SECONDS), read.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(enrolleeService, times(1)).getEnrollees();
+    }
+
+    /**
+     * Test that nothing is kept when the cache is disabled
+     */
+    @Test
+    public void disabledTest() {
+
+        this.enrolleeListCache = new EnrolleeListCache(enrolleeService, new ObjectMapper(), false, true);
+        given(enrolleeService.getEnrollees()).willReturn(Collections.emptyList());
+
+        this.enrolleeListCache.getEnrollees();
+        this.enrolleeListCache.getEnrollees();
+
+        verify(enrolleeService, times(2)).getEnrollees();
+        assertNull(this.enrolleeListCache.getGzippedEnrollees());
+    }
+
+    /**
+     * Helper Method to create Enrollee objects for tests
+     *
+     * @return an Enrollee object
+     */
+    private Enrollee createEnrollee(String id) {
+
+        Enrollee enrollee = new Enrollee();
+        enrollee.setId(id);
+        enrollee.setName("Test");
+        enrollee.setActivationStatus(true);
+        enrollee.setDateOfBirth("1900-01-01");
+
+        return enrollee;
+    }
+
+    private static byte[] gunzip(SerializedJson gzipped) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getBytes()))) {
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+}
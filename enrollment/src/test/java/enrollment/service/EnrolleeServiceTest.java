@@ -1,23 +1,44 @@
 package enrollment.service;
 
+import enrollment.audit.AuditJournal;
+import enrollment.common.AuditRecord.Action;
 import enrollment.common.Dependent;
 import enrollment.common.Enrollee;
+import enrollment.common.EnrolleeActivationResponse;
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeLookupResponse;
+import enrollment.common.EnrolleePatch;
+import enrollment.common.PossibleDuplicate;
+import enrollment.duplicates.DuplicateIndex;
+import enrollment.eligibility.ActivationIndex;
+import enrollment.eligibility.ActivationIndex.Eligibility;
+import enrollment.exceptions.ResourceAlreadyExistsException;
 import enrollment.exceptions.ResourceDoesNotExistException;
+import enrollment.exceptions.ValidationException;
 import enrollment.repository.EnrollmentDAO;
 import enrollment.validation.EnrollmentValidator;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -34,9 +55,24 @@ public class EnrolleeServiceTest {
     @Mock
     private EnrollmentValidator enrollmentValidator;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private AuditJournal auditJournal;
+
+    @Mock
+    private ActivationIndex activationIndex;
+
+    @Mock
+    private AgeOutService ageOutService;
+
     @Mock
     private DependentService dependentService;
 
+    @Mock
+    private DuplicateIndex duplicateIndex;
+
     private EnrolleeService enrolleeService;
 
     /**
@@ -46,7 +82,7 @@ public class EnrolleeServiceTest {
     public void setUp() {
         initMocks(this);
 
-        this.enrolleeService = new EnrolleeService(dependentService, enrollmentDAO, enrollmentValidator);
+        this.enrolleeService = this.createEnrolleeService("warn", 500);
     }
 
     /**
@@ -98,6 +134,70 @@ public class EnrolleeServiceTest {
         this.enrolleeService.getEnrolleeById("-1");
     }
 
+    /**
+     * Test to look up many Enrollees, in the order they were asked for, with the Ids that were not found
+     */
+    @Test
+    public void lookupEnrolleesTest() {
+
+        Enrollee enrollee1 = this.createEnrollee();
+        Enrollee enrollee2 = this.createEnrollee();
+        enrollee2.setId("2");
+
+        given(enrollmentDAO.findAllById(Arrays.asList("2", "3", "1"))).willReturn(Arrays.asList(enrollee1, enrollee2));
+
+        EnrolleeLookupResponse response = this.enrolleeService.lookupEnrollees(Arrays.asList("2", "3", "2", "1"));
+
+        assertEquals(Arrays.asList("2", "1"), Arrays.asList(response.getEnrollees().get(0).getId(), response.getEnrollees().get(1).getId()));
+        assertEquals(Arrays.asList("3"), response.getMissingIds());
+        verify(this.enrollmentValidator, times(1)).lookupValidator(eq(Arrays.asList("2", "3", "2", "1")), anyInt());
+    }
+
+    /**
+     * Test that a large lookup is queried in chunks
+     */
+    @Test
+    public void lookupEnrolleesInChunksTest() {
+
+        this.enrolleeService = this.createEnrolleeService("warn", 2);
+
+        given(enrollmentDAO.findAllById(any())).willReturn(new ArrayList<>());
+
+        EnrolleeLookupResponse response = this.enrolleeService.lookupEnrollees(Arrays.asList("1", "2", "3", "4", "5"));
+
+        verify(this.enrollmentDAO, times(1)).findAllById(Arrays.asList("1", "2"));
+        verify(this.enrollmentDAO, times(1)).findAllById(Arrays.asList("3", "4"));
+        verify(this.enrollmentDAO, times(1)).findAllById(Arrays.asList("5"));
+        assertEquals(5, response.getMissingIds().size());
+    }
+
+    /**
+     * Test that activation statuses the ActivationIndex knows are not read from the database, and only those it
+     * cannot tell are
+     */
+    @Test
+    public void getActivationStatusesTest() {
+
+        Enrollee enrollee4 = this.createEnrollee();
+        enrollee4.setId("4");
+        enrollee4.setActivationStatus(true);
+
+        given(activationIndex.eligibility("1")).willReturn(Eligibility.ACTIVE);
+        given(activationIndex.eligibility("2")).willReturn(Eligibility.INACTIVE);
+        given(activationIndex.eligibility("3")).willReturn(Eligibility.MISSING);
+        given(activationIndex.eligibility("4")).willReturn(Eligibility.UNKNOWN);
+        given(activationIndex.eligibility("5")).willReturn(Eligibility.UNKNOWN);
+        given(enrollmentDAO.findAllById(Arrays.asList("5", "4"))).willReturn(Collections.singletonList(enrollee4));
+
+        EnrolleeActivationResponse response = this.enrolleeService.getActivationStatuses(Arrays.asList("5", "4", "3", "2", "1"));
+
+        assertEquals(Arrays.asList("4", "1"), response.getActiveIds());
+        assertEquals(Collections.singletonList("2"), response.getInactiveIds());
+        assertEquals(Arrays.asList("5", "3"), response.getMissingIds());
+        verify(this.enrollmentDAO, times(1)).findAllById(Arrays.asList("5", "4"));
+        assertTrue(this.enrolleeService.isEnrolleeActive("1"));
+    }
+
     /**
      * Test to add an Enrollee
      */
@@ -107,6 +207,26 @@ public class EnrolleeServiceTest {
         this.enrolleeService.addEnrollee(this.createEnrollee());
 
         verify(this.enrollmentDAO, times(1)).insert(any(Enrollee.class));
+        verify(this.duplicateIndex, times(1)).put("1", "Test Testing", "1900-01-01");
+        verify(this.eventPublisher, times(1)).publishEvent(any(EnrolleeChangedEvent.class));
+    }
+
+    /**
+     * Test to add an Enrollee that looks like a duplicate when possible duplicates are rejected
+     */
+    @Test(expected = ResourceAlreadyExistsException.class)
+    public void addPossibleDuplicateEnrolleeTest() {
+
+        this.enrolleeService = this.createEnrolleeService("reject", 500);
+
+        given(this.duplicateIndex.findPossibleDuplicates(anyString(), anyString(), anyString()))
+                .willReturn(Collections.singletonList(new PossibleDuplicate("2", 0.8)));
+
+        try {
+            this.enrolleeService.addEnrollee(this.createEnrollee());
+        } finally {
+            verify(this.enrollmentDAO, never()).insert(any(Enrollee.class));
+        }
     }
 
     /**
@@ -153,14 +273,142 @@ public class EnrolleeServiceTest {
     }
 
     /**
-     * Test to delete an Enrollee
+     * Test to merge patch an Enrollee, changing only the supplied fields without reading the Enrollee first
+     */
+    @Test
+    public void patchEnrolleeTest() {
+
+        given(this.enrollmentDAO.applyPatch(anyString(), any(EnrolleePatch.class))).willReturn(this.createEnrollee());
+
+        Map<String, Object> mergePatch = new HashMap<>();
+        mergePatch.put("name", "Patched Name");
+        mergePatch.put("activationStatus", false);
+        mergePatch.put("phoneNumber", null);
+
+        this.enrolleeService.patchEnrollee(mergePatch, "1");
+
+        ArgumentCaptor<EnrolleePatch> patch = ArgumentCaptor.forClass(EnrolleePatch.class);
+        verify(this.enrollmentDAO, times(1)).applyPatch(eq("1"), patch.capture());
+        verify(this.enrollmentDAO, never()).save(any(Enrollee.class));
+
+        assertEquals("Patched Name", patch.getValue().getSetFields().get("name"));
+        assertEquals(false, patch.getValue().getSetFields().get("activationStatus"));
+        assertEquals(2, patch.getValue().getSetFields().size());
+        assertTrue(patch.getValue().getUnsetFields().contains("phoneNumber"));
+        verify(this.enrollmentValidator, times(1)).nameValidator("Patched Name");
+        verify(this.enrollmentDAO, never()).findById(anyString());
+        verify(this.duplicateIndex, times(1)).put("1", "Patched Name", "1900-01-01");
+    }
+
+    /**
+     * Test to merge patch the Dependents of an Enrollee by Id, modifying, adding and removing Dependents
+     */
+    @Test
+    public void patchEnrolleeDependentsTest() {
+
+        Enrollee enrollee = this.createEnrollee();
+        Dependent secondDependent = this.createDependent();
+        secondDependent.setId("2");
+        enrollee.getDependents().add(secondDependent);
+
+        given(this.enrollmentDAO.findById(anyString())).willReturn(Optional.of(enrollee));
+        given(this.enrollmentDAO.applyPatch(anyString(), any(EnrolleePatch.class))).willReturn(enrollee);
+
+        Map<String, Object> modifiedDependent = new HashMap<>();
+        modifiedDependent.put("name", "Patched Junior");
+
+        Map<String, Object> addedDependent = new HashMap<>();
+        addedDependent.put("name", "New Junior");
+        addedDependent.put("dateOfBirth", "2000-01-01");
+
+        Map<String, Object> dependents = new HashMap<>();
+        dependents.put("1", modifiedDependent);
+        dependents.put("2", null);
+        dependents.put("3", addedDependent);
+
+        Map<String, Object> mergePatch = new HashMap<>();
+        mergePatch.put("dependents", dependents);
+
+        this.enrolleeService.patchEnrollee(mergePatch, "1");
+
+        ArgumentCaptor<EnrolleePatch> patch = ArgumentCaptor.forClass(EnrolleePatch.class);
+        verify(this.enrollmentDAO, times(1)).applyPatch(eq("1"), patch.capture());
+
+        assertEquals("Patched Junior", patch.getValue().getDependentFields().get("1").get("name"));
+        assertEquals(1, patch.getValue().getDependentFields().get("1").size());
+        assertTrue(patch.getValue().getRemovedDependentIds().contains("2"));
+        assertEquals("3", patch.getValue().getAddedDependents().get(0).getId());
+        assertEquals("New Junior", patch.getValue().getAddedDependents().get(0).getName());
+    }
+
+    /**
+     * Test to merge patch an Enrollee with a field that doesn't exist
+     */
+    @Test(expected = ValidationException.class)
+    public void patchEnrolleeWithUnknownFieldTest() {
+
+        given(this.enrollmentDAO.findById(anyString())).willReturn(Optional.of(this.createEnrollee()));
+
+        Map<String, Object> mergePatch = new HashMap<>();
+        mergePatch.put("favouriteColour", "blue");
+
+        this.enrolleeService.patchEnrollee(mergePatch, "1");
+    }
+
+    /**
+     * Test to merge patch an Enrollee that doesn't exist
+     */
+    @Test(expected = ResourceDoesNotExistException.class)
+    public void patchEnrolleeWithInvalidIdTest() {
+
+        given(this.enrollmentDAO.findById(anyString())).willReturn(Optional.empty());
+
+        this.enrolleeService.patchEnrollee(new HashMap<>(), "1");
+    }
+
+    /**
+     * Test to merge patch removing a Dependent that doesn't exist
+     */
+    @Test(expected = ResourceDoesNotExistException.class)
+    public void patchEnrolleeRemovingInvalidDependentIdTest() {
+
+        given(this.enrollmentDAO.findById(anyString())).willReturn(Optional.of(this.createEnrollee()));
+
+        Map<String, Object> dependents = new HashMap<>();
+        dependents.put("-1", null);
+
+        Map<String, Object> mergePatch = new HashMap<>();
+        mergePatch.put("dependents", dependents);
+
+        this.enrolleeService.patchEnrollee(mergePatch, "1");
+    }
+
+    /**
+     * Test to delete an Enrollee, journaling the deleted Enrollee and announcing the deletion only when it existed
      */
     @Test
     public void deleteEnrolleeTest() {
 
+        Enrollee enrollee = this.createEnrollee();
+        given(this.enrollmentDAO.findAndRemoveById("1")).willReturn(enrollee);
+
         this.enrolleeService.deleteEnrollee("1");
+        this.enrolleeService.deleteEnrollee("2");
+
+        verify(this.enrollmentDAO, times(2)).findAndRemoveById(anyString());
+        verify(this.auditJournal, times(1)).enrolleeChanged("1", Action.DELETED, enrollee, null);
+        verify(this.auditJournal, never()).enrolleeChanged(eq("2"), any(), any(), any());
+        verify(this.eventPublisher, times(1)).publishEvent(any(EnrolleeChangedEvent.class));
+    }
 
-        verify(this.enrollmentDAO, times(1)).deleteById(anyString());
+    /**
+     * Helper Method to create the EnrolleeService under test with the mocks and the given settings
+     *
+     * @return an EnrolleeService object
+     */
+    private EnrolleeService createEnrolleeService(String duplicatesOnAdd, int lookupChunkSize) {
+        return new EnrolleeService(dependentService, enrollmentDAO, enrollmentValidator, eventPublisher, duplicateIndex,
+                auditJournal, activationIndex, ageOutService, duplicatesOnAdd, 1000, lookupChunkSize);
     }
 
     /**
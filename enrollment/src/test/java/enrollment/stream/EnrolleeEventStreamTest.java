@@ -0,0 +1,169 @@
+package enrollment.stream;
+
+import enrollment.common.EnrolleeChangedEvent;
+import enrollment.common.EnrolleeChangedEvent.ChangeType;
+import enrollment.common.EnrolleeStreamEvent;
+import enrollment.tenancy.TenantContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for EnrolleeEventStream class
+ * @author Michael Kulaga
+ */
+public class EnrolleeEventStreamTest {
+
+    private EnrolleeEventStream enrolleeEventStream;
+
+    /**
+     * Setting up the stream
+     */
+    @Before
+    public void setup() {
+        this.enrolleeEventStream = new EnrolleeEventStream(100, 2, 5, 10, 30, 0);
+    }
+
+    @After
+    public void tearDown() {
+        this.enrolleeEventStream.close();
+    }
+
+    /**
+     * Test that a subscriber is only sent the changes to the Enrollees it asked for, of its own tenant and with
+     * the activation status it asked for, including the changes to their Dependents
+     */
+    @Test
+    public void filterTest() throws InterruptedException {
+
+        RecordingEmitter byId = new RecordingEmitter(null);
+        RecordingEmitter active = new RecordingEmitter(null);
+        this.enrolleeEventStream.subscribe(byId, new HashSet<>(Collections.singletonList("1")), null, null);
+        this.enrolleeEventStream.subscribe(active, Collections.emptySet(), true, null);
+
+        this.enrolleeEventStream.enrolleeChanged(new EnrolleeChangedEvent("2", ChangeType.MODIFIED, false));
+        TenantContext.run("other", () -> this.enrolleeEventStream.enrolleeChanged(new EnrolleeChangedEvent("1", ChangeType.MODIFIED, true)));
+        this.enrolleeEventStream.enrolleeChanged(new EnrolleeChangedEvent("1", "11", ChangeType.ADDED, true));
+        this.enrolleeEventStream.enrolleeChanged(new EnrolleeChangedEvent("2", ChangeType.DELETED));
+
+        byId.await(1);
+        assertEquals(Collections.singletonList("1/11 ADDED"), byId.received);
+
+        active.await(2);
+        assertEquals(Arrays.asList("1/11 ADDED", "2 DELETED"), active.received);
+    }
+
+    /**
+     * Test that a subscriber too slow to keep up is resynced in place of the events it missed, without holding
+     * up the other subscribers
+     */
+    @Test
+    public void slowSubscriberTest() throws InterruptedException {
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(blocked);
+        RecordingEmitter fast = new RecordingEmitter(null);
+        this.enrolleeEventStream.subscribe(slow, Collections.emptySet(), null, null);
+        this.enrolleeEventStream.subscribe(fast, Collections.emptySet(), null, null);
+
+        //each event is sent to the fast subscriber before the next, while the slow one is still sending its first
+        for (int i = 0; i < 10; i++) {
+            this.enrolleeEventStream.enrolleeChanged(new EnrolleeChangedEvent(String.valueOf(i), ChangeType.MODIFIED));
+            fast.await(i + 1);
+        }
+        assertEquals(10, fast.received.size());
+
+        blocked.countDown();
+        slow.await(2);
+        assertTrue(slow.received.contains("resync"));
+        assertTrue(slow.received.size() < 10);
+    }
+
+    /**
+     * Test that a subscriber reconnecting with the Id of the last event it received is sent the events it missed,
+     * and is resynced if they are no longer kept
+     */
+    @Test
+    public void resumeTest() throws InterruptedException {
+
+        RecordingEmitter first = new RecordingEmitter(null);
+        this.enrolleeEventStream.subscribe(first, Collections.emptySet(), null, null);
+        for (int i = 0; i < 4; i++) {
+            this.enrolleeEventStream.enrolleeChanged(new EnrolleeChangedEvent(String.valueOf(i), ChangeType.ADDED));
+            first.await(i + 1);
+        }
+
+        RecordingEmitter resumed = new RecordingEmitter(null);
+        this.enrolleeEventStream.subscribe(resumed, Collections.emptySet(), null, String.valueOf(first.ids.get(1)));
+        resumed.await(2);
+        assertEquals(Arrays.asList("2 ADDED", "3 ADDED"), resumed.received);
+
+        for (int i = 4; i < 10; i++) {
+            this.enrolleeEventStream.enrolleeChanged(new EnrolleeChangedEvent(String.valueOf(i), ChangeType.ADDED));
+            first.await(i + 1);
+        }
+
+        RecordingEmitter expired = new RecordingEmitter(null);
+        this.enrolleeEventStream.subscribe(expired, Collections.emptySet(), null, String.valueOf(first.ids.get(1)));
+        expired.await(1);
+        assertEquals(Collections.singletonList("resync"), expired.received);
+    }
+
+    /**
+     * SseEmitter recording the events sent to it, optionally blocking the first send until released
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final CountDownLatch release;
+        private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        private final List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+
+            try {
+                if (this.release != null) {
+                    this.release.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            for (DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof EnrolleeStreamEvent) {
+                    EnrolleeStreamEvent event = (EnrolleeStreamEvent) data.getData();
+                    this.ids.add(event.getId());
+                    this.received.add(event.getEnrolleeId() + (event.getDependentId() != null ? "/" + event.getDependentId() : "")
+                            + " " + event.getChangeType());
+                } else if (String.valueOf(data.getData()).contains("event:" + EventSubscriber.RESYNC_EVENT)) {
+                    this.received.add(EventSubscriber.RESYNC_EVENT);
+                }
+            }
+        }
+
+        void await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (this.received.size() < count && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package enrollment.tenancy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for the TenantFilter class
+ * @author Michael Kulaga
+ */
+public class TenantFilterTest {
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    private final ExecutorService mover = Executors.newSingleThreadExecutor();
+    private final CountDownLatch moved = new CountDownLatch(1);
+
+    private TenantFilter tenantFilter;
+
+    /**
+     * Setting up a tenant that is moving between partitions, whose writes are refused at once
+     */
+    @Before
+    public void setUp() throws Exception {
+
+        initMocks(this);
+
+        TenantRegistry tenantRegistry = new TenantRegistry("acme", 0, Optional.of(this.mongoOperations));
+        this.tenantFilter = new TenantFilter(tenantRegistry, new ObjectMapper(), "X-Tenant-Id", 0);
+
+        CountDownLatch moving = new CountDownLatch(1);
+        this.mover.submit(() -> {
+            Lock lock = tenantRegistry.writeLock("acme").writeLock();
+            lock.lock();
+            try {
+                moving.countDown();
+                this.moved.await();
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        });
+        moving.await();
+    }
+
+    @After
+    public void tearDown() {
+        this.moved.countDown();
+        this.mover.shutdown();
+    }
+
+    /**
+     * Test that the lookups answered to POST are served while the tenant moves
+     */
+    @Test
+    public void postReadsTest() throws Exception {
+
+        assertNotNull(this.filter("POST", "/tenants/acme/enrollees/lookup").getRequest());
+        assertNotNull(this.filter("POST", "/tenants/acme/enrollees/active").getRequest());
+        assertNotNull(this.filter("GET", "/tenants/acme/enrollees/1").getRequest());
+    }
+
+    /**
+     * Test that writes are refused while the tenant moves
+     */
+    @Test
+    public void writesTest() throws Exception {
+
+        assertNull(this.filter("POST", "/tenants/acme/enrollees").getRequest());
+        assertNull(this.filter("POST", "/tenants/acme/enrollees/1/dependents").getRequest());
+        assertNull(this.filter("DELETE", "/tenants/acme/enrollees/1").getRequest());
+    }
+
+    /**
+     * Helper Method to pass a request through the filter
+     *
+     * @param method the method of the request
+     * @param path the path of the request
+     * @return the filter chain, holding the request once it was passed on
+     */
+    private MockFilterChain filter(String method, String path) throws Exception {
+
+        MockFilterChain chain = new MockFilterChain();
+        this.tenantFilter.doFilter(new MockHttpServletRequest(method, path), new MockHttpServletResponse(), chain);
+        return chain;
+    }
+
+}
@@ -0,0 +1,97 @@
+package enrollment.tenancy;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+/**
+ * Tests for TenantRegistry class
+ * @author Michael Kulaga
+ */
+public class TenantRegistryTest {
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    /**
+     * Setting up mocks
+     */
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    /**
+     * Test that each tenant is routed to its own collections, and to the partition it was recorded as moved to
+     */
+    @Test
+    public void collectionNamesTest() {
+
+        given(mongoOperations.findAll(Document.class, TenantRegistry.ROUTES_COLLECTION))
+                .willReturn(Collections.singletonList(new Document("_id", "globex").append(TenantRegistry.PARTITION, "globex-2")));
+
+        TenantRegistry tenantRegistry = new TenantRegistry(" acme, globex ", 0, Optional.of(mongoOperations));
+
+        assertEquals(Arrays.asList("default", "acme", "globex"), Arrays.asList(tenantRegistry.getTenants().toArray()));
+        assertEquals("enrollees", tenantRegistry.enrolleeCollection());
+        assertEquals("enrollees_acme", TenantContext.call("acme", tenantRegistry::enrolleeCollection));
+        assertEquals("dependents_globex-2", TenantContext.call("globex", tenantRegistry::dependentCollection));
+        assertEquals("default", TenantContext.current());
+
+        assertTrue(tenantRegistry.isPartitionInUse("globex-2"));
+        assertFalse(tenantRegistry.isPartitionInUse("globex"));
+        assertFalse(tenantRegistry.isKnown("initech"));
+    }
+
+    /**
+     * Test that a move recorded by another node is picked up once the recorded partitions are due to be reloaded
+     */
+    @Test
+    public void reloadRoutesTest() throws InterruptedException {
+
+        given(mongoOperations.findAll(Document.class, TenantRegistry.ROUTES_COLLECTION))
+                .willReturn(Collections.emptyList())
+                .willReturn(Collections.singletonList(new Document("_id", "acme").append(TenantRegistry.PARTITION, "acme-2")));
+
+        TenantRegistry tenantRegistry = new TenantRegistry("acme", 1, Optional.of(mongoOperations));
+
+        assertEquals("acme", tenantRegistry.partitionOf("acme"));
+        assertEquals("acme", tenantRegistry.partitionOf("acme"));
+
+        Thread.sleep(1100);
+
+        assertEquals("acme-2", tenantRegistry.partitionOf("acme"));
+        verify(mongoOperations, times(2)).findAll(Document.class, TenantRegistry.ROUTES_COLLECTION);
+    }
+
+    /**
+     * Test that invalid tenant names are rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTenantTest() {
+        new TenantRegistry("acme,Not A Tenant", 0, Optional.of(mongoOperations));
+    }
+
+    /**
+     * Test that tenants are rejected with the in-memory storage engine
+     */
+    @Test(expected = IllegalStateException.class)
+    public void inMemoryTenantsTest() {
+        new TenantRegistry("acme", 0, Optional.empty());
+    }
+
+}
@@ -0,0 +1,94 @@
+package enrollment.warmup;
+
+import enrollment.tenancy.TenantContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for HotEnrollees class
+ * @author Michael Kulaga
+ */
+public class HotEnrolleesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the most read Enrollees of each tenant are written on shutdown and read back, most read first,
+     * without the reads made while counting was paused
+     */
+    @Test
+    public void saveAndLoadTest() {
+
+        String file = this.folder.getRoot().toPath().resolve("warm-up/hot-enrollees.txt").toString();
+        HotEnrollees hotEnrollees = new HotEnrollees(true, file, 3);
+
+        for (int i = 0; i < 5; i++) {
+            hotEnrollees.record("1");
+        }
+        hotEnrollees.recordAll(Arrays.asList("2", "2", "3"));
+        TenantContext.run("other", () -> hotEnrollees.recordAll(Arrays.asList("7", "7", "7", "7")));
+        hotEnrollees.pause(true);
+        for (int i = 0; i < 10; i++) {
+            hotEnrollees.record("4");
+        }
+        hotEnrollees.pause(false);
+        hotEnrollees.save();
+
+        Map<String, List<String>> loaded = new HotEnrollees(true, file, 3).load();
+
+        assertEquals(Arrays.asList("1", "2"), loaded.get(TenantContext.DEFAULT_TENANT));
+        assertEquals(Collections.singletonList("7"), loaded.get("other"));
+    }
+
+    /**
+     * Test that once too many Enrollees are counted the least read are forgotten, so the most read are still kept
+     */
+    @Test
+    public void pruneTest() {
+
+        String file = this.folder.getRoot().toPath().resolve("hot-enrollees.txt").toString();
+        HotEnrollees hotEnrollees = new HotEnrollees(true, file, 2);
+
+        for (int i = 0; i < 100; i++) {
+            hotEnrollees.record("1");
+            hotEnrollees.record("2");
+        }
+        for (int i = 100; i < 200; i++) {
+            hotEnrollees.record(String.valueOf(i));
+        }
+        hotEnrollees.save();
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), new HashSet<>(hotEnrollees.load().get(TenantContext.DEFAULT_TENANT)));
+    }
+
+    /**
+     * Test that reads are not counted when the warm-up is turned off, and that the previous run's file is kept
+     */
+    @Test
+    public void disabledTest() {
+
+        String file = this.folder.getRoot().toPath().resolve("hot-enrollees.txt").toString();
+        HotEnrollees previous = new HotEnrollees(true, file, 10);
+        previous.record("1");
+        previous.save();
+
+        HotEnrollees hotEnrollees = new HotEnrollees(false, file, 10);
+        hotEnrollees.record("2");
+        hotEnrollees.save();
+
+        assertEquals(Collections.singletonList("1"), hotEnrollees.load().get(TenantContext.DEFAULT_TENANT));
+        assertTrue(new HotEnrollees(true, file, 0).load().isEmpty());
+    }
+
+}